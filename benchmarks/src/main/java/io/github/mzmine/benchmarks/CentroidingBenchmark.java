@@ -0,0 +1,133 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.rawdata.centroiding.BinningCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.ExactMassCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.LocalMaximaCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.RecursiveCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.WaveletCentroidingAlgorithm;
+import io.github.mzmine.modules.rawdata.centroiding.ParallelCentroidingMethod;
+import io.github.mzmine.modules.rawdata.rawdataimport.ImportCentroidingMethod;
+
+/**
+ * Centroiding of a profile file with each algorithm, one scan after another
+ * and with the ParallelCentroidingMethod used by the centroiding modules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CentroidingBenchmark {
+
+    @Param({ "BINNING", "EXACT_MASS", "LOCAL_MAXIMA", "RECURSIVE",
+            "WAVELET" })
+    public ImportCentroidingMethod algorithm;
+
+    @Param({ "100", "1000" })
+    public int numOfScans;
+
+    private DataPointStore dataStore;
+    private RawDataFile rawDataFile;
+
+    @Setup
+    public void setup() {
+        dataStore = DataPointStoreFactory.getMemoryDataStore();
+        rawDataFile = SyntheticData.createRawDataFile("profile", 500,
+                numOfScans, true, 0, dataStore);
+    }
+
+    @TearDown
+    public void tearDown() {
+        rawDataFile.dispose();
+    }
+
+    @Benchmark
+    public int sequential() {
+        final DataPointStore outputStore = DataPointStoreFactory
+                .getMemoryDataStore();
+        try {
+            final MSDKCentroidingAlgorithm centroidingAlgorithm = createAlgorithm(
+                    outputStore);
+            int numOfDataPoints = 0;
+            for (MsScan scan : rawDataFile.getScans()) {
+                numOfDataPoints += centroidingAlgorithm.centroidScan(scan)
+                        .getNumberOfDataPoints();
+            }
+            return numOfDataPoints;
+        } finally {
+            outputStore.dispose();
+        }
+    }
+
+    @Benchmark
+    public RawDataFile parallel() throws MSDKException {
+        final DataPointStore outputStore = DataPointStoreFactory
+                .getMemoryDataStore();
+        final RawDataFile result = new ParallelCentroidingMethod(rawDataFile,
+                this::createAlgorithm, outputStore).execute();
+        result.dispose();
+        return result;
+    }
+
+    private MSDKCentroidingAlgorithm createAlgorithm(
+            DataPointStore outputStore) {
+        switch (algorithm) {
+        case BINNING:
+            return new BinningCentroidingAlgorithm(outputStore, 0.01);
+        case EXACT_MASS:
+            return new ExactMassCentroidingAlgorithm(outputStore);
+        case RECURSIVE:
+            return new RecursiveCentroidingAlgorithm(outputStore,
+                    Range.closed(0.0, 0.1));
+        case WAVELET:
+            return new WaveletCentroidingAlgorithm(outputStore, 3, 0.3);
+        case LOCAL_MAXIMA:
+        default:
+            return new LocalMaximaCentroidingAlgorithm(outputStore);
+        }
+    }
+
+}
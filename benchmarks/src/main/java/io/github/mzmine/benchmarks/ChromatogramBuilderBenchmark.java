@@ -0,0 +1,104 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.featuredetection.chromatogrambuilder.ParallelChromatogramBuilderMethod;
+
+/**
+ * Chromatogram building of a centroided file, with the sequential MSDK method
+ * and with the m/z-sharded ParallelChromatogramBuilderMethod.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChromatogramBuilderBenchmark {
+
+    @Param({ "500", "2000" })
+    public int numOfScans;
+
+    @Param({ "1000" })
+    public int numOfCompounds;
+
+    private DataPointStore dataStore;
+    private RawDataFile rawDataFile;
+
+    @Setup
+    public void setup() {
+        dataStore = DataPointStoreFactory.getMemoryDataStore();
+        rawDataFile = SyntheticData.createRawDataFile("sample",
+                numOfCompounds, numOfScans, false, 0, dataStore);
+    }
+
+    @TearDown
+    public void tearDown() {
+        rawDataFile.dispose();
+    }
+
+    @Benchmark
+    public List<Chromatogram> sequential() throws MSDKException {
+        final DataPointStore outputStore = DataPointStoreFactory
+                .getMemoryDataStore();
+        try {
+            return SyntheticData.buildChromatograms(rawDataFile, outputStore);
+        } finally {
+            outputStore.dispose();
+        }
+    }
+
+    @Benchmark
+    public List<Chromatogram> parallel() throws MSDKException {
+        final DataPointStore outputStore = DataPointStoreFactory
+                .getMemoryDataStore();
+        try {
+            return new ParallelChromatogramBuilderMethod(outputStore,
+                    rawDataFile, SyntheticData.NOISE_LEVEL, 5.0,
+                    SyntheticData.NOISE_LEVEL * 5, SyntheticData.MZ_TOLERANCE,
+                    MZmineCore.getTaskExecutor().getNumberOfThreads()).execute();
+        } finally {
+            outputStore.dispose();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.features.joinaligner.JoinAlignerMethod;
+import io.github.msdk.util.tolerances.RTTolerance;
+
+/**
+ * Alignment of the feature tables of several samples with RT drift.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JoinAlignerBenchmark {
+
+    static final RTTolerance RT_TOLERANCE = new RTTolerance(10, true);
+
+    @Param({ "10", "50" })
+    public int numOfSamples;
+
+    @Param({ "500" })
+    public int numOfCompounds;
+
+    private DataPointStore dataStore;
+    private List<FeatureTable> featureTables;
+
+    @Setup
+    public void setup() throws MSDKException {
+        dataStore = DataPointStoreFactory.getMemoryDataStore();
+        featureTables = SyntheticData.createFeatureTables(numOfSamples, 600,
+                numOfCompounds, 3.0, dataStore);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataStore.dispose();
+    }
+
+    @Benchmark
+    public FeatureTable align() throws MSDKException {
+        return align(featureTables, DataPointStoreFactory.getMemoryDataStore());
+    }
+
+    static FeatureTable align(List<FeatureTable> featureTables,
+            DataPointStore dataStore) throws MSDKException {
+        return new JoinAlignerMethod(featureTables, dataStore,
+                SyntheticData.MZ_TOLERANCE, RT_TOLERANCE, 10, 10, false,
+                false, "Aligned feature table").execute();
+    }
+
+}
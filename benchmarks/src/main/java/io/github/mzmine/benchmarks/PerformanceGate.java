@@ -0,0 +1,417 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.features.gapfilling.GapFillingMethod;
+import io.github.msdk.io.RawDataFileImportMethod;
+import io.github.msdk.io.mzml.MzMLFileExportMethod;
+import io.github.msdk.rawdata.centroiding.LocalMaximaCentroidingAlgorithm;
+import io.github.mzmine.modules.rawdata.centroiding.ParallelCentroidingMethod;
+import io.github.mzmine.modules.rawdata.syntheticdata.SyntheticDataGenerator;
+
+/**
+ * Performance regression gate, run by the perf Maven profile. Runs a fixed
+ * scenario on synthetic mzML files: import, centroiding, chromatogram
+ * building, alignment and gap filling. For each stage the throughput and the
+ * peak heap usage are recorded and compared to a baseline file. The process
+ * exits with status 1 if a stage is slower or uses more heap than the
+ * baseline allows.
+ * 
+ * The scenario is run perf.iterations times after one warm-up run. The
+ * median throughput and the largest peak heap usage of each stage are
+ * reported.
+ * 
+ * The baseline records the machine and JVM it was measured on. A baseline
+ * without stages has not been measured yet; it is not compared against, so
+ * the gate only reports the results until the baseline is generated with
+ * perf.updateBaseline on the reference machine.
+ * 
+ * System properties:
+ * <ul>
+ * <li>perf.samples, perf.scans, perf.compounds: size of the data set</li>
+ * <li>perf.iterations: number of measured runs</li>
+ * <li>perf.tolerance: allowed relative regression, e.g. 0.25</li>
+ * <li>perf.results: file to write the measured results to</li>
+ * <li>perf.updateBaseline: if true, the baseline is replaced by the
+ * results</li>
+ * </ul>
+ */
+public class PerformanceGate {
+
+    static final String IMPORT = "import", CENTROIDING = "centroiding",
+            CHROMATOGRAMS = "chromatograms", ALIGNMENT = "alignment",
+            GAP_FILLING = "gapFilling";
+
+    private static final List<String> STAGES = Collections
+            .unmodifiableList(Arrays.asList(IMPORT, CENTROIDING,
+                    CHROMATOGRAMS, ALIGNMENT, GAP_FILLING));
+
+    private final int numOfSamples, numOfScans, numOfCompounds;
+    private final File workDirectory;
+
+    PerformanceGate(int numOfSamples, int numOfScans, int numOfCompounds,
+            @Nonnull File workDirectory) {
+        this.numOfSamples = numOfSamples;
+        this.numOfScans = numOfScans;
+        this.numOfCompounds = numOfCompounds;
+        this.workDirectory = workDirectory;
+    }
+
+    /**
+     * @param args
+     *            the baseline file
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (args.length != 1) {
+            System.err.println(
+                    "Usage: PerformanceGate <baseline file>");
+            System.exit(2);
+        }
+        final File baselineFile = new File(args[0]);
+        final int numOfSamples = Integer.getInteger("perf.samples", 5);
+        final int numOfScans = Integer.getInteger("perf.scans", 600);
+        final int numOfCompounds = Integer.getInteger("perf.compounds", 500);
+        final int iterations = Integer.getInteger("perf.iterations", 3);
+        final double tolerance = Double
+                .parseDouble(System.getProperty("perf.tolerance", "0.25"));
+        final File resultsFile = new File(
+                System.getProperty("perf.results", "perf-results.json"));
+        final boolean updateBaseline = Boolean
+                .getBoolean("perf.updateBaseline");
+
+        final File workDirectory = Files
+                .createTempDirectory("mzmine-perf").toFile();
+        final Results results;
+        try {
+            final PerformanceGate gate = new PerformanceGate(numOfSamples,
+                    numOfScans, numOfCompounds, workDirectory);
+            gate.createFiles();
+
+            System.out.println("Warm-up run");
+            gate.runScenario();
+            final List<Results> runs = new ArrayList<>();
+            for (int i = 0; i < iterations; i++) {
+                System.out.println("Run " + (i + 1) + " of " + iterations);
+                runs.add(gate.runScenario());
+            }
+            results = Results.summarize(runs);
+        } finally {
+            FileUtils.deleteQuietly(workDirectory);
+        }
+
+        results.numOfSamples = numOfSamples;
+        results.numOfScans = numOfScans;
+        results.numOfCompounds = numOfCompounds;
+        results.machine = describeMachine();
+        results.jvm = describeJvm();
+        results.write(resultsFile);
+        System.out.println("Results written to " + resultsFile);
+
+        if (updateBaseline) {
+            results.write(baselineFile);
+            System.out.println("Baseline " + baselineFile + " updated");
+            return;
+        }
+
+        if (!baselineFile.exists()) {
+            System.err.println("Baseline " + baselineFile + " not found");
+            System.exit(1);
+        }
+        final Results baseline = Results.read(baselineFile);
+        if (baseline.stages == null || baseline.stages.isEmpty()) {
+            System.out.println("Baseline " + baselineFile
+                    + " has not been measured, skipping the comparison."
+                    + " Generate it with -Dperf.updateBaseline=true.");
+            return;
+        }
+        if (!results.machine.equals(baseline.machine)
+                || !results.jvm.equals(baseline.jvm)) {
+            System.out.println("WARNING: the baseline was measured on "
+                    + baseline.machine + ", " + baseline.jvm);
+        }
+        final List<String> regressions = results.compare(baseline, tolerance);
+        for (String regression : regressions)
+            System.err.println("REGRESSION: " + regression);
+        if (!regressions.isEmpty())
+            System.exit(1);
+        System.out.println("No stage regressed by more than "
+                + Math.round(tolerance * 100) + " %");
+    }
+
+    /**
+     * Generates the profile mzML files of the scenario.
+     */
+    void createFiles() throws MSDKException {
+        final SyntheticDataGenerator generator = new SyntheticDataGenerator(
+                numOfScans, numOfCompounds, 50, SyntheticData.NOISE_LEVEL, 10,
+                3.0, true, SyntheticData.SEED);
+        for (int i = 0; i < numOfSamples; i++) {
+            final DataPointStore dataStore = DataPointStoreFactory
+                    .getMemoryDataStore();
+            final RawDataFile rawDataFile = generator
+                    .createRawDataFile("sample" + i, i, dataStore);
+            new MzMLFileExportMethod(rawDataFile, getFile(i)).execute();
+            dataStore.dispose();
+        }
+    }
+
+    /**
+     * Runs all stages of the scenario once.
+     */
+    @Nonnull
+    Results runScenario() throws MSDKException {
+
+        final Results results = new Results();
+        final DataPointStore dataStore = DataPointStoreFactory
+                .getMemoryDataStore();
+        try {
+            final int totalScans = numOfSamples * numOfScans;
+
+            final List<RawDataFile> profileFiles = new ArrayList<>();
+            results.measure(IMPORT, "scans/s", totalScans, () -> {
+                for (int i = 0; i < numOfSamples; i++)
+                    profileFiles.add(new RawDataFileImportMethod(getFile(i),
+                            dataStore).execute());
+            });
+
+            final List<RawDataFile> centroidedFiles = new ArrayList<>();
+            results.measure(CENTROIDING, "scans/s", totalScans, () -> {
+                for (RawDataFile rawDataFile : profileFiles)
+                    centroidedFiles.add(new ParallelCentroidingMethod(
+                            rawDataFile,
+                            store -> new LocalMaximaCentroidingAlgorithm(
+                                    store),
+                            dataStore).execute());
+            });
+
+            final List<FeatureTable> featureTables = new ArrayList<>();
+            results.measure(CHROMATOGRAMS, "scans/s", totalScans, () -> {
+                for (RawDataFile rawDataFile : centroidedFiles)
+                    featureTables.add(SyntheticData
+                            .createFeatureTable(rawDataFile, dataStore));
+            });
+
+            int numOfFeatures = 0;
+            for (FeatureTable featureTable : featureTables)
+                numOfFeatures += featureTable.getRows().size();
+            final FeatureTable alignedTables[] = new FeatureTable[1];
+            results.measure(ALIGNMENT, "features/s", numOfFeatures,
+                    () -> alignedTables[0] = JoinAlignerBenchmark
+                            .align(featureTables, dataStore));
+
+            final FeatureTable alignedTable = alignedTables[0];
+            results.measure(GAP_FILLING, "rows/s",
+                    alignedTable.getRows().size(),
+                    () -> new GapFillingMethod(alignedTable, dataStore,
+                            SyntheticData.MZ_TOLERANCE,
+                            JoinAlignerBenchmark.RT_TOLERANCE, 0.5,
+                            " gap-filled").execute());
+        } finally {
+            dataStore.dispose();
+        }
+        return results;
+    }
+
+    private static @Nonnull String describeMachine() {
+        final Runtime runtime = Runtime.getRuntime();
+        return System.getProperty("os.name") + " "
+                + System.getProperty("os.arch") + ", "
+                + runtime.availableProcessors() + " CPUs, "
+                + (runtime.maxMemory() >> 20) + " MB max heap";
+    }
+
+    private static @Nonnull String describeJvm() {
+        return System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.version");
+    }
+
+    private @Nonnull File getFile(int sampleIndex) {
+        return new File(workDirectory, "sample" + sampleIndex + ".mzML");
+    }
+
+    /**
+     * A stage of the scenario.
+     */
+    @FunctionalInterface
+    interface Stage {
+        void run() throws MSDKException;
+    }
+
+    /**
+     * Measurements of one stage.
+     */
+    static class StageResult {
+
+        String unit;
+        double throughput;
+        long peakHeapBytes;
+
+        StageResult(String unit, double throughput, long peakHeapBytes) {
+            this.unit = unit;
+            this.throughput = throughput;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+    }
+
+    /**
+     * Measurements of all stages, in the format of the baseline file.
+     */
+    static class Results {
+
+        int numOfSamples, numOfScans, numOfCompounds;
+        String machine, jvm;
+        Map<String, StageResult> stages = new LinkedHashMap<>();
+
+        void measure(@Nonnull String stageName, @Nonnull String unit,
+                int numOfItems, @Nonnull Stage stage) throws MSDKException {
+            System.gc();
+            final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory
+                    .getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                    pool.resetPeakUsage();
+                    heapPools.add(pool);
+                }
+            }
+
+            final long startTime = System.nanoTime();
+            stage.run();
+            final long elapsedTime = Math.max(1L,
+                    System.nanoTime() - startTime);
+
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : heapPools)
+                peakHeap += pool.getPeakUsage().getUsed();
+            final double throughput = numOfItems * 1e9 / elapsedTime;
+            System.out.println(String.format(
+                    "  %-14s %12.1f %s, peak heap %d MB", stageName,
+                    throughput, unit, peakHeap >> 20));
+            stages.put(stageName, new StageResult(unit, throughput, peakHeap));
+        }
+
+        /**
+         * Returns the median throughput and the largest peak heap usage of
+         * each stage.
+         */
+        static @Nonnull Results summarize(@Nonnull List<Results> runs) {
+            final Results summary = new Results();
+            for (String stageName : STAGES) {
+                final double throughputs[] = new double[runs.size()];
+                long peakHeap = 0;
+                String unit = null;
+                for (int i = 0; i < runs.size(); i++) {
+                    final StageResult result = runs.get(i).stages
+                            .get(stageName);
+                    throughputs[i] = result.throughput;
+                    peakHeap = Math.max(peakHeap, result.peakHeapBytes);
+                    unit = result.unit;
+                }
+                Arrays.sort(throughputs);
+                summary.stages.put(stageName, new StageResult(unit,
+                        throughputs[throughputs.length / 2], peakHeap));
+            }
+            return summary;
+        }
+
+        /**
+         * Returns a description of each stage that is slower or uses more
+         * heap than the baseline plus the tolerance.
+         */
+        @Nonnull
+        List<String> compare(@Nonnull Results baseline, double tolerance) {
+            final List<String> regressions = new ArrayList<>();
+            if (baseline.numOfSamples != numOfSamples
+                    || baseline.numOfScans != numOfScans
+                    || baseline.numOfCompounds != numOfCompounds) {
+                regressions.add("the baseline was measured with "
+                        + baseline.numOfSamples + " samples, "
+                        + baseline.numOfScans + " scans and "
+                        + baseline.numOfCompounds + " compounds");
+                return regressions;
+            }
+            for (String stageName : STAGES) {
+                final StageResult expected = baseline.stages.get(stageName);
+                final StageResult actual = stages.get(stageName);
+                if (expected == null || actual == null)
+                    continue;
+                if (actual.throughput < expected.throughput
+                        * (1.0 - tolerance)) {
+                    regressions.add(String.format(
+                            "%s throughput %.1f %s, baseline %.1f %s",
+                            stageName, actual.throughput, actual.unit,
+                            expected.throughput, expected.unit));
+                }
+                if (actual.peakHeapBytes > expected.peakHeapBytes
+                        * (1.0 + tolerance)) {
+                    regressions.add(String.format(
+                            "%s peak heap %d MB, baseline %d MB", stageName,
+                            actual.peakHeapBytes >> 20,
+                            expected.peakHeapBytes >> 20));
+                }
+            }
+            return regressions;
+        }
+
+        static @Nonnull Results read(@Nonnull File file) throws IOException {
+            try (Reader reader = Files.newBufferedReader(file.toPath(),
+                    StandardCharsets.UTF_8)) {
+                return new Gson().fromJson(reader, Results.class);
+            }
+        }
+
+        void write(@Nonnull File file) throws IOException {
+            final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+            try (Writer writer = Files.newBufferedWriter(file.toPath(),
+                    StandardCharsets.UTF_8)) {
+                gson.toJson(this, writer);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+
+/**
+ * Selection of scans by MS level and RT range, as used by the plots and most
+ * processing modules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanSelectionBenchmark {
+
+    @Param({ "1000", "10000", "50000" })
+    public int numOfScans;
+
+    private DataPointStore dataStore;
+    private RawDataFile rawDataFile;
+    private ScanSelection ms1RtWindow, allMs2;
+
+    @Setup
+    public void setup() {
+        dataStore = DataPointStoreFactory.getMemoryDataStore();
+        rawDataFile = SyntheticData.createRawDataFile("sample", 200,
+                numOfScans, false, 5, dataStore);
+
+        // A window of 1 % of the run in the middle
+        final double maxRt = numOfScans * SyntheticData.SCAN_INTERVAL;
+        ms1RtWindow = new ScanSelection(
+                Range.closed(maxRt * 0.5, maxRt * 0.51), 1);
+        allMs2 = new ScanSelection(2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        rawDataFile.dispose();
+    }
+
+    @Benchmark
+    public List<MsScan> ms1RtWindow() {
+        return ms1RtWindow.getMatchingScans(rawDataFile);
+    }
+
+    @Benchmark
+    public List<MsScan> allMs2() {
+        return allMs2.getMatchingScans(rawDataFile);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.featdet.chromatogrambuilder.ChromatogramBuilderMethod;
+import io.github.msdk.featdet.chromatogramtofeaturetable.ChromatogramToFeatureTableMethod;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.mzmine.modules.rawdata.syntheticdata.SyntheticDataGenerator;
+
+/**
+ * Synthetic LC-MS data for the benchmarks, generated with
+ * SyntheticDataGenerator. The same seed always gives the same data.
+ */
+final class SyntheticData {
+
+    static final long SEED = 42;
+
+    static final float SCAN_INTERVAL = SyntheticDataGenerator.SCAN_INTERVAL;
+
+    static final double NOISE_LEVEL = 1000.0;
+    static final MaximumMzTolerance MZ_TOLERANCE = new MaximumMzTolerance(
+            0.002, 10.0);
+
+    private static final int NOISE_POINTS = 50;
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Creates a raw data file without RT drift.
+     * 
+     * @param profile
+     *            if true, every peak is sampled at several m/z values
+     * @param msMsInterval
+     *            every msMsInterval-th scan is an MS/MS scan, 0 for none
+     */
+    static @Nonnull RawDataFile createRawDataFile(@Nonnull String name,
+            int numOfCompounds, int numOfScans, boolean profile,
+            int msMsInterval, @Nonnull DataPointStore dataStore) {
+        return new SyntheticDataGenerator(numOfScans, numOfCompounds,
+                NOISE_POINTS, NOISE_LEVEL, msMsInterval, 0.0, profile, SEED)
+                        .createRawDataFile(name, 0, dataStore);
+    }
+
+    /**
+     * Builds the chromatograms of the given file and converts them to a
+     * feature table, like the chromatogram builder module.
+     */
+    static @Nonnull FeatureTable createFeatureTable(
+            @Nonnull RawDataFile rawDataFile, @Nonnull DataPointStore dataStore)
+            throws MSDKException {
+        final List<Chromatogram> chromatograms = buildChromatograms(
+                rawDataFile, dataStore);
+        final FeatureTable featureTable = MSDKObjectBuilder
+                .getFeatureTable(rawDataFile.getName(), dataStore);
+        final Sample sample = MSDKObjectBuilder
+                .getSample(rawDataFile.getName());
+        sample.setRawDataFile(rawDataFile);
+        new ChromatogramToFeatureTableMethod(chromatograms, featureTable,
+                sample).execute();
+        return featureTable;
+    }
+
+    /**
+     * Creates one feature table per sample. All samples contain the same
+     * compounds, with random intensity factors and an RT drift of up to
+     * maxRtShift seconds.
+     */
+    static @Nonnull List<FeatureTable> createFeatureTables(int numOfSamples,
+            int numOfScans, int numOfCompounds, double maxRtShift,
+            @Nonnull DataPointStore dataStore) throws MSDKException {
+        final SyntheticDataGenerator generator = new SyntheticDataGenerator(
+                numOfScans, numOfCompounds, NOISE_POINTS, NOISE_LEVEL, 0,
+                maxRtShift, false, SEED);
+        final List<FeatureTable> featureTables = new ArrayList<>();
+        for (int i = 0; i < numOfSamples; i++) {
+            final RawDataFile rawDataFile = generator
+                    .createRawDataFile("sample" + i, i, dataStore);
+            featureTables.add(createFeatureTable(rawDataFile, dataStore));
+        }
+        return featureTables;
+    }
+
+    static @Nonnull List<Chromatogram> buildChromatograms(
+            @Nonnull RawDataFile rawDataFile, @Nonnull DataPointStore dataStore)
+            throws MSDKException {
+        return new ChromatogramBuilderMethod(dataStore, rawDataFile,
+                NOISE_LEVEL, 5.0, NOISE_LEVEL * 5, MZ_TOLERANCE).execute();
+    }
+
+}
@@ -62,8 +62,8 @@ public final class MZmineGUI extends Application {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private static final Image mzMineIcon = new Image(
-            "file:icon/mzmine-icon.png");
+    private static final String mzMineIconURL = "file:icon/mzmine-icon.png";
+    private static Image mzMineIcon;
     private static final String mzMineFXML = "file:conf/MainWindow.fxml";
 
     private static MainWindowController mainWindowController;
@@ -92,7 +92,7 @@ public final class MZmineGUI extends Application {
         stage.setMinHeight(300);
 
         // Set application icon
-        stage.getIcons().setAll(mzMineIcon);
+        stage.getIcons().setAll(getMZmineIcon());
 
         stage.setOnCloseRequest(e -> {
             requestQuit();
@@ -115,7 +115,7 @@ public final class MZmineGUI extends Application {
     public static void requestQuit() {
         Alert alert = new Alert(AlertType.CONFIRMATION);
         Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
-        stage.getIcons().add(mzMineIcon);
+        stage.getIcons().add(getMZmineIcon());
         alert.setTitle("Confirmation");
         alert.setHeaderText("Exit MZmine");
         String s = "Are you sure you want to exit?";
@@ -131,7 +131,7 @@ public final class MZmineGUI extends Application {
     public static void closeProject() {
         Alert alert = new Alert(AlertType.CONFIRMATION);
         Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
-        stage.getIcons().add(mzMineIcon);
+        stage.getIcons().add(getMZmineIcon());
         alert.setTitle("Confirmation");
         alert.setHeaderText("Close project");
         String s = "Are you sure you want to close the current project?";
@@ -146,10 +146,17 @@ public final class MZmineGUI extends Application {
     }
 
     public static void displayMessage(String msg) {
+
+        // In batch mode there is no window to show the message in
+        if (MZmineCore.isHeadLessMode()) {
+            LoggerFactory.getLogger(MZmineGUI.class).warn(msg);
+            return;
+        }
+
         Platform.runLater(() -> {
             Dialog<ButtonType> dialog = new Dialog<>();
             Stage stage = (Stage) dialog.getDialogPane().getScene().getWindow();
-            stage.getIcons().add(mzMineIcon);
+            stage.getIcons().add(getMZmineIcon());
             dialog.setTitle("Warning");
             dialog.setContentText(msg);
             dialog.getDialogPane().getButtonTypes().add(ButtonType.OK);
@@ -164,6 +171,16 @@ public final class MZmineGUI extends Application {
         });
     }
 
+    /**
+     * The icon is loaded lazily, so that this class can be initialized even
+     * when the FX toolkit is not running (batch mode).
+     */
+    private static Image getMZmineIcon() {
+        if (mzMineIcon == null)
+            mzMineIcon = new Image(mzMineIconURL);
+        return mzMineIcon;
+    }
+
     public static MainWindowController getMainWindowController() {
         return mainWindowController;
     }
@@ -179,7 +196,7 @@ public final class MZmineGUI extends Application {
 
         Stage newStage = new Stage();
         newStage.setTitle(title);
-        newStage.getIcons().add(mzMineIcon);
+        newStage.getIcons().add(getMZmineIcon());
         newStage.setScene(newScene);
         newStage.show();
 
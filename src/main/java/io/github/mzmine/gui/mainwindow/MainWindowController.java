@@ -19,8 +19,6 @@
 
 package io.github.mzmine.gui.mainwindow;
 
-import java.util.Collection;
-
 import org.controlsfx.control.StatusBar;
 import org.controlsfx.control.TaskProgressView;
 import org.slf4j.Logger;
@@ -41,10 +39,11 @@ import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParamet
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelectionType;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
-import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.TaskProgressMonitor;
 import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
@@ -92,6 +91,8 @@ public class MainWindowController {
     @FXML
     private Label memoryBarLabel;
 
+    private final TaskProgressMonitor taskProgressMonitor = new TaskProgressMonitor();
+
     @FXML
     public void initialize() {
 
@@ -153,22 +154,18 @@ public class MainWindowController {
                 }));
         memoryUpdater.play();
 
-        // Setup the Timeline to update the MZmine tasks periodically
-        final Timeline msdkTaskUpdater = new Timeline();
-        UPDATE_FREQUENCY = 50; // ms
-        msdkTaskUpdater.setCycleCount(Animation.INDEFINITE);
-        msdkTaskUpdater.getKeyFrames()
-                .add(new KeyFrame(Duration.millis(UPDATE_FREQUENCY), e -> {
-
-                    Collection<Task<?>> tasks = tasksView.getTasks();
-                    for (Task<?> task : tasks) {
-                        if (task instanceof MZmineTask) {
-                            MZmineTask mzmineTask = (MZmineTask) task;
-                            mzmineTask.refreshStatus();
-                        }
+        // Publish the progress of the tasks shown in the task view. Finished
+        // tasks are removed from the view and thus from the monitor.
+        tasksView.getTasks()
+                .addListener((ListChangeListener.Change<? extends Task<?>> c) -> {
+                    while (c.next()) {
+                        for (Task<?> task : c.getRemoved())
+                            taskProgressMonitor.unregister(task);
+                        for (Task<?> task : c.getAddedSubList())
+                            taskProgressMonitor.register(task);
                     }
-                }));
-        msdkTaskUpdater.play();
+                });
+        taskProgressMonitor.start();
     }
 
     @FXML
@@ -19,7 +19,9 @@
 
 package io.github.mzmine.gui.preferences;
 
+import java.io.File;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 
 import javax.annotation.Nullable;
 
@@ -29,9 +31,16 @@ import org.w3c.dom.Element;
 
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.ComboParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
+import io.github.mzmine.parameters.parametertypes.PercentParameter;
+import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.util.datastore.TmpDataStoreType;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 import javafx.scene.control.ButtonType;
 
 public class MZminePreferences extends ParameterSet {
@@ -52,6 +61,46 @@ public class MZminePreferences extends ParameterSet {
 
     public static final NumOfThreadsParameter numOfThreads = new NumOfThreadsParameter();
 
+    public static final PercentParameter memoryBudget = new PercentParameter(
+            "Memory budget",
+            "Fraction of the maximum heap size that running tasks may use. Tasks are held in the queue while their estimated memory would exceed this budget.",
+            "Memory", ParameterValidator.createNonEmptyValidator(), 0.8);
+
+    public static final ComboParameter<TmpDataStoreType> tmpDataStore = new ComboParameter<>(
+            "Temporary data storage",
+            "How raw data are stored on disk during processing. Memory-mapped files let the operating system cache frequently read scans. Compressed files need several times less disk space and read bandwidth, at some CPU cost.",
+            "Memory", Arrays.asList(TmpDataStoreType.values()),
+            TmpDataStoreType.TMP_FILE);
+
+    public static final StringParameter tmpDirectories = new StringParameter(
+            "Temporary directories",
+            "Directories where raw data are stored during processing, separated by '"
+                    + File.pathSeparator
+                    + "'. New temporary files are distributed across all directories.",
+            "Temporary files", ParameterValidator.createNonEmptyValidator(),
+            TmpStorageManager.getDefaultDirectories());
+
+    public static final IntegerParameter tmpStorageQuota = new IntegerParameter(
+            "Temporary storage quota (GB)",
+            "Maximum size of all temporary files of the project. Tasks that would exceed the quota fail. 0 means no limit.",
+            "Temporary files", ParameterValidator.createNonEmptyValidator(),
+            0);
+
+    public static final OptionalModuleParameter compressMemoryData = new OptionalModuleParameter(
+            "Compress data in memory",
+            "Keep the chromatograms of aligned, gap filled, isotope grouped and filtered feature tables compressed in memory, with a bounded loss of precision",
+            "Memory", new DataCompressionSettings());
+
+    public static final OptionalModuleParameter importCache = new OptionalModuleParameter(
+            "Use import cache",
+            "Keep imported raw data files in a cache on disk, so unchanged files are restored quickly when they are imported again",
+            "Import cache", new ImportCacheSettings());
+
+    public static final OptionalModuleParameter resultCache = new OptionalModuleParameter(
+            "Use result cache",
+            "Keep the results of processing modules in a cache on disk. When a module is run again with the same parameters on the same input, the cached result is restored instead of being computed.",
+            "Result cache", new ResultCacheSettings());
+
     public static final OptionalModuleParameter proxySettings = new OptionalModuleParameter(
             "Use proxy", "Use proxy for internet connection?", "Proxy",
             new ProxySettings());
@@ -83,8 +132,10 @@ public class MZminePreferences extends ParameterSet {
     // WindowSettingsParameter();
 
     public MZminePreferences() {
-        super(mzFormat, rtFormat, intensityFormat, numOfThreads, proxySettings,
-                rExecPath, sendStatistics);
+        super(mzFormat, rtFormat, intensityFormat, numOfThreads, memoryBudget,
+                tmpDataStore, tmpDirectories, tmpStorageQuota,
+                compressMemoryData, importCache, resultCache,
+                proxySettings, rExecPath, sendStatistics);
     }
 
     @Override
@@ -131,14 +182,13 @@ public class MZminePreferences extends ParameterSet {
         NumOfThreadsValue numOfThreadsValue = getParameter(numOfThreads)
                 .getValue();
         if (numOfThreadsValue != null) {
-            int threadPoolSize = numOfThreadsValue.getNumberOfThreads();
-            int currentThreadPoolSize = MZmineCore.getTaskExecutor()
-                    .getCorePoolSize();
-            if (threadPoolSize != currentThreadPoolSize) {
-                logger.debug(
-                        "Setting the thread pool size to " + threadPoolSize);
-                MZmineCore.getTaskExecutor().setCorePoolSize(threadPoolSize);
-            }
+            MZmineCore.getTaskExecutor().setNumberOfThreads(
+                    numOfThreadsValue.getNumberOfThreads());
+        }
+
+        Double memoryBudgetValue = getParameter(memoryBudget).getValue();
+        if (memoryBudgetValue != null) {
+            MZmineCore.getTaskExecutor().setMemoryBudget(memoryBudgetValue);
         }
 
     }
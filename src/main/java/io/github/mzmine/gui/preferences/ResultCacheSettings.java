@@ -0,0 +1,50 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.gui.preferences;
+
+import java.io.File;
+
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.StringParameter;
+
+/**
+ * Module result cache settings
+ */
+public class ResultCacheSettings extends ParameterSet {
+
+    public static final StringParameter cacheDirectory = new StringParameter(
+            "Cache directory",
+            "Directory where the results of processing modules are cached",
+            "Result cache", ParameterValidator.createNonEmptyValidator(),
+            System.getProperty("user.home") + File.separator + ".mzmine"
+                    + File.separator + "resultcache");
+
+    public static final IntegerParameter maxCacheSize = new IntegerParameter(
+            "Maximum cache size (GB)",
+            "The least recently used results are removed from the cache when it grows beyond this size",
+            "Result cache", ParameterValidator.createNonEmptyValidator(), 20);
+
+    public ResultCacheSettings() {
+        super(cacheDirectory, maxCacheSize);
+    }
+
+}
@@ -24,7 +24,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import javax.annotation.Nonnull;
 
@@ -35,6 +34,10 @@ import io.github.mzmine.modules.MZmineRunnableModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.project.resultcache.ModuleResultCache;
+import io.github.mzmine.taskcontrol.HeadlessTaskExecutor;
+import io.github.mzmine.taskcontrol.MZmineTaskExecutor;
+import io.github.mzmine.taskcontrol.TaskPriority;
 import javafx.concurrent.Task;
 
 /**
@@ -44,11 +47,15 @@ public final class MZmineCore {
 
     private static final @Nonnull MZmineConfiguration configuration = new MZmineConfiguration();
 
-    private static final @Nonnull ScheduledThreadPoolExecutor taskExecutor = new ScheduledThreadPoolExecutor(
-            2);
+    private static final @Nonnull MZmineTaskExecutor taskExecutor = new MZmineTaskExecutor(
+            Runtime.getRuntime().availableProcessors());
+
+    private static final @Nonnull HeadlessTaskExecutor headlessTaskExecutor = new HeadlessTaskExecutor();
 
     private static @Nonnull MZmineProject currentProject = new MZmineProject();
 
+    private static boolean headLessMode = false;
+
     public static @Nonnull MZmineConfiguration getConfiguration() {
         return configuration;
     }
@@ -81,18 +88,35 @@ public final class MZmineCore {
         currentProject = newProject;
     }
 
+    /**
+     * Returns true if MZmine is running without the JavaFX GUI (batch mode).
+     */
+    public static boolean isHeadLessMode() {
+        return headLessMode;
+    }
+
+    static void setHeadLessMode(boolean newHeadLessMode) {
+        headLessMode = newHeadLessMode;
+    }
+
     public static void submitTasks(@Nonnull Collection<Task<?>> tasks) {
 
+        // JavaFX tasks cannot run without the FX toolkit
+        if (headLessMode) {
+            headlessTaskExecutor.submitTasks(tasks);
+            return;
+        }
+
         for (Task<?> task : tasks) {
             MainWindowController mwc = MZmineGUI.getMainWindowController();
             if (mwc != null) {
                 mwc.getTaskTable().getTasks().add(task);
             }
-            taskExecutor.execute(task);
+            taskExecutor.execute(task, TaskPriority.NORMAL);
         }
     }
 
-    public static @Nonnull ScheduledThreadPoolExecutor getTaskExecutor() {
+    public static @Nonnull MZmineTaskExecutor getTaskExecutor() {
         return taskExecutor;
     }
 
@@ -117,7 +141,8 @@ public final class MZmineCore {
 
         // Run the module
         final List<Task<?>> newTasks = new ArrayList<>();
-        module.runModule(currentProject, parameters, newTasks);
+        ModuleResultCache.runModule(module, parameters, currentProject,
+                newTasks);
         submitTasks(newTasks);
 
         // Log module run in audit log
@@ -19,6 +19,7 @@
 
 package io.github.mzmine.main;
 
+import java.io.File;
 import java.nio.file.Paths;
 import java.util.Locale;
 
@@ -26,15 +27,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.modules.batchmode.BatchModeRunner;
 import javafx.application.Application;
 
 /**
- * MZmine main class
+ * MZmine main class. When started with the --batch &lt;pipeline.xml&gt;
+ * arguments, MZmine runs the given batch without the GUI and exits with a
+ * status code.
  */
 public final class MZmineMain {
 
 	private static final Logger logger = LoggerFactory.getLogger(MZmineMain.class);
 
+	private static final String BATCH_ARGUMENT = "--batch";
+
 	public static void main(String args[]) {
 
 		/*
@@ -71,6 +77,41 @@ public final class MZmineMain {
 		Thread shutDownThread = new Thread(shutDownHook);
 		Runtime.getRuntime().addShutdownHook(shutDownThread);
 
+		/*
+		 * Check for batch mode
+		 */
+		File batchFile = null;
+		for (int i = 0; i < args.length; i++) {
+			if (BATCH_ARGUMENT.equals(args[i])) {
+				if (i + 1 >= args.length) {
+					logger.error("Missing batch file after " + BATCH_ARGUMENT);
+					System.exit(BatchModeRunner.EXIT_ERROR);
+				}
+				batchFile = new File(args[i + 1]);
+			}
+		}
+
+		if (batchFile != null) {
+			MZmineCore.setHeadLessMode(true);
+
+			/*
+			 * Load modules on the main thread, because the batch needs them
+			 */
+			MZmineModuleStarter moduleStarter = new MZmineModuleStarter();
+			moduleStarter.run();
+
+			/*
+			 * Usage Tracker
+			 */
+			GoogleAnalyticsTracker GAT = new GoogleAnalyticsTracker("MZmine Loaded (Batch mode)", "/JAVA/Main/Batch");
+			Thread gatThread = new Thread(GAT);
+			gatThread.setPriority(Thread.MIN_PRIORITY);
+			gatThread.start();
+
+			int exitCode = BatchModeRunner.runBatch(batchFile);
+			System.exit(exitCode);
+		}
+
 		/*
 		 * Load modules on a new thread after the GUI has started
 		 */
@@ -20,14 +20,17 @@
 package io.github.mzmine.main;
 
 import java.io.File;
-import java.io.FilenameFilter;
-import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.channels.FileLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.github.mzmine.util.datastore.TmpStorageManager;
+
+/**
+ * Removes temporary files left over from previous sessions in the default
+ * spill directories. Other directories configured in the preferences are
+ * cleaned by TmpStorageManager before their first use.
+ */
 class TmpFileCleanup implements Runnable {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -36,41 +39,9 @@ class TmpFileCleanup implements Runnable {
     public void run() {
 
         logger.debug("Checking for old temporary files...");
-        try {
-
-            // Find all temporary files with the mask mzmine*.scans
-            File tempDir = new File(System.getProperty("java.io.tmpdir"));
-            File remainingTmpFiles[] = tempDir.listFiles(new FilenameFilter() {
-                public boolean accept(File dir, String name) {
-                    return name.matches("mzmine.*\\.scans");
-                }
-            });
-
-            if (remainingTmpFiles != null)
-                for (File remainingTmpFile : remainingTmpFiles) {
-
-                    // Skip files created by someone else
-                    if (!remainingTmpFile.canWrite())
-                        continue;
-
-                    // Try to obtain a lock on the file
-                    RandomAccessFile rac = new RandomAccessFile(
-                            remainingTmpFile, "rw");
-
-                    FileLock lock = rac.getChannel().tryLock();
-                    rac.close();
-
-                    if (lock != null) {
-                        // We locked the file, which means nobody is using it
-                        // anymore and it can be removed
-                        logger.debug("Removing unused temporary file "
-                                + remainingTmpFile);
-                        remainingTmpFile.delete();
-                    }
-
-                }
-        } catch (IOException e) {
-            logger.warn("Error while checking for old temporary files", e);
+        for (File tempDir : TmpStorageManager.parseDirectories(
+                TmpStorageManager.getDefaultDirectories())) {
+            TmpStorageManager.removeUnusedFiles(tempDir);
         }
 
     }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.alignment.joinaligner;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+
+/**
+ * Number of features in each row of an aligned feature table, used to append
+ * new samples. With the counts, the average m/z and RT of a row can be
+ * updated without looking at the other samples.
+ * 
+ * The state is computed from the table once and then updated by
+ * AppendAlignerMethod as rows and features are added. If rows are added to or
+ * removed from the table by anything else, it is no longer valid and must be
+ * computed again.
+ */
+class AlignedTableState {
+
+    private final @Nonnull FeatureTable featureTable;
+    private final Map<FeatureTableRow, Integer> featureCounts = new IdentityHashMap<>();
+    private int nextId = 1;
+
+    AlignedTableState(@Nonnull FeatureTable featureTable) {
+        this.featureTable = featureTable;
+
+        final FeatureTableColumn<Integer> idColumn = featureTable
+                .getColumn(ColumnName.ID, null);
+        final List<FeatureTableColumn<Double>> sampleMzColumns = new ArrayList<>();
+        for (Sample sample : featureTable.getSamples()) {
+            final FeatureTableColumn<Double> column = featureTable
+                    .getColumn(ColumnName.MZ, sample);
+            if (column != null)
+                sampleMzColumns.add(column);
+        }
+
+        for (FeatureTableRow row : featureTable.getRows()) {
+            int featureCount = 0;
+            for (FeatureTableColumn<Double> column : sampleMzColumns) {
+                if (row.getData(column) != null)
+                    featureCount++;
+            }
+            featureCounts.put(row, featureCount);
+            final Integer id = idColumn == null ? null : row.getData(idColumn);
+            if (id != null && id >= nextId)
+                nextId = id + 1;
+        }
+    }
+
+    /**
+     * Returns false if rows were added to or removed from the table since the
+     * state was updated.
+     */
+    boolean isValid() {
+        final List<FeatureTableRow> rows = featureTable.getRows();
+        if (rows.size() != featureCounts.size())
+            return false;
+        for (FeatureTableRow row : rows) {
+            if (!featureCounts.containsKey(row))
+                return false;
+        }
+        return true;
+    }
+
+    int getNextId() {
+        return nextId++;
+    }
+
+    /**
+     * Adds a row with one feature that was added to the table.
+     */
+    void addRow(@Nonnull FeatureTableRow row) {
+        featureCounts.put(row, 1);
+    }
+
+    /**
+     * Adds a feature to the given row and returns its new number of
+     * features.
+     */
+    int addFeature(@Nonnull FeatureTableRow row) {
+        return featureCounts.merge(row, 1, Integer::sum);
+    }
+
+}
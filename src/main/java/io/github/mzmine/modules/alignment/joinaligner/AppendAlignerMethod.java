@@ -0,0 +1,372 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.alignment.joinaligner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.util.tolerances.MzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.util.FeatureTableIndex;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+
+/**
+ * Appends new samples to an existing aligned feature table. The rows of each
+ * new table are matched against the rows of the aligned table with the same
+ * score as JoinAlignerMethod, the sample columns of the new table are added
+ * to the aligned table and the matched features are written into its rows.
+ * Features without a match become new rows. The aligned table is changed in
+ * place.
+ * 
+ * The rows of the aligned table are looked up in its FeatureTableIndex, which
+ * is updated as rows are matched and added instead of being rebuilt, and
+ * the feature counts needed to update the row averages are kept in an
+ * AlignedTableState for the next run, so appending a table does not look at
+ * the samples that are already aligned.
+ */
+public class AppendAlignerMethod implements MSDKMethod<FeatureTable> {
+
+    /**
+     * States of the aligned tables, kept between runs.
+     */
+    private static final Map<FeatureTable, AlignedTableState> states = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull FeatureTable alignedTable;
+    private final @Nonnull List<FeatureTable> featureTables;
+    private final @Nonnull MzTolerance mzTolerance;
+    private final @Nonnull RTTolerance rtTolerance;
+    private final int mzWeight, rtWeight;
+    private final boolean requireSameCharge, requireSameAnnotation;
+
+    private FeatureTable result;
+    private int processedRows = 0, totalRows = 0;
+    private volatile boolean canceled = false;
+
+    public AppendAlignerMethod(@Nonnull FeatureTable alignedTable,
+            @Nonnull List<FeatureTable> featureTables,
+            @Nonnull MzTolerance mzTolerance,
+            @Nonnull RTTolerance rtTolerance, int mzWeight, int rtWeight,
+            boolean requireSameCharge, boolean requireSameAnnotation) {
+        this.alignedTable = alignedTable;
+        this.featureTables = featureTables;
+        this.mzTolerance = mzTolerance;
+        this.rtTolerance = rtTolerance;
+        this.mzWeight = mzWeight;
+        this.rtWeight = rtWeight;
+        this.requireSameCharge = requireSameCharge;
+        this.requireSameAnnotation = requireSameAnnotation;
+    }
+
+    @Override
+    public FeatureTable execute() throws MSDKException {
+
+        for (FeatureTable featureTable : featureTables)
+            totalRows += featureTable.getRows().size();
+
+        AlignedTableState state = states.get(alignedTable);
+        if (state == null || !state.isValid()) {
+            state = new AlignedTableState(alignedTable);
+            states.put(alignedTable, state);
+        }
+
+        // The aligned table is only consistent between two tables, so a
+        // canceled run stops there
+        try {
+            for (FeatureTable featureTable : featureTables) {
+                if (canceled)
+                    return null;
+                appendTable(featureTable, state);
+            }
+        } catch (RuntimeException e) {
+            states.remove(alignedTable);
+            FeatureTableIndex.invalidate(alignedTable);
+            throw new MSDKException(e);
+        }
+
+        result = alignedTable;
+        return result;
+    }
+
+    private void appendTable(@Nonnull FeatureTable featureTable,
+            @Nonnull AlignedTableState state) {
+
+        final List<FeatureTableRow> rows = featureTable.getRows();
+        final List<Sample> alignedSamples = alignedTable.getSamples();
+        for (Sample sample : featureTable.getSamples()) {
+            if (alignedSamples.contains(sample)) {
+                logger.warn("Skipping " + featureTable.getName()
+                        + ", its samples are already in "
+                        + alignedTable.getName());
+                processedRows += rows.size();
+                return;
+            }
+        }
+
+        final FeatureTableColumn<Double> mzColumn = featureTable
+                .getColumn(ColumnName.MZ, null);
+        final FeatureTableColumn<ChromatographyInfo> rtColumn = featureTable
+                .getColumn(ColumnName.CHROMATOGRAPHYINFO, null);
+        final FeatureTableColumn<Integer> chargeColumn = featureTable
+                .getColumn(ColumnName.CHARGE, null);
+        final FeatureTableColumn<Integer> alignedChargeColumn = alignedTable
+                .getColumn(ColumnName.CHARGE, null);
+        final FeatureTableColumn<List<IonAnnotation>> annotationColumn = featureTable
+                .getColumn(ColumnName.IONANNOTATION, null);
+        final FeatureTableColumn<List<IonAnnotation>> alignedAnnotationColumn = alignedTable
+                .getColumn(ColumnName.IONANNOTATION, null);
+
+        // Score all candidate pairs
+        final FeatureTableIndex index = FeatureTableIndex
+                .getIndex(alignedTable);
+        final List<Score> scores = new ArrayList<>();
+        final double mzValues[] = new double[rows.size()];
+        final float rtValues[] = new float[rows.size()];
+        Arrays.fill(mzValues, Double.NaN);
+        for (int i = 0; i < rows.size(); i++) {
+            final FeatureTableRow row = rows.get(i);
+            final double mz = ColumnarFeatureTable.getDouble(row, mzColumn);
+            final float rt = ColumnarFeatureTable.getFloat(row, rtColumn);
+            if (Double.isNaN(mz) || Float.isNaN(rt))
+                continue;
+            mzValues[i] = mz;
+            rtValues[i] = rt;
+
+            final Range<Double> mzRange = mzTolerance.getToleranceRange(mz);
+            final Range<Float> rtRange = rtTolerance
+                    .getToleranceRange(rtValues[i]);
+            final double mzMaxDiff = (mzRange.upperEndpoint()
+                    - mzRange.lowerEndpoint()) / 2;
+            final double rtMaxDiff = (rtRange.upperEndpoint()
+                    - rtRange.lowerEndpoint()) / 2;
+
+            for (int candidate : index.findRows(mzRange, rtRange)) {
+                final FeatureTableRow alignedRow = index.getRow(candidate);
+                if (requireSameCharge && !Objects.equals(
+                        chargeColumn == null ? null
+                                : row.getData(chargeColumn),
+                        alignedChargeColumn == null ? null
+                                : alignedRow.getData(alignedChargeColumn)))
+                    continue;
+                if (requireSameAnnotation && !isSameAnnotation(
+                        annotationColumn == null ? null
+                                : row.getData(annotationColumn),
+                        alignedAnnotationColumn == null ? null
+                                : alignedRow
+                                        .getData(alignedAnnotationColumn)))
+                    continue;
+
+                final double mzDiff = Math.abs(mz - index.getMz(candidate));
+                final double rtDiff = Math
+                        .abs(rtValues[i] - index.getRT(candidate));
+                final double score = (1 - mzDiff / mzMaxDiff) * mzWeight
+                        + (1 - rtDiff / rtMaxDiff) * rtWeight;
+                scores.add(new Score(i, candidate, score));
+            }
+        }
+
+        // Assign the best scoring pairs first
+        Collections.sort(scores,
+                (s1, s2) -> Double.compare(s2.score, s1.score));
+        final int matches[] = new int[rows.size()];
+        Arrays.fill(matches, -1);
+        final BitSet matchedRows = new BitSet();
+        for (Score score : scores) {
+            if (matches[score.row] >= 0
+                    || matchedRows.get(score.alignedRow))
+                continue;
+            matches[score.row] = score.alignedRow;
+            matchedRows.set(score.alignedRow);
+        }
+
+        // Add the sample columns of the new table
+        final List<FeatureTableColumn<?>> sampleColumns = new ArrayList<>();
+        for (FeatureTableColumn<?> column : featureTable.getColumns()) {
+            if (column.getSample() != null) {
+                alignedTable.addColumn(column);
+                sampleColumns.add(column);
+            }
+        }
+
+        // Common columns of both tables, for the new rows
+        final Map<String, FeatureTableColumn<?>> alignedCommonColumns = new HashMap<>();
+        for (FeatureTableColumn<?> column : alignedTable.getColumns()) {
+            if (column.getSample() == null)
+                alignedCommonColumns.put(column.getName(), column);
+        }
+        final FeatureTableColumn<Integer> idColumn = alignedTable
+                .getColumn(ColumnName.ID, null);
+
+        for (int i = 0; i < rows.size(); i++) {
+            final FeatureTableRow row = rows.get(i);
+            if (matches[i] >= 0) {
+                final FeatureTableRow alignedRow = index.getRow(matches[i]);
+                copyValues(row, alignedRow, sampleColumns);
+                updateAverages(alignedRow, state.addFeature(alignedRow),
+                        mzValues[i], rtValues[i]);
+                index.updateRow(matches[i]);
+            } else {
+                final FeatureTableRow newRow = ColumnarFeatureTable
+                        .getFeatureTableRow(alignedTable, state.getNextId());
+                for (FeatureTableColumn<?> column : featureTable
+                        .getColumns()) {
+                    final FeatureTableColumn<?> alignedColumn = alignedCommonColumns
+                            .get(column.getName());
+                    if (column.getSample() != null || alignedColumn == null
+                            || alignedColumn == idColumn)
+                        continue;
+                    copyValue(row, column, newRow, alignedColumn);
+                }
+                if (idColumn != null)
+                    newRow.setData(idColumn, newRow.getId());
+                copyValues(row, newRow, sampleColumns);
+                alignedTable.addRow(newRow);
+                state.addRow(newRow);
+                index.addRow(newRow);
+            }
+            processedRows++;
+        }
+
+        logger.debug("Appended " + featureTable.getName() + " to "
+                + alignedTable.getName() + ", " + matchedRows.cardinality()
+                + " of " + rows.size() + " rows matched");
+    }
+
+    /**
+     * Annotations match if either row has none, or if they share one.
+     */
+    private boolean isSameAnnotation(
+            @Nullable List<IonAnnotation> annotations,
+            @Nullable List<IonAnnotation> alignedAnnotations) {
+        if (annotations == null || annotations.isEmpty()
+                || alignedAnnotations == null || alignedAnnotations.isEmpty())
+            return true;
+        for (IonAnnotation annotation : annotations) {
+            if (alignedAnnotations.contains(annotation))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Updates the average m/z and RT of an aligned row with a new feature.
+     */
+    private void updateAverages(@Nonnull FeatureTableRow alignedRow,
+            int featureCount, double mz, float rt) {
+        final FeatureTableColumn<Double> mzColumn = alignedTable
+                .getColumn(ColumnName.MZ, null);
+        final FeatureTableColumn<ChromatographyInfo> rtColumn = alignedTable
+                .getColumn(ColumnName.CHROMATOGRAPHYINFO, null);
+        if (Double.isNaN(mz))
+            return;
+        if (mzColumn != null) {
+            final Double oldMz = alignedRow.getData(mzColumn);
+            alignedRow.setData(mzColumn, oldMz == null || featureCount == 1
+                    ? mz : oldMz + (mz - oldMz) / featureCount);
+        }
+        if (rtColumn != null) {
+            final ChromatographyInfo chromInfo = alignedRow.getData(rtColumn);
+            if (chromInfo == null || chromInfo.getRetentionTime() == null)
+                return;
+            final float oldRt = chromInfo.getRetentionTime();
+            final float newRt = featureCount == 1 ? rt
+                    : oldRt + (rt - oldRt) / featureCount;
+            alignedRow.setData(rtColumn, MSDKObjectBuilder
+                    .getChromatographyInfo1D(chromInfo.getSeparationType(),
+                            newRt));
+        }
+    }
+
+    private void copyValues(@Nonnull FeatureTableRow source,
+            @Nonnull FeatureTableRow target,
+            @Nonnull List<FeatureTableColumn<?>> columns) {
+        for (FeatureTableColumn<?> column : columns)
+            copyValue(source, column, target, column);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void copyValue(@Nonnull FeatureTableRow source,
+            @Nonnull FeatureTableColumn<T> sourceColumn,
+            @Nonnull FeatureTableRow target,
+            @Nonnull FeatureTableColumn<?> targetColumn) {
+        final T value = source.getData(sourceColumn);
+        if (value != null)
+            target.setData((FeatureTableColumn<T>) targetColumn, value);
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalRows == 0)
+            return null;
+        return (float) processedRows / totalRows;
+    }
+
+    @Override
+    @Nullable
+    public FeatureTable getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+
+    private static class Score {
+
+        private final int row, alignedRow;
+        private final double score;
+
+        private Score(int row, int alignedRow, double score) {
+            this.row = row;
+            this.alignedRow = alignedRow;
+            this.score = score;
+        }
+    }
+
+}
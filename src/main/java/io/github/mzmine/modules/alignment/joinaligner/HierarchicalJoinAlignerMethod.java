@@ -0,0 +1,358 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.alignment.joinaligner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.features.joinaligner.JoinAlignerMethod;
+import io.github.msdk.util.tolerances.MzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.project.resultcache.FeatureTableSerializer;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
+
+/**
+ * Aligns feature tables by merging them pairwise in a binary tree. Each merge
+ * is done by JoinAlignerMethod with the usual scoring, and the merges of
+ * different branches run in parallel in the MZmine fork-join pool.
+ * 
+ * The intermediate tables are written to temporary files while they wait for
+ * their sibling, and read back into a temporary file store for the next
+ * merge, so only the tables being merged are held in memory. Tables that
+ * cannot be written are kept in memory. The stores of the tables read back
+ * for the final merge hold data of the aligned table; they are returned by
+ * getIntermediateStores() and must be disposed together with it.
+ */
+public class HierarchicalJoinAlignerMethod implements MSDKMethod<FeatureTable> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull List<FeatureTable> featureTables;
+    private final @Nonnull DataPointStore dataStore;
+    private final @Nonnull MzTolerance mzTolerance;
+    private final @Nonnull RTTolerance rtTolerance;
+    private final int mzWeight, rtWeight;
+    private final boolean requireSameCharge, requireSameAnnotation;
+    private final @Nonnull String featureTableName;
+
+    /**
+     * Keys of the raw data files of the input tables, used when intermediate
+     * tables are written to disk.
+     */
+    private final Map<Object, String> rawDataFileKeys = new IdentityHashMap<>();
+    private final List<RawDataFile> rawDataFiles = new ArrayList<>();
+
+    private final Set<DataPointStore> openStores = ConcurrentHashMap
+            .newKeySet();
+    private final Set<File> spillFiles = ConcurrentHashMap.newKeySet();
+    private final Set<JoinAlignerMethod> runningMethods = ConcurrentHashMap
+            .newKeySet();
+    private final AtomicInteger finishedMerges = new AtomicInteger();
+
+    private FeatureTable result;
+    private List<DataPointStore> intermediateStores = Collections.emptyList();
+    private volatile boolean canceled = false;
+
+    /**
+     * @param dataStore
+     *            data store of the aligned table
+     */
+    public HierarchicalJoinAlignerMethod(
+            @Nonnull List<FeatureTable> featureTables,
+            @Nonnull DataPointStore dataStore,
+            @Nonnull MzTolerance mzTolerance,
+            @Nonnull RTTolerance rtTolerance, int mzWeight, int rtWeight,
+            boolean requireSameCharge, boolean requireSameAnnotation,
+            @Nonnull String featureTableName) {
+        this.featureTables = featureTables;
+        this.dataStore = dataStore;
+        this.mzTolerance = mzTolerance;
+        this.rtTolerance = rtTolerance;
+        this.mzWeight = mzWeight;
+        this.rtWeight = rtWeight;
+        this.requireSameCharge = requireSameCharge;
+        this.requireSameAnnotation = requireSameAnnotation;
+        this.featureTableName = featureTableName;
+    }
+
+    @Override
+    public FeatureTable execute() throws MSDKException {
+
+        if (featureTables.isEmpty())
+            throw new MSDKException("No feature tables to align");
+
+        for (FeatureTable featureTable : featureTables) {
+            for (Sample sample : featureTable.getSamples()) {
+                final RawDataFile rawDataFile = sample.getRawDataFile();
+                if (rawDataFile != null
+                        && !rawDataFileKeys.containsKey(rawDataFile)) {
+                    rawDataFileKeys.put(rawDataFile,
+                            String.valueOf(rawDataFiles.size()));
+                    rawDataFiles.add(rawDataFile);
+                }
+            }
+        }
+
+        final ForkJoinPool pool = MZmineCore.getTaskExecutor()
+                .getForkJoinPool();
+        final Node root;
+        try {
+            root = pool.invoke(new MergeTask(0, featureTables.size()));
+        } catch (CancellationException e) {
+            discardIntermediateTables();
+            return null;
+        } catch (RuntimeException e) {
+            discardIntermediateTables();
+            throw new MSDKException(e);
+        }
+        if (canceled) {
+            discardIntermediateTables();
+            return null;
+        }
+
+        logger.debug("Aligned " + featureTables.size() + " feature tables in "
+                + finishedMerges.get() + " merges on "
+                + pool.getParallelism() + " threads");
+        intermediateStores = new ArrayList<>(root.stores);
+        result = root.featureTable;
+        return result;
+    }
+
+    /**
+     * Returns the temporary stores that hold data of the aligned table.
+     */
+    public @Nonnull List<DataPointStore> getIntermediateStores() {
+        return intermediateStores;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (featureTables.size() < 2)
+            return null;
+        return (float) finishedMerges.get() / (featureTables.size() - 1);
+    }
+
+    @Override
+    @Nullable
+    public FeatureTable getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        for (JoinAlignerMethod method : runningMethods)
+            method.cancel();
+    }
+
+    private void discardIntermediateTables() {
+        for (DataPointStore store : openStores)
+            store.dispose();
+        openStores.clear();
+        for (File file : spillFiles)
+            TmpStorageManager.deleteFile(file);
+        spillFiles.clear();
+    }
+
+    private @Nonnull FeatureTable merge(@Nonnull FeatureTable left,
+            @Nonnull FeatureTable right, @Nonnull DataPointStore store,
+            @Nonnull String name) {
+        final JoinAlignerMethod method = new JoinAlignerMethod(
+                Arrays.asList(left, right), store, mzTolerance, rtTolerance,
+                mzWeight, rtWeight, requireSameCharge, requireSameAnnotation,
+                name);
+        runningMethods.add(method);
+        try {
+            if (canceled)
+                throw new CancellationException();
+            final FeatureTable merged = method.execute();
+            if (merged == null || canceled)
+                throw new CancellationException();
+            finishedMerges.incrementAndGet();
+            return merged;
+        } catch (MSDKException e) {
+            throw new MSDKRuntimeException(e);
+        } finally {
+            runningMethods.remove(method);
+        }
+    }
+
+    /**
+     * Writes an intermediate table to a temporary file in one of the spill
+     * directories. The stores of its data are disposed, as the data are now in
+     * the file. If the table cannot be written, e.g. because the temporary
+     * storage quota is exceeded, it is kept in memory.
+     */
+    private @Nonnull Node spill(@Nonnull FeatureTable featureTable,
+            @Nonnull List<DataPointStore> stores) {
+        File file = null;
+        try {
+            file = DataPointStoreUtil.createTmpFile(".featuretable");
+            spillFiles.add(file);
+            FeatureTableSerializer.write(file, featureTable,
+                    rawDataFileKeys::get);
+            TmpStorageManager.allocateFile(file);
+        } catch (IOException | MSDKRuntimeException e) {
+            logger.debug("Keeping intermediate table " + featureTable.getName()
+                    + " in memory: " + e.getMessage());
+            if (file != null) {
+                spillFiles.remove(file);
+                TmpStorageManager.deleteFile(file);
+            }
+            return new Node(featureTable, stores);
+        }
+        for (DataPointStore store : stores) {
+            openStores.remove(store);
+            store.dispose();
+        }
+        return new Node(file);
+    }
+
+    /**
+     * Reads an intermediate table back from its temporary file.
+     */
+    private @Nonnull FeatureTable load(@Nonnull Node node,
+            @Nonnull List<DataPointStore> stores) {
+        if (node.file == null) {
+            stores.addAll(node.stores);
+            return node.featureTable;
+        }
+        final DataPointStore store = DataPointStoreUtil
+                .createTmpFileDataStore();
+        openStores.add(store);
+        stores.add(store);
+        try {
+            return FeatureTableSerializer.read(node.file, store,
+                    key -> rawDataFiles.get(Integer.parseInt(key)));
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        } finally {
+            spillFiles.remove(node.file);
+            TmpStorageManager.deleteFile(node.file);
+        }
+    }
+
+    /**
+     * Aligns the input tables from index from (inclusive) to index to
+     * (exclusive).
+     */
+    private class MergeTask extends RecursiveTask<Node> {
+
+        private final int from, to;
+
+        private MergeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Node compute() {
+
+            if (to - from == 1)
+                return new Node(featureTables.get(from),
+                        Collections.emptyList());
+
+            final int middle = (from + to) >>> 1;
+            final MergeTask rightTask = new MergeTask(middle, to);
+            rightTask.fork();
+            final Node leftNode;
+            try {
+                leftNode = new MergeTask(from, middle).compute();
+            } catch (RuntimeException e) {
+                rightTask.cancel(false);
+                throw e;
+            }
+            final Node rightNode = rightTask.join();
+
+            final List<DataPointStore> stores = new ArrayList<>();
+            final FeatureTable left = load(leftNode, stores);
+            final FeatureTable right = load(rightNode, stores);
+
+            // The final table goes to the given store, the intermediate ones
+            // only until they are written to disk
+            final boolean isRoot = (from == 0)
+                    && (to == featureTables.size());
+            if (isRoot) {
+                return new Node(merge(left, right, dataStore, featureTableName),
+                        stores);
+            }
+            final DataPointStore store = DataPointStoreFactory
+                    .getMemoryDataStore();
+            stores.add(store);
+            final FeatureTable merged = merge(left, right, store,
+                    featureTableName + " " + (from + 1) + "-" + to);
+            return spill(merged, stores);
+        }
+    }
+
+    /**
+     * An aligned table, either in memory with the stores of its data, or in
+     * a temporary file.
+     */
+    private static class Node {
+
+        private final @Nullable FeatureTable featureTable;
+        private final @Nonnull List<DataPointStore> stores;
+        private final @Nullable File file;
+
+        private Node(@Nonnull FeatureTable featureTable,
+                @Nonnull List<DataPointStore> stores) {
+            this.featureTable = featureTable;
+            this.stores = stores;
+            this.file = null;
+        }
+
+        private Node(@Nonnull File file) {
+            this.featureTable = null;
+            this.stores = Collections.emptyList();
+            this.file = file;
+        }
+    }
+
+}
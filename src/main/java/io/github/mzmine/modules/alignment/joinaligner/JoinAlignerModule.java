@@ -19,24 +19,31 @@
 
 package io.github.mzmine.modules.alignment.joinaligner;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.github.msdk.MSDKMethod;
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.features.joinaligner.JoinAlignerMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.msdk.util.tolerances.RTTolerance;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.project.resultcache.ModuleResultCache;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 import javafx.concurrent.Task;
 
 /**
@@ -81,6 +88,8 @@ public class JoinAlignerModule implements MZmineProcessingModule {
         Boolean requireSameCharge = parameters
                 .getParameter(JoinAlignerParameters.requireSameCharge)
                 .getValue();
+        final Boolean hierarchical = parameters
+                .getParameter(JoinAlignerParameters.hierarchical).getValue();
         final String featureTableName = parameters
                 .getParameter(JoinAlignerParameters.featureTableName)
                 .getValue();
@@ -103,6 +112,61 @@ public class JoinAlignerModule implements MZmineProcessingModule {
                     "Match aligner module started with no feature table selected");
             return;
         }
+
+        // Append the tables to an existing aligned table
+        final OptionalParameter<StringParameter> appendTo = parameters
+                .getParameter(JoinAlignerParameters.appendTo);
+        if (appendTo.getValue() != null && appendTo.getValue()) {
+            final String alignedTableName = appendTo.getEmbeddedParameter()
+                    .getValue();
+            FeatureTable alignedTable = null;
+            for (FeatureTable featureTable : project.getFeatureTables()) {
+                if (featureTable.getName().equals(alignedTableName))
+                    alignedTable = featureTable;
+            }
+            if (alignedTable == null) {
+                logger.warn("Aligned feature table " + alignedTableName
+                        + " not found");
+                return;
+            }
+            final List<FeatureTable> newTables = new ArrayList<>(
+                    featureTables.getMatchingFeatureTables());
+            newTables.remove(alignedTable);
+            if (newTables.isEmpty()) {
+                logger.warn(
+                        "Match aligner module started with no feature table to append");
+                return;
+            }
+
+            // The table is changed in place, so results computed from it
+            // must not be taken from the result cache
+            ModuleResultCache.invalidate(alignedTable);
+
+            final FeatureTable targetTable = alignedTable;
+            final AppendAlignerMethod method = new AppendAlignerMethod(
+                    targetTable, newTables, mzTolerance, rtTolerance,
+                    mzWeight, rtWeight, requireSameCharge,
+                    requireSameAnnotation);
+            final MSDKTask newTask = new MSDKTask("Appending feature tables",
+                    targetTable.getName(), method);
+            newTask.setOnSucceeded(e -> {
+                if (method.getResult() == null)
+                    return;
+
+                // The aligned table refers to the data of the new tables
+                for (FeatureTable featureTable : newTables)
+                    TmpStorageManager.addOwner(featureTable, targetTable);
+
+                // If selected, remove old feature table
+                if (removeOldTable != null && removeOldTable) {
+                    for (FeatureTable featureTable : newTables)
+                        project.removeFeatureTable(featureTable);
+                }
+            });
+            tasks.add(newTask);
+            return;
+        }
+
         if (featureTables.getMatchingFeatureTables().size() == 1) {
             logger.warn(
                     "Match aligner module started with less than two feature table");
@@ -110,13 +174,23 @@ public class JoinAlignerModule implements MZmineProcessingModule {
         }
 
         // Create the data structures
-        DataPointStore dataStore = DataPointStoreFactory.getMemoryDataStore();
-
-        // New row filter method
-        JoinAlignerMethod method = new JoinAlignerMethod(
-                featureTables.getMatchingFeatureTables(), dataStore,
-                mzTolerance, rtTolerance, mzWeight, rtWeight, requireSameCharge,
-                requireSameAnnotation, featureTableName);
+        DataPointStore dataStore = DataPointStoreUtil.createResultDataStore();
+
+        // New alignment method
+        final MSDKMethod<FeatureTable> method;
+        if (hierarchical != null && hierarchical) {
+            method = new HierarchicalJoinAlignerMethod(
+                    featureTables.getMatchingFeatureTables(), dataStore,
+                    mzTolerance, rtTolerance, mzWeight, rtWeight,
+                    requireSameCharge, requireSameAnnotation,
+                    featureTableName);
+        } else {
+            method = new JoinAlignerMethod(
+                    featureTables.getMatchingFeatureTables(), dataStore,
+                    mzTolerance, rtTolerance, mzWeight, rtWeight,
+                    requireSameCharge, requireSameAnnotation,
+                    featureTableName);
+        }
 
         MSDKTask newTask = new MSDKTask("Aligning feature tables",
                 featureTableName, method);
@@ -126,6 +200,18 @@ public class JoinAlignerModule implements MZmineProcessingModule {
             FeatureTable newFeatureTable = method.getResult();
             project.addFeatureTable(newFeatureTable);
 
+            // The new table refers to the data of the aligned tables
+            for (FeatureTable featureTable : featureTables
+                    .getMatchingFeatureTables()) {
+                TmpStorageManager.addOwner(featureTable, newFeatureTable);
+            }
+            if (method instanceof HierarchicalJoinAlignerMethod) {
+                final HierarchicalJoinAlignerMethod hierarchicalMethod = (HierarchicalJoinAlignerMethod) method;
+                for (DataPointStore store : hierarchicalMethod
+                        .getIntermediateStores())
+                    TmpStorageManager.setOwner(store, newFeatureTable);
+            }
+
             // If selected, remove old feature table
             if (removeOldTable != null && removeOldTable) {
                 for (FeatureTable featureTable : featureTables
@@ -25,6 +25,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.ParameterValidator;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
@@ -71,6 +72,18 @@ public class JoinAlignerParameters extends ParameterSet {
             "If checked, only features with the same charge will be aligned.",
             "Algorithm Parameters", false);
 
+    public static final BooleanParameter hierarchical = new BooleanParameter(
+            "Hierarchical alignment",
+            "If checked, the feature tables are merged pairwise in parallel and the intermediate tables are kept in temporary files.\n"
+                    + "Recommended for aligning many feature tables.",
+            "Algorithm Parameters", false);
+
+    public static final OptionalParameter<StringParameter> appendTo = new OptionalParameter<StringParameter>(
+            new StringParameter("Append to table",
+                    "If checked, the selected feature tables are added to the existing aligned table with this name, which is updated in place.\n"
+                            + "Only the rows of the selected tables are matched, so new samples can be added without aligning all tables again.",
+                    "Output"));
+
     public static final StringParameter featureTableName = new StringParameter(
             "Feature table name", "Name of the aligned feature table.",
             "Output", "Aligned Feature Table");
@@ -85,8 +98,8 @@ public class JoinAlignerParameters extends ParameterSet {
      */
     public JoinAlignerParameters() {
         super(featureTables, mzTolerance, rtTolerance, mzWeight, rtWeight,
-                requireSameAnnotation, requireSameCharge, featureTableName,
-                removeOldTable);
+                requireSameAnnotation, requireSameCharge, hierarchical,
+                appendTo, featureTableName, removeOldTable);
     }
 
 }
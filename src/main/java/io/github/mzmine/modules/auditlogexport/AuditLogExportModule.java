@@ -19,16 +19,23 @@
 
 package io.github.mzmine.modules.auditlogexport;
 
-//import java.io.File;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.github.mzmine.gui.MZmineGUI;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineProcessingModule;
@@ -37,10 +44,13 @@ import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.project.auditlog.AuditLogTaskRecord;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
- * Feature table import module
+ * Audit log export module. Exports the processing steps of the project with
+ * the resource usage of their tasks as CSV or JSON.
  */
 public class AuditLogExportModule implements MZmineProcessingModule {
 
@@ -66,8 +76,15 @@ public class AuditLogExportModule implements MZmineProcessingModule {
             @Nonnull ParameterSet parameters,
             @Nonnull Collection<Task<?>> tasks) {
 
-        //final File outputFile = parameters
-        //        .getParameter(AuditLogExportParameters.outputFile).getValue();
+        final File outputFile = parameters
+                .getParameter(AuditLogExportParameters.outputFile).getValue();
+
+        if (outputFile == null) {
+            MZmineGUI.displayMessage(
+                    "The path and name of the output file cannot be empty.");
+            logger.warn("The path and name of the output file cannot be empty.");
+            return;
+        }
 
         // List of modules which won't be shown in the audit log
         final List<MZmineModule> removeModules = new ArrayList<>();
@@ -76,25 +93,165 @@ public class AuditLogExportModule implements MZmineProcessingModule {
         removeModules.add(MZmineCore.getModuleInstance(CsvExportModule.class));
 
         // Loop through all entries in the audit log
-        List<AuditLogEntry> auditLog = MZmineCore.getCurrentProject()
-                .getAuditLog();
-        for (AuditLogEntry logEntry : auditLog) {
+        final List<AuditLogEntry> logEntries = new ArrayList<>();
+        for (AuditLogEntry logEntry : project.getAuditLog()) {
 
             // Don't show modules from the remove list
-            if (!removeModules.contains(logEntry.getModule())) {
-                //String moduleName = logEntry.getModule().getName();
-
-                /*
-                 * TODO
-                 */
-                for (Parameter<?> pramaeter : logEntry.getParameterSet()) {
-                    logger.debug(
-                            pramaeter.getName() + ": " + pramaeter.getValue());
+            if (!removeModules.contains(logEntry.getModule()))
+                logEntries.add(logEntry);
+        }
+
+        final boolean json = outputFile.getName().toLowerCase()
+                .endsWith(".json");
+        try (Writer writer = Files.newBufferedWriter(outputFile.toPath(),
+                StandardCharsets.UTF_8)) {
+            if (json)
+                writeJson(logEntries, writer);
+            else
+                writeCsv(logEntries, writer);
+        } catch (IOException e) {
+            final String msg = "Could not export the audit log to "
+                    + outputFile + ": " + e.getMessage();
+            logger.error(msg, e);
+            MZmineGUI.displayMessage(msg);
+            return;
+        }
+
+        logger.info("Exported " + logEntries.size()
+                + " audit log entries to " + outputFile);
+
+    }
+
+    /**
+     * Writes one line per task, with the resource usage of the task.
+     */
+    private void writeCsv(@Nonnull List<AuditLogEntry> logEntries,
+            @Nonnull Writer writer) throws IOException {
+
+        writer.write(String.join(",", "Step", "Module", "Task", "Message",
+                "Status", "Error", "Wall time (ms)", "CPU time (ms)",
+                "Allocated bytes", "Stored bytes", "Items"));
+        writer.write("\n");
+
+        int step = 1;
+        for (AuditLogEntry logEntry : logEntries) {
+            for (AuditLogTaskRecord taskRecord : logEntry.getTaskRecords()) {
+                final TaskMetrics metrics = taskRecord.getTaskMetrics();
+                final List<String> values = new ArrayList<>();
+                values.add(String.valueOf(step));
+                values.add(csvValue(logEntry.getModule().getName()));
+                values.add(csvValue(taskRecord.getTaskTitle()));
+                values.add(csvValue(taskRecord.getTaskMessage()));
+                values.add(csvValue(taskRecord.getTaskStatus()));
+                values.add(csvValue(taskRecord.getErrorMessage()));
+                if (metrics != null) {
+                    values.add(String.valueOf(metrics.getWallTime() / 1000000));
+                    values.add(String.valueOf(metrics.getCpuTime() / 1000000));
+                    values.add(String.valueOf(metrics.getAllocatedBytes()));
+                    values.add(String.valueOf(metrics.getStoredBytes()));
+                    values.add(csvValue(metrics.getItemCount()));
+                } else {
+                    values.addAll(Collections.nCopies(5, ""));
                 }
+                writer.write(String.join(",", values));
+                writer.write("\n");
+            }
+            step++;
+        }
+    }
+
+    /**
+     * Writes the log entries with their parameters and the resource usage of
+     * their tasks.
+     */
+    private void writeJson(@Nonnull List<AuditLogEntry> logEntries,
+            @Nonnull Writer writer) throws IOException {
+
+        writer.write("[\n");
+        for (int i = 0; i < logEntries.size(); i++) {
+            final AuditLogEntry logEntry = logEntries.get(i);
+            writer.write("  {\n    \"module\": "
+                    + jsonValue(logEntry.getModule().getName()) + ",\n");
+
+            writer.write("    \"parameters\": {");
+            boolean first = true;
+            for (Parameter<?> parameter : logEntry.getParameterSet()) {
+                writer.write((first ? "" : ",") + "\n      "
+                        + jsonValue(parameter.getName()) + ": "
+                        + jsonValue(parameter.getValue()));
+                first = false;
             }
+            writer.write("\n    },\n");
 
+            writer.write("    \"tasks\": [");
+            first = true;
+            for (AuditLogTaskRecord taskRecord : logEntry.getTaskRecords()) {
+                final TaskMetrics metrics = taskRecord.getTaskMetrics();
+                writer.write((first ? "" : ",") + "\n      {");
+                writer.write("\"title\": " + jsonValue(taskRecord.getTaskTitle()));
+                writer.write(", \"message\": "
+                        + jsonValue(taskRecord.getTaskMessage()));
+                writer.write(", \"status\": "
+                        + jsonValue(taskRecord.getTaskStatus()));
+                writer.write(", \"error\": "
+                        + jsonValue(taskRecord.getErrorMessage()));
+                if (metrics != null) {
+                    writer.write(", \"wallTimeNs\": " + metrics.getWallTime());
+                    writer.write(", \"cpuTimeNs\": " + metrics.getCpuTime());
+                    writer.write(", \"allocatedBytes\": "
+                            + metrics.getAllocatedBytes());
+                    writer.write(", \"storedBytes\": "
+                            + metrics.getStoredBytes());
+                    writer.write(", \"items\": " + metrics.getItemCount());
+                }
+                writer.write("}");
+                first = false;
+            }
+            writer.write("\n    ]\n  }");
+            writer.write(i < logEntries.size() - 1 ? ",\n" : "\n");
         }
+        writer.write("]\n");
+    }
+
+    private static String csvValue(@Nullable Object value) {
+        if (value == null)
+            return "";
+        final String str = value.toString();
+        if (!str.contains(",") && !str.contains("\"")
+                && !str.contains("\n"))
+            return str;
+        return "\"" + str.replace("\"", "\"\"") + "\"";
+    }
 
+    private static String jsonValue(@Nullable Object value) {
+        if (value == null)
+            return "null";
+        final StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toString().toCharArray()) {
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20)
+                    sb.append(String.format("\\u%04x", (int) c));
+                else
+                    sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
     }
 
     @Override
@@ -30,11 +30,12 @@ public class AuditLogExportParameters extends ParameterSet {
 
     public static final FileNameParameter outputFile = new FileNameParameter(
             "Output file",
-            "Path and name of the exported pdf file. If the file already exists, it will be overwritten.",
+            "Path and name of the exported file. Files ending with .json are exported as JSON, all other files as CSV. If the file already exists, it will be overwritten.",
             "Algorithm Parameters",
             ParameterValidator.createNonEmptyValidator(),
             FileNameParameter.Type.SAVE,
-            Arrays.asList(new ExtensionFilter("PDF file", "*.pdf")));
+            Arrays.asList(new ExtensionFilter("CSV file", "*.csv"),
+                    new ExtensionFilter("JSON file", "*.json")));
 
     public AuditLogExportParameters() {
         super(outputFile);
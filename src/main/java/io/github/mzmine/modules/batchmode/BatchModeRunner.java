@@ -0,0 +1,226 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.google.common.base.Strings;
+
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.taskcontrol.TaskGraph;
+
+/**
+ * Runs a pipeline of processing modules without the GUI. The pipeline is
+ * defined in an XML file of the following form:
+ * 
+ * <pre>
+ * &lt;batch&gt;
+ *   &lt;batchstep id="import" method="io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportModule"&gt;
+ *     &lt;parameter name="File names"&gt;...&lt;/parameter&gt;
+ *   &lt;/batchstep&gt;
+ *   &lt;batchstep input="import" inputmode="each" method="..."&gt;
+ *     ...
+ *   &lt;/batchstep&gt;
+ *   ...
+ * &lt;/batch&gt;
+ * </pre>
+ * 
+ * Each step starts from the module parameters of the current configuration,
+ * overridden by the parameters given in the step. By default, a step is run
+ * after the previous step has finished and its parameters are loaded only
+ * then, so that raw data files and feature tables created by earlier steps
+ * can be referenced by name. A step with an input attribute instead takes
+ * the files created by the step with the given id: with inputmode="each" it
+ * is run for every file as soon as that file exists, so each file flows
+ * through the pipeline on its own, with inputmode="all" it is run once with
+ * all files after the input step has finished.
+ */
+public class BatchModeRunner {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_ERROR = 1;
+
+    private static final String batchStepElement = "batchstep";
+    private static final String methodAttribute = "method";
+    private static final String idAttribute = "id";
+    private static final String inputAttribute = "input";
+    private static final String inputModeAttribute = "inputmode";
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(BatchModeRunner.class);
+
+    /**
+     * Runs all steps of the given batch file and returns the exit code.
+     */
+    public static int runBatch(@Nonnull File batchFile) {
+
+        logger.info("Running batch from file " + batchFile);
+
+        final List<Element> stepElements = new ArrayList<>();
+        try {
+            DocumentBuilderFactory dbFactory = DocumentBuilderFactory
+                    .newInstance();
+            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+            Document batchDocument = dBuilder.parse(batchFile);
+            NodeList nodes = batchDocument.getDocumentElement()
+                    .getChildNodes();
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Node node = nodes.item(i);
+                if (batchStepElement.equals(node.getNodeName()))
+                    stepElements.add((Element) node);
+            }
+        } catch (Exception e) {
+            logger.error("Could not read batch file " + batchFile, e);
+            return EXIT_ERROR;
+        }
+
+        try {
+            final TaskGraph graph = new TaskGraph(
+                    MZmineCore.getCurrentProject(), MZmineCore::submitTasks);
+            final Map<String, TaskGraph.Node> stepNodes = new HashMap<>();
+            TaskGraph.Node previousNode = null;
+
+            for (int i = 0; i < stepElements.size(); i++) {
+                final String stepName = "Batch step " + (i + 1) + "/"
+                        + stepElements.size();
+                final Element stepElement = stepElements.get(i);
+                final MZmineProcessingModule module = loadModule(stepElement);
+                if (module == null) {
+                    logger.error(stepName + " could not be loaded");
+                    return EXIT_ERROR;
+                }
+
+                TaskGraph.Node upstream = previousNode;
+                TaskGraph.InputMode inputMode = TaskGraph.InputMode.AFTER;
+                final String input = stepElement.getAttribute(inputAttribute);
+                if (!Strings.isNullOrEmpty(input)) {
+                    upstream = stepNodes.get(input);
+                    if (upstream == null) {
+                        logger.error(stepName + " refers to unknown step "
+                                + input);
+                        return EXIT_ERROR;
+                    }
+                    inputMode = "all".equalsIgnoreCase(
+                            stepElement.getAttribute(inputModeAttribute))
+                                    ? TaskGraph.InputMode.ALL
+                                    : TaskGraph.InputMode.EACH;
+                }
+
+                final TaskGraph.Node node = graph.addNode(module,
+                        () -> loadParameters(stepName, module, stepElement),
+                        upstream, inputMode);
+                final String id = stepElement.getAttribute(idAttribute);
+                if (!Strings.isNullOrEmpty(id))
+                    stepNodes.put(id, node);
+                previousNode = node;
+            }
+
+            graph.start();
+            if (!graph.waitForCompletion()) {
+                logger.error("Batch finished with errors");
+                return EXIT_ERROR;
+            }
+        } catch (InterruptedException e) {
+            logger.error("Batch was interrupted", e);
+            return EXIT_ERROR;
+        }
+
+        logger.info("Batch finished successfully");
+        return EXIT_OK;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MZmineProcessingModule loadModule(
+            @Nonnull Element stepElement) {
+
+        final String moduleClassName = stepElement
+                .getAttribute(methodAttribute);
+        final Class<? extends MZmineModule> moduleClass;
+        try {
+            moduleClass = (Class<? extends MZmineModule>) Class
+                    .forName(moduleClassName);
+        } catch (ClassNotFoundException e) {
+            logger.error("Cannot find module class " + moduleClassName);
+            return null;
+        }
+
+        final MZmineModule module = MZmineCore.getModuleInstance(moduleClass);
+        if (!(module instanceof MZmineProcessingModule)) {
+            logger.error("Module " + moduleClassName
+                    + " is not a processing module or was not loaded");
+            return null;
+        }
+        return (MZmineProcessingModule) module;
+    }
+
+    /**
+     * Loads the parameters of a step, or returns null if they are invalid.
+     */
+    private static ParameterSet loadParameters(@Nonnull String stepName,
+            @Nonnull MZmineProcessingModule module,
+            @Nonnull Element stepElement) {
+
+        final ParameterSet parameters = MZmineCore.getConfiguration()
+                .getModuleParameters(module.getClass()).clone();
+        parameters.loadValuesFromXML(stepElement);
+
+        // Check the parameter values, as there is no setup dialog to do it
+        final List<String> messages = new ArrayList<>();
+        for (Parameter<?> parameter : parameters) {
+            @SuppressWarnings("unchecked")
+            ParameterValidator<Object> validator = (ParameterValidator<Object>) parameter
+                    .getValidator();
+            if ((validator != null)
+                    && (!validator.checkValue(parameter.getValue(), messages)))
+                messages.add("Invalid value of parameter "
+                        + parameter.getName());
+        }
+        if (!messages.isEmpty()) {
+            logger.error(stepName + " (" + module.getName()
+                    + "): please check the parameter settings: " + messages);
+            return null;
+        }
+
+        logger.info(stepName + ": " + module.getName() + " with parameters "
+                + parameters);
+        return parameters;
+    }
+
+}
@@ -27,7 +27,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
@@ -35,6 +34,7 @@ import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
 import javafx.concurrent.Task;
 
 /**
@@ -77,6 +77,9 @@ public class ChromatogramBuilderModule implements MZmineProcessingModule {
         final Double minHeight = parameters
                 .getParameter(ChromatogramBuilderParameters.minHeight)
                 .getValue();
+        final Boolean parallel = parameters
+                .getParameter(ChromatogramBuilderParameters.parallel)
+                .getValue();
         final String nameSuffix = parameters
                 .getParameter(ChromatogramBuilderParameters.nameSuffix)
                 .getValue();
@@ -91,8 +94,8 @@ public class ChromatogramBuilderModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createMemoryDataStore();
 
             // New chromatogram builder task which runs the following two
             // methods:
@@ -101,7 +104,8 @@ public class ChromatogramBuilderModule implements MZmineProcessingModule {
             ChromatogramBuilderTask newTask = new ChromatogramBuilderTask(
                     "Chromatogram builder", rawDataFile.getName(), rawDataFile,
                     dataStore, mzTolerance, noiseLevel,
-                    minDuration, minHeight, nameSuffix);
+                    minDuration, minHeight, Boolean.TRUE.equals(parallel),
+                    nameSuffix);
 
             // Add the feature table to the project
             newTask.setOnSucceeded(e -> {
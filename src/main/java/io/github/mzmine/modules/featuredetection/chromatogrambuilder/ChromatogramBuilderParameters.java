@@ -23,6 +23,7 @@ import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
@@ -60,6 +61,12 @@ public class ChromatogramBuilderParameters extends ParameterSet {
             MZmineCore.getConfiguration().getIntensityFormat(),
             ParameterValidator.createNonEmptyValidator(), 5000d);
 
+    public static final BooleanParameter parallel = new BooleanParameter(
+            "Parallel processing",
+            "Split the m/z axis of each raw data file into shards and build the chromatograms of the shards in parallel.\n"
+                    + "The results are the same as with sequential processing.",
+            "Algorithm Parameters", false);
+
     public static final StringParameter nameSuffix = new StringParameter(
             "Name suffix",
             "Suffix to be added to the raw data file(s) when creating the feature table(s)",
@@ -70,7 +77,7 @@ public class ChromatogramBuilderParameters extends ParameterSet {
      */
     public ChromatogramBuilderParameters() {
         super(rawDataFiles, mzTolerance, noiseLevel, minDuration, minHeight,
-                nameSuffix);
+                parallel, nameSuffix);
     }
 
 }
@@ -38,8 +38,13 @@ import io.github.msdk.featdet.chromatogrambuilder.ChromatogramBuilderMethod;
 import io.github.msdk.featdet.chromatogramtofeaturetable.ChromatogramToFeatureTableMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.MemoryEstimator;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
 import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 
@@ -53,6 +58,7 @@ public class ChromatogramBuilderTask extends Task<Object>
     private final @Nullable String nameSuffix;
     private String title, message;
     private FeatureTable featureTable;
+    private final TaskMetrics metrics = new TaskMetrics();
 
     private MSDKMethod<List<Chromatogram>> chromatogramBuilderMethod;
     private MSDKMethod<FeatureTable> chromatogramToFeatureTableMethod;
@@ -61,7 +67,7 @@ public class ChromatogramBuilderTask extends Task<Object>
             @Nonnull RawDataFile rawDataFile, @Nonnull DataPointStore dataStore,
             @Nonnull MaximumMzTolerance mzTolerance, @Nonnull Double noiseLevel,
             @Nonnull Double minDuration, @Nonnull Double minHeight,
-            @Nullable String nameSuffix) {
+            boolean parallel, @Nullable String nameSuffix) {
         this.rawDataFile = rawDataFile;
         this.dataStore = dataStore;
         this.nameSuffix = nameSuffix;
@@ -69,8 +75,16 @@ public class ChromatogramBuilderTask extends Task<Object>
         this.message = message;
 
         // Chromatogram builder method
-        chromatogramBuilderMethod = new ChromatogramBuilderMethod(dataStore,
-                rawDataFile, noiseLevel, minDuration, minHeight, mzTolerance);
+        if (parallel) {
+            chromatogramBuilderMethod = new ParallelChromatogramBuilderMethod(
+                    dataStore, rawDataFile, noiseLevel, minDuration, minHeight,
+                    mzTolerance,
+                    MZmineCore.getTaskExecutor().getNumberOfThreads());
+        } else {
+            chromatogramBuilderMethod = new ChromatogramBuilderMethod(
+                    dataStore, rawDataFile, noiseLevel, minDuration,
+                    minHeight, mzTolerance);
+        }
 
         refreshStatus();
 
@@ -87,7 +101,34 @@ public class ChromatogramBuilderTask extends Task<Object>
     @Override
     public void refreshStatus() {
 
+        // Without the FX toolkit, the task properties cannot be updated
+        if (MZmineCore.isHeadLessMode())
+            return;
+
         // Progress
+        updateProgress(getFinishedPercentage().doubleValue(), 1.0);
+
+        // Title and message
+        updateTitle(title);
+        updateMessage(message);
+    }
+
+    @Override
+    public @Nonnull String getTaskTitle() {
+        return title;
+    }
+
+    @Override
+    public @Nullable String getTaskMessage() {
+        return message;
+    }
+
+    @Override
+    public @Nonnull Float getFinishedPercentage() {
+        // The methods of the last step are dropped once the result is ready
+        if (featureTable instanceof ColumnarFeatureTable)
+            return 1f;
+
         Float finishedPercent = 0f;
 
         final Float method1Percent = chromatogramBuilderMethod
@@ -95,57 +136,77 @@ public class ChromatogramBuilderTask extends Task<Object>
         if (method1Percent != null)
             finishedPercent = method1Percent * 0.95f;
 
-        if (chromatogramToFeatureTableMethod != null) {
-            final Float method2Percent = chromatogramToFeatureTableMethod
-                    .getFinishedPercentage();
+        final MSDKMethod<?> tableMethod = chromatogramToFeatureTableMethod;
+        if (tableMethod != null) {
+            final Float method2Percent = tableMethod.getFinishedPercentage();
             if (method2Percent != null)
                 finishedPercent = finishedPercent + method2Percent * 0.05f;
         }
 
-        updateProgress(finishedPercent.doubleValue(), 1.0);
-
-        // Title and message
-        updateTitle(title);
-        updateMessage(message);
+        return finishedPercent;
     }
 
     @Override
     protected Object call() throws Exception {
         try {
-            List<Chromatogram> detectedChromatograms = (List<Chromatogram>) chromatogramBuilderMethod
-                    .execute();
-
-            // Create a new feature table
-            featureTable = MSDKObjectBuilder.getFeatureTable(
-                    rawDataFile.getName() + nameSuffix, dataStore);
-
-            // Create a new sample
-            Sample sample = MSDKObjectBuilder
-                    .getSample(rawDataFile.getName());
-
-            // Add the chromatograms to the feature table
-            this.chromatogramToFeatureTableMethod = new ChromatogramToFeatureTableMethod(
-                    detectedChromatograms, featureTable, sample);
-
-            // Run method
-            try {
-                chromatogramToFeatureTableMethod.execute();
-            } catch (Throwable e) {
-                final String msg = "Error executing task " + title + ": "
-                        + e.getMessage();
-                logger.error(msg, e);
-                MZmineGUI.displayMessage(msg);
-            }
+            runHeadless();
+            metrics.setState(
+                    isCancelled() ? State.CANCELLED : State.SUCCEEDED);
         } catch (Throwable e) {
             final String msg = "Error executing task " + title + ": "
                     + e.getMessage();
             logger.error(msg, e);
             MZmineGUI.displayMessage(msg);
+            metrics.setState(State.FAILED);
+            metrics.setErrorMessage(e.getMessage());
+            throw e;
         }
 
         return featureTable;
     }
 
+    @Override
+    public Object runHeadless() throws Exception {
+        List<Chromatogram> detectedChromatograms = (List<Chromatogram>) chromatogramBuilderMethod
+                .execute();
+        if (detectedChromatograms == null)
+            return null; // Cancelled
+
+        // Create a new feature table
+        featureTable = MSDKObjectBuilder.getFeatureTable(
+                rawDataFile.getName() + nameSuffix, dataStore);
+
+        // Create a new sample
+        Sample sample = MSDKObjectBuilder.getSample(rawDataFile.getName());
+
+        // Add the chromatograms to the feature table
+        this.chromatogramToFeatureTableMethod = new ChromatogramToFeatureTableMethod(
+                detectedChromatograms, featureTable, sample);
+
+        // Run method
+        chromatogramToFeatureTableMethod.execute();
+
+        // Keep the feature values in primitive columns. The method refers to
+        // the MSDK table, so it is dropped to let the table be collected right
+        // away instead of when the task is removed.
+        featureTable = ColumnarFeatureTable.copyOf(featureTable, dataStore);
+        chromatogramToFeatureTableMethod = null;
+
+        metrics.setItemCount(TaskMetrics.countItems(featureTable));
+
+        return featureTable;
+    }
+
+    @Override
+    public @Nonnull TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getEstimatedMemory() {
+        return MemoryEstimator.estimateProcessing(rawDataFile);
+    }
+
     public FeatureTable getResult() {
         return featureTable;
     }
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.featuredetection.chromatogrambuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.files.FileType;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.featdet.chromatogrambuilder.ChromatogramBuilderMethod;
+import io.github.msdk.util.MsScanUtil;
+import io.github.msdk.util.tolerances.MaximumMzTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.datastore.SynchronizedDataPointStore;
+
+/**
+ * Builds the chromatograms of one raw data file on several threads. The m/z
+ * axis is split into shards, and the chromatograms of each shard are built by
+ * a separate ChromatogramBuilderMethod.
+ * 
+ * The shard boundaries are only placed in m/z gaps without any data point
+ * above the noise level that are wider than twice the m/z tolerance window. No
+ * chromatogram can connect data points across such a gap, so every
+ * chromatogram is built completely within one shard and the results only
+ * need to be concatenated in m/z order. The output is therefore the same as
+ * the output of the sequential method. If no such gap exists, the file is
+ * processed as a single shard.
+ * 
+ * The scans of the shards are kept in scratch memory stores that are disposed
+ * once the chromatograms are built. The chromatograms of all shards are
+ * written to the given data store.
+ */
+public class ParallelChromatogramBuilderMethod
+        implements MSDKMethod<List<Chromatogram>> {
+
+    /**
+     * Upper limit on the number of bins of the m/z occupancy histogram.
+     */
+    private static final int MAX_BINS = 10_000_000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull DataPointStore dataStore;
+    private final @Nonnull RawDataFile rawDataFile;
+    private final @Nonnull Double noiseLevel, minDuration, minHeight;
+    private final @Nonnull MaximumMzTolerance mzTolerance;
+    private final int numOfShards;
+
+    private final List<DataPointStore> shardStores = new ArrayList<>();
+    private final List<ChromatogramBuilderMethod> shardMethods = new ArrayList<>();
+    private List<Chromatogram> result;
+    private int processedScans = 0, totalScans = 0;
+    private boolean canceled = false;
+
+    public ParallelChromatogramBuilderMethod(
+            @Nonnull DataPointStore dataStore,
+            @Nonnull RawDataFile rawDataFile, @Nonnull Double noiseLevel,
+            @Nonnull Double minDuration, @Nonnull Double minHeight,
+            @Nonnull MaximumMzTolerance mzTolerance, int numOfShards) {
+        this.dataStore = dataStore;
+        this.rawDataFile = rawDataFile;
+        this.noiseLevel = noiseLevel;
+        this.minDuration = minDuration;
+        this.minHeight = minHeight;
+        this.mzTolerance = mzTolerance;
+        this.numOfShards = Math.max(1, numOfShards);
+    }
+
+    @Override
+    public List<Chromatogram> execute() throws MSDKException {
+
+        final List<MsScan> scans = rawDataFile.getScans();
+        totalScans = scans.size() * 2;
+
+        final double shardBoundaries[] = findShardBoundaries(scans);
+        if (canceled)
+            return null;
+
+        // Nothing to split, run the sequential method on the original file
+        if (shardBoundaries.length == 0) {
+            ChromatogramBuilderMethod method = new ChromatogramBuilderMethod(
+                    dataStore, rawDataFile, noiseLevel, minDuration, minHeight,
+                    mzTolerance);
+            synchronized (shardMethods) {
+                shardMethods.add(method);
+            }
+            result = method.execute();
+            return result;
+        }
+
+        logger.debug("Building chromatograms of " + rawDataFile.getName()
+                + " in " + (shardBoundaries.length + 1) + " m/z shards");
+
+        final List<RawDataFile> shardFiles = createShardFiles(scans,
+                shardBoundaries);
+        if (canceled) {
+            disposeShardStores();
+            return null;
+        }
+
+        // The shards write their chromatograms to the same store at once
+        final DataPointStore outputStore = new SynchronizedDataPointStore(
+                dataStore);
+        final ForkJoinPool pool = MZmineCore.getTaskExecutor()
+                .getForkJoinPool();
+        final List<ForkJoinTask<List<Chromatogram>>> shardTasks = new ArrayList<>();
+        final List<Chromatogram> chromatograms = new ArrayList<>();
+        try {
+            for (int s = 0; s < shardFiles.size(); s++) {
+                ChromatogramBuilderMethod method = new ChromatogramBuilderMethod(
+                        outputStore, shardFiles.get(s), noiseLevel,
+                        minDuration, minHeight, mzTolerance);
+                synchronized (shardMethods) {
+                    shardMethods.add(method);
+                }
+                shardTasks.add(pool.submit(method::execute));
+            }
+
+            // Concatenate the shards in m/z order
+            for (ForkJoinTask<List<Chromatogram>> shardTask : shardTasks) {
+                List<Chromatogram> shardChromatograms = shardTask.join();
+                if (shardChromatograms == null)
+                    return null;
+                chromatograms.addAll(shardChromatograms);
+            }
+        } finally {
+            // Wait for all shards before their scans are dropped
+            for (ForkJoinTask<List<Chromatogram>> shardTask : shardTasks)
+                shardTask.quietlyJoin();
+            disposeShardStores();
+        }
+        for (int i = 0; i < chromatograms.size(); i++)
+            chromatograms.get(i).setChromatogramNumber(i + 1);
+
+        result = chromatograms;
+        return result;
+    }
+
+    /**
+     * Finds the m/z values where the data can be split. The boundaries are
+     * placed in the middle of gaps without data points above the noise level
+     * that are wider than twice the m/z tolerance, close to the positions
+     * that split the data points evenly.
+     */
+    private @Nonnull double[] findShardBoundaries(
+            @Nonnull List<MsScan> scans) {
+
+        if (numOfShards == 1)
+            return new double[0];
+
+        double minMz = Double.MAX_VALUE, maxMz = -Double.MAX_VALUE;
+        for (MsScan scan : scans) {
+            Range<Double> mzRange = scan.getMzRange();
+            if (mzRange == null)
+                continue;
+            minMz = Math.min(minMz, mzRange.lowerEndpoint());
+            maxMz = Math.max(maxMz, mzRange.upperEndpoint());
+        }
+        if (minMz >= maxMz)
+            return new double[0];
+
+        // The bins are narrower than the smallest tolerance window
+        final Range<Double> minTolerance = mzTolerance.getToleranceRange(minMz);
+        final double binWidth = Math.max(
+                (minTolerance.upperEndpoint() - minTolerance.lowerEndpoint())
+                        / 2.0,
+                (maxMz - minMz) / MAX_BINS);
+        final int numOfBins = (int) ((maxMz - minMz) / binWidth) + 1;
+
+        // Count the data points above the noise level in each bin
+        final int binCounts[] = new int[numOfBins];
+        long totalCount = 0;
+        for (MsScan scan : scans) {
+            if (canceled)
+                return new double[0];
+            final double mzValues[] = scan.getMzValues();
+            final float intensityValues[] = scan.getIntensityValues();
+            final int numOfDataPoints = scan.getNumberOfDataPoints();
+            for (int i = 0; i < numOfDataPoints; i++) {
+                if (intensityValues[i] < noiseLevel)
+                    continue;
+                int bin = (int) ((mzValues[i] - minMz) / binWidth);
+                binCounts[Math.max(0, Math.min(numOfBins - 1, bin))]++;
+                totalCount++;
+            }
+            processedScans++;
+        }
+
+        // Walk the bins and cut at the first wide enough gap after each
+        // shard has collected its share of the data points
+        final long targetCount = totalCount / numOfShards;
+        final List<Double> boundaries = new ArrayList<>();
+        long shardCount = 0;
+        int gapStart = -1;
+        for (int bin = 0; bin < numOfBins; bin++) {
+            if (binCounts[bin] == 0) {
+                if (gapStart < 0)
+                    gapStart = bin;
+                continue;
+            }
+            if (gapStart >= 0 && shardCount > 0 && shardCount >= targetCount
+                    && boundaries.size() < numOfShards - 1) {
+                final double gapLow = minMz + gapStart * binWidth;
+                final double gapHigh = minMz + bin * binWidth;
+                final double middle = (gapLow + gapHigh) / 2.0;
+                final Range<Double> tolerance = mzTolerance
+                        .getToleranceRange(gapHigh);
+                if (gapHigh - gapLow > 2.0 * (tolerance.upperEndpoint()
+                        - tolerance.lowerEndpoint())) {
+                    boundaries.add(middle);
+                    shardCount = 0;
+                }
+            }
+            gapStart = -1;
+            shardCount += binCounts[bin];
+        }
+
+        final double result[] = new double[boundaries.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = boundaries.get(i);
+        return result;
+    }
+
+    /**
+     * Creates one in-memory raw data file per shard. Each contains all scans
+     * of the original file, restricted to the m/z range of the shard.
+     */
+    private @Nonnull List<RawDataFile> createShardFiles(
+            @Nonnull List<MsScan> scans, @Nonnull double shardBoundaries[]) {
+
+        final List<RawDataFile> shardFiles = new ArrayList<>();
+        for (int s = 0; s <= shardBoundaries.length; s++) {
+            // Scans of the shard, kept until the chromatograms are built
+            DataPointStore shardStore = DataPointStoreFactory
+                    .getMemoryDataStore();
+            shardStores.add(shardStore);
+            shardFiles.add(MSDKObjectBuilder.getRawDataFile(
+                    rawDataFile.getName(), null, FileType.UNKNOWN,
+                    shardStore));
+        }
+
+        for (MsScan scan : scans) {
+            if (canceled)
+                break;
+            final double mzValues[] = scan.getMzValues();
+            final float intensityValues[] = scan.getIntensityValues();
+            final int numOfDataPoints = scan.getNumberOfDataPoints();
+
+            int start = 0;
+            for (int s = 0; s <= shardBoundaries.length; s++) {
+                int end = (s < shardBoundaries.length)
+                        ? lowerBound(mzValues, numOfDataPoints,
+                                shardBoundaries[s])
+                        : numOfDataPoints;
+                MsScan shardScan = MsScanUtil.clone(shardStores.get(s), scan,
+                        false);
+                shardScan.setDataPoints(
+                        Arrays.copyOfRange(mzValues, start, end),
+                        Arrays.copyOfRange(intensityValues, start, end),
+                        end - start);
+                shardFiles.get(s).addScan(shardScan);
+                start = end;
+            }
+            processedScans++;
+        }
+
+        return shardFiles;
+    }
+
+    private void disposeShardStores() {
+        for (DataPointStore shardStore : shardStores)
+            shardStore.dispose();
+        shardStores.clear();
+    }
+
+    /**
+     * Returns the index of the first m/z value that is not smaller than the
+     * given value. The m/z values of a scan are sorted.
+     */
+    private static int lowerBound(double mzValues[], int size, double mz) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mzValues[mid] < mz)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalScans == 0)
+            return 0f;
+        // Splitting the data is counted as the first half of the work
+        float splitPercentage = Math.min(1f,
+                (float) processedScans / totalScans);
+        float buildPercentage = 0f;
+        synchronized (shardMethods) {
+            if (shardMethods.isEmpty())
+                return splitPercentage * 0.5f;
+            for (ChromatogramBuilderMethod method : shardMethods) {
+                Float methodPercentage = method.getFinishedPercentage();
+                if (methodPercentage != null)
+                    buildPercentage += methodPercentage;
+            }
+            buildPercentage /= shardMethods.size();
+        }
+        return 0.5f + buildPercentage * 0.5f;
+    }
+
+    @Override
+    @Nullable
+    public List<Chromatogram> getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        synchronized (shardMethods) {
+            for (ChromatogramBuilderMethod method : shardMethods)
+                method.cancel();
+        }
+    }
+
+}
@@ -27,7 +27,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
@@ -37,6 +36,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
 import javafx.concurrent.Task;
 
 /**
@@ -100,8 +100,8 @@ public class MsMsDetectionModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createMemoryDataStore();
 
             // New MS/MS detection task which runs the following three methods:
             // 1. MsMsDetectionMethod
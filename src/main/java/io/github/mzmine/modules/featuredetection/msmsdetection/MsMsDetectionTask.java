@@ -42,9 +42,14 @@ import io.github.msdk.featdet.targeteddetection.TargetedDetectionMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.msdk.util.tolerances.RTTolerance;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.MemoryEstimator;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
 import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 
@@ -61,6 +66,7 @@ public class MsMsDetectionTask extends Task<Object> implements MZmineTask {
     private final @Nullable String nameSuffix;
     private String title, message;
     private FeatureTable featureTable;
+    private final TaskMetrics metrics = new TaskMetrics();
 
     private MSDKMethod<List<IonAnnotation>> msMsDetectionMethod;
     private MSDKMethod<List<Chromatogram>> targetedDetectionMethod;
@@ -94,7 +100,9 @@ public class MsMsDetectionTask extends Task<Object> implements MZmineTask {
             public void handle(WorkerStateEvent workerEvent) {
                 msMsDetectionMethod.cancel();
                 targetedDetectionMethod.cancel();
-                chromatogramToFeatureTableMethod.cancel();
+                final MSDKMethod<?> method = chromatogramToFeatureTableMethod;
+                if (method != null)
+                    method.cancel();
             }
         };
 
@@ -104,7 +112,34 @@ public class MsMsDetectionTask extends Task<Object> implements MZmineTask {
     @Override
     public void refreshStatus() {
 
+        // Without the FX toolkit, the task properties cannot be updated
+        if (MZmineCore.isHeadLessMode())
+            return;
+
         // Progress
+        updateProgress(getFinishedPercentage().doubleValue(), 1.0);
+
+        // Title and message
+        updateTitle(title);
+        updateMessage(message);
+    }
+
+    @Override
+    public @Nonnull String getTaskTitle() {
+        return title;
+    }
+
+    @Override
+    public @Nullable String getTaskMessage() {
+        return message;
+    }
+
+    @Override
+    public @Nonnull Float getFinishedPercentage() {
+        // The methods of the last step are dropped once the result is ready
+        if (featureTable instanceof ColumnarFeatureTable)
+            return 1f;
+
         Float finishedPercent = 0f;
 
         final Float method1Percent = msMsDetectionMethod
@@ -119,73 +154,85 @@ public class MsMsDetectionTask extends Task<Object> implements MZmineTask {
                 finishedPercent = finishedPercent + method2Percent * 0.8f;
         }
 
-        if (chromatogramToFeatureTableMethod != null) {
-            final Float method3Percent = chromatogramToFeatureTableMethod
-                    .getFinishedPercentage();
+        final MSDKMethod<?> tableMethod = chromatogramToFeatureTableMethod;
+        if (tableMethod != null) {
+            final Float method3Percent = tableMethod.getFinishedPercentage();
             if (method3Percent != null)
                 finishedPercent = finishedPercent + method3Percent * 0.1f;
         }
 
-        updateProgress(finishedPercent.doubleValue(), 1.0);
-
-        // Title and message
-        updateTitle(title);
-        updateMessage(message);
+        return finishedPercent;
     }
 
     @Override
     protected Object call() throws Exception {
         try {
-            List<IonAnnotation> ionAnnotations = msMsDetectionMethod.execute();
-
-            // Run the targeted feature detection module
-            this.targetedDetectionMethod = new TargetedDetectionMethod(
-                    ionAnnotations, rawDataFile, dataStore, mzTolerance,
-                    rtTolerance, intensityTolerance, minHeight);
-
-            // Run method
-            try {
-                List<Chromatogram> detectedChromatograms = targetedDetectionMethod
-                        .execute();
-
-                // Create a new feature table
-                featureTable = MSDKObjectBuilder.getFeatureTable(
-                        rawDataFile.getName() + nameSuffix, dataStore);
-
-                // Create a new sample
-                Sample sample = MSDKObjectBuilder
-                        .getSample(rawDataFile.getName());
-
-                // Add the chromatograms to the feature table
-                this.chromatogramToFeatureTableMethod = new ChromatogramToFeatureTableMethod(
-                        detectedChromatograms, featureTable, sample);
-
-                // Run method
-                try {
-                    chromatogramToFeatureTableMethod.execute();
-                } catch (Throwable e) {
-                    final String msg = "Error executing task " + title + ": "
-                            + e.getMessage();
-                    logger.error(msg, e);
-                    MZmineGUI.displayMessage(msg);
-                }
-
-            } catch (Throwable e) {
-                final String msg = "Error executing task " + title + ": "
-                        + e.getMessage();
-                logger.error(msg, e);
-                MZmineGUI.displayMessage(msg);
-            }
+            runHeadless();
+            metrics.setState(
+                    isCancelled() ? State.CANCELLED : State.SUCCEEDED);
         } catch (Throwable e) {
             final String msg = "Error executing task " + title + ": "
                     + e.getMessage();
             logger.error(msg, e);
             MZmineGUI.displayMessage(msg);
+            metrics.setState(State.FAILED);
+            metrics.setErrorMessage(e.getMessage());
+            throw e;
         }
 
         return featureTable;
     }
 
+    @Override
+    public Object runHeadless() throws Exception {
+        List<IonAnnotation> ionAnnotations = msMsDetectionMethod.execute();
+        if (ionAnnotations == null)
+            return null; // Cancelled
+
+        // Run the targeted feature detection module
+        this.targetedDetectionMethod = new TargetedDetectionMethod(
+                ionAnnotations, rawDataFile, dataStore, mzTolerance,
+                rtTolerance, intensityTolerance, minHeight);
+        List<Chromatogram> detectedChromatograms = targetedDetectionMethod
+                .execute();
+        if (detectedChromatograms == null)
+            return null; // Cancelled
+
+        // Create a new feature table
+        featureTable = MSDKObjectBuilder.getFeatureTable(
+                rawDataFile.getName() + nameSuffix, dataStore);
+
+        // Create a new sample
+        Sample sample = MSDKObjectBuilder.getSample(rawDataFile.getName());
+
+        // Add the chromatograms to the feature table
+        this.chromatogramToFeatureTableMethod = new ChromatogramToFeatureTableMethod(
+                detectedChromatograms, featureTable, sample);
+
+        // Run method
+        chromatogramToFeatureTableMethod.execute();
+
+        // Keep the feature values in primitive columns. The method refers to
+        // the MSDK table, so it is dropped to let the table be collected right
+        // away instead of when the task is removed.
+        featureTable = ColumnarFeatureTable.copyOf(featureTable, dataStore);
+        chromatogramToFeatureTableMethod = null;
+
+        metrics.setItemCount(TaskMetrics.countItems(featureTable));
+
+        return featureTable;
+    }
+
+    @Override
+    public @Nonnull TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getEstimatedMemory() {
+        return MemoryEstimator.estimateProcessing(rawDataFile);
+    }
+
     public FeatureTable getResult() {
         return featureTable;
     }
@@ -27,13 +27,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
 import javafx.concurrent.Task;
 
 /**
@@ -77,8 +77,8 @@ public class SrmDetectionModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createMemoryDataStore();
 
             // New SRM builder task which runs the following two
             // methods:
@@ -37,8 +37,13 @@ import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.featdet.chromatogramtofeaturetable.ChromatogramToFeatureTableMethod;
 import io.github.msdk.featdet.srmdetection.SrmDetectionMethod;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.MemoryEstimator;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
 import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 
@@ -51,6 +56,7 @@ public class SrmDetectionTask extends Task<Object> implements MZmineTask {
     private final @Nullable String nameSuffix;
     private String title, message;
     private FeatureTable featureTable;
+    private final TaskMetrics metrics = new TaskMetrics();
 
     private MSDKMethod<List<Chromatogram>> srmDetectionMethod;
     private MSDKMethod<FeatureTable> chromatogramToFeatureTableMethod;
@@ -82,64 +88,111 @@ public class SrmDetectionTask extends Task<Object> implements MZmineTask {
     @Override
     public void refreshStatus() {
 
+        // Without the FX toolkit, the task properties cannot be updated
+        if (MZmineCore.isHeadLessMode())
+            return;
+
         // Progress
+        updateProgress(getFinishedPercentage().doubleValue(), 1.0);
+
+        // Title and message
+        updateTitle(title);
+        updateMessage(message);
+    }
+
+    @Override
+    public @Nonnull String getTaskTitle() {
+        return title;
+    }
+
+    @Override
+    public @Nullable String getTaskMessage() {
+        return message;
+    }
+
+    @Override
+    public @Nonnull Float getFinishedPercentage() {
+        // The methods of the last step are dropped once the result is ready
+        if (featureTable instanceof ColumnarFeatureTable)
+            return 1f;
+
         Float finishedPercent = 0f;
 
         final Float method1Percent = srmDetectionMethod.getFinishedPercentage();
         if (method1Percent != null)
             finishedPercent = method1Percent * 0.95f;
 
-        if (chromatogramToFeatureTableMethod != null) {
-            final Float method2Percent = chromatogramToFeatureTableMethod
-                    .getFinishedPercentage();
+        final MSDKMethod<?> tableMethod = chromatogramToFeatureTableMethod;
+        if (tableMethod != null) {
+            final Float method2Percent = tableMethod.getFinishedPercentage();
             if (method2Percent != null)
                 finishedPercent = finishedPercent + method2Percent * 0.05f;
         }
 
-        updateProgress(finishedPercent.doubleValue(), 1.0);
-
-        // Title and message
-        updateTitle(title);
-        updateMessage(message);
+        return finishedPercent;
     }
 
     @Override
     protected Object call() throws Exception {
         try {
-            List<Chromatogram> detectedChromatograms = (List<Chromatogram>) srmDetectionMethod
-                    .execute();
-
-            // Create a new feature table
-            featureTable = MSDKObjectBuilder.getFeatureTable(
-                    rawDataFile.getName() + nameSuffix, dataStore);
-
-            // Create a new sample
-            Sample sample = MSDKObjectBuilder
-                    .getSample(rawDataFile.getName());
-
-            // Add the chromatograms to the feature table
-            this.chromatogramToFeatureTableMethod = new ChromatogramToFeatureTableMethod(
-                    detectedChromatograms, featureTable, sample);
-
-            // Run method
-            try {
-                chromatogramToFeatureTableMethod.execute();
-            } catch (Throwable e) {
-                final String msg = "Error executing task " + title + ": "
-                        + e.getMessage();
-                logger.error(msg, e);
-                MZmineGUI.displayMessage(msg);
-            }
+            runHeadless();
+            metrics.setState(
+                    isCancelled() ? State.CANCELLED : State.SUCCEEDED);
         } catch (Throwable e) {
             final String msg = "Error executing task " + title + ": "
                     + e.getMessage();
             logger.error(msg, e);
             MZmineGUI.displayMessage(msg);
+            metrics.setState(State.FAILED);
+            metrics.setErrorMessage(e.getMessage());
+            throw e;
         }
 
         return featureTable;
     }
 
+    @Override
+    public Object runHeadless() throws Exception {
+        List<Chromatogram> detectedChromatograms = (List<Chromatogram>) srmDetectionMethod
+                .execute();
+        if (detectedChromatograms == null)
+            return null; // Cancelled
+
+        // Create a new feature table
+        featureTable = MSDKObjectBuilder.getFeatureTable(
+                rawDataFile.getName() + nameSuffix, dataStore);
+
+        // Create a new sample
+        Sample sample = MSDKObjectBuilder.getSample(rawDataFile.getName());
+
+        // Add the chromatograms to the feature table
+        this.chromatogramToFeatureTableMethod = new ChromatogramToFeatureTableMethod(
+                detectedChromatograms, featureTable, sample);
+
+        // Run method
+        chromatogramToFeatureTableMethod.execute();
+
+        // Keep the feature values in primitive columns. The method refers to
+        // the MSDK table, so it is dropped to let the table be collected right
+        // away instead of when the task is removed.
+        featureTable = ColumnarFeatureTable.copyOf(featureTable, dataStore);
+        chromatogramToFeatureTableMethod = null;
+
+        metrics.setItemCount(TaskMetrics.countItems(featureTable));
+
+        return featureTable;
+    }
+
+    @Override
+    public @Nonnull TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getEstimatedMemory() {
+        return MemoryEstimator.estimateProcessing(rawDataFile);
+    }
+
     public FeatureTable getResult() {
         return featureTable;
     }
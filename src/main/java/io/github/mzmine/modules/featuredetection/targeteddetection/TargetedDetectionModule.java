@@ -33,7 +33,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
 import io.github.msdk.datamodel.ionannotations.IonAnnotation;
@@ -47,6 +46,7 @@ import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
 import javafx.concurrent.Task;
 
 /**
@@ -171,8 +171,8 @@ public class TargetedDetectionModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createMemoryDataStore();
 
             // New targeted detection task which runs the following two methods:
             // 1. TargetedDetectionMethod
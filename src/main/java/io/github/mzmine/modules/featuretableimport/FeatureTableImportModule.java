@@ -33,7 +33,6 @@ import com.google.common.base.Strings;
 
 import io.github.msdk.MSDKMethod;
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.io.csv.CsvFileImportMethod;
 import io.github.msdk.io.mztab.MzTabFileImportMethod;
@@ -43,6 +42,8 @@ import io.github.mzmine.modules.rawdata.rawdataimport.RawDataImportParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 import javafx.concurrent.Task;
 
 /**
@@ -94,8 +95,8 @@ public class FeatureTableImportModule implements MZmineProcessingModule {
                 continue;
             }
 
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getTmpFileDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createTmpFileDataStore();
 
             // Find file extension and initiate corresponding import method
             String fileExtension = FilenameUtils
@@ -140,6 +141,7 @@ public class FeatureTableImportModule implements MZmineProcessingModule {
                     featureTable.setName(name);
                 }
 
+                TmpStorageManager.setOwner(dataStore, featureTable);
                 project.addFeatureTable(featureTable);
             });
 
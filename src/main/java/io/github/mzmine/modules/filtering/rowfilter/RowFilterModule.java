@@ -29,7 +29,6 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Range;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.features.rowfilter.RowFilterMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
@@ -39,6 +38,8 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 import javafx.concurrent.Task;
 
 /**
@@ -160,8 +161,8 @@ public class RowFilterModule implements MZmineProcessingModule {
                 .getMatchingFeatureTables()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createResultDataStore();
 
             // Handle < 1 values for minCount
             if (minCount == null)
@@ -187,6 +188,7 @@ public class RowFilterModule implements MZmineProcessingModule {
             newTask.setOnSucceeded(e -> {
                 FeatureTable newFeatureTable = method.getResult();
                 project.addFeatureTable(newFeatureTable);
+                TmpStorageManager.addOwner(featureTable, newFeatureTable);
 
                 // If selected, remove old feature table
                 if (removeOldTable != null && removeOldTable) {
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.gapfilling.peakfinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.msdk.util.tolerances.MzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.gapfilling.peakfinder.Gap.DataPoint;
+import io.github.mzmine.util.ScanIndex;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+
+/**
+ * Fills the gaps of a feature table with one pass over the scans of each raw
+ * data file. The gaps are first grouped by sample and sorted by RT. The MS1
+ * scans of the raw data file of each sample are then read once in RT order,
+ * and each scan is offered to the gaps that are still searching for their
+ * peak, so every scan is read only once regardless of the number of gaps.
+ * The raw data files are processed in parallel in the MZmine fork-join pool.
+ * 
+ * The filled features are written to a copy of the table on the calling
+ * thread, and the average m/z and RT of the filled rows are recalculated.
+ */
+public class BatchedGapFillingMethod implements MSDKMethod<FeatureTable> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull FeatureTable featureTable;
+    private final @Nonnull DataPointStore dataStore;
+    private final @Nonnull MzTolerance mzTolerance;
+    private final @Nonnull RTTolerance rtTolerance;
+    private final double intensityTolerance;
+    private final @Nonnull String nameSuffix;
+
+    private FeatureTable result;
+    private final AtomicInteger processedSamples = new AtomicInteger();
+    private int totalSamples = 0;
+    private volatile boolean canceled = false;
+
+    public BatchedGapFillingMethod(@Nonnull FeatureTable featureTable,
+            @Nonnull DataPointStore dataStore,
+            @Nonnull MzTolerance mzTolerance,
+            @Nonnull RTTolerance rtTolerance, double intensityTolerance,
+            @Nonnull String nameSuffix) {
+        this.featureTable = featureTable;
+        this.dataStore = dataStore;
+        this.mzTolerance = mzTolerance;
+        this.rtTolerance = rtTolerance;
+        this.intensityTolerance = intensityTolerance;
+        this.nameSuffix = nameSuffix;
+    }
+
+    @Override
+    public FeatureTable execute() throws MSDKException {
+
+        final FeatureTable newFeatureTable = copyFeatureTable();
+        final List<Sample> samples = newFeatureTable.getSamples();
+
+        // Look up the columns once, the table has several columns for each
+        // of possibly hundreds of samples
+        final Map<Sample, List<FeatureTableColumn<?>>> sampleColumns = new IdentityHashMap<>();
+        for (FeatureTableColumn<?> column : newFeatureTable.getColumns()) {
+            if (column.getSample() != null)
+                sampleColumns.computeIfAbsent(column.getSample(),
+                        sample -> new ArrayList<>()).add(column);
+        }
+        final List<FeatureTableColumn<?>> mzColumns = new ArrayList<>();
+        final List<FeatureTableColumn<?>> rtColumns = new ArrayList<>();
+        for (Sample sample : samples) {
+            final FeatureTableColumn<?> mzColumn = newFeatureTable
+                    .getColumn(ColumnName.MZ, sample);
+            if (mzColumn != null)
+                mzColumns.add(mzColumn);
+            final FeatureTableColumn<?> rtColumn = newFeatureTable
+                    .getColumn(ColumnName.RT, sample);
+            if (rtColumn != null)
+                rtColumns.add(rtColumn);
+        }
+        final FeatureTableColumn<Double> rowMzColumn = newFeatureTable
+                .getColumn(ColumnName.MZ, null);
+        final FeatureTableColumn<ChromatographyInfo> rowRtColumn = newFeatureTable
+                .getColumn(ColumnName.CHROMATOGRAPHYINFO, null);
+
+        // Group the gaps by sample
+        final List<SampleGaps> sampleGaps = new ArrayList<>();
+        for (Sample sample : samples) {
+            final List<Gap> gaps = findGaps(newFeatureTable, sample);
+            if (gaps.isEmpty())
+                continue;
+            gaps.sort(Comparator
+                    .comparing(gap -> gap.getRtRange().lowerEndpoint()));
+            sampleGaps.add(new SampleGaps(sample, gaps));
+        }
+        totalSamples = sampleGaps.size();
+
+        final ForkJoinPool pool = MZmineCore.getTaskExecutor()
+                .getForkJoinPool();
+        final List<ForkJoinTask<List<Fill>>> tasks = new ArrayList<>();
+        int filledGaps = 0;
+        try {
+            for (SampleGaps gaps : sampleGaps)
+                tasks.add(pool.submit(() -> fillGaps(gaps)));
+
+            // Write the features in sample order on this thread, the rows
+            // are not thread safe
+            final Set<FeatureTableRow> filledRows = Collections
+                    .newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < tasks.size(); i++) {
+                final List<Fill> fills = tasks.get(i).join();
+                if (canceled)
+                    return null;
+                final List<FeatureTableColumn<?>> columns = sampleColumns
+                        .getOrDefault(sampleGaps.get(i).sample,
+                                Collections.emptyList());
+                for (Fill fill : fills) {
+                    writeFeature(columns, rowRtColumn, fill);
+                    filledRows.add(fill.row);
+                }
+                filledGaps += fills.size();
+            }
+            for (FeatureTableRow row : filledRows)
+                recalculateAverages(row, mzColumns, rtColumns, rowMzColumn,
+                        rowRtColumn);
+        } finally {
+            for (ForkJoinTask<List<Fill>> task : tasks)
+                task.cancel(false);
+        }
+
+        logger.debug("Filled " + filledGaps + " gaps in "
+                + sampleGaps.size() + " samples of " + featureTable.getName()
+                + " on " + pool.getParallelism() + " threads");
+        result = newFeatureTable;
+        return result;
+    }
+
+    /**
+     * Copies the rows of the input table to a new columnar table. The columns
+     * are shared with the input table.
+     */
+    private @Nonnull FeatureTable copyFeatureTable() {
+        final FeatureTable newFeatureTable = ColumnarFeatureTable
+                .copyOf(featureTable, dataStore);
+        newFeatureTable.setName(featureTable.getName() + nameSuffix);
+        return newFeatureTable;
+    }
+
+    private @Nonnull List<Gap> findGaps(@Nonnull FeatureTable table,
+            @Nonnull Sample sample) {
+        final List<Gap> gaps = new ArrayList<>();
+        if (sample.getRawDataFile() == null) {
+            logger.warn("Sample " + sample.getName()
+                    + " has no raw data file, its gaps cannot be filled");
+            return gaps;
+        }
+
+        FeatureTableColumn<?> featureColumn = table
+                .getColumn(ColumnName.CHROMATOGRAM, sample);
+        if (featureColumn == null)
+            featureColumn = table.getColumn(ColumnName.MZ, sample);
+        final FeatureTableColumn<Double> mzColumn = table
+                .getColumn(ColumnName.MZ, null);
+        final FeatureTableColumn<ChromatographyInfo> rtColumn = table
+                .getColumn(ColumnName.CHROMATOGRAPHYINFO, null);
+        if (featureColumn == null || mzColumn == null || rtColumn == null)
+            return gaps;
+
+        for (FeatureTableRow row : table.getRows()) {
+            if (row.getData(featureColumn) != null)
+                continue;
+            final double mz = ColumnarFeatureTable.getDouble(row, mzColumn);
+            final float rt = ColumnarFeatureTable.getFloat(row, rtColumn);
+            if (Double.isNaN(mz) || Float.isNaN(rt))
+                continue;
+            gaps.add(new Gap(row, mzTolerance.getToleranceRange(mz),
+                    rtTolerance.getToleranceRange(rt), intensityTolerance));
+        }
+        return gaps;
+    }
+
+    /**
+     * Offers the MS1 scans of the raw data file of a sample to its gaps, in
+     * one pass in RT order. Runs in the fork-join pool.
+     */
+    private @Nonnull List<Fill> fillGaps(@Nonnull SampleGaps sampleGaps) {
+
+        final List<Fill> fills = new ArrayList<>();
+        final List<Gap> gaps = sampleGaps.gaps;
+        final RawDataFile rawDataFile = sampleGaps.sample.getRawDataFile();
+
+        // The gaps are sorted by the start of their RT range. Peaks may
+        // continue after the RT range, so the scans are read until all gaps
+        // are finished.
+        final float minRt = gaps.get(0).getRtRange().lowerEndpoint();
+        final List<MsScan> scans = rawDataFile.getScans();
+        final int scanPositions[] = ScanIndex.getIndex(rawDataFile)
+                .findScans(1, null, null, Range.atLeast((double) minRt));
+
+        final List<Gap> activeGaps = new ArrayList<>();
+        int nextGap = 0;
+        for (int position : scanPositions) {
+            if (canceled)
+                return fills;
+
+            final MsScan scan = scans.get(position);
+            final ChromatographyInfo chromInfo = scan.getChromatographyInfo();
+            if (chromInfo == null || chromInfo.getRetentionTime() == null)
+                continue;
+            final float rt = chromInfo.getRetentionTime();
+
+            // Start the gaps whose RT range has been reached
+            while (nextGap < gaps.size() && gaps.get(nextGap).getRtRange()
+                    .lowerEndpoint() <= rt)
+                activeGaps.add(gaps.get(nextGap++));
+            if (activeGaps.isEmpty()) {
+                if (nextGap == gaps.size())
+                    break;
+                continue;
+            }
+
+            // The data points of a scan are sorted by m/z
+            final double mzValues[] = scan.getMzValues();
+            final float intensityValues[] = scan.getIntensityValues();
+            final int size = scan.getNumberOfDataPoints();
+            for (Gap gap : activeGaps) {
+                final Range<Double> mzRange = gap.getMzRange();
+                final double mzMax = mzRange.upperEndpoint();
+                int best = -1;
+                int i = findFirst(mzValues, size, mzRange.lowerEndpoint());
+                for (; i < size && mzValues[i] <= mzMax; i++) {
+                    if (best < 0 || intensityValues[i] > intensityValues[best])
+                        best = i;
+                }
+                if (best >= 0)
+                    gap.offer(rt, mzValues[best], intensityValues[best]);
+                else
+                    gap.offer(rt, (mzRange.lowerEndpoint()
+                            + mzRange.upperEndpoint()) / 2, 0f);
+            }
+
+            // Finish the gaps whose RT range has passed and whose last peak
+            // has ended
+            for (Iterator<Gap> i = activeGaps.iterator(); i.hasNext();) {
+                final Gap gap = i.next();
+                if (gap.isFinished(rt)) {
+                    finishGap(gap, fills);
+                    i.remove();
+                }
+            }
+        }
+
+        for (Gap gap : activeGaps)
+            finishGap(gap, fills);
+        processedSamples.incrementAndGet();
+        return fills;
+    }
+
+    private void finishGap(@Nonnull Gap gap, @Nonnull List<Fill> fills) {
+        final List<DataPoint> peak = gap.finish();
+        if (peak != null)
+            fills.add(new Fill(gap.getRow(), peak));
+    }
+
+    private static int findFirst(@Nonnull double mzValues[], int size,
+            double mz) {
+        int low = 0, high = size;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mzValues[middle] < mz)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Writes a filled feature to the given columns of its sample.
+     */
+    private void writeFeature(@Nonnull List<FeatureTableColumn<?>> columns,
+            @Nullable FeatureTableColumn<ChromatographyInfo> rowRtColumn,
+            @Nonnull Fill fill) {
+
+        final List<DataPoint> peak = fill.peak;
+        final int size = peak.size();
+        final ChromatographyInfo rowChromInfo = rowRtColumn == null ? null
+                : fill.row.getData(rowRtColumn);
+        final SeparationType separationType = rowChromInfo == null
+                ? SeparationType.UNKNOWN : rowChromInfo.getSeparationType();
+
+        final ChromatographyInfo rtValues[] = new ChromatographyInfo[size];
+        final double mzValues[] = new double[size];
+        final float intensityValues[] = new float[size];
+        DataPoint apex = peak.get(0);
+        double area = 0;
+        for (int i = 0; i < size; i++) {
+            final DataPoint dataPoint = peak.get(i);
+            rtValues[i] = MSDKObjectBuilder
+                    .getChromatographyInfo1D(separationType, dataPoint.rt);
+            mzValues[i] = dataPoint.mz;
+            intensityValues[i] = dataPoint.intensity;
+            if (dataPoint.intensity > apex.intensity)
+                apex = dataPoint;
+            if (i > 0) {
+                final DataPoint previous = peak.get(i - 1);
+                area += (dataPoint.rt - previous.rt)
+                        * (dataPoint.intensity + previous.intensity) / 2;
+            }
+        }
+        final float rtStart = peak.get(0).rt, rtEnd = peak.get(size - 1).rt;
+
+        final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(
+                dataStore, fill.row.getId(), ChromatogramType.XIC,
+                separationType);
+        chromatogram.setDataPoints(rtValues, mzValues, intensityValues, size);
+        chromatogram.setMz(apex.mz);
+
+        for (FeatureTableColumn<?> column : columns) {
+            final String name = column.getName();
+            if (name.equals(ColumnName.CHROMATOGRAM.getName()))
+                setValue(fill.row, column, chromatogram);
+            else if (name.equals(ColumnName.MZ.getName()))
+                setNumber(fill.row, column, apex.mz, separationType);
+            else if (name.equals(ColumnName.RT.getName()) || name
+                    .equals(ColumnName.CHROMATOGRAPHYINFO.getName()))
+                setNumber(fill.row, column, apex.rt, separationType);
+            else if (name.equals(ColumnName.HEIGHT.getName()))
+                setNumber(fill.row, column, apex.intensity, separationType);
+            else if (name.equals(ColumnName.AREA.getName()))
+                setNumber(fill.row, column, area, separationType);
+            else if (name.equals(ColumnName.DURATION.getName()))
+                setNumber(fill.row, column, rtEnd - rtStart, separationType);
+            else if (name.equals(ColumnName.RTSTART.getName()))
+                setNumber(fill.row, column, rtStart, separationType);
+            else if (name.equals(ColumnName.RTEND.getName()))
+                setNumber(fill.row, column, rtEnd, separationType);
+            else if (name.equals(ColumnName.NUMBEROFDATAPOINTS.getName()))
+                setNumber(fill.row, column, size, separationType);
+        }
+    }
+
+    /**
+     * Recalculates the average m/z and RT of a row from the m/z and RT
+     * columns of its samples.
+     */
+    private void recalculateAverages(@Nonnull FeatureTableRow row,
+            @Nonnull List<FeatureTableColumn<?>> mzColumns,
+            @Nonnull List<FeatureTableColumn<?>> rtColumns,
+            @Nullable FeatureTableColumn<Double> rowMzColumn,
+            @Nullable FeatureTableColumn<ChromatographyInfo> rowRtColumn) {
+        double mzSum = 0, rtSum = 0;
+        int mzCount = 0, rtCount = 0;
+        for (FeatureTableColumn<?> mzColumn : mzColumns) {
+            final double mz = ColumnarFeatureTable.getDouble(row, mzColumn);
+            if (!Double.isNaN(mz)) {
+                mzSum += mz;
+                mzCount++;
+            }
+        }
+        for (FeatureTableColumn<?> rtColumn : rtColumns) {
+            final float rt = ColumnarFeatureTable.getFloat(row, rtColumn);
+            if (!Float.isNaN(rt)) {
+                rtSum += rt;
+                rtCount++;
+            }
+        }
+
+        if (rowMzColumn != null && mzCount > 0)
+            row.setData(rowMzColumn, mzSum / mzCount);
+        if (rowRtColumn != null && rtCount > 0) {
+            final ChromatographyInfo chromInfo = row.getData(rowRtColumn);
+            row.setData(rowRtColumn, MSDKObjectBuilder.getChromatographyInfo1D(
+                    chromInfo == null ? SeparationType.UNKNOWN
+                            : chromInfo.getSeparationType(),
+                    (float) (rtSum / rtCount)));
+        }
+    }
+
+    /**
+     * Sets a numeric value, converted to the data type of the column.
+     */
+    private void setNumber(@Nonnull FeatureTableRow row,
+            @Nonnull FeatureTableColumn<?> column, double value,
+            @Nonnull SeparationType separationType) {
+        final Class<?> dataType = column.getDataTypeClass();
+        if (dataType == Double.class)
+            setValue(row, column, value);
+        else if (dataType == Float.class)
+            setValue(row, column, (float) value);
+        else if (dataType == Integer.class)
+            setValue(row, column, (int) Math.round(value));
+        else if (ChromatographyInfo.class.isAssignableFrom(dataType))
+            setValue(row, column, MSDKObjectBuilder
+                    .getChromatographyInfo1D(separationType, (float) value));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setValue(@Nonnull FeatureTableRow row,
+            @Nonnull FeatureTableColumn<?> column, @Nonnull Object value) {
+        row.setData((FeatureTableColumn<Object>) column, value);
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalSamples == 0)
+            return null;
+        return (float) processedSamples.get() / totalSamples;
+    }
+
+    @Override
+    @Nullable
+    public FeatureTable getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+
+    private static class SampleGaps {
+
+        private final @Nonnull Sample sample;
+        private final @Nonnull List<Gap> gaps;
+
+        private SampleGaps(@Nonnull Sample sample, @Nonnull List<Gap> gaps) {
+            this.sample = sample;
+            this.gaps = gaps;
+        }
+    }
+
+    private static class Fill {
+
+        private final @Nonnull FeatureTableRow row;
+        private final @Nonnull List<DataPoint> peak;
+
+        private Fill(@Nonnull FeatureTableRow row,
+                @Nonnull List<DataPoint> peak) {
+            this.row = row;
+            this.peak = peak;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.gapfilling.peakfinder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+
+/**
+ * A missing feature of one sample in one row, searched like the gaps of
+ * GapFillingMethod in MSDK, which cannot be reused as its gap class is not
+ * public. The scans are offered in RT order; in each scan, the most intense
+ * data point within the m/z range is taken. Within the RT range of the gap,
+ * all data points are added to the current peak. After the RT range, the
+ * current peak is continued while the intensity keeps falling within the
+ * intensity tolerance, so the tail of a peak is kept. The peak around the
+ * most intense local maximum inside the m/z and RT ranges fills the gap.
+ */
+class Gap {
+
+    private final @Nonnull FeatureTableRow row;
+    private final @Nonnull Range<Double> mzRange;
+    private final @Nonnull Range<Float> rtRange;
+    private final double intensityTolerance;
+
+    private List<DataPoint> currentPeak, bestPeak;
+    private float bestPeakHeight;
+
+    Gap(@Nonnull FeatureTableRow row, @Nonnull Range<Double> mzRange,
+            @Nonnull Range<Float> rtRange, double intensityTolerance) {
+        this.row = row;
+        this.mzRange = mzRange;
+        this.rtRange = rtRange;
+        this.intensityTolerance = intensityTolerance;
+    }
+
+    @Nonnull
+    FeatureTableRow getRow() {
+        return row;
+    }
+
+    @Nonnull
+    Range<Double> getMzRange() {
+        return mzRange;
+    }
+
+    @Nonnull
+    Range<Float> getRtRange() {
+        return rtRange;
+    }
+
+    /**
+     * Returns true if scans at the given RT or later cannot change the
+     * result, i.e. the RT range has passed and the last peak has ended.
+     */
+    boolean isFinished(float rt) {
+        return rt > rtRange.upperEndpoint() && currentPeak == null;
+    }
+
+    /**
+     * Offers the most intense data point of a scan within the m/z range of
+     * the gap, or a zero intensity if the scan has none.
+     */
+    void offer(float rt, double mz, float intensity) {
+        if (rt < rtRange.lowerEndpoint() || isFinished(rt))
+            return;
+        final DataPoint dataPoint = new DataPoint(rt, mz, intensity);
+        if (currentPeak == null) {
+            currentPeak = new ArrayList<>();
+            currentPeak.add(dataPoint);
+            return;
+        }
+        if (checkShape(dataPoint)) {
+            currentPeak.add(dataPoint);
+        } else {
+            checkCurrentPeak();
+            currentPeak = null;
+        }
+    }
+
+    /**
+     * Finishes the search and returns the data points of the best peak, or
+     * null if no peak was found.
+     */
+    @Nullable
+    List<DataPoint> finish() {
+        if (currentPeak != null)
+            checkCurrentPeak();
+        currentPeak = null;
+        return bestPeak;
+    }
+
+    private boolean checkShape(@Nonnull DataPoint dataPoint) {
+        final float previousIntensity = currentPeak
+                .get(currentPeak.size() - 1).intensity;
+        if (dataPoint.rt < rtRange.lowerEndpoint())
+            return dataPoint.intensity > previousIntensity
+                    * (1 - intensityTolerance);
+        if (dataPoint.rt > rtRange.upperEndpoint())
+            return dataPoint.intensity < previousIntensity
+                    * (1 + intensityTolerance);
+        return true;
+    }
+
+    private void checkCurrentPeak() {
+
+        // Find the most intense local maximum inside the search ranges
+        int maximum = -1;
+        float maximumHeight = 0f;
+        for (int i = 1; i < currentPeak.size() - 1; i++) {
+            final DataPoint dataPoint = currentPeak.get(i);
+            if (!rtRange.contains(dataPoint.rt)
+                    || dataPoint.intensity < currentPeak.get(i - 1).intensity
+                    || dataPoint.intensity < currentPeak.get(i + 1).intensity
+                    || dataPoint.intensity <= maximumHeight
+                    || !mzRange.contains(dataPoint.mz))
+                continue;
+            maximum = i;
+            maximumHeight = dataPoint.intensity;
+        }
+        if (maximum < 0)
+            return;
+
+        // The peak extends while the intensity falls on both sides
+        int start = maximum, end = maximum;
+        while (start > 0 && currentPeak.get(start - 1).intensity < currentPeak
+                .get(start).intensity)
+            start--;
+        while (end < currentPeak.size() - 1 && currentPeak
+                .get(end + 1).intensity < currentPeak.get(end).intensity)
+            end++;
+
+        if (bestPeak == null || bestPeakHeight < maximumHeight) {
+            bestPeak = new ArrayList<>(currentPeak.subList(start, end + 1));
+            bestPeakHeight = maximumHeight;
+        }
+    }
+
+    static class DataPoint {
+
+        final float rt;
+        final double mz;
+        final float intensity;
+
+        private DataPoint(float rt, double mz, float intensity) {
+            this.rt = rt;
+            this.mz = mz;
+            this.intensity = intensity;
+        }
+    }
+
+}
@@ -26,8 +26,8 @@ import javax.annotation.Nonnull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.github.msdk.MSDKMethod;
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.features.gapfilling.GapFillingMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
@@ -37,6 +37,8 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 import javafx.concurrent.Task;
 
 /**
@@ -77,6 +79,8 @@ public class PeakFinderModule implements MZmineProcessingModule {
         Double intensityTolerance = parameters
                 .getParameter(PeakFinderParameters.intensityTolerance)
                 .getEmbeddedParameter().getValue();
+        final Boolean parallel = parameters
+                .getParameter(PeakFinderParameters.parallel).getValue();
         final String nameSuffix = parameters
                 .getParameter(PeakFinderParameters.nameSuffix).getValue();
         final Boolean removeOldTable = parameters
@@ -94,8 +98,8 @@ public class PeakFinderModule implements MZmineProcessingModule {
                 .getMatchingFeatureTables()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createResultDataStore();
 
             // If intensity tolerance is not active then set the
             // intensityTolerance value to a very high value to avoid any
@@ -104,9 +108,15 @@ public class PeakFinderModule implements MZmineProcessingModule {
                 intensityTolerance = Double.MAX_VALUE;
 
             // New feature filter task
-            GapFillingMethod method = new GapFillingMethod(featureTable,
-                    dataStore, mzTolerance, rtTolerance, intensityTolerance,
-                    nameSuffix);
+            final MSDKMethod<FeatureTable> method;
+            if (parallel != null && parallel)
+                method = new BatchedGapFillingMethod(featureTable, dataStore,
+                        mzTolerance, rtTolerance, intensityTolerance,
+                        nameSuffix);
+            else
+                method = new GapFillingMethod(featureTable, dataStore,
+                        mzTolerance, rtTolerance, intensityTolerance,
+                        nameSuffix);
 
             MSDKTask newTask = new MSDKTask("Gap filling feature table",
                     featureTable.getName(), method);
@@ -115,6 +125,7 @@ public class PeakFinderModule implements MZmineProcessingModule {
             newTask.setOnSucceeded(e -> {
                 FeatureTable newFeatureTable = method.getResult();
                 project.addFeatureTable(newFeatureTable);
+                TmpStorageManager.addOwner(featureTable, newFeatureTable);
 
                 // If selected, remove old feature table
                 if (removeOldTable != null && removeOldTable) {
@@ -57,6 +57,11 @@ public class PeakFinderParameters extends ParameterSet {
                     "Algorithm Parameters",
                     ParameterValidator.createNonEmptyValidator(), 0.15));
 
+    public static final BooleanParameter parallel = new BooleanParameter(
+            "Parallel processing",
+            "If checked, the gaps of each raw data file are filled in one pass over its scans, and the raw data files are processed in parallel.",
+            "Algorithm Parameters", false);
+
     public static final StringParameter nameSuffix = new StringParameter(
             "Name suffix", "Suffix to be added to the feature table name.",
             "Output", " gapFilled");
@@ -71,7 +76,7 @@ public class PeakFinderParameters extends ParameterSet {
      */
     public PeakFinderParameters() {
         super(featureTables, mzTolerance, rtTolerance, intensityTolerance,
-                nameSuffix, removeOldTable);
+                parallel, nameSuffix, removeOldTable);
     }
 
 }
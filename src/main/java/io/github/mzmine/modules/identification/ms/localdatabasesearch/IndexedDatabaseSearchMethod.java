@@ -0,0 +1,174 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.identification.ms.localdatabasesearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.ionannotations.IonAnnotation;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.util.tolerances.MzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.util.FeatureTableIndex;
+
+/**
+ * Annotates the rows of a feature table with the database entries whose m/z
+ * and retention time are within the tolerances of the row, like
+ * LocalDatabaseSearchMethod. Instead of comparing every row with every entry,
+ * the rows around each entry are looked up in the FeatureTableIndex of the
+ * table. The tolerances are centred on the rows, so the index is searched in
+ * a slightly wider window and each candidate is checked again. The
+ * annotations of a row are added in the order of the database.
+ */
+public class IndexedDatabaseSearchMethod
+        implements MSDKMethod<FeatureTable> {
+
+    private final @Nonnull FeatureTable featureTable;
+    private final @Nonnull List<IonAnnotation> ionAnnotations;
+    private final @Nonnull MzTolerance mzTolerance;
+    private final @Nonnull RTTolerance rtTolerance;
+
+    private FeatureTable result;
+    private int processedAnnotations = 0;
+    private boolean canceled = false;
+
+    public IndexedDatabaseSearchMethod(@Nonnull FeatureTable featureTable,
+            @Nonnull List<IonAnnotation> ionAnnotations,
+            @Nonnull MzTolerance mzTolerance,
+            @Nonnull RTTolerance rtTolerance) {
+        this.featureTable = featureTable;
+        this.ionAnnotations = ionAnnotations;
+        this.mzTolerance = mzTolerance;
+        this.rtTolerance = rtTolerance;
+    }
+
+    @Override
+    public FeatureTable execute() throws MSDKException {
+
+        FeatureTableColumn<List<IonAnnotation>> ionAnnotationColumn = featureTable
+                .getColumn(ColumnName.IONANNOTATION, null);
+        if (ionAnnotationColumn == null) {
+            ionAnnotationColumn = MSDKObjectBuilder
+                    .getFeatureTableColumn(ColumnName.IONANNOTATION, null);
+            featureTable.addColumn(ionAnnotationColumn);
+        }
+
+        final FeatureTableIndex index = FeatureTableIndex
+                .getIndex(featureTable);
+        for (IonAnnotation ionAnnotation : ionAnnotations) {
+            if (canceled)
+                return null;
+            processedAnnotations++;
+
+            final Double mz = ionAnnotation.getExpectedMz();
+            final ChromatographyInfo chromInfo = ionAnnotation
+                    .getChromatographyInfo();
+            if (mz == null || chromInfo == null
+                    || chromInfo.getRetentionTime() == null)
+                continue;
+
+            final float rt = chromInfo.getRetentionTime();
+            for (int rowNumber : index.findRows(getSearchRange(mz),
+                    getSearchRange(rt))) {
+                // The tolerances are centred on the row
+                if (!mzTolerance.getToleranceRange(index.getMz(rowNumber))
+                        .contains(mz)
+                        || !rtTolerance
+                                .getToleranceRange(index.getRT(rowNumber))
+                                .contains(rt))
+                    continue;
+
+                final FeatureTableRow row = index.getRow(rowNumber);
+                final List<IonAnnotation> rowIonAnnotations = new ArrayList<>();
+                final List<IonAnnotation> oldIonAnnotations = row
+                        .getData(ionAnnotationColumn);
+                if (oldIonAnnotations != null) {
+                    // Empty annotations are placeholders, skip them
+                    for (IonAnnotation oldIonAnnotation : oldIonAnnotations) {
+                        if (oldIonAnnotation.getAnnotationId() != null)
+                            rowIonAnnotations.add(oldIonAnnotation);
+                    }
+                }
+                rowIonAnnotations.add(ionAnnotation);
+                row.setData(ionAnnotationColumn, rowIonAnnotations);
+            }
+        }
+
+        result = featureTable;
+        return result;
+    }
+
+    /**
+     * Returns the m/z range that contains every row whose tolerance range
+     * contains the given m/z. A ppm tolerance grows with the m/z, so the
+     * range is as wide as the tolerance at its upper end.
+     */
+    private @Nonnull Range<Double> getSearchRange(double mz) {
+        final Range<Double> upperRange = mzTolerance.getToleranceRange(
+                mzTolerance.getToleranceRange(mz).upperEndpoint());
+        final double halfWidth = (upperRange.upperEndpoint()
+                - upperRange.lowerEndpoint()) / 2;
+        return Range.closed(mz - halfWidth, mz + halfWidth);
+    }
+
+    /**
+     * Returns the RT range that contains every row whose tolerance range
+     * contains the given RT, see getSearchRange(double).
+     */
+    private @Nonnull Range<Float> getSearchRange(float rt) {
+        final Range<Float> upperRange = rtTolerance.getToleranceRange(
+                rtTolerance.getToleranceRange(rt).upperEndpoint());
+        final float halfWidth = (upperRange.upperEndpoint()
+                - upperRange.lowerEndpoint()) / 2;
+        return Range.closed(rt - halfWidth, rt + halfWidth);
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (ionAnnotations.isEmpty())
+            return null;
+        return (float) processedAnnotations / ionAnnotations.size();
+    }
+
+    @Override
+    @Nullable
+    public FeatureTable getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+
+}
@@ -37,7 +37,6 @@ import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
 import io.github.msdk.datamodel.ionannotations.IonAnnotation;
 import io.github.msdk.datamodel.ionannotations.IonType;
 import io.github.msdk.datamodel.rawdata.SeparationType;
-import io.github.msdk.id.localdatabasesearch.LocalDatabaseSearchMethod;
 import io.github.msdk.util.IonTypeUtil;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
 import io.github.msdk.util.tolerances.RTTolerance;
@@ -45,6 +44,7 @@ import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.project.resultcache.ModuleResultCache;
 import io.github.mzmine.taskcontrol.MSDKTask;
 import javafx.concurrent.Task;
 
@@ -158,11 +158,16 @@ public class LocalDatabaseSearchModule implements MZmineProcessingModule {
         }
         scanner.close();
 
-        // Run LocalDatabaseSearchMethod
+        // Run IndexedDatabaseSearchMethod
         MSDKTask newTask = null;
         for (FeatureTable featureTable : featureTables
                 .getMatchingFeatureTables()) {
-            LocalDatabaseSearchMethod method = new LocalDatabaseSearchMethod(
+
+            // The table is annotated in place, so results computed from it
+            // must not be taken from the result cache
+            ModuleResultCache.invalidate(featureTable);
+
+            IndexedDatabaseSearchMethod method = new IndexedDatabaseSearchMethod(
                     featureTable, ionAnnotations, mzTolerance, rtTolerance);
 
             newTask = new MSDKTask("Importing feature table file",
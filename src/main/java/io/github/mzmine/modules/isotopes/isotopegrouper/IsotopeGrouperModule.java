@@ -27,7 +27,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.features.isotopegrouper.IsotopeGrouperMethod;
 import io.github.msdk.util.tolerances.MaximumMzTolerance;
@@ -38,6 +37,8 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 import javafx.concurrent.Task;
 
 /**
@@ -105,8 +106,8 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
                 .getMatchingFeatureTables()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getMemoryDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createResultDataStore();
 
             // Feature table name
             String featureTableName = featureTable.getName();
@@ -126,6 +127,7 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
             newTask.setOnSucceeded(e -> {
                 FeatureTable newFeatureTable = method.getResult();
                 project.addFeatureTable(newFeatureTable);
+                TmpStorageManager.addOwner(featureTable, newFeatureTable);
 
                 // If selected, remove old feature table
                 if (removeOldTable != null && removeOldTable) {
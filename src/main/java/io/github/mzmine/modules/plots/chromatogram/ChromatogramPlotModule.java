@@ -22,7 +22,6 @@ package io.github.mzmine.modules.plots.chromatogram;
 import java.net.URL;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import javax.annotation.Nonnull;
 
@@ -36,10 +35,12 @@ import io.github.msdk.datamodel.rawdata.MsScan;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.rawdata.xic.MSDKXICMethod;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineRunnableModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.TaskPriority;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.fxml.FXMLLoader;
@@ -55,9 +56,6 @@ public class ChromatogramPlotModule implements MZmineRunnableModule {
     private static final @Nonnull String MODULE_NAME = "TIC/XIC visualizer";
     private static final @Nonnull String MODULE_DESCRIPTION = "TIC/XIC visualizer."; // TODO
 
-    private static final ScheduledThreadPoolExecutor threadPool = new ScheduledThreadPoolExecutor(
-            4);
-
     @Override
     public @Nonnull String getName() {
         return MODULE_NAME;
@@ -98,7 +96,7 @@ public class ChromatogramPlotModule implements MZmineRunnableModule {
 
                 // Load the actual data in a separate thread to avoid blocking
                 // the GUI
-                threadPool.execute(() -> {
+                MZmineCore.getTaskExecutor().execute(() -> {
                     try {
                         DataPointStore store = DataPointStoreFactory
                                 .getMemoryDataStore();
@@ -120,7 +118,7 @@ public class ChromatogramPlotModule implements MZmineRunnableModule {
                         e.printStackTrace();
                     }
 
-                });
+                }, TaskPriority.HIGH);
             }
 
         } catch (Exception e) {
@@ -20,7 +20,6 @@
 package io.github.mzmine.modules.plots.msspectrum.datasets;
 
 import java.text.NumberFormat;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import org.jfree.data.xy.AbstractXYDataset;
 import org.jfree.data.xy.XYDataset;
@@ -34,6 +33,7 @@ import io.github.msdk.spectra.splash.SplashCalculationAlgorithm;
 import io.github.msdk.util.MsSpectrumUtil;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.plots.msspectrum.MsSpectrumPlotDataSet;
+import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.util.MsScanUtils;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
@@ -57,10 +57,8 @@ public class MsSpectrumDataSet extends AbstractXYDataset
 
     private static final long serialVersionUID = -3188441074323131747L;
 
-    private static final ScheduledThreadPoolExecutor threadPool = new ScheduledThreadPoolExecutor(
-            1);
-
     private MsSpectrum spectrum;
+    private int spectrumVersion = 0;
     private double mzValues[];
     private float intensityValues[];
     private float topIndensity = 0f;
@@ -100,37 +98,52 @@ public class MsSpectrumDataSet extends AbstractXYDataset
 
     public void setSpectrum(MsSpectrum spectrum, String datasetName) {
 
+        final int version;
+        synchronized (this) {
+            version = ++spectrumVersion;
+        }
+
         // Load the actual data in a separate thread to avoid blocking the GUI
-        threadPool.execute(() -> {
+        MZmineCore.getTaskExecutor().execute(
+                () -> loadSpectrum(version, spectrum, datasetName),
+                TaskPriority.HIGH);
+
+    }
+
+    private synchronized void loadSpectrum(int version, MsSpectrum spectrum,
+            String datasetName) {
 
-            // Turn notify to off, to avoid redrawing the plot after each
-            // property change
-            setNotify(false);
+        // The loads run in a shared pool, so a newer spectrum may have been
+        // set in the meantime
+        if (version != spectrumVersion)
+            return;
 
-            // Remember if the current intensity scale was modified
-            boolean modifiedIntensityScale = (getIntensityScale() != this.topIndensity);
+        // Turn notify to off, to avoid redrawing the plot after each property
+        // change
+        setNotify(false);
 
-            this.spectrum = spectrum;
-            this.mzValues = spectrum.getMzValues();
-            this.intensityValues = spectrum.getIntensityValues();
-            this.numOfDataPoints = spectrum.getNumberOfDataPoints();
-            this.topIndensity = MsSpectrumUtil.getMaxIntensity(intensityValues,
-                    numOfDataPoints);
+        // Remember if the current intensity scale was modified
+        boolean modifiedIntensityScale = (getIntensityScale() != this.topIndensity);
 
-            // If the intensity scale was not modified by the user, set the new
-            // scale to max intensity
-            if (!modifiedIntensityScale)
-                setIntensityScale((double) topIndensity);
+        this.spectrum = spectrum;
+        this.mzValues = spectrum.getMzValues();
+        this.intensityValues = spectrum.getIntensityValues();
+        this.numOfDataPoints = spectrum.getNumberOfDataPoints();
+        this.topIndensity = MsSpectrumUtil.getMaxIntensity(intensityValues,
+                numOfDataPoints);
 
-            setName(datasetName);
-            renderingType.get();
-            setRenderingType(spectrum.getSpectrumType());
+        // If the intensity scale was not modified by the user, set the new
+        // scale to max intensity
+        if (!modifiedIntensityScale)
+            setIntensityScale((double) topIndensity);
 
-            // Finally, update the GUI
-            Platform.runLater(() -> {
-                setNotify(true);
-            });
+        setName(datasetName);
+        renderingType.get();
+        setRenderingType(spectrum.getSpectrumType());
 
+        // Finally, update the GUI
+        Platform.runLater(() -> {
+            setNotify(true);
         });
 
     }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.centroiding;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingAlgorithm;
+import io.github.msdk.util.MsScanUtil;
+import io.github.mzmine.main.MZmineCore;
+
+/**
+ * Centroids the scans of one raw data file on several threads. The scans are
+ * split into batches of BATCH_SIZE scans, which are centroided in the MZmine
+ * fork-join pool. Each batch gets its own algorithm instance and writes to its
+ * own scratch store in memory, so the algorithms do not need to be thread
+ * safe. The batches are collected in order and their scans copied to the
+ * output data store, so the output file is the same as with
+ * MSDKCentroidingMethod and its data are stored in scan order.
+ * 
+ * At most twice as many batches as the pool has threads are in flight, which
+ * bounds the memory used by the scratch stores.
+ */
+public class ParallelCentroidingMethod implements MSDKMethod<RawDataFile> {
+
+    /**
+     * Number of scans centroided by one fork-join task.
+     */
+    private static final int BATCH_SIZE = 32;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull RawDataFile rawDataFile;
+    private final @Nonnull Function<DataPointStore, MSDKCentroidingAlgorithm> algorithmFactory;
+    private final @Nonnull DataPointStore dataStore;
+
+    private RawDataFile result;
+    private volatile int processedScans = 0, totalScans = 0;
+    private volatile boolean canceled = false;
+
+    /**
+     * @param algorithmFactory
+     *            creates an algorithm instance that writes its output to the
+     *            given data store
+     */
+    public ParallelCentroidingMethod(@Nonnull RawDataFile rawDataFile,
+            @Nonnull Function<DataPointStore, MSDKCentroidingAlgorithm> algorithmFactory,
+            @Nonnull DataPointStore dataStore) {
+        this.rawDataFile = rawDataFile;
+        this.algorithmFactory = algorithmFactory;
+        this.dataStore = dataStore;
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+
+        final List<MsScan> scans = rawDataFile.getScans();
+        totalScans = scans.size();
+
+        final RawDataFile newRawFile = MSDKObjectBuilder.getRawDataFile(
+                rawDataFile.getName(), rawDataFile.getOriginalFile(),
+                rawDataFile.getRawDataFileType(), dataStore);
+
+        final ForkJoinPool pool = MZmineCore.getTaskExecutor()
+                .getForkJoinPool();
+        final int maxBatches = 2 * pool.getParallelism();
+        final Deque<ForkJoinTask<Batch>> batches = new ArrayDeque<>();
+
+        int nextScan = 0;
+        try {
+            while (nextScan < scans.size() || !batches.isEmpty()) {
+
+                // Keep the pool busy with the next batches
+                while (nextScan < scans.size()
+                        && batches.size() < maxBatches) {
+                    final List<MsScan> batchScans = scans.subList(nextScan,
+                            Math.min(nextScan + BATCH_SIZE, scans.size()));
+                    batches.add(pool.submit(() -> centroidBatch(batchScans)));
+                    nextScan += batchScans.size();
+                }
+
+                // Copy the oldest batch to the output file
+                final Batch batch = batches.removeFirst().join();
+                try {
+                    if (canceled)
+                        return null;
+                    for (MsScan centroidedScan : batch.scans) {
+                        newRawFile.addScan(MsScanUtil.clone(dataStore,
+                                centroidedScan, true));
+                        processedScans++;
+                    }
+                } finally {
+                    batch.scratchStore.dispose();
+                }
+            }
+        } finally {
+            // Discard the batches that are still running after an error or
+            // cancellation
+            for (ForkJoinTask<Batch> pending : batches) {
+                pending.cancel(false);
+                if (pending.isDone() && !pending.isCancelled()
+                        && !pending.isCompletedAbnormally())
+                    pending.join().scratchStore.dispose();
+            }
+        }
+
+        logger.debug("Centroided " + processedScans + " scans of "
+                + rawDataFile.getName() + " on " + pool.getParallelism()
+                + " threads");
+        result = newRawFile;
+        return result;
+    }
+
+    private @Nonnull Batch centroidBatch(@Nonnull List<MsScan> scans) {
+        final DataPointStore scratchStore = DataPointStoreFactory
+                .getMemoryDataStore();
+        final MSDKCentroidingAlgorithm algorithm = algorithmFactory
+                .apply(scratchStore);
+        final List<MsScan> centroidedScans = new ArrayList<>(scans.size());
+        for (MsScan scan : scans) {
+            if (canceled)
+                break;
+            centroidedScans.add(algorithm.centroidScan(scan));
+        }
+        return new Batch(scratchStore, centroidedScans);
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (totalScans == 0)
+            return null;
+        return (float) processedScans / totalScans;
+    }
+
+    @Override
+    @Nullable
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+
+    private static class Batch {
+
+        private final @Nonnull DataPointStore scratchStore;
+        private final @Nonnull List<MsScan> scans;
+
+        private Batch(@Nonnull DataPointStore scratchStore,
+                @Nonnull List<MsScan> scans) {
+            this.scratchStore = scratchStore;
+            this.scans = scans;
+        }
+    }
+
+}
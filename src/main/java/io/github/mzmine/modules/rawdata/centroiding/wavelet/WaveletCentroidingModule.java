@@ -27,15 +27,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
-import io.github.msdk.rawdata.centroiding.MSDKCentroidingMethod;
 import io.github.msdk.rawdata.centroiding.WaveletCentroidingAlgorithm;
 import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.rawdata.centroiding.ParallelCentroidingMethod;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.MemoryEstimator;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 import javafx.concurrent.Task;
 
 /**
@@ -85,23 +87,26 @@ public class WaveletCentroidingModule implements MZmineProcessingModule {
         for (RawDataFile rawDataFile : rawDataFiles.getMatchingRawDataFiles()) {
 
             // Create the data structures
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getTmpFileDataStore();
+            DataPointStore dataStore = DataPointStoreUtil
+                    .createTmpFileDataStore();
 
             final String newName = rawDataFile.getName() + " " + suffix;
-            WaveletCentroidingAlgorithm algorithm = new WaveletCentroidingAlgorithm(
-                    dataStore, scaleLevel, waveletWindow);
-
-            MSDKCentroidingMethod method = new MSDKCentroidingMethod(
-                    rawDataFile, algorithm, dataStore);
+            // Each batch of scans is centroided by its own algorithm instance
+            ParallelCentroidingMethod method = new ParallelCentroidingMethod(
+                    rawDataFile, store -> new WaveletCentroidingAlgorithm(
+                            store, scaleLevel, waveletWindow),
+                    dataStore);
 
             MSDKTask newTask = new MSDKTask("Wavelet centroiding method",
                     rawDataFile.getName(), method);
+            newTask.setEstimatedMemory(
+                    MemoryEstimator.estimateProcessing(rawDataFile));
 
             // Add the feature table to the project
             newTask.setOnSucceeded(e -> {
                 RawDataFile newRawFile = method.getResult();
                 newRawFile.setName(newName);
+                TmpStorageManager.setOwner(dataStore, newRawFile);
                 project.addFile(newRawFile);
             });
 
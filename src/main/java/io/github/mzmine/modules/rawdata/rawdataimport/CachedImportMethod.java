@@ -0,0 +1,118 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.io.File;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.io.RawDataFileImportMethod;
+import io.github.mzmine.util.datastore.TmpStorageManager;
+
+/**
+ * Imports a raw data file through the import cache. If the content of the file
+ * is in the cache, the cached file is restored; otherwise the file is imported
+ * into a new data store, which is owned by the imported file, and added to the
+ * cache.
+ */
+public class CachedImportMethod implements MSDKMethod<RawDataFile> {
+
+    private final @Nonnull File fileName;
+    private final @Nonnull Supplier<DataPointStore> dataStoreFactory;
+    private final @Nonnull ImportCache cache;
+
+    private MSDKMethod<RawDataFile> importMethod;
+    private RawDataFile result;
+    private boolean canceled = false;
+
+    /**
+     * @param dataStoreFactory
+     *            creates the store the file is imported into on a cache miss
+     * @param maxCacheSize
+     *            maximum size of the cache in bytes
+     */
+    public CachedImportMethod(@Nonnull File fileName,
+            @Nonnull Supplier<DataPointStore> dataStoreFactory,
+            @Nonnull File cacheDirectory, long maxCacheSize) {
+        this.fileName = fileName;
+        this.dataStoreFactory = dataStoreFactory;
+        this.cache = new ImportCache(cacheDirectory, maxCacheSize);
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+
+        final String hash = cache.getContentHash(fileName);
+        if (canceled)
+            return null;
+
+        result = cache.load(hash, fileName);
+        if (result != null)
+            return result;
+
+        final DataPointStore dataStore = dataStoreFactory.get();
+        final MSDKMethod<RawDataFile> method = new RawDataFileImportMethod(
+                fileName, dataStore);
+        importMethod = method;
+        final RawDataFile rawDataFile;
+        try {
+            rawDataFile = canceled ? null : method.execute();
+        } catch (MSDKException | RuntimeException e) {
+            dataStore.dispose();
+            throw e;
+        }
+        if (rawDataFile == null || canceled) {
+            dataStore.dispose();
+            return null;
+        }
+
+        TmpStorageManager.setOwner(dataStore, rawDataFile);
+        cache.store(hash, rawDataFile);
+        result = rawDataFile;
+        return result;
+    }
+
+    @Override
+    public Float getFinishedPercentage() {
+        final MSDKMethod<RawDataFile> method = importMethod;
+        if (method != null)
+            return method.getFinishedPercentage();
+        return result == null ? null : 1f;
+    }
+
+    @Override
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        final MSDKMethod<RawDataFile> method = importMethod;
+        if (method != null)
+            method.cancel();
+    }
+
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.files.FileType;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.msspectra.MsSpectrumType;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.modules.rawdata.rawdataimport.MzMLStreamReader.MzMLSpectrum;
+
+/**
+ * On-disk cache of imported raw data files, kept across sessions. Each entry
+ * holds the scan attributes and the data points of one file and is named
+ * after the SHA-256 hash of the file content, so renamed or copied files are
+ * found as well. An index of path, size and modification time avoids hashing
+ * files that have not changed since they were last imported.
+ * 
+ * An entry stores the data points first, followed by the scan attributes and
+ * the offset of the attributes. The data points of a scan never cross a
+ * SEGMENT_SIZE boundary unless they are larger than a segment, so restored
+ * files can read them from memory-mapped segments, see
+ * ImportCacheDataPointStore.
+ * 
+ * The total size of the entries is limited; the least recently used entries
+ * are deleted first. The entry format is also used by other on-disk caches,
+ * see writeEntry() and readEntry().
+ */
+public class ImportCache {
+
+    /**
+     * Size of the memory-mapped segments of an entry (64 MB).
+     */
+    static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4d5a4943; // "MZIC"
+    private static final int VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".cache";
+    private static final String INDEX_FILE = "index.txt";
+
+    /**
+     * Lock for the files of the cache directory, which may be used by several
+     * import tasks at once.
+     */
+    private static final Object lock = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File directory;
+    private final long maxSize;
+
+    /**
+     * @param maxSize
+     *            maximum total size of the cache entries in bytes
+     */
+    ImportCache(@Nonnull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the content hash of the given file. The hash is taken from the
+     * index if the size and modification time of the file are unchanged.
+     */
+    @Nonnull
+    String getContentHash(@Nonnull File file) throws MSDKException {
+
+        final String path = file.getAbsolutePath();
+        final long size = file.length(), lastModified = file.lastModified();
+
+        synchronized (lock) {
+            final Map<String, String[]> index = readIndex();
+            final String entry[] = index.get(path);
+            if (entry != null && entry[1].equals(String.valueOf(size))
+                    && entry[2].equals(String.valueOf(lastModified)))
+                return entry[0];
+        }
+
+        final String hash = computeHash(file);
+
+        synchronized (lock) {
+            final Map<String, String[]> index = readIndex();
+            pruneIndex(index);
+            index.put(path, new String[] { hash, String.valueOf(size),
+                    String.valueOf(lastModified), path });
+            writeIndex(index);
+        }
+        return hash;
+    }
+
+    /**
+     * Restores the cached raw data file with the given content hash, or
+     * returns null if it is not in the cache.
+     */
+    @Nullable
+    RawDataFile load(@Nonnull String hash, @Nonnull File originalFile)
+            throws MSDKException {
+
+        final File entryFile = new File(directory, hash + ENTRY_SUFFIX);
+        final RawDataFile rawDataFile;
+        // The entry is opened under the lock, so it is in use before it
+        // could be evicted
+        synchronized (lock) {
+            if (!entryFile.isFile())
+                return null;
+            // Mark the entry as recently used
+            entryFile.setLastModified(System.currentTimeMillis());
+            try {
+                rawDataFile = readEntry(entryFile, originalFile.getName(),
+                        originalFile);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not read import cache entry " + entryFile,
+                        e);
+                return null;
+            }
+        }
+        logger.info("Restored " + originalFile + " from import cache");
+        return rawDataFile;
+    }
+
+    /**
+     * Reads a raw data file from the given entry file. The scans read their
+     * data points from the entry file, which must therefore not be changed
+     * while the raw data file is in use.
+     */
+    public static @Nonnull RawDataFile readEntry(@Nonnull File entryFile,
+            @Nonnull String name, @Nullable File originalFile)
+            throws IOException {
+
+        ImportCacheDataPointStore dataStore = null;
+        try (RandomAccessFile raf = new RandomAccessFile(entryFile, "r")) {
+            raf.seek(raf.length() - 12);
+            final long headerOffset = raf.readLong();
+            if (raf.readInt() != MAGIC)
+                throw new IOException("Invalid cache entry " + entryFile);
+            raf.seek(headerOffset);
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new RafInputStream(raf)));
+            if (in.readInt() != VERSION)
+                throw new IOException(
+                        "Unsupported version of cache entry " + entryFile);
+
+            dataStore = new ImportCacheDataPointStore(entryFile);
+            FileType fileType;
+            try {
+                fileType = FileType.valueOf(in.readUTF());
+            } catch (IllegalArgumentException e) {
+                fileType = FileType.UNKNOWN;
+            }
+            final RawDataFile rawDataFile = MSDKObjectBuilder
+                    .getRawDataFile(name, originalFile, fileType, dataStore);
+
+            final PlaceholderDataPoints placeholders = new PlaceholderDataPoints();
+            final int numOfScans = in.readInt();
+            for (int i = 0; i < numOfScans; i++) {
+                final MzMLSpectrum header = readScanHeader(in);
+                final long mzPosition = in.readLong();
+                final int size = header.numOfDataPoints;
+                if (size > 0)
+                    placeholders.fill(size, header.lowestMz,
+                            header.highestMz, header.totalIonCurrent);
+                dataStore.expectScan(mzPosition, mzPosition + 8L * size,
+                        size);
+                rawDataFile.addScan(header.createScan(dataStore,
+                        placeholders.getMzValues(),
+                        placeholders.getIntensityValues(), size));
+            }
+            return rawDataFile;
+
+        } catch (IOException | RuntimeException e) {
+            if (dataStore != null)
+                dataStore.dispose();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the given raw data file to the cache and removes the least
+     * recently used entries if the cache is too large.
+     */
+    void store(@Nonnull String hash, @Nonnull RawDataFile rawDataFile) {
+
+        final File entryFile = new File(directory, hash + ENTRY_SUFFIX);
+        final File tmpFile = new File(directory, hash + ENTRY_SUFFIX + ".tmp");
+
+        try {
+            Files.createDirectories(directory.toPath());
+            writeEntry(tmpFile, rawDataFile);
+            synchronized (lock) {
+                Files.move(tmpFile.toPath(), entryFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                evict(entryFile);
+            }
+            logger.debug("Stored " + rawDataFile.getName()
+                    + " in import cache");
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not write import cache entry " + entryFile,
+                    e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Writes the given raw data file to an entry file.
+     */
+    public static void writeEntry(@Nonnull File entryFile,
+            @Nonnull RawDataFile rawDataFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(entryFile)))) {
+            writeEntry(out, rawDataFile);
+        }
+    }
+
+    private static void writeEntry(@Nonnull DataOutputStream out,
+            @Nonnull RawDataFile rawDataFile) throws IOException {
+
+        final List<MsScan> scans = rawDataFile.getScans();
+        final long mzPositions[] = new long[scans.size()];
+        final byte padding[] = new byte[4096];
+
+        out.writeInt(MAGIC);
+        long position = 4;
+
+        // Data points
+        for (int i = 0; i < scans.size(); i++) {
+            final MsScan scan = scans.get(i);
+            final int size = scan.getNumberOfDataPoints();
+            final long numOfBytes = 12L * size;
+
+            // Do not cross a segment boundary
+            final long segmentPosition = position % SEGMENT_SIZE;
+            if (numOfBytes <= SEGMENT_SIZE
+                    && segmentPosition + numOfBytes > SEGMENT_SIZE) {
+                long paddingSize = SEGMENT_SIZE - segmentPosition;
+                position += paddingSize;
+                while (paddingSize > 0) {
+                    final int length = (int) Math.min(paddingSize,
+                            padding.length);
+                    out.write(padding, 0, length);
+                    paddingSize -= length;
+                }
+            }
+
+            mzPositions[i] = position;
+            final double mzValues[] = scan.getMzValues();
+            final float intensityValues[] = scan.getIntensityValues();
+            for (int j = 0; j < size; j++)
+                out.writeDouble(mzValues[j]);
+            for (int j = 0; j < size; j++)
+                out.writeFloat(intensityValues[j]);
+            position += numOfBytes;
+        }
+
+        // Scan attributes
+        final long headerOffset = position;
+        out.writeInt(VERSION);
+        out.writeUTF(rawDataFile.getRawDataFileType().name());
+        out.writeInt(scans.size());
+        for (int i = 0; i < scans.size(); i++) {
+            writeScanHeader(out, scans.get(i));
+            out.writeLong(mzPositions[i]);
+        }
+
+        out.writeLong(headerOffset);
+        out.writeInt(MAGIC);
+    }
+
+    private static void writeScanHeader(@Nonnull DataOutputStream out,
+            @Nonnull MsScan scan) throws IOException {
+
+        final Integer msLevel = scan.getMsFunction().getMsLevel();
+        final ChromatographyInfo chromInfo = scan.getChromatographyInfo();
+        final MsSpectrumType spectrumType = scan.getSpectrumType();
+        final String scanDefinition = scan.getScanDefinition();
+        final Range<Double> mzRange = scan.getMzRange();
+        final Float tic = scan.getTIC();
+
+        out.writeInt(scan.getScanNumber());
+        out.writeInt(msLevel == null ? -1 : msLevel);
+        out.writeUTF(scan.getPolarity().name());
+        out.writeUTF(spectrumType == null ? "" : spectrumType.name());
+        out.writeFloat((chromInfo == null
+                || chromInfo.getRetentionTime() == null) ? Float.NaN
+                        : chromInfo.getRetentionTime());
+        out.writeBoolean(scanDefinition != null);
+        if (scanDefinition != null)
+            out.writeUTF(scanDefinition);
+
+        // Only the first isolation is kept
+        final List<IsolationInfo> isolations = scan.getIsolations();
+        out.writeBoolean(!isolations.isEmpty());
+        if (!isolations.isEmpty()) {
+            final IsolationInfo isolation = isolations.get(0);
+            final Range<Double> isolationRange = isolation
+                    .getIsolationMzRange();
+            final Double precursorMz = isolation.getPrecursorMz();
+            final Integer charge = isolation.getPrecursorCharge();
+            final double target = precursorMz != null ? precursorMz
+                    : (isolationRange.lowerEndpoint()
+                            + isolationRange.upperEndpoint()) / 2;
+            out.writeDouble(target);
+            out.writeDouble(target - isolationRange.lowerEndpoint());
+            out.writeDouble(isolationRange.upperEndpoint() - target);
+            out.writeDouble(precursorMz == null ? Double.NaN : precursorMz);
+            out.writeInt(charge == null ? 0 : charge);
+        }
+
+        out.writeInt(scan.getNumberOfDataPoints());
+        out.writeDouble(mzRange == null ? 0 : mzRange.lowerEndpoint());
+        out.writeDouble(mzRange == null ? 0 : mzRange.upperEndpoint());
+        out.writeFloat(tic == null ? 0f : tic);
+    }
+
+    private static @Nonnull MzMLSpectrum readScanHeader(@Nonnull DataInputStream in)
+            throws IOException {
+
+        final MzMLSpectrum header = new MzMLSpectrum();
+        header.scanNumber = in.readInt();
+        final int msLevel = in.readInt();
+        header.msLevel = msLevel < 0 ? null : msLevel;
+        header.polarity = PolarityType.valueOf(in.readUTF());
+        final String spectrumType = in.readUTF();
+        header.spectrumType = spectrumType.isEmpty() ? null
+                : MsSpectrumType.valueOf(spectrumType);
+        final float rt = in.readFloat();
+        header.retentionTime = Float.isNaN(rt) ? null : rt;
+        header.scanDefinition = in.readBoolean() ? in.readUTF() : null;
+
+        if (in.readBoolean()) {
+            header.isolationTarget = in.readDouble();
+            header.isolationLowerOffset = in.readDouble();
+            header.isolationUpperOffset = in.readDouble();
+            final double precursorMz = in.readDouble();
+            header.precursorMz = Double.isNaN(precursorMz) ? null
+                    : precursorMz;
+            final int charge = in.readInt();
+            header.precursorCharge = charge == 0 ? null : charge;
+        }
+
+        header.numOfDataPoints = in.readInt();
+        header.lowestMz = in.readDouble();
+        header.highestMz = in.readDouble();
+        header.totalIonCurrent = in.readFloat();
+        return header;
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits into its
+     * size limit. The given entry is kept, as are the entries that restored
+     * raw data files still read from.
+     */
+    private void evict(@Nonnull File keep) {
+        final File entries[] = directory
+                .listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+        if (entries == null)
+            return;
+        long totalSize = 0;
+        for (File entry : entries)
+            totalSize += entry.length();
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (totalSize <= maxSize)
+                break;
+            if (entry.equals(keep)
+                    || ImportCacheDataPointStore.isInUse(entry))
+                continue;
+            final long entrySize = entry.length();
+            if (entry.delete()) {
+                totalSize -= entrySize;
+                logger.debug("Removed " + entry + " from import cache");
+            }
+        }
+    }
+
+    private @Nonnull String computeHash(@Nonnull File file)
+            throws MSDKException {
+        try (InputStream in = new FileInputStream(file)) {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte buffer[] = new byte[1024 * 1024];
+            int length;
+            while ((length = in.read(buffer)) > 0)
+                digest.update(buffer, 0, length);
+            final StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest())
+                hash.append(String.format("%02x", b));
+            return hash.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new MSDKException(e);
+        }
+    }
+
+    /**
+     * Reads the index of hash, size, modification time and path of imported
+     * files, keyed by path.
+     */
+    private @Nonnull Map<String, String[]> readIndex() {
+        final Map<String, String[]> index = new LinkedHashMap<>();
+        final File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.isFile())
+            return index;
+        try {
+            for (String line : Files.readAllLines(indexFile.toPath(),
+                    StandardCharsets.UTF_8)) {
+                final String fields[] = line.split("\t", 4);
+                if (fields.length == 4)
+                    index.put(fields[3], fields);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read import cache index " + indexFile, e);
+        }
+        return index;
+    }
+
+    /**
+     * Removes the paths of files that were deleted or changed since they were
+     * hashed.
+     */
+    private void pruneIndex(@Nonnull Map<String, String[]> index) {
+        index.values().removeIf(fields -> {
+            final File file = new File(fields[3]);
+            return !file.isFile()
+                    || !fields[1].equals(String.valueOf(file.length()))
+                    || !fields[2]
+                            .equals(String.valueOf(file.lastModified()));
+        });
+    }
+
+    private void writeIndex(@Nonnull Map<String, String[]> index) {
+        final File indexFile = new File(directory, INDEX_FILE);
+        final List<String> lines = new ArrayList<>();
+        for (String fields[] : index.values())
+            lines.add(String.join("\t", fields));
+        try {
+            Files.createDirectories(directory.toPath());
+            Files.write(indexFile.toPath(), lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Could not write import cache index " + indexFile,
+                    e);
+        }
+    }
+
+    /**
+     * Reads a random access file from its current position on.
+     */
+    private static class RafInputStream extends InputStream {
+
+        private final RandomAccessFile raf;
+
+        private RafInputStream(RandomAccessFile raf) {
+            this.raf = raf;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return raf.read();
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            return raf.read(b, off, len);
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store that reads the data points of scans from a memory-mapped
+ * import cache file. The file is mapped read-only in segments of
+ * ImportCache.SEGMENT_SIZE bytes, and the data points of a scan never cross a
+ * segment boundary unless they are larger than a segment.
+ * 
+ * The scans are bound to their data during restore: after expectScan() is
+ * called, the next m/z and intensity arrays stored by MsScan.setDataPoints()
+ * are not kept, but replaced by references to the cache file. Data stored at
+ * any other time are kept on the heap.
+ * 
+ * The cache files that are read by a store are registered until the store is
+ * disposed, so the import cache does not delete them, see isInUse().
+ */
+class ImportCacheDataPointStore implements DataPointStore {
+
+    /**
+     * Number of undisposed stores per cache file.
+     */
+    private static final Map<File, Integer> openFiles = new HashMap<>();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File cacheFile;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final MappedByteBuffer segments[];
+
+    private final List<Object> storedArrays = new ArrayList<>();
+    private long pendingMzPosition, pendingIntensityPosition;
+    private int pendingSize, pendingArrays = 0;
+    private boolean disposed = false;
+
+    ImportCacheDataPointStore(@Nonnull File cacheFile) throws IOException {
+        this.cacheFile = cacheFile;
+        this.randomAccessFile = new RandomAccessFile(cacheFile, "r");
+        this.channel = randomAccessFile.getChannel();
+        final long numOfSegments = (channel.size()
+                + ImportCache.SEGMENT_SIZE - 1) / ImportCache.SEGMENT_SIZE;
+        this.segments = new MappedByteBuffer[(int) numOfSegments];
+        synchronized (openFiles) {
+            openFiles.merge(cacheFile.getAbsoluteFile(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Returns true if the given cache file is read by a store that has not
+     * been disposed yet.
+     */
+    static boolean isInUse(@Nonnull File cacheFile) {
+        synchronized (openFiles) {
+            return openFiles.containsKey(cacheFile.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * Binds the next m/z and intensity arrays stored in this store to the
+     * given positions of the cache file.
+     */
+    synchronized void expectScan(long mzPosition, long intensityPosition,
+            int size) {
+        pendingMzPosition = mzPosition;
+        pendingIntensityPosition = intensityPosition;
+        pendingSize = size;
+        pendingArrays = 2;
+    }
+
+    @Override
+    public synchronized @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+
+        if (pendingArrays > 0) {
+            pendingArrays--;
+            return (data instanceof double[])
+                    ? new CachedArrayId(pendingMzPosition, pendingSize)
+                    : new CachedArrayId(pendingIntensityPosition,
+                            pendingSize);
+        }
+
+        final Object copy = Array
+                .newInstance(data.getClass().getComponentType(), size);
+        System.arraycopy(data, 0, copy, 0, size);
+        storedArrays.add(copy);
+        return storedArrays.size() - 1;
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object data) {
+
+        if (id instanceof CachedArrayId) {
+            final CachedArrayId arrayId = (CachedArrayId) id;
+            if (data instanceof double[]) {
+                getBuffer(arrayId.position, 8 * arrayId.size).asDoubleBuffer()
+                        .get((double[]) data, 0, arrayId.size);
+            } else {
+                getBuffer(arrayId.position, 4 * arrayId.size).asFloatBuffer()
+                        .get((float[]) data, 0, arrayId.size);
+            }
+            return;
+        }
+
+        final Object stored;
+        synchronized (this) {
+            stored = storedArrays.get(getIndex(id));
+        }
+        if (stored == null)
+            throw new IllegalArgumentException(
+                    "Data with id " + id + " was removed");
+        System.arraycopy(stored, 0, data, 0, Array.getLength(stored));
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        // The cache file is read-only
+        if (!(id instanceof CachedArrayId))
+            storedArrays.set(getIndex(id), null);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (disposed)
+            return;
+        disposed = true;
+        synchronized (openFiles) {
+            openFiles.computeIfPresent(cacheFile.getAbsoluteFile(),
+                    (file, count) -> count > 1 ? count - 1 : null);
+        }
+        storedArrays.clear();
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            logger.warn("Could not close cache file " + cacheFile, e);
+        }
+    }
+
+    /**
+     * Returns a buffer with the given bytes of the file, positioned at their
+     * start. Bytes within one segment are read from the mapped segment.
+     */
+    private @Nonnull ByteBuffer getBuffer(long position, int numOfBytes) {
+        final int segmentIndex = (int) (position / ImportCache.SEGMENT_SIZE);
+        final int segmentPosition = (int) (position % ImportCache.SEGMENT_SIZE);
+        try {
+            if (segmentPosition + numOfBytes <= ImportCache.SEGMENT_SIZE) {
+                final ByteBuffer buffer = getSegment(segmentIndex).duplicate();
+                buffer.position(segmentPosition);
+                return buffer;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(numOfBytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer,
+                        position + buffer.position()) < 0)
+                    throw new IOException("Unexpected end of " + cacheFile);
+            }
+            buffer.flip();
+            return buffer;
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+    }
+
+    private synchronized @Nonnull MappedByteBuffer getSegment(int index)
+            throws IOException {
+        if (segments[index] == null) {
+            final long start = (long) index * ImportCache.SEGMENT_SIZE;
+            final long size = Math.min(ImportCache.SEGMENT_SIZE,
+                    channel.size() - start);
+            segments[index] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    start, size);
+        }
+        return segments[index];
+    }
+
+    private int getIndex(Object id) {
+        if (!(id instanceof Integer))
+            throw new IllegalArgumentException("Invalid data id " + id);
+        return (Integer) id;
+    }
+
+    /**
+     * An array in the cache file.
+     */
+    private static final class CachedArrayId {
+
+        private final long position;
+        private final int size;
+
+        private CachedArrayId(long position, int size) {
+            this.position = position;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.util.Arrays;
+
+import com.google.common.collect.Range;
+
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.ComboParameter;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.PercentParameter;
+import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
+
+/**
+ * Parameters of the centroiding applied while importing. Only the parameters
+ * of the selected method are used, the others keep their defaults so they
+ * never block the import.
+ */
+public class ImportCentroidingParameters extends ParameterSet {
+
+    public static final ComboParameter<ImportCentroidingMethod> method = new ComboParameter<>(
+            "Centroiding method", "Algorithm used to centroid profile scans",
+            "", Arrays.asList(ImportCentroidingMethod.values()),
+            ImportCentroidingMethod.LOCAL_MAXIMA);
+
+    public static final DoubleParameter binSize = new DoubleParameter(
+            "Bin size (m/z)",
+            "Size of each bin in m/z dimension (Binning only)", "", 0.01);
+
+    public static final DoubleRangeParameter mzPeakWidth = new DoubleRangeParameter(
+            "m/z peak width",
+            "Minimum and maximum acceptable peak width in m/z (Recursive threshold only)",
+            "", Range.closed(0.001, 0.1));
+
+    public static final IntegerParameter scaleLevel = new IntegerParameter(
+            "Scale level",
+            "Number of wavelet'scale (coeficients) to use in m/z peak detection (Wavelet only)",
+            "", 3);
+
+    public static final PercentParameter waveletWindow = new PercentParameter(
+            "Wavelet window size (%)",
+            "Size in % of wavelet window to apply in m/z peak detection (Wavelet only)",
+            "", 0.3);
+
+    public ImportCentroidingParameters() {
+        super(new Parameter[] { method, binSize, mzPeakWidth, scaleLevel,
+                waveletWindow });
+    }
+
+}
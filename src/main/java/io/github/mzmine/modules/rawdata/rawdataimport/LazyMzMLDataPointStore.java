@@ -0,0 +1,254 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.mzmine.modules.rawdata.rawdataimport.MzMLStreamReader.MzMLSpectrum;
+
+/**
+ * Data point store that reads the data points of scans on demand from the
+ * original mzML file. The decoded spectra of all lazy files share one LRU
+ * cache of bounded size, so only the scans that are actually used are
+ * decoded, and repeatedly used scans are decoded once.
+ * 
+ * The scans of the file are bound to their spectra during import: after
+ * expectSpectrum() is called, the next m/z and intensity arrays stored by
+ * MsScan.setDataPoints() are not kept, but replaced by references to the
+ * spectrum in the file. Data stored at any other time are kept on the heap.
+ * The decoded arrays must have the size the scans were created with.
+ * 
+ * After dispose(), the file is closed and data bound to spectra can no
+ * longer be loaded.
+ */
+class LazyMzMLDataPointStore implements DataPointStore {
+
+    /**
+     * Maximum size of the decoded spectra in the cache, in bytes.
+     */
+    private static final long CACHE_SIZE = Runtime.getRuntime().maxMemory()
+            / 10;
+
+    private static final Map<SpectrumRef, MzMLSpectrum> cache = new LinkedHashMap<>(
+            16, 0.75f, true);
+    private static long cachedBytes = 0;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull MzMLStreamReader reader;
+    private final List<Object> storedArrays = new ArrayList<>();
+    private SpectrumRef pendingSpectrum;
+    private int pendingArrays = 0;
+
+    // Guarded by the cache lock
+    private boolean disposed = false;
+
+    /**
+     * @param reader
+     *            reader of the mzML file, with the header already read
+     */
+    LazyMzMLDataPointStore(@Nonnull MzMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Binds the next m/z and intensity arrays stored in this store to the
+     * spectrum at the given byte offset of the file.
+     */
+    synchronized void expectSpectrum(long offset) {
+        pendingSpectrum = new SpectrumRef(this, offset);
+        pendingArrays = 2;
+    }
+
+    @Override
+    public synchronized @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+
+        if (pendingArrays > 0) {
+            pendingArrays--;
+            return new LazyArrayId(pendingSpectrum, data instanceof double[],
+                    size);
+        }
+
+        final Object copy = Array
+                .newInstance(data.getClass().getComponentType(), size);
+        System.arraycopy(data, 0, copy, 0, size);
+        storedArrays.add(copy);
+        return storedArrays.size() - 1;
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object data) {
+
+        if (id instanceof LazyArrayId) {
+            final LazyArrayId arrayId = (LazyArrayId) id;
+            final MzMLSpectrum spectrum = getSpectrum(arrayId.spectrum);
+            final int decodedSize = arrayId.mzValues
+                    ? spectrum.mzValues.length
+                    : spectrum.intensityValues.length;
+            if (decodedSize != arrayId.size)
+                throw new MSDKRuntimeException(new MSDKException("Spectrum at "
+                        + "offset " + arrayId.spectrum.offset + " has "
+                        + decodedSize + " data points instead of "
+                        + arrayId.size));
+            if (arrayId.mzValues)
+                System.arraycopy(spectrum.mzValues, 0, data, 0,
+                        spectrum.numOfDataPoints);
+            else
+                System.arraycopy(spectrum.intensityValues, 0, data, 0,
+                        spectrum.numOfDataPoints);
+            return;
+        }
+
+        final Object stored;
+        synchronized (this) {
+            stored = storedArrays.get(getIndex(id));
+        }
+        if (stored == null)
+            throw new IllegalArgumentException(
+                    "Data with id " + id + " was removed");
+        System.arraycopy(stored, 0, data, 0, Array.getLength(stored));
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        // Spectra in the file are only evicted from the cache
+        if (!(id instanceof LazyArrayId))
+            storedArrays.set(getIndex(id), null);
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (cache) {
+            // Spectra being decoded are not added to the cache any more
+            disposed = true;
+            final Iterator<Map.Entry<SpectrumRef, MzMLSpectrum>> i = cache
+                    .entrySet().iterator();
+            while (i.hasNext()) {
+                final Map.Entry<SpectrumRef, MzMLSpectrum> entry = i.next();
+                if (entry.getKey().store == this) {
+                    cachedBytes -= getByteSize(entry.getValue());
+                    i.remove();
+                }
+            }
+        }
+        synchronized (this) {
+            storedArrays.clear();
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            logger.warn("Could not close the raw data file", e);
+        }
+    }
+
+    private @Nonnull MzMLSpectrum getSpectrum(@Nonnull SpectrumRef ref) {
+
+        synchronized (cache) {
+            checkNotDisposed();
+            final MzMLSpectrum spectrum = cache.get(ref);
+            if (spectrum != null)
+                return spectrum;
+        }
+
+        // Decode outside of the cache lock, so other files are not blocked
+        final MzMLSpectrum spectrum;
+        try {
+            spectrum = reader.readSpectrumAt(ref.offset, true);
+        } catch (MSDKException e) {
+            throw new MSDKRuntimeException(e);
+        }
+
+        synchronized (cache) {
+            checkNotDisposed();
+            if (cache.put(ref, spectrum) == null)
+                cachedBytes += getByteSize(spectrum);
+            final Iterator<MzMLSpectrum> i = cache.values().iterator();
+            while (cachedBytes > CACHE_SIZE && cache.size() > 1) {
+                cachedBytes -= getByteSize(i.next());
+                i.remove();
+            }
+        }
+        return spectrum;
+    }
+
+    private void checkNotDisposed() {
+        if (disposed)
+            throw new IllegalStateException(
+                    "The data store of the raw data file was disposed");
+    }
+
+    private static long getByteSize(@Nonnull MzMLSpectrum spectrum) {
+        return 8L * spectrum.mzValues.length
+                + 4L * spectrum.intensityValues.length;
+    }
+
+    private int getIndex(Object id) {
+        if (!(id instanceof Integer))
+            throw new IllegalArgumentException("Invalid data id " + id);
+        return (Integer) id;
+    }
+
+    /**
+     * A spectrum in the mzML file of a store.
+     */
+    private static final class SpectrumRef {
+
+        private final LazyMzMLDataPointStore store;
+        private final long offset;
+
+        private SpectrumRef(LazyMzMLDataPointStore store, long offset) {
+            this.store = store;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * The m/z or intensity array of a spectrum in the mzML file.
+     */
+    private static final class LazyArrayId {
+
+        private final SpectrumRef spectrum;
+        private final boolean mzValues;
+        private final int size;
+
+        private LazyArrayId(SpectrumRef spectrum, boolean mzValues,
+                int size) {
+            this.spectrum = spectrum;
+            this.mzValues = mzValues;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.files.FileType;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.io.RawDataFileImportMethod;
+import io.github.mzmine.modules.rawdata.rawdataimport.MzMLStreamReader.MzMLSpectrum;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
+
+/**
+ * Imports an indexed mzML file lazily. Only the attributes of the scans and
+ * the byte offsets of the spectra are read during import; the data points are
+ * read from the file when a scan is used, see LazyMzMLDataPointStore.
+ * 
+ * Files without an index, or with data points in an encoding that
+ * MzMLStreamReader cannot decode, are imported completely into a temporary
+ * file store.
+ */
+public class LazyMzMLImportMethod implements MSDKMethod<RawDataFile> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File fileName;
+
+    private RawDataFileImportMethod fallbackMethod;
+    private RawDataFile result;
+    private int processedScans = 0, totalScans = 0;
+    private boolean canceled = false;
+
+    public LazyMzMLImportMethod(@Nonnull File fileName) {
+        this.fileName = fileName;
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+
+        final long offsets[] = MzMLStreamReader.readSpectrumOffsets(fileName);
+        if (offsets == null || offsets.length == 0) {
+            logger.debug(fileName + " has no index, importing all data");
+            return importAllData();
+        }
+        totalScans = offsets.length;
+
+        final MzMLStreamReader reader = new MzMLStreamReader(fileName);
+        final LazyMzMLDataPointStore dataStore;
+        try {
+            reader.readHeader();
+            // Check the encoding of the data points before any scan is added
+            reader.readSpectrumAt(offsets[0], true);
+            dataStore = new LazyMzMLDataPointStore(reader);
+        } catch (MSDKException e) {
+            closeQuietly(reader);
+            if (!MzMLStreamReader.isUnsupportedEncoding(e))
+                throw e;
+            logger.debug(e.getCause().getMessage() + ", importing all data");
+            return importAllData();
+        }
+
+        final RawDataFile rawDataFile = MSDKObjectBuilder.getRawDataFile(
+                fileName.getName(), fileName, FileType.MZML, dataStore);
+
+        // The placeholder data points of the scans are not stored
+        final PlaceholderDataPoints placeholders = new PlaceholderDataPoints();
+
+        try {
+            for (long offset : offsets) {
+                if (canceled) {
+                    rawDataFile.dispose();
+                    return null;
+                }
+
+                MzMLSpectrum spectrum = reader.readSpectrumAt(offset, false);
+                if (spectrum.numOfDataPoints > 0
+                        && (spectrum.lowestMz == null
+                                || spectrum.highestMz == null
+                                || spectrum.totalIonCurrent == null)) {
+                    // The attributes are optional, take them from the data
+                    spectrum = reader.readSpectrumAt(offset, true);
+                    setRangeAndTic(spectrum);
+                }
+
+                final int size = spectrum.numOfDataPoints;
+                if (size > 0)
+                    placeholders.fill(size, spectrum.lowestMz,
+                            spectrum.highestMz, spectrum.totalIonCurrent);
+
+                dataStore.expectSpectrum(offset);
+                rawDataFile.addScan(spectrum.createScan(dataStore,
+                        placeholders.getMzValues(),
+                        placeholders.getIntensityValues(), size));
+                processedScans++;
+            }
+        } catch (MSDKException e) {
+            rawDataFile.dispose();
+            throw e;
+        }
+
+        logger.debug("Indexed " + processedScans + " scans of " + fileName);
+        result = rawDataFile;
+        return result;
+    }
+
+    /**
+     * Imports all data points of the file into a temporary file store owned
+     * by the imported file.
+     */
+    private RawDataFile importAllData() throws MSDKException {
+        final DataPointStore dataStore = DataPointStoreUtil
+                .createTmpFileDataStore();
+        fallbackMethod = new RawDataFileImportMethod(fileName, dataStore);
+        result = fallbackMethod.execute();
+        if (result != null)
+            TmpStorageManager.setOwner(dataStore, result);
+        return result;
+    }
+
+    private void setRangeAndTic(@Nonnull MzMLSpectrum spectrum) {
+        final int size = spectrum.numOfDataPoints;
+        if (size == 0)
+            return;
+        double lowest = Double.MAX_VALUE, highest = -Double.MAX_VALUE;
+        float tic = 0f;
+        for (int i = 0; i < size; i++) {
+            lowest = Math.min(lowest, spectrum.mzValues[i]);
+            highest = Math.max(highest, spectrum.mzValues[i]);
+            tic += spectrum.intensityValues[i];
+        }
+        spectrum.lowestMz = lowest;
+        spectrum.highestMz = highest;
+        spectrum.totalIonCurrent = tic;
+    }
+
+    private void closeQuietly(@Nonnull MzMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            logger.warn("Could not close " + fileName, e);
+        }
+    }
+
+    @Override
+    public Float getFinishedPercentage() {
+        final RawDataFileImportMethod method = fallbackMethod;
+        if (method != null)
+            return method.getFinishedPercentage();
+        if (totalScans == 0)
+            return null;
+        return (float) processedScans / totalScans;
+    }
+
+    @Override
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        final RawDataFileImportMethod method = fallbackMethod;
+        if (method != null)
+            method.cancel();
+    }
+
+}
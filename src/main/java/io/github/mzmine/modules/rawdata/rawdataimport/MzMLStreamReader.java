@@ -0,0 +1,682 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Range;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.msspectra.MsSpectrumType;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsFunction;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+
+/**
+ * Reads the spectra of an mzML file without keeping the document in memory.
+ * Only the attributes needed to create MsScan objects are parsed.
+ * 
+ * The spectra can be read one after another from the beginning of the file,
+ * or individually from their byte offsets, which are listed in the index of
+ * indexed mzML files.
+ */
+class MzMLStreamReader implements Closeable {
+
+    // Spectrum attributes
+    private static final String CV_MS_LEVEL = "MS:1000511";
+    private static final String CV_POSITIVE_SCAN = "MS:1000130";
+    private static final String CV_NEGATIVE_SCAN = "MS:1000129";
+    private static final String CV_CENTROID_SPECTRUM = "MS:1000127";
+    private static final String CV_PROFILE_SPECTRUM = "MS:1000128";
+    private static final String CV_SCAN_START_TIME = "MS:1000016";
+    private static final String CV_FILTER_STRING = "MS:1000512";
+    private static final String CV_LOWEST_MZ = "MS:1000528";
+    private static final String CV_HIGHEST_MZ = "MS:1000527";
+    private static final String CV_TIC = "MS:1000285";
+    private static final String UO_MINUTE = "UO:0000031";
+
+    // Precursor attributes
+    private static final String CV_ISOLATION_TARGET = "MS:1000827";
+    private static final String CV_ISOLATION_LOWER_OFFSET = "MS:1000828";
+    private static final String CV_ISOLATION_UPPER_OFFSET = "MS:1000829";
+    private static final String CV_SELECTED_ION_MZ = "MS:1000744";
+    private static final String CV_CHARGE_STATE = "MS:1000041";
+
+    // Binary data array attributes
+    private static final String CV_MZ_ARRAY = "MS:1000514";
+    private static final String CV_INTENSITY_ARRAY = "MS:1000515";
+    private static final String CV_FLOAT_32 = "MS:1000521";
+    private static final String CV_FLOAT_64 = "MS:1000523";
+    private static final String CV_ZLIB_COMPRESSION = "MS:1000574";
+
+    // Encodings of the binary data that cannot be decoded here
+    private static final Set<String> CV_UNSUPPORTED_ENCODINGS = ImmutableSet
+            .of("MS:1000519", // 32-bit integer
+                    "MS:1000522", // 64-bit integer
+                    "MS:1002312", // MS-Numpress linear prediction
+                    "MS:1002313", // MS-Numpress positive integer
+                    "MS:1002314", // MS-Numpress short logged float
+                    "MS:1002746", // MS-Numpress linear prediction, zlib
+                    "MS:1002747", // MS-Numpress positive integer, zlib
+                    "MS:1002748"); // MS-Numpress short logged float, zlib
+
+    private static final Pattern SCAN_NUMBER_PATTERN = Pattern
+            .compile("scan=(\\d+)");
+    private static final Pattern INDEX_LIST_OFFSET_PATTERN = Pattern
+            .compile("<indexListOffset>\\s*(\\d+)\\s*</indexListOffset>");
+
+    /**
+     * A spectrum as read from the file.
+     */
+    static class MzMLSpectrum {
+        int scanNumber;
+        Integer msLevel;
+        PolarityType polarity = PolarityType.UNKNOWN;
+        MsSpectrumType spectrumType;
+        Float retentionTime;
+        String scanDefinition;
+        Double lowestMz, highestMz;
+        Float totalIonCurrent;
+        Double precursorMz, isolationTarget, isolationLowerOffset,
+                isolationUpperOffset;
+        Integer precursorCharge;
+        double mzValues[] = new double[0];
+        float intensityValues[] = new float[0];
+        int numOfDataPoints;
+
+        /**
+         * Creates a scan with the attributes of this spectrum and the given
+         * data points.
+         */
+        @Nonnull
+        MsScan createScan(@Nonnull DataPointStore dataStore,
+                @Nonnull double mzValues[], @Nonnull float intensityValues[],
+                int size) {
+            final MsFunction msFunction = MSDKObjectBuilder.getMsFunction(
+                    MsFunction.DEFAULT_MS_FUNCTION_NAME, msLevel);
+            final MsScan scan = MSDKObjectBuilder.getMsScan(dataStore,
+                    scanNumber, msFunction);
+            scan.setPolarity(polarity);
+            scan.setScanDefinition(scanDefinition);
+            if (spectrumType != null)
+                scan.setSpectrumType(spectrumType);
+            if (retentionTime != null) {
+                final ChromatographyInfo chromInfo = MSDKObjectBuilder
+                        .getChromatographyInfo1D(SeparationType.LC,
+                                retentionTime);
+                scan.setChromatographyInfo(chromInfo);
+            }
+            if (precursorMz != null || isolationTarget != null) {
+                final double target = isolationTarget != null
+                        ? isolationTarget : precursorMz;
+                final Range<Double> isolationRange = Range.closed(
+                        target - (isolationLowerOffset == null ? 0
+                                : isolationLowerOffset),
+                        target + (isolationUpperOffset == null ? 0
+                                : isolationUpperOffset));
+                final IsolationInfo isolation = MSDKObjectBuilder
+                        .getIsolationInfo(isolationRange, null, precursorMz,
+                                precursorCharge, null);
+                scan.getIsolations().add(isolation);
+            }
+            scan.setDataPoints(mzValues, intensityValues, size);
+            return scan;
+        }
+    }
+
+    private final File file;
+    private final long fileSize;
+    private final Map<String, List<String[]>> paramGroups = new HashMap<>();
+    private final Inflater inflater = new Inflater();
+    private final XMLInputFactory xmlInputFactory = XMLInputFactory
+            .newInstance();
+
+    private InputStream inputStream;
+    private XMLStreamReader reader;
+    private RandomAccessFile randomAccessFile;
+    private boolean finished = false, closed = false;
+
+    // State of the binary data array being parsed
+    private boolean mzArray, intensityArray, doublePrecision, compressed;
+    private String unsupportedEncoding;
+
+    /**
+     * Thrown when the data points of a spectrum are encoded in a way this
+     * reader cannot decode.
+     */
+    static class UnsupportedBinaryDataException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedBinaryDataException(@Nonnull String message) {
+            super(message);
+        }
+    }
+
+    MzMLStreamReader(@Nonnull File file) throws MSDKException {
+        this.file = file;
+        this.fileSize = file.length();
+        try {
+            this.inputStream = new BufferedInputStream(
+                    new FileInputStream(file));
+            this.reader = xmlInputFactory.createXMLStreamReader(inputStream);
+        } catch (IOException | XMLStreamException e) {
+            throw new MSDKException(e);
+        }
+    }
+
+    /**
+     * Returns true if the given file looks like an mzML file.
+     */
+    static boolean isMzML(@Nonnull File file) {
+        return file.getName().toLowerCase().endsWith(".mzml");
+    }
+
+    /**
+     * Returns the byte offsets of the spectra listed in the index of an
+     * indexed mzML file, or null if the file has no index.
+     */
+    static @Nullable long[] readSpectrumOffsets(@Nonnull File file)
+            throws MSDKException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+            // The offset of the index is written at the end of the file
+            final int tailSize = (int) Math.min(raf.length(), 4096);
+            final byte tail[] = new byte[tailSize];
+            raf.seek(raf.length() - tailSize);
+            raf.readFully(tail);
+            final Matcher matcher = INDEX_LIST_OFFSET_PATTERN
+                    .matcher(new String(tail, StandardCharsets.UTF_8));
+            if (!matcher.find())
+                return null;
+            final long indexOffset = Long.parseLong(matcher.group(1));
+
+            final XMLStreamReader indexReader = XMLInputFactory.newInstance()
+                    .createXMLStreamReader(new BufferedInputStream(
+                            new ChannelInputStream(raf.getChannel(),
+                                    indexOffset)));
+            long offsets[] = new long[1024];
+            int numOfOffsets = 0;
+            boolean spectrumIndex = false;
+            while (indexReader.hasNext()) {
+                final int event = indexReader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (indexReader.getLocalName().equals("indexList"))
+                        break;
+                    if (indexReader.getLocalName().equals("index"))
+                        spectrumIndex = false;
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                if (indexReader.getLocalName().equals("index")) {
+                    spectrumIndex = "spectrum".equals(
+                            indexReader.getAttributeValue(null, "name"));
+                } else if (spectrumIndex
+                        && indexReader.getLocalName().equals("offset")) {
+                    if (numOfOffsets == offsets.length)
+                        offsets = Arrays.copyOf(offsets, numOfOffsets * 2);
+                    offsets[numOfOffsets++] = Long
+                            .parseLong(indexReader.getElementText().trim());
+                }
+            }
+            indexReader.close();
+            return Arrays.copyOf(offsets, numOfOffsets);
+        } catch (IOException | XMLStreamException
+                | NumberFormatException e) {
+            throw new MSDKException(e);
+        }
+    }
+
+    /**
+     * Returns the fraction of the file that has been read, for progress
+     * reporting.
+     */
+    float getProgress() {
+        if (finished || fileSize == 0)
+            return 1f;
+        final long offset = reader.getLocation().getCharacterOffset();
+        return offset < 0 ? 0f : Math.min(1f, (float) offset / fileSize);
+    }
+
+    /**
+     * Reads the part of the file that precedes the spectra, which may define
+     * parameter groups referenced by the spectra. Must be called before
+     * reading spectra with readSpectrumAt().
+     */
+    void readHeader() throws MSDKException {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                if (reader.getLocalName().equals("referenceableParamGroup"))
+                    readParamGroup();
+                if (reader.getLocalName().equals("run"))
+                    break;
+            }
+
+            // The spectra are read from their offsets from now on
+            finished = true;
+            reader.close();
+            inputStream.close();
+        } catch (XMLStreamException | IOException e) {
+            throw new MSDKException(e);
+        }
+    }
+
+    /**
+     * Reads the next spectrum, or returns null if there are no more spectra.
+     */
+    @Nullable
+    MzMLSpectrum next() throws MSDKException {
+        if (finished)
+            return null;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                switch (reader.getLocalName()) {
+                case "referenceableParamGroup":
+                    readParamGroup();
+                    break;
+                case "spectrum":
+                    return readSpectrum(reader, true);
+                case "chromatogramList":
+                    // Spectra always precede the chromatograms
+                    finished = true;
+                    return null;
+                }
+            }
+            finished = true;
+            return null;
+        } catch (XMLStreamException | IOException | DataFormatException e) {
+            throw new MSDKException(e);
+        }
+    }
+
+    /**
+     * Reads the spectrum that starts at the given byte offset. If readData is
+     * false, only the attributes of the spectrum are read. The reader must
+     * not be closed.
+     */
+    synchronized @Nonnull MzMLSpectrum readSpectrumAt(long offset,
+            boolean readData) throws MSDKException {
+        if (closed)
+            throw new MSDKException("The reader of " + file + " is closed");
+        try {
+            if (randomAccessFile == null)
+                randomAccessFile = new RandomAccessFile(file, "r");
+            final XMLStreamReader spectrumReader = xmlInputFactory
+                    .createXMLStreamReader(new BufferedInputStream(
+                            new ChannelInputStream(
+                                    randomAccessFile.getChannel(), offset)));
+            try {
+                while (spectrumReader.hasNext()) {
+                    if ((spectrumReader.next() == XMLStreamConstants.START_ELEMENT)
+                            && spectrumReader.getLocalName()
+                                    .equals("spectrum"))
+                        return readSpectrum(spectrumReader, readData);
+                }
+                throw new MSDKException(
+                        "No spectrum at offset " + offset + " of " + file);
+            } finally {
+                spectrumReader.close();
+            }
+        } catch (XMLStreamException | IOException | DataFormatException e) {
+            throw new MSDKException(e);
+        }
+    }
+
+    /**
+     * Returns true if the given exception was caused by data points encoded
+     * in a way this reader cannot decode.
+     */
+    static boolean isUnsupportedEncoding(@Nonnull MSDKException e) {
+        return e.getCause() instanceof UnsupportedBinaryDataException;
+    }
+
+    private void readParamGroup() throws XMLStreamException {
+        final String id = reader.getAttributeValue(null, "id");
+        final List<String[]> params = new ArrayList<>();
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT
+                    && reader.getLocalName().equals("cvParam"))
+                params.add(readCvParam(reader));
+            if (event == XMLStreamConstants.END_ELEMENT && reader
+                    .getLocalName().equals("referenceableParamGroup"))
+                break;
+        }
+        paramGroups.put(id, params);
+    }
+
+    private @Nonnull MzMLSpectrum readSpectrum(@Nonnull XMLStreamReader xml,
+            boolean readData)
+            throws XMLStreamException, IOException, DataFormatException {
+
+        final MzMLSpectrum spectrum = new MzMLSpectrum();
+
+        final String index = xml.getAttributeValue(null, "index");
+        final String id = xml.getAttributeValue(null, "id");
+        final Matcher matcher = SCAN_NUMBER_PATTERN
+                .matcher(id == null ? "" : id);
+        if (matcher.find())
+            spectrum.scanNumber = Integer.parseInt(matcher.group(1));
+        else if (index != null)
+            spectrum.scanNumber = Integer.parseInt(index) + 1;
+        final String arrayLength = xml.getAttributeValue(null,
+                "defaultArrayLength");
+        if (arrayLength != null)
+            spectrum.numOfDataPoints = Integer.parseInt(arrayLength);
+
+        boolean inPrecursor = false, inBinaryDataArray = false;
+        while (xml.hasNext()) {
+            final int event = xml.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                switch (xml.getLocalName()) {
+                case "spectrum":
+                    return spectrum;
+                case "precursor":
+                    inPrecursor = false;
+                    break;
+                case "binaryDataArray":
+                    inBinaryDataArray = false;
+                    break;
+                }
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT)
+                continue;
+
+            switch (xml.getLocalName()) {
+            case "precursor":
+                inPrecursor = true;
+                break;
+            case "binaryDataArrayList":
+                if (!readData)
+                    return spectrum;
+                break;
+            case "binaryDataArray":
+                inBinaryDataArray = true;
+                mzArray = intensityArray = compressed = false;
+                doublePrecision = true;
+                unsupportedEncoding = null;
+                break;
+            case "cvParam":
+                applyCvParam(spectrum, readCvParam(xml), inPrecursor,
+                        inBinaryDataArray);
+                break;
+            case "referenceableParamGroupRef":
+                final List<String[]> params = paramGroups
+                        .get(xml.getAttributeValue(null, "ref"));
+                if (params != null) {
+                    for (String param[] : params)
+                        applyCvParam(spectrum, param, inPrecursor,
+                                inBinaryDataArray);
+                }
+                break;
+            case "binary":
+                readBinary(spectrum, xml.getElementText());
+                inBinaryDataArray = false;
+                break;
+            }
+        }
+
+        return spectrum;
+    }
+
+    private static @Nonnull String[] readCvParam(
+            @Nonnull XMLStreamReader xml) {
+        return new String[] { xml.getAttributeValue(null, "accession"),
+                xml.getAttributeValue(null, "value"),
+                xml.getAttributeValue(null, "unitAccession") };
+    }
+
+    private void applyCvParam(@Nonnull MzMLSpectrum spectrum,
+            @Nonnull String param[], boolean inPrecursor,
+            boolean inBinaryDataArray) {
+        final String accession = param[0], value = param[1];
+        if (accession == null)
+            return;
+
+        if (inBinaryDataArray) {
+            switch (accession) {
+            case CV_MZ_ARRAY:
+                mzArray = true;
+                break;
+            case CV_INTENSITY_ARRAY:
+                intensityArray = true;
+                break;
+            case CV_FLOAT_32:
+                doublePrecision = false;
+                break;
+            case CV_FLOAT_64:
+                doublePrecision = true;
+                break;
+            case CV_ZLIB_COMPRESSION:
+                compressed = true;
+                break;
+            default:
+                if (CV_UNSUPPORTED_ENCODINGS.contains(accession))
+                    unsupportedEncoding = accession;
+                break;
+            }
+            return;
+        }
+
+        // The attributes of the precursor must not be mixed up with the
+        // attributes of the spectrum
+        if (inPrecursor) {
+            switch (accession) {
+            case CV_ISOLATION_TARGET:
+                spectrum.isolationTarget = Double.valueOf(value);
+                break;
+            case CV_ISOLATION_LOWER_OFFSET:
+                spectrum.isolationLowerOffset = Double.valueOf(value);
+                break;
+            case CV_ISOLATION_UPPER_OFFSET:
+                spectrum.isolationUpperOffset = Double.valueOf(value);
+                break;
+            case CV_SELECTED_ION_MZ:
+                if (spectrum.precursorMz == null)
+                    spectrum.precursorMz = Double.valueOf(value);
+                break;
+            case CV_CHARGE_STATE:
+                if (spectrum.precursorCharge == null)
+                    spectrum.precursorCharge = Integer.valueOf(value);
+                break;
+            }
+            return;
+        }
+
+        switch (accession) {
+        case CV_MS_LEVEL:
+            spectrum.msLevel = Integer.valueOf(value);
+            break;
+        case CV_POSITIVE_SCAN:
+            spectrum.polarity = PolarityType.POSITIVE;
+            break;
+        case CV_NEGATIVE_SCAN:
+            spectrum.polarity = PolarityType.NEGATIVE;
+            break;
+        case CV_CENTROID_SPECTRUM:
+            spectrum.spectrumType = MsSpectrumType.CENTROIDED;
+            break;
+        case CV_PROFILE_SPECTRUM:
+            spectrum.spectrumType = MsSpectrumType.PROFILE;
+            break;
+        case CV_SCAN_START_TIME:
+            float rt = Float.parseFloat(value);
+            if (UO_MINUTE.equals(param[2]))
+                rt *= 60f;
+            spectrum.retentionTime = rt;
+            break;
+        case CV_FILTER_STRING:
+            spectrum.scanDefinition = value;
+            break;
+        case CV_LOWEST_MZ:
+            spectrum.lowestMz = Double.valueOf(value);
+            break;
+        case CV_HIGHEST_MZ:
+            spectrum.highestMz = Double.valueOf(value);
+            break;
+        case CV_TIC:
+            spectrum.totalIonCurrent = Float.valueOf(value);
+            break;
+        }
+    }
+
+    private void readBinary(@Nonnull MzMLSpectrum spectrum,
+            @Nonnull String text) throws IOException, DataFormatException {
+
+        if (!mzArray && !intensityArray)
+            return;
+        if (unsupportedEncoding != null)
+            throw new UnsupportedBinaryDataException("Binary data encoding "
+                    + unsupportedEncoding + " of spectrum "
+                    + spectrum.scanNumber + " in " + file
+                    + " is not supported");
+
+        byte bytes[] = Base64.getMimeDecoder().decode(text);
+        if (compressed)
+            bytes = inflate(bytes);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        final int size = bytes.length / (doublePrecision ? 8 : 4);
+
+        if (mzArray) {
+            final double mzValues[] = new double[size];
+            for (int i = 0; i < size; i++)
+                mzValues[i] = doublePrecision ? buffer.getDouble()
+                        : buffer.getFloat();
+            spectrum.mzValues = mzValues;
+        } else {
+            final float intensityValues[] = new float[size];
+            for (int i = 0; i < size; i++)
+                intensityValues[i] = doublePrecision
+                        ? (float) buffer.getDouble() : buffer.getFloat();
+            spectrum.intensityValues = intensityValues;
+        }
+        spectrum.numOfDataPoints = Math.min(spectrum.mzValues.length,
+                spectrum.intensityValues.length);
+    }
+
+    private @Nonnull byte[] inflate(@Nonnull byte compressed[])
+            throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                compressed.length * 4);
+        final byte buffer[] = new byte[65536];
+        while (!inflater.finished()) {
+            final int length = inflater.inflate(buffer);
+            if (length == 0 && (inflater.needsInput()
+                    || inflater.needsDictionary()))
+                break;
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        inflater.end();
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            inputStream.close();
+            if (randomAccessFile != null)
+                randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Reads a file channel from the given position on, without changing the
+     * position of the channel.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        private ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte b[] = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            final int read = channel.read(ByteBuffer.wrap(b, off, len),
+                    position);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Placeholder data points for scans whose real data points are bound to a
+ * data store location instead of being stored. The placeholders reproduce the
+ * m/z range and TIC of the scan, which MsScan.setDataPoints() derives from
+ * the data points.
+ */
+class PlaceholderDataPoints {
+
+    private double mzValues[] = new double[0];
+    private float intensityValues[] = new float[0];
+
+    /**
+     * Fills the first size placeholder data points.
+     */
+    void fill(int size, double lowestMz, double highestMz,
+            float totalIonCurrent) {
+        if (mzValues.length < size) {
+            mzValues = new double[size];
+            intensityValues = new float[size];
+        }
+        if (size == 0)
+            return;
+        Arrays.fill(mzValues, 0, size, lowestMz);
+        mzValues[size - 1] = highestMz;
+        Arrays.fill(intensityValues, 0, size, totalIonCurrent / size);
+    }
+
+    @Nonnull
+    double[] getMzValues() {
+        return mzValues;
+    }
+
+    @Nonnull
+    float[] getIntensityValues() {
+        return intensityValues;
+    }
+
+}
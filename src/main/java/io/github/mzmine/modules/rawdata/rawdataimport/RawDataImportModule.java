@@ -31,15 +31,30 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Strings;
 
+import io.github.msdk.MSDKMethod;
 import io.github.msdk.datamodel.datastore.DataPointStore;
-import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.msdk.io.RawDataFileImportMethod;
+import io.github.msdk.rawdata.centroiding.BinningCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.ExactMassCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.LocalMaximaCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.RecursiveCentroidingAlgorithm;
+import io.github.msdk.rawdata.centroiding.WaveletCentroidingAlgorithm;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.gui.preferences.ImportCacheSettings;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
 import io.github.mzmine.project.MZmineProject;
 import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.taskcontrol.MemoryEstimator;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.util.ScanIndex;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 import javafx.concurrent.Task;
 
 /**
@@ -74,6 +89,16 @@ public class RawDataImportModule implements MZmineProcessingModule {
                 .getParameter(RawDataImportParameters.removePrefix).getValue();
         final String removeSuffix = parameters
                 .getParameter(RawDataImportParameters.removeSuffix).getValue();
+        final OptionalModuleParameter centroiding = parameters
+                .getParameter(RawDataImportParameters.centroiding);
+        final boolean centroid = Boolean.TRUE.equals(centroiding.getValue());
+        final RawDataImportMode importMode = parameters
+                .getParameter(RawDataImportParameters.importMode).getValue();
+        final String scanIndexMode = importMode.name()
+                + (centroid ? " centroided" : "");
+        final OptionalModuleParameter importCache = MZmineCore
+                .getConfiguration().getPreferences()
+                .getParameter(MZminePreferences.importCache);
 
         if (fileNames == null) {
             logger.warn("Raw data import module started with no filenames");
@@ -87,18 +112,58 @@ public class RawDataImportModule implements MZmineProcessingModule {
                 continue;
             }
 
-            DataPointStore dataStore = DataPointStoreFactory
-                    .getTmpFileDataStore();
-
-            RawDataFileImportMethod method = new RawDataFileImportMethod(
-                    fileName, dataStore);
+            // Indexed mzML files can be read on demand, other files are
+            // loaded into a data store
+            final boolean lazy = !centroid
+                    && (importMode == RawDataImportMode.TRANSPARENT)
+                    && MzMLStreamReader.isMzML(fileName);
+
+            final DataPointStore dataStore;
+            final MSDKMethod<RawDataFile> method;
+            if (lazy) {
+                dataStore = null;
+                method = new LazyMzMLImportMethod(fileName);
+            } else if (centroid) {
+                dataStore = createDataStore(importMode);
+                MSDKCentroidingAlgorithm algorithm = createCentroidingAlgorithm(
+                        centroiding.getEmbeddedParameters(), dataStore);
+                method = new StreamingCentroidingImportMethod(fileName,
+                        algorithm, dataStore);
+            } else if (Boolean.TRUE.equals(importCache.getValue())) {
+                // The data store is only created on a cache miss, the
+                // method registers its owner
+                dataStore = null;
+                final ParameterSet cacheSettings = importCache
+                        .getEmbeddedParameters();
+                final File cacheDirectory = new File(cacheSettings
+                        .getParameter(ImportCacheSettings.cacheDirectory)
+                        .getValue());
+                final long maxCacheSize = cacheSettings
+                        .getParameter(ImportCacheSettings.maxCacheSize)
+                        .getValue() * 1024L * 1024L * 1024L;
+                method = new CachedImportMethod(fileName,
+                        () -> createDataStore(importMode), cacheDirectory,
+                        maxCacheSize);
+            } else {
+                dataStore = createDataStore(importMode);
+                method = new RawDataFileImportMethod(fileName, dataStore);
+            }
             MSDKTask newTask = new MSDKTask("Importing raw data file",
                     fileName.getName(), method);
+            if (!lazy)
+                newTask.setEstimatedMemory(
+                        MemoryEstimator.estimateImport(fileName));
             newTask.setOnSucceeded(e -> {
                 RawDataFile rawDataFile = method.getResult();
                 if (rawDataFile == null)
                     return;
 
+                // Build or load the scan index in the background
+                MZmineCore.getTaskExecutor().execute(
+                        () -> ScanIndex.createIndex(rawDataFile, fileName,
+                                scanIndexMode),
+                        TaskPriority.NORMAL);
+
                 // Remove common prefix
                 if (!Strings.isNullOrEmpty(removePrefix)) {
                     String name = rawDataFile.getName();
@@ -121,6 +186,8 @@ public class RawDataImportModule implements MZmineProcessingModule {
                     rawDataFile.setName(name);
                 }
 
+                if (dataStore != null)
+                    TmpStorageManager.setOwner(dataStore, rawDataFile);
                 project.addFile(rawDataFile);
             });
             tasks.add(newTask);
@@ -129,6 +196,45 @@ public class RawDataImportModule implements MZmineProcessingModule {
 
     }
 
+    private @Nonnull DataPointStore createDataStore(
+            @Nonnull RawDataImportMode importMode) {
+        if (importMode == RawDataImportMode.LOAD_MEMORY)
+            return DataPointStoreUtil.createMemoryDataStore();
+        return DataPointStoreUtil.createTmpFileDataStore();
+    }
+
+    private @Nonnull MSDKCentroidingAlgorithm createCentroidingAlgorithm(
+            @Nonnull ParameterSet parameters,
+            @Nonnull DataPointStore dataStore) {
+        final ImportCentroidingMethod centroidingMethod = parameters
+                .getParameter(ImportCentroidingParameters.method).getValue();
+        switch (centroidingMethod) {
+        case BINNING:
+            return new BinningCentroidingAlgorithm(dataStore, parameters
+                    .getParameter(ImportCentroidingParameters.binSize)
+                    .getValue());
+        case EXACT_MASS:
+            return new ExactMassCentroidingAlgorithm(dataStore);
+        case RECURSIVE:
+            return new RecursiveCentroidingAlgorithm(dataStore, parameters
+                    .getParameter(ImportCentroidingParameters.mzPeakWidth)
+                    .getValue());
+        case WAVELET:
+            return new WaveletCentroidingAlgorithm(dataStore,
+                    parameters
+                            .getParameter(
+                                    ImportCentroidingParameters.scaleLevel)
+                            .getValue(),
+                    parameters
+                            .getParameter(
+                                    ImportCentroidingParameters.waveletWindow)
+                            .getValue());
+        case LOCAL_MAXIMA:
+        default:
+            return new LocalMaximaCentroidingAlgorithm(dataStore);
+        }
+    }
+
     @Override
     public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
         return RawDataImportParameters.class;
@@ -31,6 +31,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.ParameterSheetView;
 import io.github.mzmine.parameters.ParameterValidator;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNamesParameter;
 import io.github.mzmine.util.FileNameUtil;
@@ -63,6 +64,11 @@ public class RawDataImportParameters extends ParameterSet {
             "Mode", Arrays.asList(RawDataImportMode.values()),
             RawDataImportMode.TRANSPARENT);
 
+    public static final OptionalModuleParameter centroiding = new OptionalModuleParameter(
+            "Centroid while importing",
+            "Centroid profile scans as they are read, so that only the centroided data points are stored",
+            "Mode", new ImportCentroidingParameters());
+
     public static final StringParameter removePrefix = new StringParameter(
             "Remove prefix", "Prefix to be removed from file names",
             "Prefixes");
@@ -73,7 +79,7 @@ public class RawDataImportParameters extends ParameterSet {
 
     public RawDataImportParameters() {
 
-        super(fileNames, importMode, removePrefix, removeSuffix);
+        super(fileNames, importMode, centroiding, removePrefix, removeSuffix);
 
         removePrefix.setAutoSetAction(e -> {
 
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.rawdataimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.msdk.datamodel.files.FileType;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.msspectra.MsSpectrumType;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.io.RawDataFileImportMethod;
+import io.github.msdk.rawdata.centroiding.MSDKCentroidingAlgorithm;
+import io.github.msdk.spectra.spectrumtypedetection.SpectrumTypeDetectionAlgorithm;
+import io.github.msdk.util.MsScanUtil;
+
+/**
+ * Imports a raw data file and centroids each profile scan as soon as it has
+ * been read, so only the centroided data points are written to the data
+ * store.
+ * 
+ * mzML files are streamed one spectrum at a time. Other formats cannot be
+ * streamed by the MSDK import methods, so they are first imported into a
+ * temporary store, which is disposed as soon as all scans are centroided.
+ * The same is done for mzML files whose binary data cannot be decoded by
+ * MzMLStreamReader. The data store is disposed if the import is cancelled.
+ */
+public class StreamingCentroidingImportMethod
+        implements MSDKMethod<RawDataFile> {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File fileName;
+    private final @Nonnull MSDKCentroidingAlgorithm algorithm;
+    private final @Nonnull DataPointStore dataStore;
+
+    private MzMLStreamReader mzMLReader;
+    private RawDataFileImportMethod importMethod;
+    private RawDataFile result;
+    private int processedScans = 0, totalScans = 0;
+    private boolean canceled = false;
+
+    /**
+     * @param algorithm
+     *            centroiding algorithm that writes its output to dataStore
+     */
+    public StreamingCentroidingImportMethod(@Nonnull File fileName,
+            @Nonnull MSDKCentroidingAlgorithm algorithm,
+            @Nonnull DataPointStore dataStore) {
+        this.fileName = fileName;
+        this.algorithm = algorithm;
+        this.dataStore = dataStore;
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+        if (MzMLStreamReader.isMzML(fileName))
+            result = streamMzML();
+        else
+            result = importAndCentroid();
+        return result;
+    }
+
+    private RawDataFile streamMzML() throws MSDKException {
+
+        final RawDataFile rawDataFile = MSDKObjectBuilder.getRawDataFile(
+                fileName.getName(), fileName, FileType.MZML, dataStore);
+
+        try (MzMLStreamReader reader = new MzMLStreamReader(fileName)) {
+            mzMLReader = reader;
+            MzMLStreamReader.MzMLSpectrum spectrum;
+            while ((spectrum = reader.next()) != null) {
+                if (canceled) {
+                    rawDataFile.dispose();
+                    return null;
+                }
+
+                // The spectrum type is optional in mzML
+                if (spectrum.spectrumType == null)
+                    spectrum.spectrumType = SpectrumTypeDetectionAlgorithm
+                            .detectSpectrumType(spectrum.mzValues,
+                                    spectrum.intensityValues,
+                                    spectrum.numOfDataPoints);
+
+                // Centroided spectra are stored as they are, profile spectra
+                // only pass through a scratch store
+                final boolean centroided = spectrum.spectrumType == MsSpectrumType.CENTROIDED;
+                final DataPointStore scanStore = centroided ? dataStore
+                        : DataPointStoreFactory.getMemoryDataStore();
+                final MsScan scan = spectrum.createScan(scanStore,
+                        spectrum.mzValues, spectrum.intensityValues,
+                        spectrum.numOfDataPoints);
+                rawDataFile.addScan(
+                        centroided ? scan : algorithm.centroidScan(scan));
+                processedScans++;
+            }
+        } catch (MSDKException e) {
+            if (!MzMLStreamReader.isUnsupportedEncoding(e))
+                throw e;
+            // The data points already written to the store are not reused,
+            // they are deleted together with the store
+            logger.debug(e.getCause().getMessage()
+                    + ", importing the file with MSDK");
+            mzMLReader = null;
+            processedScans = 0;
+            return importAndCentroid();
+        } catch (IOException e) {
+            throw new MSDKException(e);
+        } finally {
+            mzMLReader = null;
+        }
+
+        logger.debug("Imported and centroided " + processedScans
+                + " scans from " + fileName);
+        return rawDataFile;
+    }
+
+    private RawDataFile importAndCentroid() throws MSDKException {
+
+        final DataPointStore profileStore = DataPointStoreFactory
+                .getTmpFileDataStore();
+        importMethod = new RawDataFileImportMethod(fileName, profileStore);
+        final RawDataFile profileFile = importMethod.execute();
+        importMethod = null;
+        if (canceled || profileFile == null) {
+            profileStore.dispose();
+            dataStore.dispose();
+            return null;
+        }
+
+        try {
+            final RawDataFile rawDataFile = MSDKObjectBuilder.getRawDataFile(
+                    profileFile.getName(), fileName,
+                    profileFile.getRawDataFileType(), dataStore);
+            final List<MsScan> scans = profileFile.getScans();
+            totalScans = scans.size();
+            for (MsScan scan : scans) {
+                if (canceled) {
+                    rawDataFile.dispose();
+                    return null;
+                }
+                if (scan.getSpectrumType() == MsSpectrumType.CENTROIDED)
+                    rawDataFile.addScan(MsScanUtil.clone(dataStore, scan, true));
+                else
+                    rawDataFile.addScan(algorithm.centroidScan(scan));
+                processedScans++;
+            }
+            return rawDataFile;
+        } finally {
+            profileFile.dispose();
+        }
+    }
+
+    @Override
+    public Float getFinishedPercentage() {
+        final MzMLStreamReader reader = mzMLReader;
+        if (reader != null)
+            return reader.getProgress();
+        final RawDataFileImportMethod method = importMethod;
+        if (method != null) {
+            final Float importPercentage = method.getFinishedPercentage();
+            return importPercentage == null ? 0f : importPercentage / 2f;
+        }
+        if (totalScans == 0)
+            return result == null ? null : 1f;
+        return 0.5f + 0.5f * processedScans / totalScans;
+    }
+
+    @Override
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        final RawDataFileImportMethod method = importMethod;
+        if (method != null)
+            method.cancel();
+    }
+
+}
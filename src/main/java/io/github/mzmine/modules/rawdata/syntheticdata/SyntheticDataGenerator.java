@@ -0,0 +1,327 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.syntheticdata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.files.FileType;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.msspectra.MsSpectrumType;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.IsolationInfo;
+import io.github.msdk.datamodel.rawdata.MsFunction;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+
+/**
+ * Generates deterministic synthetic LC-MS data. The compounds are Gaussian
+ * chromatographic peaks at random m/z and RT, shared by all samples. Each
+ * sample has its own intensity factors and RT drift, and every scan contains
+ * random noise points. Every msMsInterval-th scan is an MS/MS scan with the
+ * fragments of the most intense eluting compound, isolated in a 1 m/z wide
+ * window around its m/z.
+ * 
+ * A sample depends only on the seed and its index, so the samples of a large
+ * data set can be generated independently and in any order.
+ */
+public class SyntheticDataGenerator {
+
+    /**
+     * Time between two scans in seconds.
+     */
+    public static final float SCAN_INTERVAL = 0.5f;
+
+    private static final double MIN_MZ = 100.0, MAX_MZ = 1000.0;
+    private static final int PROFILE_POINTS = 15;
+    private static final double PROFILE_STEP = 0.002;
+    private static final int FRAGMENTS = 6;
+    private static final double ISOLATION_WIDTH = 1.0;
+
+    private final int numOfScans, noisePoints, msMsInterval;
+    private final double noiseLevel, maxRtDrift;
+    private final boolean profile;
+    private final long seed;
+
+    /**
+     * Rows of m/z, RT, peak width (standard deviation in seconds) and
+     * height.
+     */
+    private final double compounds[][];
+
+    /**
+     * @param numOfScans
+     *            number of scans of each sample
+     * @param numOfCompounds
+     *            number of compounds, i.e. the peak density
+     * @param noisePoints
+     *            number of noise data points in each scan
+     * @param noiseLevel
+     *            maximum intensity of the noise data points
+     * @param msMsInterval
+     *            every msMsInterval-th scan is an MS/MS scan, 0 for none
+     * @param maxRtDrift
+     *            maximum RT drift of a sample in seconds
+     * @param profile
+     *            if true, every peak is sampled at several m/z values
+     */
+    public SyntheticDataGenerator(int numOfScans, int numOfCompounds,
+            int noisePoints, double noiseLevel, int msMsInterval,
+            double maxRtDrift, boolean profile, long seed) {
+        this.numOfScans = numOfScans;
+        this.noisePoints = noisePoints;
+        this.noiseLevel = noiseLevel;
+        this.msMsInterval = msMsInterval;
+        this.maxRtDrift = maxRtDrift;
+        this.profile = profile;
+        this.seed = seed;
+
+        final Random random = new Random(seed);
+        final double maxRt = numOfScans * SCAN_INTERVAL;
+        compounds = new double[numOfCompounds][];
+        for (int i = 0; i < numOfCompounds; i++) {
+            compounds[i] = new double[] {
+                    MIN_MZ + random.nextDouble() * (MAX_MZ - MIN_MZ),
+                    random.nextDouble() * maxRt, 2.0 + random.nextDouble() * 4.0,
+                    Math.pow(10.0, 4.0 + random.nextDouble() * 3.0) };
+        }
+    }
+
+    public int getNumberOfCompounds() {
+        return compounds.length;
+    }
+
+    /**
+     * Returns the RT drift of the given sample in seconds.
+     */
+    public double getRtDrift(int sampleIndex) {
+        return new SampleState(sampleIndex).rtDrift;
+    }
+
+    /**
+     * Creates the raw data file of the given sample.
+     */
+    public @Nonnull RawDataFile createRawDataFile(@Nonnull String name,
+            int sampleIndex, @Nonnull DataPointStore dataStore) {
+
+        final SampleState state = new SampleState(sampleIndex);
+        final Random random = state.random;
+        final RawDataFile rawDataFile = MSDKObjectBuilder.getRawDataFile(name,
+                null, FileType.UNKNOWN, dataStore);
+        final MsFunction ms1Function = MSDKObjectBuilder
+                .getMsFunction(MsFunction.DEFAULT_MS_FUNCTION_NAME, 1);
+        final MsFunction ms2Function = MSDKObjectBuilder
+                .getMsFunction(MsFunction.DEFAULT_MS_FUNCTION_NAME, 2);
+
+        final List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < numOfScans; i++) {
+            final float rt = i * SCAN_INTERVAL;
+            final boolean msMs = msMsInterval > 0 && i % msMsInterval == 0;
+            final MsScan scan = MSDKObjectBuilder.getMsScan(dataStore, i + 1,
+                    msMs ? ms2Function : ms1Function);
+            scan.setPolarity(PolarityType.POSITIVE);
+            scan.setSpectrumType(profile ? MsSpectrumType.PROFILE
+                    : MsSpectrumType.CENTROIDED);
+            final ChromatographyInfo chromInfo = MSDKObjectBuilder
+                    .getChromatographyInfo1D(SeparationType.LC, rt);
+            scan.setChromatographyInfo(chromInfo);
+
+            points.clear();
+            int precursor = -1;
+            double precursorHeight = 0.0;
+            for (int c = 0; c < compounds.length; c++) {
+                final double height = state.getHeight(c, rt);
+                if (height < noiseLevel)
+                    continue;
+                if (msMs) {
+                    if (height > precursorHeight) {
+                        precursor = c;
+                        precursorHeight = height;
+                    }
+                    continue;
+                }
+                final double mz = compounds[c][0]
+                        * (1.0 + (random.nextDouble() - 0.5) * 4e-6);
+                addPeak(points, mz, height);
+            }
+            if (precursor >= 0) {
+                addFragments(points, precursor, precursorHeight);
+                final double precursorMz = compounds[precursor][0];
+                final IsolationInfo isolation = MSDKObjectBuilder
+                        .getIsolationInfo(
+                                Range.closed(
+                                        precursorMz - ISOLATION_WIDTH / 2,
+                                        precursorMz + ISOLATION_WIDTH / 2),
+                                null, precursorMz, 1, null);
+                scan.getIsolations().add(isolation);
+            }
+            for (int n = 0; n < noisePoints; n++) {
+                final double mz = MIN_MZ
+                        + random.nextDouble() * (MAX_MZ - MIN_MZ);
+                addPeak(points, mz, random.nextDouble() * noiseLevel);
+            }
+
+            points.sort((a, b) -> Double.compare(a[0], b[0]));
+            final double mzValues[] = new double[points.size()];
+            final float intensityValues[] = new float[points.size()];
+            for (int p = 0; p < points.size(); p++) {
+                mzValues[p] = points.get(p)[0];
+                intensityValues[p] = (float) points.get(p)[1];
+            }
+            scan.setDataPoints(mzValues, intensityValues, mzValues.length);
+            rawDataFile.addScan(scan);
+        }
+        return rawDataFile;
+    }
+
+    /**
+     * Creates the ground truth feature table of the given sample. It contains
+     * one row for each compound that exceeds the noise level in the sample.
+     * The row ID is the compound number, which is the same in all samples,
+     * and the common m/z and RT are the values without noise and drift. The
+     * sample columns contain the drifted RT and the apex height.
+     */
+    @SuppressWarnings("null")
+    public @Nonnull FeatureTable createGroundTruth(
+            @Nonnull RawDataFile rawDataFile, int sampleIndex,
+            @Nonnull String tableName, @Nonnull DataPointStore dataStore) {
+
+        final SampleState state = new SampleState(sampleIndex);
+        final FeatureTable featureTable = MSDKObjectBuilder
+                .getFeatureTable(tableName, dataStore);
+        final Sample sample = MSDKObjectBuilder
+                .getSample(rawDataFile.getName());
+        sample.setRawDataFile(rawDataFile);
+
+        final FeatureTableColumn<Integer> idColumn = MSDKObjectBuilder
+                .getIdFeatureTableColumn();
+        final FeatureTableColumn<Double> mzColumn = MSDKObjectBuilder
+                .getMzFeatureTableColumn();
+        final FeatureTableColumn<ChromatographyInfo> rtColumn = MSDKObjectBuilder
+                .getChromatographyInfoFeatureTableColumn();
+        final FeatureTableColumn<Double> sampleMzColumn = MSDKObjectBuilder
+                .getFeatureTableColumn(ColumnName.MZ, sample);
+        final FeatureTableColumn<ChromatographyInfo> sampleRtColumn = MSDKObjectBuilder
+                .getFeatureTableColumn(ColumnName.RT, sample);
+        final FeatureTableColumn<Float> heightColumn = MSDKObjectBuilder
+                .getFeatureTableColumn(ColumnName.HEIGHT, sample);
+        featureTable.addColumn(idColumn);
+        featureTable.addColumn(mzColumn);
+        featureTable.addColumn(rtColumn);
+        featureTable.addColumn(sampleMzColumn);
+        featureTable.addColumn(sampleRtColumn);
+        featureTable.addColumn(heightColumn);
+
+        final double maxRt = (numOfScans - 1) * SCAN_INTERVAL;
+        for (int c = 0; c < compounds.length; c++) {
+            final double apexRt = compounds[c][1] + state.rtDrift;
+            final double height = compounds[c][3] * state.factors[c];
+            if (apexRt < 0.0 || apexRt > maxRt || height < noiseLevel)
+                continue;
+
+            final int id = c + 1;
+            final FeatureTableRow row = MSDKObjectBuilder
+                    .getFeatureTableRow(featureTable, id);
+            row.setData(idColumn, id);
+            row.setData(mzColumn, compounds[c][0]);
+            row.setData(rtColumn, MSDKObjectBuilder.getChromatographyInfo1D(
+                    SeparationType.LC, (float) compounds[c][1]));
+            row.setData(sampleMzColumn, compounds[c][0]);
+            row.setData(sampleRtColumn, MSDKObjectBuilder
+                    .getChromatographyInfo1D(SeparationType.LC, (float) apexRt));
+            row.setData(heightColumn, (float) height);
+            featureTable.addRow(row);
+        }
+        return featureTable;
+    }
+
+    private void addPeak(List<double[]> points, double mz, double height) {
+        if (!profile) {
+            points.add(new double[] { mz, height });
+            return;
+        }
+        final double sigma = PROFILE_STEP * 2;
+        for (int p = 0; p < PROFILE_POINTS; p++) {
+            final double offset = (p - PROFILE_POINTS / 2) * PROFILE_STEP;
+            points.add(new double[] { mz + offset, height
+                    * Math.exp(-offset * offset / (2.0 * sigma * sigma)) });
+        }
+    }
+
+    /**
+     * Adds the fragments of the given compound. The fragment m/z values and
+     * relative intensities depend only on the compound, so the MS/MS spectra
+     * of a compound are the same in all samples.
+     */
+    private void addFragments(List<double[]> points, int compound,
+            double precursorHeight) {
+        final Random random = new Random(seed + 31L * (compound + 1));
+        final double precursorMz = compounds[compound][0];
+        for (int f = 0; f < FRAGMENTS; f++) {
+            final double mz = MIN_MZ / 2.0
+                    + random.nextDouble() * (precursorMz - MIN_MZ / 2.0);
+            addPeak(points, mz,
+                    precursorHeight * (0.05 + 0.5 * random.nextDouble()));
+        }
+        addPeak(points, precursorMz, precursorHeight * 0.1);
+    }
+
+    /**
+     * The random state of a sample: its RT drift, the intensity factors of
+     * the compounds and the generator of the m/z errors and noise.
+     */
+    private class SampleState {
+
+        private final Random random;
+        private final double rtDrift;
+        private final double factors[];
+
+        private SampleState(int sampleIndex) {
+            random = new Random(seed + 1 + sampleIndex);
+            rtDrift = (random.nextDouble() * 2.0 - 1.0) * maxRtDrift;
+            factors = new double[compounds.length];
+            for (int c = 0; c < compounds.length; c++)
+                factors[c] = 0.5 + random.nextDouble();
+        }
+
+        private double getHeight(int compound, double rt) {
+            final double sigma = compounds[compound][2];
+            final double distance = rt - (compounds[compound][1] + rtDrift);
+            if (Math.abs(distance) > 4.0 * sigma)
+                return 0.0;
+            return compounds[compound][3] * factors[compound]
+                    * Math.exp(-distance * distance / (2.0 * sigma * sigma));
+        }
+    }
+
+}
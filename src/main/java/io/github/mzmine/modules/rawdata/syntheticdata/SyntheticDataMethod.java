@@ -0,0 +1,131 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.syntheticdata;
+
+import java.io.File;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.io.mzml.MzMLFileExportMethod;
+
+/**
+ * Generates one synthetic sample, optionally writes it to an mzML file and
+ * creates its ground truth feature table.
+ */
+public class SyntheticDataMethod implements MSDKMethod<RawDataFile> {
+
+    private final @Nonnull SyntheticDataGenerator generator;
+    private final @Nonnull String name;
+    private final int sampleIndex;
+    private final @Nonnull DataPointStore dataStore;
+    private final @Nullable File mzMLFile;
+    private final boolean createGroundTruth;
+
+    private volatile RawDataFile result;
+    private FeatureTable groundTruth;
+    private volatile MzMLFileExportMethod exportMethod;
+    private volatile boolean generated = false, canceled = false;
+
+    /**
+     * @param mzMLFile
+     *            mzML file to write the sample to, or null
+     * @param createGroundTruth
+     *            if true, the ground truth feature table is created in the
+     *            same data store
+     */
+    public SyntheticDataMethod(@Nonnull SyntheticDataGenerator generator,
+            @Nonnull String name, int sampleIndex,
+            @Nonnull DataPointStore dataStore, @Nullable File mzMLFile,
+            boolean createGroundTruth) {
+        this.generator = generator;
+        this.name = name;
+        this.sampleIndex = sampleIndex;
+        this.dataStore = dataStore;
+        this.mzMLFile = mzMLFile;
+        this.createGroundTruth = createGroundTruth;
+    }
+
+    @Override
+    public RawDataFile execute() throws MSDKException {
+
+        final RawDataFile rawDataFile = generator.createRawDataFile(name,
+                sampleIndex, dataStore);
+        generated = true;
+        if (canceled)
+            return null;
+
+        if (mzMLFile != null) {
+            exportMethod = new MzMLFileExportMethod(rawDataFile, mzMLFile);
+            exportMethod.execute();
+            if (canceled)
+                return null;
+        }
+
+        if (createGroundTruth)
+            groundTruth = generator.createGroundTruth(rawDataFile,
+                    sampleIndex, name + " ground truth", dataStore);
+
+        result = rawDataFile;
+        return result;
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (result != null)
+            return 1f;
+        if (!generated)
+            return 0f;
+        final MzMLFileExportMethod export = exportMethod;
+        if (export != null) {
+            final Float exportPercent = export.getFinishedPercentage();
+            if (exportPercent != null)
+                return 0.5f + exportPercent * 0.5f;
+        }
+        return 0.5f;
+    }
+
+    @Override
+    @Nullable
+    public RawDataFile getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the ground truth feature table, or null if it was not created.
+     */
+    public @Nullable FeatureTable getGroundTruth() {
+        return groundTruth;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        if (exportMethod != null)
+            exportMethod.cancel();
+    }
+
+}
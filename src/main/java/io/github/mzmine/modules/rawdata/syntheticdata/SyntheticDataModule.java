@@ -0,0 +1,167 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.syntheticdata;
+
+import java.io.File;
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.taskcontrol.MSDKTask;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
+import javafx.concurrent.Task;
+
+/**
+ * Synthetic data generator module. Generates raw data files with known
+ * compounds, e.g. for testing the processing modules on large data sets
+ * without real instrument data.
+ */
+public class SyntheticDataModule implements MZmineProcessingModule {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String MODULE_NAME = "Synthetic data generator";
+    private static final String MODULE_DESCRIPTION = "This module generates synthetic LC-MS raw data files with known ground truth.";
+
+    @Override
+    public @Nonnull String getName() {
+        return MODULE_NAME;
+    }
+
+    @Override
+    public @Nonnull String getDescription() {
+        return MODULE_DESCRIPTION;
+    }
+
+    @Override
+    public void runModule(@Nonnull MZmineProject project,
+            @Nonnull ParameterSet parameters,
+            @Nonnull Collection<Task<?>> tasks) {
+
+        final Integer numOfSamples = parameters
+                .getParameter(SyntheticDataParameters.numOfSamples).getValue();
+        final Integer numOfScans = parameters
+                .getParameter(SyntheticDataParameters.numOfScans).getValue();
+        final Integer numOfCompounds = parameters
+                .getParameter(SyntheticDataParameters.numOfCompounds)
+                .getValue();
+        final Integer noisePoints = parameters
+                .getParameter(SyntheticDataParameters.noisePoints).getValue();
+        final Double noiseLevel = parameters
+                .getParameter(SyntheticDataParameters.noiseLevel).getValue();
+        final Integer msMsInterval = parameters
+                .getParameter(SyntheticDataParameters.msMsInterval).getValue();
+        final Double maxRtDrift = parameters
+                .getParameter(SyntheticDataParameters.maxRtDrift).getValue();
+        final Boolean profile = parameters
+                .getParameter(SyntheticDataParameters.profile).getValue();
+        final Integer seed = parameters
+                .getParameter(SyntheticDataParameters.seed).getValue();
+        final String namePrefix = Strings.nullToEmpty(parameters
+                .getParameter(SyntheticDataParameters.namePrefix).getValue());
+        final Boolean exportMzML = parameters
+                .getParameter(SyntheticDataParameters.mzMLDirectory)
+                .getValue();
+        final File mzMLDirectory = parameters
+                .getParameter(SyntheticDataParameters.mzMLDirectory)
+                .getEmbeddedParameter().getValue();
+        final Boolean groundTruth = parameters
+                .getParameter(SyntheticDataParameters.groundTruth).getValue();
+
+        if (numOfSamples == null || numOfSamples <= 0 || numOfScans == null
+                || numOfScans <= 0) {
+            logger.warn(
+                    "Synthetic data generator started with no samples or scans");
+            return;
+        }
+
+        if (exportMzML != null && exportMzML) {
+            if (mzMLDirectory == null || (!mzMLDirectory.isDirectory()
+                    && !mzMLDirectory.mkdirs())) {
+                MZmineGUI.displayMessage(
+                        "Cannot create mzML directory " + mzMLDirectory);
+                logger.warn("Cannot create mzML directory " + mzMLDirectory);
+                return;
+            }
+        }
+
+        final SyntheticDataGenerator generator = new SyntheticDataGenerator(
+                numOfScans, numOfCompounds == null ? 0 : numOfCompounds,
+                noisePoints == null ? 0 : noisePoints,
+                noiseLevel == null ? 0.0 : noiseLevel,
+                msMsInterval == null ? 0 : msMsInterval,
+                maxRtDrift == null ? 0.0 : maxRtDrift,
+                profile != null && profile, seed == null ? 0 : seed);
+
+        // Zero-padded sample numbers keep the files sorted by name
+        final String numberFormat = "%0"
+                + String.valueOf(numOfSamples - 1).length() + "d";
+
+        for (int i = 0; i < numOfSamples; i++) {
+
+            final String name = namePrefix + String.format(numberFormat, i);
+            final File mzMLFile = exportMzML != null && exportMzML
+                    ? new File(mzMLDirectory, name + ".mzML") : null;
+            final DataPointStore dataStore = DataPointStoreUtil
+                    .createTmpFileDataStore();
+
+            final SyntheticDataMethod method = new SyntheticDataMethod(
+                    generator, name, i, dataStore, mzMLFile,
+                    groundTruth != null && groundTruth);
+
+            MSDKTask newTask = new MSDKTask("Generating synthetic data", name,
+                    method);
+            newTask.setOnSucceeded(e -> {
+                RawDataFile rawDataFile = method.getResult();
+                if (rawDataFile == null)
+                    return;
+                TmpStorageManager.setOwner(dataStore, rawDataFile);
+                project.addFile(rawDataFile);
+
+                FeatureTable featureTable = method.getGroundTruth();
+                if (featureTable == null)
+                    return;
+                TmpStorageManager.addOwner(rawDataFile, featureTable);
+                project.addFeatureTable(featureTable);
+            });
+
+            tasks.add(newTask);
+        }
+
+    }
+
+    @Override
+    public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+        return SyntheticDataParameters.class;
+    }
+}
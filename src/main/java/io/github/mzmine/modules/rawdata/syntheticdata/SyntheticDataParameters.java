@@ -0,0 +1,105 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.modules.rawdata.syntheticdata;
+
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterValidator;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
+import io.github.mzmine.parameters.parametertypes.StringParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+
+public class SyntheticDataParameters extends ParameterSet {
+
+    public static final IntegerParameter numOfSamples = new IntegerParameter(
+            "Number of samples", "Number of raw data files to generate",
+            "Data set", ParameterValidator.createNonEmptyValidator(), 10);
+
+    public static final IntegerParameter numOfScans = new IntegerParameter(
+            "Number of scans",
+            "Number of scans of each raw data file, acquired every "
+                    + SyntheticDataGenerator.SCAN_INTERVAL + " s",
+            "Data set", ParameterValidator.createNonEmptyValidator(), 2000);
+
+    public static final IntegerParameter numOfCompounds = new IntegerParameter(
+            "Number of compounds",
+            "Number of compounds, i.e. the chromatographic peak density. All samples contain the same compounds.",
+            "Data set", ParameterValidator.createNonEmptyValidator(), 500);
+
+    public static final IntegerParameter noisePoints = new IntegerParameter(
+            "Noise data points", "Number of random noise data points per scan",
+            "Data set", ParameterValidator.createNonEmptyValidator(), 50);
+
+    public static final DoubleParameter noiseLevel = new DoubleParameter(
+            "Noise level",
+            "Maximum intensity of the noise data points. Compound signals below this intensity are not generated.",
+            "Data set", MZmineCore.getConfiguration().getIntensityFormat(),
+            ParameterValidator.createNonEmptyValidator(), 1000d);
+
+    public static final IntegerParameter msMsInterval = new IntegerParameter(
+            "MS/MS interval",
+            "Every n-th scan is an MS/MS scan of the most intense eluting compound, 0 for no MS/MS scans",
+            "Data set", ParameterValidator.createNonEmptyValidator(), 10);
+
+    public static final DoubleParameter maxRtDrift = new DoubleParameter(
+            "Maximum RT drift",
+            "Maximum RT shift of a sample against the true compound RT, in seconds",
+            "Data set", MZmineCore.getConfiguration().getRTFormat(),
+            ParameterValidator.createNonEmptyValidator(), 6d);
+
+    public static final BooleanParameter profile = new BooleanParameter(
+            "Profile spectra",
+            "If checked, every peak is sampled at several m/z values. Otherwise centroided spectra are generated.",
+            "Data set", false);
+
+    public static final IntegerParameter seed = new IntegerParameter(
+            "Random seed",
+            "The same seed and settings always give the same data set",
+            "Data set", ParameterValidator.createNonEmptyValidator(), 42);
+
+    public static final StringParameter namePrefix = new StringParameter(
+            "Name prefix",
+            "Prefix of the raw data file names, followed by the sample number",
+            "Output", "synthetic");
+
+    public static final OptionalParameter<FileNameParameter> mzMLDirectory = new OptionalParameter<FileNameParameter>(
+            new FileNameParameter("mzML directory",
+                    "If selected, each raw data file is also written to an mzML file in this directory",
+                    "Output", ParameterValidator.createNonEmptyValidator(),
+                    FileNameParameter.Type.SAVE));
+
+    public static final BooleanParameter groundTruth = new BooleanParameter(
+            "Ground truth feature tables",
+            "If checked, a feature table with the true m/z, RT and height of the compounds is added for each raw data file",
+            "Output", true);
+
+    /**
+     * Create the parameter set.
+     */
+    public SyntheticDataParameters() {
+        super(numOfSamples, numOfScans, numOfCompounds, noisePoints,
+                noiseLevel, msMsInterval, maxRtDrift, profile, seed,
+                namePrefix, mzMLDirectory, groundTruth);
+    }
+
+}
@@ -67,7 +67,13 @@ public class ComboParameter<ValueType> extends AbstractParameter<ValueType> {
 
     @Override
     public void loadValueFromXML(@Nonnull Element xmlElement) {
-        // value = xmlElement.getTextContent();
+        final String textValue = xmlElement.getTextContent();
+        for (ValueType option : options) {
+            if (option.toString().equals(textValue)) {
+                setValue(option);
+                return;
+            }
+        }
     }
 
     @Override
@@ -21,6 +21,7 @@ package io.github.mzmine.parameters.parametertypes.selectors;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import javax.annotation.concurrent.Immutable;
 
@@ -31,6 +32,7 @@ import io.github.msdk.datamodel.msspectra.MsSpectrumType;
 import io.github.msdk.datamodel.rawdata.MsScan;
 import io.github.msdk.datamodel.rawdata.PolarityType;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.util.ScanIndex;
 import io.github.mzmine.util.TextUtils;
 
 @Immutable
@@ -41,7 +43,8 @@ public class ScanSelection {
     private final PolarityType polarity;
     private final MsSpectrumType spectrumType;
     private final Integer msLevel;
-    private String scanDefinition;
+    private final String scanDefinition;
+    private final Pattern scanDefinitionPattern;
 
     public ScanSelection() {
         this(1);
@@ -65,6 +68,10 @@ public class ScanSelection {
         this.spectrumType = spectrumType;
         this.msLevel = msLevel;
         this.scanDefinition = scanDefinition;
+        this.scanDefinitionPattern = Strings.isNullOrEmpty(scanDefinition)
+                ? null
+                : Pattern.compile(
+                        TextUtils.createRegexFromWildcards(scanDefinition));
     }
 
     public Range<Integer> getScanNumberRange() {
@@ -91,18 +98,22 @@ public class ScanSelection {
         return scanDefinition;
     }
 
+    /**
+     * Returns the scans of the given file that match this selection, in the
+     * order of the file. The candidates are found in the ScanIndex of the
+     * file.
+     */
     public List<MsScan> getMatchingScans(RawDataFile dataFile) {
 
-        final List<MsScan> matchingScans = new ArrayList<>();
+        final List<MsScan> scans = dataFile.getScans();
+        final int positions[] = ScanIndex.getIndex(dataFile).findScans(
+                msLevel, polarity, scanDefinitionPattern, scanRTRange);
 
-        for (MsScan scan : dataFile.getScans()) {
+        final List<MsScan> matchingScans = new ArrayList<>(positions.length);
 
-            if ((msLevel != null)
-                    && (!msLevel.equals(scan.getMsFunction().getMsLevel())))
-                continue;
+        for (int position : positions) {
 
-            if ((polarity != null) && (!polarity.equals(scan.getPolarity())))
-                continue;
+            final MsScan scan = scans.get(position);
 
             if ((spectrumType != null)
                     && (!spectrumType.equals(scan.getSpectrumType())))
@@ -112,25 +123,6 @@ public class ScanSelection {
                     && (!scanNumberRange.contains(scan.getScanNumber())))
                 continue;
 
-            if ((scanRTRange != null) && (!scanRTRange.contains(scan
-                    .getChromatographyInfo().getRetentionTime().doubleValue())))
-                continue;
-
-            if (!Strings.isNullOrEmpty(scanDefinition)) {
-
-                final String actualScanDefition = scan.getScanDefinition();
-
-                if (Strings.isNullOrEmpty(actualScanDefition))
-                    continue;
-
-                final String regex = TextUtils
-                        .createRegexFromWildcards(scanDefinition);
-
-                if (!actualScanDefition.matches(regex))
-                    continue;
-
-            }
-
             matchingScans.add(scan);
         }
 
@@ -32,6 +32,7 @@ import io.github.msdk.datamodel.featuretables.FeatureTable;
 import io.github.msdk.datamodel.featuretables.Sample;
 import io.github.msdk.datamodel.rawdata.RawDataFile;
 import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.util.datastore.TmpStorageManager;
 
 /**
  * Simple implementation of the MZmineProject interface.
@@ -73,10 +74,16 @@ public class MZmineProject {
         }
     }
 
+    /**
+     * Removes the file from the project and deletes its temporary data.
+     */
     public void removeFile(final RawDataFile rawDataFile) {
         synchronized (rawDataFiles) {
-            rawDataFiles.remove(rawDataFile);
+            if (!rawDataFiles.remove(rawDataFile))
+                return;
         }
+        TmpStorageManager.release(rawDataFile);
+        rawDataFile.dispose();
     }
 
     public @Nonnull List<RawDataFile> getRawDataFiles() {
@@ -91,10 +98,17 @@ public class MZmineProject {
         }
     }
 
+    /**
+     * Removes the feature table from the project and deletes the temporary
+     * files that no other table refers to. The table itself is not disposed,
+     * because tables derived from it may still refer to its data.
+     */
     public void removeFeatureTable(final FeatureTable featureTable) {
         synchronized (featureTables) {
-            featureTables.remove(featureTable);
+            if (!featureTables.remove(featureTable))
+                return;
         }
+        TmpStorageManager.release(featureTable);
     }
 
     public @Nonnull List<FeatureTable> getFeatureTables() {
@@ -26,6 +26,7 @@ import javax.annotation.Nonnull;
 
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 import javafx.concurrent.Task;
 
 /**
@@ -63,4 +64,47 @@ public class AuditLogEntry {
         return taskRecords;
     }
 
+    /**
+     * Total wall time of all tasks, in nanoseconds.
+     */
+    public long getWallTime() {
+        long total = 0;
+        for (TaskMetrics metrics : getTaskMetrics())
+            total += metrics.getWallTime();
+        return total;
+    }
+
+    /**
+     * Total CPU time of all tasks, in nanoseconds.
+     */
+    public long getCpuTime() {
+        long total = 0;
+        for (TaskMetrics metrics : getTaskMetrics())
+            total += metrics.getCpuTime();
+        return total;
+    }
+
+    public long getAllocatedBytes() {
+        long total = 0;
+        for (TaskMetrics metrics : getTaskMetrics())
+            total += metrics.getAllocatedBytes();
+        return total;
+    }
+
+    public long getStoredBytes() {
+        long total = 0;
+        for (TaskMetrics metrics : getTaskMetrics())
+            total += metrics.getStoredBytes();
+        return total;
+    }
+
+    private List<TaskMetrics> getTaskMetrics() {
+        final List<TaskMetrics> metrics = new ArrayList<>();
+        for (AuditLogTaskRecord taskRecord : taskRecords) {
+            if (taskRecord.getTaskMetrics() != null)
+                metrics.add(taskRecord.getTaskMetrics());
+        }
+        return metrics;
+    }
+
 }
@@ -20,6 +20,10 @@
 package io.github.mzmine.project.auditlog;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.TaskMetrics;
 
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -34,10 +38,13 @@ public class AuditLogTaskRecord {
     private final String taskMessage;
     private final String taskTitle;
     private State taskStatus;
+    private final TaskMetrics taskMetrics;
 
     public AuditLogTaskRecord(@Nonnull Task<?> task) {
         this.taskMessage = task.getMessage();
         this.taskTitle = task.getTitle();
+        this.taskMetrics = (task instanceof MZmineTask)
+                ? ((MZmineTask) task).getMetrics() : null;
 
         task.stateProperty().addListener(new ChangeListener<State>() {
             public void changed(ObservableValue<? extends State> ov, State oldState,
@@ -48,18 +55,56 @@ public class AuditLogTaskRecord {
 
     }
 
-    @Nonnull
+    /**
+     * Returns the message of the task. In batch mode, it is taken from the
+     * metrics, as the Task properties are not updated.
+     */
+    @Nullable
     public String getTaskMessage() {
+        if (taskMessage == null && taskMetrics != null)
+            return taskMetrics.getMessage();
         return taskMessage;
     }
 
-    @Nonnull
+    @Nullable
     public String getTaskTitle() {
+        if (taskTitle == null && taskMetrics != null)
+            return taskMetrics.getTitle();
         return taskTitle;
     }
 
+    /**
+     * Returns the state of the task. Once the task body has finished, this is
+     * its recorded outcome, so a failed MSDK method is reported as FAILED.
+     */
     @Nonnull
     public State getTaskStatus() {
-        return taskStatus;
+        final State recordedState = taskMetrics == null ? State.READY
+                : taskMetrics.getState();
+        switch (recordedState) {
+        case SUCCEEDED:
+        case FAILED:
+        case CANCELLED:
+            return recordedState;
+        default:
+            return taskStatus == null ? recordedState : taskStatus;
+        }
+    }
+
+    /**
+     * Returns the error message of a failed task, or null.
+     */
+    @Nullable
+    public String getErrorMessage() {
+        return taskMetrics == null ? null : taskMetrics.getErrorMessage();
+    }
+
+    /**
+     * Returns the resource usage of the task, or null if the task does not
+     * record any.
+     */
+    @Nullable
+    public TaskMetrics getTaskMetrics() {
+        return taskMetrics;
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.project.resultcache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import io.github.mzmine.taskcontrol.MSDKTask;
+
+/**
+ * Task that restores the result of a module run from the result cache
+ * instead of running the module.
+ */
+public class CachedResultTask extends MSDKTask {
+
+    private final List<Object> reusedOutputs = new ArrayList<>();
+
+    CachedResultTask(@Nonnull String moduleName,
+            @Nonnull ResultCacheRestoreMethod method) {
+        super("Restoring cached result", moduleName, method);
+    }
+
+    /**
+     * Returns the outputs of the cached run that were already in the project
+     * and are therefore not added again. They are known after the task has
+     * succeeded.
+     */
+    public @Nonnull List<Object> getReusedOutputs() {
+        return Collections.unmodifiableList(reusedOutputs);
+    }
+
+    void addReusedOutput(@Nonnull Object output) {
+        reusedOutputs.add(output);
+    }
+
+}
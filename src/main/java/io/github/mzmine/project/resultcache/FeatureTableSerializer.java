@@ -0,0 +1,406 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.project.resultcache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.chromatograms.Chromatogram;
+import io.github.msdk.datamodel.chromatograms.ChromatogramType;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+
+/**
+ * Writes feature tables to files and reads them back. The raw data files of
+ * the samples are stored as string keys given by the caller, e.g. the
+ * fingerprints of ModuleResultCache, and resolved when the table is read.
+ * 
+ * Only the value types produced by the feature detection, alignment and gap
+ * filling modules are supported: numbers, strings, booleans, retention times,
+ * closed ranges and chromatograms without ion annotations. Writing a table
+ * with other values fails with an IOException.
+ */
+public final class FeatureTableSerializer {
+
+    private static final int MAGIC = 0x4d5a4654; // "MZFT"
+    private static final int VERSION = 1;
+
+    private static final byte NULL = 0, INTEGER = 1, LONG = 2, DOUBLE = 3,
+            FLOAT = 4, STRING = 5, BOOLEAN = 6, CHROMATOGRAPHY_INFO = 7,
+            RANGE = 8, CHROMATOGRAM = 9, EMPTY_LIST = 10;
+
+    private FeatureTableSerializer() {
+    }
+
+    /**
+     * Returns the fingerprints of the raw data files of the samples of the
+     * given table.
+     * 
+     * @throws IOException
+     *             if a raw data file has no fingerprint
+     */
+    static @Nonnull Set<String> getRawDataFileFingerprints(
+            @Nonnull FeatureTable featureTable,
+            @Nonnull Function<Object, String> fingerprints)
+            throws IOException {
+        final Set<String> result = new LinkedHashSet<>();
+        for (Sample sample : featureTable.getSamples()) {
+            final RawDataFile rawDataFile = sample.getRawDataFile();
+            if (rawDataFile == null)
+                continue;
+            final String fingerprint = fingerprints.apply(rawDataFile);
+            if (fingerprint == null)
+                throw new IOException("Raw data file " + rawDataFile.getName()
+                        + " has no fingerprint");
+            result.add(fingerprint);
+        }
+        return result;
+    }
+
+    /**
+     * Writes a feature table.
+     * 
+     * @param fingerprints
+     *            returns the key of a raw data file, or null if it has none
+     */
+    public static void write(@Nonnull File file,
+            @Nonnull FeatureTable featureTable,
+            @Nonnull Function<Object, String> fingerprints)
+            throws IOException {
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(featureTable.getName());
+
+            final List<Sample> samples = featureTable.getSamples();
+            out.writeInt(samples.size());
+            for (Sample sample : samples) {
+                final RawDataFile rawDataFile = sample.getRawDataFile();
+                final String fingerprint = rawDataFile == null ? ""
+                        : fingerprints.apply(rawDataFile);
+                if (fingerprint == null)
+                    throw new IOException("Raw data file "
+                            + rawDataFile.getName() + " has no fingerprint");
+                out.writeUTF(sample.getName());
+                out.writeUTF(fingerprint);
+            }
+
+            final List<FeatureTableColumn<?>> columns = featureTable
+                    .getColumns();
+            out.writeInt(columns.size());
+            for (FeatureTableColumn<?> column : columns) {
+                out.writeUTF(column.getName());
+                out.writeUTF(column.getDataTypeClass().getName());
+                out.writeInt(column.getSample() == null ? -1
+                        : samples.indexOf(column.getSample()));
+            }
+
+            final List<FeatureTableRow> rows = featureTable.getRows();
+            out.writeInt(rows.size());
+            for (FeatureTableRow row : rows) {
+                out.writeInt(row.getId());
+                for (FeatureTableColumn<?> column : columns)
+                    writeValue(out, row.getData(column));
+            }
+        }
+    }
+
+    /**
+     * Reads a feature table into a ColumnarFeatureTable. The data of its
+     * chromatograms are stored in the given data store.
+     * 
+     * @param rawDataFiles
+     *            returns the raw data file with the given fingerprint, or
+     *            null if it does not exist
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static @Nonnull FeatureTable read(@Nonnull File file,
+            @Nonnull DataPointStore dataStore,
+            @Nonnull Function<String, RawDataFile> rawDataFiles)
+            throws IOException {
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Invalid feature table file " + file);
+
+            final ColumnarFeatureTable featureTable = new ColumnarFeatureTable(
+                    in.readUTF(), dataStore);
+
+            final int numOfSamples = in.readInt();
+            final List<Sample> samples = new ArrayList<>(numOfSamples);
+            for (int i = 0; i < numOfSamples; i++) {
+                final Sample sample = MSDKObjectBuilder.getSample(in.readUTF());
+                final String fingerprint = in.readUTF();
+                if (!fingerprint.isEmpty()) {
+                    final RawDataFile rawDataFile = rawDataFiles
+                            .apply(fingerprint);
+                    if (rawDataFile == null)
+                        throw new IOException("Raw data file of sample "
+                                + sample.getName() + " not found");
+                    sample.setRawDataFile(rawDataFile);
+                }
+                samples.add(sample);
+            }
+
+            final int numOfColumns = in.readInt();
+            final List<FeatureTableColumn> columns = new ArrayList<>(
+                    numOfColumns);
+            for (int i = 0; i < numOfColumns; i++) {
+                final String name = in.readUTF();
+                final Class<?> dataTypeClass;
+                try {
+                    dataTypeClass = Class.forName(in.readUTF());
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+                final int sampleIndex = in.readInt();
+                final Sample sample = sampleIndex < 0 ? null
+                        : samples.get(sampleIndex);
+                final FeatureTableColumn column = createColumn(name,
+                        dataTypeClass, sample);
+                featureTable.addColumn(column);
+                columns.add(column);
+            }
+
+            final int numOfRows = in.readInt();
+            for (int i = 0; i < numOfRows; i++) {
+                final FeatureTableRow row = featureTable
+                        .createRow(in.readInt());
+                for (FeatureTableColumn column : columns) {
+                    final Object value = readValue(in, dataStore);
+                    if (value != null)
+                        row.setData(column, value);
+                }
+            }
+            return featureTable;
+        }
+    }
+
+    private static @Nonnull FeatureTableColumn<?> createColumn(
+            @Nonnull String name, @Nonnull Class<?> dataTypeClass,
+            @Nullable Sample sample) {
+        for (ColumnName columnName : ColumnName.values()) {
+            if (columnName.getName().equals(name)
+                    && columnName.getDataTypeClass().equals(dataTypeClass))
+                return MSDKObjectBuilder.getFeatureTableColumn(columnName,
+                        sample);
+        }
+        return MSDKObjectBuilder.getFeatureTableColumn(name, dataTypeClass,
+                sample);
+    }
+
+    private static void writeValue(@Nonnull DataOutputStream out,
+            @Nullable Object value) throws IOException {
+
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof ChromatographyInfo) {
+            out.writeByte(CHROMATOGRAPHY_INFO);
+            writeChromatographyInfo(out, (ChromatographyInfo) value);
+        } else if (value instanceof Range) {
+            final Range<?> range = (Range<?>) value;
+            if (!range.hasLowerBound() || !range.hasUpperBound())
+                throw new IOException("Cannot store open range " + range);
+            out.writeByte(RANGE);
+            writeValue(out, range.lowerEndpoint());
+            writeValue(out, range.upperEndpoint());
+        } else if (value instanceof Chromatogram) {
+            out.writeByte(CHROMATOGRAM);
+            writeChromatogram(out, (Chromatogram) value);
+        } else if (value instanceof List && ((List<?>) value).isEmpty()) {
+            out.writeByte(EMPTY_LIST);
+        } else {
+            throw new IOException(
+                    "Cannot store values of type " + value.getClass());
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static @Nullable Object readValue(@Nonnull DataInputStream in,
+            @Nonnull DataPointStore dataStore) throws IOException {
+
+        final byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case DOUBLE:
+            return in.readDouble();
+        case FLOAT:
+            return in.readFloat();
+        case STRING:
+            return in.readUTF();
+        case BOOLEAN:
+            return in.readBoolean();
+        case CHROMATOGRAPHY_INFO:
+            return readChromatographyInfo(in);
+        case RANGE:
+            final Comparable lower = (Comparable) readValue(in, dataStore);
+            final Comparable upper = (Comparable) readValue(in, dataStore);
+            return Range.closed(lower, upper);
+        case CHROMATOGRAM:
+            return readChromatogram(in, dataStore);
+        case EMPTY_LIST:
+            return new ArrayList<>();
+        default:
+            throw new IOException("Invalid value type " + type);
+        }
+    }
+
+    private static void writeChromatographyInfo(@Nonnull DataOutputStream out,
+            @Nonnull ChromatographyInfo chromInfo) throws IOException {
+        if (chromInfo.getSecondaryRetentionTime() != null)
+            throw new IOException(
+                    "Cannot store two-dimensional retention times");
+        final Float rt = chromInfo.getRetentionTime();
+        out.writeUTF(chromInfo.getSeparationType().name());
+        out.writeFloat(rt == null ? Float.NaN : rt);
+    }
+
+    private static @Nonnull ChromatographyInfo readChromatographyInfo(
+            @Nonnull DataInputStream in) throws IOException {
+        final SeparationType separationType = SeparationType
+                .valueOf(in.readUTF());
+        final float rt = in.readFloat();
+        return MSDKObjectBuilder.getChromatographyInfo1D(separationType,
+                Float.isNaN(rt) ? null : rt);
+    }
+
+    private static void writeChromatogram(@Nonnull DataOutputStream out,
+            @Nonnull Chromatogram chromatogram) throws IOException {
+
+        if (chromatogram.getIonAnnotation() != null
+                || !chromatogram.getIsolations().isEmpty())
+            throw new IOException(
+                    "Cannot store chromatograms with annotations or isolations");
+
+        final Integer number = chromatogram.getChromatogramNumber();
+        final Double mz = chromatogram.getMz();
+        final int size = chromatogram.getNumberOfDataPoints();
+        final ChromatographyInfo rtValues[] = chromatogram.getRetentionTimes();
+        final double mzValues[] = chromatogram.getMzValues();
+        final float intensityValues[] = chromatogram.getIntensityValues();
+
+        out.writeInt(number == null ? 0 : number);
+        out.writeUTF(chromatogram.getChromatogramType().name());
+        out.writeUTF(chromatogram.getSeparationType().name());
+        out.writeDouble(mz == null ? Double.NaN : mz);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            final Float rt = rtValues[i].getRetentionTime();
+            out.writeFloat(rt == null ? Float.NaN : rt);
+        }
+        out.writeBoolean(mzValues != null);
+        if (mzValues != null) {
+            for (int i = 0; i < size; i++)
+                out.writeDouble(mzValues[i]);
+        }
+        for (int i = 0; i < size; i++)
+            out.writeFloat(intensityValues[i]);
+    }
+
+    private static @Nonnull Chromatogram readChromatogram(
+            @Nonnull DataInputStream in, @Nonnull DataPointStore dataStore)
+            throws IOException {
+
+        final int number = in.readInt();
+        final ChromatogramType chromatogramType = ChromatogramType
+                .valueOf(in.readUTF());
+        final SeparationType separationType = SeparationType
+                .valueOf(in.readUTF());
+        final double mz = in.readDouble();
+        final int size = in.readInt();
+
+        final ChromatographyInfo rtValues[] = new ChromatographyInfo[size];
+        for (int i = 0; i < size; i++) {
+            final float rt = in.readFloat();
+            rtValues[i] = MSDKObjectBuilder.getChromatographyInfo1D(
+                    separationType, Float.isNaN(rt) ? null : rt);
+        }
+        double mzValues[] = null;
+        if (in.readBoolean()) {
+            mzValues = new double[size];
+            for (int i = 0; i < size; i++)
+                mzValues[i] = in.readDouble();
+        }
+        final float intensityValues[] = new float[size];
+        for (int i = 0; i < size; i++)
+            intensityValues[i] = in.readFloat();
+
+        final Chromatogram chromatogram = MSDKObjectBuilder.getChromatogram(
+                dataStore, number, chromatogramType, separationType);
+        chromatogram.setDataPoints(rtValues, mzValues, intensityValues, size);
+        if (!Double.isNaN(mz))
+            chromatogram.setMz(mz);
+        return chromatogram;
+    }
+
+}
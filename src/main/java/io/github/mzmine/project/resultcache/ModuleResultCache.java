@@ -0,0 +1,558 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.project.resultcache;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.gui.preferences.ResultCacheSettings;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.project.resultcache.ResultCacheStore.Entry;
+import io.github.mzmine.project.resultcache.ResultCacheStore.Output;
+import io.github.mzmine.project.resultcache.ResultCacheStore.OutputType;
+import io.github.mzmine.taskcontrol.MZmineTask;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
+
+/**
+ * Memoizes the results of module runs. A run is identified by a key: the
+ * hash of the module class, its parameter values as saved to XML, the size
+ * and modification time of the files named in the parameters, and the
+ * fingerprints of its input raw data files and feature tables. The outputs
+ * of a run, i.e. the raw data files and feature tables that its tasks add to
+ * the project, get fingerprints derived from the key, so the keys of the
+ * downstream runs are the same whenever the same processing is repeated.
+ * 
+ * When a module is run with a known key, its outputs are taken from the
+ * project if they are still there, or read from the on-disk cache, instead
+ * of running the module. Runs with inputs of unknown origin are not cached.
+ * The results of modules without input files or tables, i.e. imports, are
+ * not written to disk; the import cache keeps those.
+ */
+public class ModuleResultCache {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ModuleResultCache.class);
+
+    /**
+     * Fingerprints of the raw data files and feature tables created by cached
+     * module runs.
+     */
+    private static final Map<Object, String> fingerprints = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Outputs of the module runs of this session, by key.
+     */
+    private static final Map<String, Entry> sessionEntries = new ConcurrentHashMap<>();
+
+    /**
+     * The cache store, created again when its settings change.
+     */
+    private static ResultCacheStore store;
+
+    private ModuleResultCache() {
+    }
+
+    /**
+     * Returns the fingerprint of the given raw data file or feature table, or
+     * null if it was not created by a cached module run.
+     */
+    public static @Nullable String getFingerprint(@Nonnull Object item) {
+        return fingerprints.get(item);
+    }
+
+    /**
+     * Forgets the fingerprint of a raw data file or feature table, so it is
+     * not taken from the cache any more. Must be called by modules that
+     * change an item in place.
+     */
+    public static void invalidate(@Nonnull Object item) {
+        fingerprints.remove(item);
+    }
+
+    /**
+     * Runs the given module, or adds a task that restores its result from the
+     * cache. If the result cache is disabled in the preferences, the module
+     * is simply run.
+     */
+    public static void runModule(@Nonnull MZmineRunnableModule module,
+            @Nonnull ParameterSet parameters, @Nonnull MZmineProject project,
+            @Nonnull Collection<Task<?>> tasks) {
+
+        final ResultCacheStore store = getStore();
+        if (store == null) {
+            module.runModule(project, parameters, tasks);
+            return;
+        }
+
+        final List<Object> inputs = new ArrayList<>();
+        final String key = createKey(module, parameters, inputs);
+        if (key == null) {
+            module.runModule(project, parameters, tasks);
+            return;
+        }
+
+        final CachedResultTask cachedResultTask = createRestoreTask(module,
+                key, project, store);
+        if (cachedResultTask != null) {
+            logger.info("Restoring result of " + module.getName()
+                    + " from result cache");
+            tasks.add(cachedResultTask);
+            return;
+        }
+
+        final List<Task<?>> newTasks = new ArrayList<>();
+        module.runModule(project, parameters, newTasks);
+        if (!newTasks.isEmpty())
+            new RunRecorder(key, newTasks, project,
+                    inputs.isEmpty() ? null : store).start();
+        tasks.addAll(newTasks);
+    }
+
+    /**
+     * Returns the result cache configured in the preferences, or null if it
+     * is disabled.
+     */
+    private static synchronized @Nullable ResultCacheStore getStore() {
+        final OptionalModuleParameter resultCache = MZmineCore
+                .getConfiguration().getPreferences()
+                .getParameter(MZminePreferences.resultCache);
+        if (!Boolean.TRUE.equals(resultCache.getValue()))
+            return null;
+        final ParameterSet settings = resultCache.getEmbeddedParameters();
+        final File directory = new File(settings
+                .getParameter(ResultCacheSettings.cacheDirectory).getValue());
+        final long maxSize = settings
+                .getParameter(ResultCacheSettings.maxCacheSize).getValue()
+                * 1024L * 1024L * 1024L;
+        if (store == null || !store.getDirectory().equals(directory)
+                || store.getMaxSize() != maxSize)
+            store = new ResultCacheStore(directory, maxSize);
+        return store;
+    }
+
+    /**
+     * Creates the key of a module run, or returns null if an input has no
+     * fingerprint. The input raw data files and feature tables are added to
+     * the given list.
+     */
+    private static @Nullable String createKey(
+            @Nonnull MZmineRunnableModule module,
+            @Nonnull ParameterSet parameters, @Nonnull List<Object> inputs) {
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            logger.warn("Cannot create result cache key", e);
+            return null;
+        }
+        update(digest, module.getClass().getName());
+
+        final String parametersXML = toXML(parameters);
+        if (parametersXML == null)
+            return null;
+        update(digest, parametersXML);
+
+        for (Parameter<?> parameter : parameters) {
+            final Object value = parameter.getValue();
+            if (value instanceof RawDataFilesSelection) {
+                inputs.addAll(((RawDataFilesSelection) value)
+                        .getMatchingRawDataFiles());
+            } else if (value instanceof FeatureTablesSelection) {
+                inputs.addAll(((FeatureTablesSelection) value)
+                        .getMatchingFeatureTables());
+            } else if (value instanceof File) {
+                updateFileStamp(digest, (File) value);
+            } else if (value instanceof Collection) {
+                for (Object item : (Collection<?>) value) {
+                    if (item instanceof File)
+                        updateFileStamp(digest, (File) item);
+                }
+            }
+        }
+
+        for (Object input : inputs) {
+            final String fingerprint = fingerprints.get(input);
+            if (fingerprint == null)
+                return null;
+            update(digest, fingerprint);
+        }
+
+        final StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest())
+            key.append(String.format("%02x", b));
+        return key.toString();
+    }
+
+    private static void update(@Nonnull MessageDigest digest,
+            @Nonnull String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void updateFileStamp(@Nonnull MessageDigest digest,
+            @Nonnull File file) {
+        update(digest, file.getAbsolutePath() + "\t" + file.length() + "\t"
+                + file.lastModified());
+    }
+
+    private static @Nullable String toXML(@Nonnull ParameterSet parameters) {
+        try {
+            final Document document = DocumentBuilderFactory.newInstance()
+                    .newDocumentBuilder().newDocument();
+            final Element element = document.createElement("parameters");
+            document.appendChild(element);
+            parameters.saveValuesToXML(element);
+
+            final Transformer transformer = TransformerFactory.newInstance()
+                    .newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION,
+                    "yes");
+            final StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(document),
+                    new StreamResult(writer));
+            return writer.toString();
+        } catch (ParserConfigurationException | TransformerException
+                | RuntimeException e) {
+            logger.warn("Cannot create result cache key", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a task that restores the result of the run with the given key,
+     * or null if the result is neither in the project nor in the cache.
+     */
+    private static @Nullable CachedResultTask createRestoreTask(
+            @Nonnull MZmineRunnableModule module, @Nonnull String key,
+            @Nonnull MZmineProject project, @Nonnull ResultCacheStore store) {
+
+        Entry entry = sessionEntries.get(key);
+        if (entry == null)
+            entry = store.readEntry(key);
+        if (entry == null)
+            return null;
+
+        List<Object> presentOutputs = findOutputs(entry, project);
+        if (presentOutputs.contains(null)) {
+            // Some outputs have to be read from disk
+            if (sessionEntries.get(key) == entry) {
+                entry = store.readEntry(key);
+                if (entry == null)
+                    return null;
+                presentOutputs = findOutputs(entry, project);
+            }
+            if (!canRestore(entry, presentOutputs, project))
+                return null;
+        }
+
+        final Entry restoredEntry = entry;
+        final List<Object> reusedOutputs = presentOutputs;
+        final ResultCacheRestoreMethod method = new ResultCacheRestoreMethod(
+                store, key, restoredEntry, reusedOutputs,
+                fingerprint -> findItem(project, fingerprint));
+        final CachedResultTask task = new CachedResultTask(module.getName(),
+                method);
+        task.setOnSucceeded(e -> {
+            final List<Object> outputs = method.getResult();
+            if (outputs == null) {
+                final String msg = "Could not restore the cached result of "
+                        + module.getName() + ", please run it again";
+                logger.warn(msg);
+                MZmineGUI.displayMessage(msg);
+                sessionEntries.remove(key);
+                store.removeEntry(key);
+                return;
+            }
+            for (int i = 0; i < outputs.size(); i++) {
+                final Object output = outputs.get(i);
+                fingerprints.put(output,
+                        restoredEntry.outputs.get(i).fingerprint);
+                if (reusedOutputs.get(i) != null)
+                    task.addReusedOutput(output);
+                else if (output instanceof RawDataFile)
+                    project.addFile((RawDataFile) output);
+                else
+                    project.addFeatureTable((FeatureTable) output);
+            }
+            for (String fingerprint : restoredEntry.removedItems)
+                removeItem(project, fingerprint);
+            sessionEntries.put(key, restoredEntry);
+        });
+        return task;
+    }
+
+    /**
+     * Returns the outputs of the given entry that are in the project, and
+     * null for the others.
+     */
+    private static @Nonnull List<Object> findOutputs(@Nonnull Entry entry,
+            @Nonnull MZmineProject project) {
+        final List<Object> outputs = new ArrayList<>();
+        for (Output output : entry.outputs)
+            outputs.add(findItem(project, output.fingerprint));
+        return outputs;
+    }
+
+    /**
+     * Checks that the raw data files of the feature tables to be read from
+     * the cache are in the project or in the entry itself.
+     */
+    private static boolean canRestore(@Nonnull Entry entry,
+            @Nonnull List<Object> presentOutputs,
+            @Nonnull MZmineProject project) {
+        final Set<String> entryFiles = new HashSet<>();
+        for (Output output : entry.outputs) {
+            if (output.type == OutputType.RAW_DATA_FILE)
+                entryFiles.add(output.fingerprint);
+        }
+        for (int i = 0; i < entry.outputs.size(); i++) {
+            if (presentOutputs.get(i) != null)
+                continue;
+            for (String fingerprint : entry.outputs.get(i).rawDataFiles) {
+                if (!entryFiles.contains(fingerprint)
+                        && findItem(project, fingerprint) == null)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static @Nullable Object findItem(@Nonnull MZmineProject project,
+            @Nonnull String fingerprint) {
+        for (RawDataFile rawDataFile : project.getRawDataFiles()) {
+            if (fingerprint.equals(fingerprints.get(rawDataFile)))
+                return rawDataFile;
+        }
+        for (FeatureTable featureTable : project.getFeatureTables()) {
+            if (fingerprint.equals(fingerprints.get(featureTable)))
+                return featureTable;
+        }
+        return null;
+    }
+
+    private static void removeItem(@Nonnull MZmineProject project,
+            @Nonnull String fingerprint) {
+        final Object item = findItem(project, fingerprint);
+        if (item instanceof RawDataFile)
+            project.removeFile((RawDataFile) item);
+        else if (item instanceof FeatureTable)
+            project.removeFeatureTable((FeatureTable) item);
+    }
+
+    private static @Nonnull Set<Object> projectItems(
+            @Nonnull MZmineProject project) {
+        final Set<Object> items = Collections
+                .newSetFromMap(new IdentityHashMap<>());
+        items.addAll(project.getRawDataFiles());
+        items.addAll(project.getFeatureTables());
+        return items;
+    }
+
+    /**
+     * Records the outputs of the tasks of a module run. The outputs of a task
+     * are the items that its OnSucceeded handler adds to the project. They are
+     * numbered by task and in the order they are added, so the fingerprints
+     * do not depend on which task finishes first. When all tasks have
+     * succeeded, the outputs are stored in the cache.
+     */
+    private static class RunRecorder {
+
+        private final @Nonnull String key;
+        private final @Nonnull List<Task<?>> tasks;
+        private final @Nonnull MZmineProject project;
+        private final @Nullable ResultCacheStore store;
+        private final List<List<Object>> taskOutputs = new ArrayList<>();
+        private final List<String> removedItems = new ArrayList<>();
+        private int pendingTasks;
+        private boolean failed = false;
+
+        /**
+         * @param store
+         *            where the outputs are written, or null to only keep them
+         *            for this session
+         */
+        private RunRecorder(@Nonnull String key, @Nonnull List<Task<?>> tasks,
+                @Nonnull MZmineProject project,
+                @Nullable ResultCacheStore store) {
+            this.key = key;
+            this.tasks = tasks;
+            this.project = project;
+            this.store = store;
+            this.pendingTasks = tasks.size();
+        }
+
+        private void start() {
+            for (int i = 0; i < tasks.size(); i++) {
+                taskOutputs.add(new ArrayList<>());
+                watchTask(i, tasks.get(i));
+            }
+        }
+
+        private void watchTask(int taskIndex, @Nonnull Task<?> task) {
+
+            final EventHandler<WorkerStateEvent> onSucceeded = task
+                    .getOnSucceeded();
+            task.setOnSucceeded(event -> {
+                final Set<Object> before = projectItems(project);
+                try {
+                    if (onSucceeded != null)
+                        onSucceeded.handle(event);
+                } finally {
+                    final Set<Object> after = projectItems(project);
+                    final List<Object> outputs = taskOutputs.get(taskIndex);
+                    for (Object item : after) {
+                        if (!before.contains(item)) {
+                            fingerprints.put(item, key + "-" + taskIndex + "-"
+                                    + outputs.size());
+                            outputs.add(item);
+                        }
+                    }
+                    for (Object item : before) {
+                        final String fingerprint = fingerprints.get(item);
+                        if (!after.contains(item) && fingerprint != null)
+                            removedItems.add(fingerprint);
+                    }
+                    taskFinished(!hasSucceeded(task));
+                }
+            });
+
+            final EventHandler<WorkerStateEvent> onFailed = task.getOnFailed();
+            task.setOnFailed(event -> {
+                try {
+                    if (onFailed != null)
+                        onFailed.handle(event);
+                } finally {
+                    taskFinished(true);
+                }
+            });
+
+            final EventHandler<WorkerStateEvent> onCancelled = task
+                    .getOnCancelled();
+            task.setOnCancelled(event -> {
+                try {
+                    if (onCancelled != null)
+                        onCancelled.handle(event);
+                } finally {
+                    taskFinished(true);
+                }
+            });
+        }
+
+        /**
+         * Returns true if the task body finished without an error and was
+         * not cancelled. The value of the JavaFX Task cannot be used, it is
+         * not set in batch mode.
+         */
+        private boolean hasSucceeded(@Nonnull Task<?> task) {
+            return (task instanceof MZmineTask) && ((MZmineTask) task)
+                    .getMetrics().getState() == State.SUCCEEDED;
+        }
+
+        private synchronized void taskFinished(boolean error) {
+            if (error)
+                failed = true;
+            pendingTasks--;
+            if (pendingTasks > 0 || failed)
+                return;
+
+            final List<Object> outputs = new ArrayList<>();
+            for (List<Object> items : taskOutputs)
+                outputs.addAll(items);
+            if (outputs.isEmpty())
+                return;
+
+            final List<Output> entryOutputs = new ArrayList<>();
+            for (Object output : outputs) {
+                final String fingerprint = fingerprints.get(output);
+                if (output instanceof RawDataFile) {
+                    final RawDataFile rawDataFile = (RawDataFile) output;
+                    entryOutputs.add(new Output(OutputType.RAW_DATA_FILE,
+                            fingerprint, rawDataFile.getName(),
+                            rawDataFile.getOriginalFile(),
+                            Collections.emptyList()));
+                } else {
+                    final FeatureTable featureTable = (FeatureTable) output;
+                    entryOutputs.add(new Output(OutputType.FEATURE_TABLE,
+                            fingerprint, featureTable.getName(), null,
+                            Collections.emptyList()));
+                }
+            }
+            sessionEntries.put(key,
+                    new Entry(entryOutputs, new ArrayList<>(removedItems)));
+
+            final ResultCacheStore outputStore = store;
+            if (outputStore == null)
+                return;
+            final List<String> removed = new ArrayList<>(removedItems);
+            MZmineCore.getTaskExecutor().execute(() -> {
+                if (outputStore.writeEntry(key, outputs, removed,
+                        ModuleResultCache::getFingerprint))
+                    logger.debug("Stored result " + key + " in result cache");
+            }, TaskPriority.NORMAL);
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.project.resultcache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.MSDKException;
+import io.github.msdk.MSDKMethod;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.project.resultcache.ResultCacheStore.Entry;
+import io.github.mzmine.project.resultcache.ResultCacheStore.Output;
+import io.github.mzmine.project.resultcache.ResultCacheStore.OutputType;
+import io.github.mzmine.util.datastore.DataPointStoreUtil;
+import io.github.mzmine.util.datastore.TmpStorageManager;
+
+/**
+ * Restores the outputs of a cached module run. Outputs that are still in the
+ * project are reused; the others are read from the cache entry.
+ */
+class ResultCacheRestoreMethod implements MSDKMethod<List<Object>> {
+
+    private final @Nonnull ResultCacheStore store;
+    private final @Nonnull String key;
+    private final @Nonnull Entry entry;
+    private final @Nonnull List<Object> presentOutputs;
+    private final @Nonnull Function<String, Object> projectItems;
+
+    private List<Object> result;
+    private volatile int restoredOutputs = 0;
+    private volatile boolean canceled = false;
+
+    /**
+     * @param presentOutputs
+     *            the outputs that are still in the project, null for the
+     *            outputs to be read
+     * @param projectItems
+     *            returns the project item with the given fingerprint, or null
+     */
+    ResultCacheRestoreMethod(@Nonnull ResultCacheStore store,
+            @Nonnull String key, @Nonnull Entry entry,
+            @Nonnull List<Object> presentOutputs,
+            @Nonnull Function<String, Object> projectItems) {
+        this.store = store;
+        this.key = key;
+        this.entry = entry;
+        this.presentOutputs = presentOutputs;
+        this.projectItems = projectItems;
+    }
+
+    @Override
+    public List<Object> execute() throws MSDKException {
+
+        final List<Object> outputs = new ArrayList<>(presentOutputs);
+        final Map<String, RawDataFile> restoredFiles = new HashMap<>();
+        try {
+            for (int i = 0; i < outputs.size(); i++) {
+                if (canceled) {
+                    discard(outputs);
+                    return null;
+                }
+                final Output output = entry.outputs.get(i);
+                if (outputs.get(i) == null) {
+                    if (output.type == OutputType.RAW_DATA_FILE) {
+                        final RawDataFile rawDataFile = store
+                                .readRawDataFile(key, i, output);
+                        restoredFiles.put(output.fingerprint, rawDataFile);
+                        outputs.set(i, rawDataFile);
+                    } else {
+                        outputs.set(i, readFeatureTable(i, restoredFiles));
+                    }
+                }
+                restoredOutputs++;
+            }
+        } catch (IOException | RuntimeException e) {
+            discard(outputs);
+            throw new MSDKException(e);
+        }
+
+        result = outputs;
+        return result;
+    }
+
+    private @Nonnull FeatureTable readFeatureTable(int outputIndex,
+            @Nonnull Map<String, RawDataFile> restoredFiles)
+            throws IOException {
+        final DataPointStore dataStore = DataPointStoreUtil
+                .createTmpFileDataStore();
+        try {
+            final FeatureTable featureTable = FeatureTableSerializer.read(
+                    store.getOutputFile(key, outputIndex), dataStore,
+                    fingerprint -> {
+                        final RawDataFile restoredFile = restoredFiles
+                                .get(fingerprint);
+                        if (restoredFile != null)
+                            return restoredFile;
+                        final Object item = projectItems.apply(fingerprint);
+                        return item instanceof RawDataFile
+                                ? (RawDataFile) item : null;
+                    });
+            TmpStorageManager.setOwner(dataStore, featureTable);
+            return featureTable;
+        } catch (IOException | RuntimeException e) {
+            dataStore.dispose();
+            throw e;
+        }
+    }
+
+    /**
+     * Disposes the outputs that were read from the cache entry.
+     */
+    private void discard(@Nonnull List<Object> outputs) {
+        for (int i = 0; i < outputs.size(); i++) {
+            final Object output = outputs.get(i);
+            if (output == null || presentOutputs.get(i) != null)
+                continue;
+            if (output instanceof RawDataFile)
+                ((RawDataFile) output).dispose();
+            else
+                TmpStorageManager.release(output);
+        }
+    }
+
+    @Override
+    @Nullable
+    public Float getFinishedPercentage() {
+        if (presentOutputs.isEmpty())
+            return null;
+        return (float) restoredOutputs / presentOutputs.size();
+    }
+
+    @Override
+    @Nullable
+    public List<Object> getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+
+}
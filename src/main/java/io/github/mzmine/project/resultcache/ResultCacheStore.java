@@ -0,0 +1,333 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.project.resultcache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.modules.rawdata.rawdataimport.ImportCache;
+
+/**
+ * On-disk storage of the module result cache. Each entry is a directory
+ * named after the cache key. It contains a manifest, which lists the outputs
+ * of the module run, and one file per output: raw data files in the import
+ * cache format and feature tables written by FeatureTableSerializer.
+ * 
+ * The total size of the entries is limited; the least recently used entries
+ * are deleted first.
+ */
+class ResultCacheStore {
+
+    private static final int VERSION = 1;
+    private static final String MANIFEST_FILE = "manifest";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Lock for the files of the cache directory, which may be written by
+     * several tasks at once.
+     */
+    private static final Object lock = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final @Nonnull File directory;
+    private final long maxSize;
+
+    /**
+     * Type of an output of a module run.
+     */
+    enum OutputType {
+        RAW_DATA_FILE, FEATURE_TABLE
+    }
+
+    /**
+     * Description of an output, as listed in the manifest.
+     */
+    static class Output {
+
+        final @Nonnull OutputType type;
+        final @Nonnull String fingerprint, name;
+
+        /**
+         * Original file of a raw data file.
+         */
+        final @Nullable File originalFile;
+
+        /**
+         * Fingerprints of the raw data files that a feature table refers to.
+         */
+        final @Nonnull List<String> rawDataFiles;
+
+        Output(@Nonnull OutputType type, @Nonnull String fingerprint,
+                @Nonnull String name, @Nullable File originalFile,
+                @Nonnull List<String> rawDataFiles) {
+            this.type = type;
+            this.fingerprint = fingerprint;
+            this.name = name;
+            this.originalFile = originalFile;
+            this.rawDataFiles = rawDataFiles;
+        }
+    }
+
+    /**
+     * The manifest of an entry.
+     */
+    static class Entry {
+
+        final @Nonnull List<Output> outputs;
+
+        /**
+         * Fingerprints of the project items that the module run removed.
+         */
+        final @Nonnull List<String> removedItems;
+
+        Entry(@Nonnull List<Output> outputs,
+                @Nonnull List<String> removedItems) {
+            this.outputs = outputs;
+            this.removedItems = removedItems;
+        }
+    }
+
+    /**
+     * @param maxSize
+     *            maximum total size of the cache entries in bytes
+     */
+    ResultCacheStore(@Nonnull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    @Nonnull
+    File getDirectory() {
+        return directory;
+    }
+
+    long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Reads the manifest of the entry with the given key and marks the entry
+     * as recently used. Returns null if there is no such entry.
+     */
+    @Nullable
+    Entry readEntry(@Nonnull String key) {
+
+        final File manifestFile = new File(new File(directory, key),
+                MANIFEST_FILE);
+        synchronized (lock) {
+            if (!manifestFile.isFile())
+                return null;
+            manifestFile.setLastModified(System.currentTimeMillis());
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(manifestFile)))) {
+            if (in.readInt() != VERSION)
+                return null;
+            final int numOfOutputs = in.readInt();
+            final List<Output> outputs = new ArrayList<>(numOfOutputs);
+            for (int i = 0; i < numOfOutputs; i++) {
+                final OutputType type = OutputType.valueOf(in.readUTF());
+                final String fingerprint = in.readUTF();
+                final String name = in.readUTF();
+                final String originalFile = in.readUTF();
+                outputs.add(new Output(type, fingerprint, name,
+                        originalFile.isEmpty() ? null
+                                : new File(originalFile),
+                        readStrings(in)));
+            }
+            return new Entry(outputs, readStrings(in));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read result cache entry " + manifestFile,
+                    e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the raw data file that is the given output of an entry.
+     */
+    @Nonnull
+    RawDataFile readRawDataFile(@Nonnull String key, int outputIndex,
+            @Nonnull Output output) throws IOException {
+        return ImportCache.readEntry(getOutputFile(key, outputIndex),
+                output.name, output.originalFile);
+    }
+
+    /**
+     * Returns the file of the given output of an entry.
+     */
+    @Nonnull
+    File getOutputFile(@Nonnull String key, int outputIndex) {
+        return new File(new File(directory, key), String.valueOf(outputIndex));
+    }
+
+    /**
+     * Writes a new entry and removes the least recently used entries if the
+     * cache is too large. Returns false if the outputs cannot be stored.
+     * 
+     * @param fingerprints
+     *            returns the fingerprint of a raw data file or feature table
+     */
+    boolean writeEntry(@Nonnull String key, @Nonnull List<Object> outputs,
+            @Nonnull List<String> removedItems,
+            @Nonnull Function<Object, String> fingerprints) {
+
+        final File entryDirectory = new File(directory, key);
+        final File tmpDirectory = new File(directory, key + TMP_SUFFIX);
+
+        try {
+            FileUtils.deleteDirectory(tmpDirectory);
+            FileUtils.forceMkdir(tmpDirectory);
+
+            final File manifestFile = new File(tmpDirectory, MANIFEST_FILE);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream(manifestFile)))) {
+                out.writeInt(VERSION);
+                out.writeInt(outputs.size());
+                for (int i = 0; i < outputs.size(); i++) {
+                    final Object output = outputs.get(i);
+                    final File outputFile = new File(tmpDirectory,
+                            String.valueOf(i));
+                    final List<String> rawDataFiles = new ArrayList<>();
+                    String name, originalFile = "";
+                    if (output instanceof RawDataFile) {
+                        final RawDataFile rawDataFile = (RawDataFile) output;
+                        ImportCache.writeEntry(outputFile, rawDataFile);
+                        out.writeUTF(OutputType.RAW_DATA_FILE.name());
+                        name = rawDataFile.getName();
+                        if (rawDataFile.getOriginalFile() != null)
+                            originalFile = rawDataFile.getOriginalFile()
+                                    .getPath();
+                    } else if (output instanceof FeatureTable) {
+                        final FeatureTable featureTable = (FeatureTable) output;
+                        rawDataFiles.addAll(FeatureTableSerializer
+                                .getRawDataFileFingerprints(featureTable,
+                                        fingerprints));
+                        FeatureTableSerializer.write(outputFile, featureTable,
+                                fingerprints);
+                        out.writeUTF(OutputType.FEATURE_TABLE.name());
+                        name = featureTable.getName();
+                    } else {
+                        throw new IOException(
+                                "Cannot store " + output.getClass());
+                    }
+                    out.writeUTF(fingerprints.apply(output));
+                    out.writeUTF(name);
+                    out.writeUTF(originalFile);
+                    writeStrings(out, rawDataFiles);
+                }
+                writeStrings(out, removedItems);
+            }
+
+            synchronized (lock) {
+                FileUtils.deleteDirectory(entryDirectory);
+                if (!tmpDirectory.renameTo(entryDirectory))
+                    throw new IOException("Could not rename " + tmpDirectory);
+                evict(entryDirectory);
+            }
+            return true;
+
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Result cache entry " + key + " not stored: "
+                    + e.getMessage());
+            FileUtils.deleteQuietly(tmpDirectory);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the entry with the given key, e.g. because it could not be
+     * restored.
+     */
+    void removeEntry(@Nonnull String key) {
+        synchronized (lock) {
+            FileUtils.deleteQuietly(new File(directory, key));
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits into its
+     * size limit. The given entry is kept.
+     */
+    private void evict(@Nonnull File keep) {
+        final File entries[] = directory.listFiles(file -> file.isDirectory()
+                && !file.getName().endsWith(TMP_SUFFIX));
+        if (entries == null)
+            return;
+        long totalSize = 0;
+        final long sizes[] = new long[entries.length];
+        Arrays.sort(entries, Comparator.comparingLong(
+                entry -> new File(entry, MANIFEST_FILE).lastModified()));
+        for (int i = 0; i < entries.length; i++) {
+            sizes[i] = FileUtils.sizeOfDirectory(entries[i]);
+            totalSize += sizes[i];
+        }
+        for (int i = 0; i < entries.length; i++) {
+            if (totalSize <= maxSize)
+                break;
+            if (entries[i].equals(keep))
+                continue;
+            if (FileUtils.deleteQuietly(entries[i])) {
+                totalSize -= sizes[i];
+                logger.debug("Removed " + entries[i] + " from result cache");
+            }
+        }
+    }
+
+    private static void writeStrings(@Nonnull DataOutputStream out,
+            @Nonnull List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings)
+            out.writeUTF(string);
+    }
+
+    private static @Nonnull List<String> readStrings(
+            @Nonnull DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            strings.add(in.readUTF());
+        return strings;
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.mzmine.main.MZmineCore;
+
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
+import javafx.event.EventType;
+
+/**
+ * Executes MZmine tasks without the JavaFX toolkit. The tasks are run through
+ * MZmineTask.runHeadless() on the MZmine task executor and their OnSucceeded
+ * handlers are invoked directly, so the results are added to the project in
+ * the same way as in the GUI. The handlers are invoked one at a time, as they
+ * would be on the FX application thread.
+ */
+public class HeadlessTaskExecutor {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Object handlerLock = new Object();
+
+    /**
+     * Submits the given tasks for execution and returns immediately.
+     */
+    public @Nonnull List<Future<Boolean>> submitTasks(
+            @Nonnull Collection<Task<?>> tasks) {
+        final List<Future<Boolean>> futures = new ArrayList<>();
+        for (Task<?> task : tasks) {
+            final long estimatedMemory = (task instanceof MZmineTask)
+                    ? ((MZmineTask) task).getEstimatedMemory() : 0;
+            futures.add(MZmineCore.getTaskExecutor().submit(
+                    () -> runTask(task), TaskPriority.NORMAL,
+                    estimatedMemory));
+        }
+        return futures;
+    }
+
+    /**
+     * Runs the given tasks in parallel and waits until all of them have
+     * finished. Returns true if all tasks finished without errors.
+     */
+    public boolean runTasks(@Nonnull Collection<Task<?>> tasks) {
+
+        final List<Future<Boolean>> futures = submitTasks(tasks);
+
+        boolean success = true;
+        for (Future<Boolean> future : futures) {
+            try {
+                if (!future.get())
+                    success = false;
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error("Error waiting for task to finish", e);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    private boolean runTask(@Nonnull Task<?> task) {
+
+        if (!(task instanceof MZmineTask)) {
+            logger.error("Task " + task.getClass().getSimpleName()
+                    + " cannot be run in batch mode");
+            fireEvent(task, task.getOnFailed(),
+                    WorkerStateEvent.WORKER_STATE_FAILED);
+            return false;
+        }
+
+        // The properties of the JavaFX Task are not updated without the FX
+        // toolkit, so the title and outcome are recorded in the metrics
+        final MZmineTask mzmineTask = (MZmineTask) task;
+        final String taskName = mzmineTask.getTaskTitle();
+        final TaskMetrics metrics = mzmineTask.getMetrics();
+        metrics.setTitle(taskName);
+        metrics.setMessage(mzmineTask.getTaskMessage());
+        metrics.setState(State.RUNNING);
+        metrics.start();
+        try {
+            // Failures are reported as exceptions, a null result only means
+            // that the task produces no result (or was cancelled)
+            mzmineTask.runHeadless();
+        } catch (Throwable e) {
+            logger.error("Error executing task " + taskName + ": "
+                    + e.getMessage(), e);
+            metrics.setState(State.FAILED);
+            metrics.setErrorMessage(e.getMessage());
+            fireEvent(task, task.getOnFailed(),
+                    WorkerStateEvent.WORKER_STATE_FAILED);
+            return false;
+        } finally {
+            metrics.stop();
+        }
+
+        if (task.isCancelled()) {
+            metrics.setState(State.CANCELLED);
+            fireEvent(task, task.getOnCancelled(),
+                    WorkerStateEvent.WORKER_STATE_CANCELLED);
+            return false;
+        }
+        metrics.setState(State.SUCCEEDED);
+
+        // Let the module add the results to the project
+        if (!fireEvent(task, task.getOnSucceeded(),
+                WorkerStateEvent.WORKER_STATE_SUCCEEDED)) {
+            metrics.setState(State.FAILED);
+            metrics.setErrorMessage("Error processing the task result");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean fireEvent(@Nonnull Task<?> task,
+            EventHandler<WorkerStateEvent> handler,
+            @Nonnull EventType<WorkerStateEvent> eventType) {
+        if (handler == null)
+            return true;
+        synchronized (handlerLock) {
+            try {
+                handler.handle(new WorkerStateEvent(task, eventType));
+                return true;
+            } catch (Throwable e) {
+                logger.error("Error processing the result of task "
+                        + task.getClass().getSimpleName() + ": "
+                        + e.getMessage(), e);
+                return false;
+            }
+        }
+    }
+
+}
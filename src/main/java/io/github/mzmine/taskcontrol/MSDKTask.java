@@ -19,6 +19,7 @@
 
 package io.github.mzmine.taskcontrol;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
@@ -26,7 +27,9 @@ import org.slf4j.LoggerFactory;
 
 import io.github.msdk.MSDKMethod;
 import io.github.mzmine.gui.MZmineGUI;
+import io.github.mzmine.main.MZmineCore;
 import javafx.concurrent.Task;
+import javafx.concurrent.Worker.State;
 
 public class MSDKTask extends Task<Object> implements MZmineTask {
 
@@ -34,6 +37,8 @@ public class MSDKTask extends Task<Object> implements MZmineTask {
 
     private MSDKMethod<?> method;
     private String title, message;
+    private final TaskMetrics metrics = new TaskMetrics();
+    private long estimatedMemory = 0;
 
     public MSDKTask(String title, @Nullable String message,
             MSDKMethod<?> method) {
@@ -48,6 +53,10 @@ public class MSDKTask extends Task<Object> implements MZmineTask {
     @Override
     public void refreshStatus() {
 
+        // Without the FX toolkit, the task properties cannot be updated
+        if (MZmineCore.isHeadLessMode())
+            return;
+
         // Progress
         final Float finishedPerc = method.getFinishedPercentage();
         if (finishedPerc != null)
@@ -58,18 +67,60 @@ public class MSDKTask extends Task<Object> implements MZmineTask {
         updateMessage(message);
     }
 
+    @Override
+    public @Nonnull String getTaskTitle() {
+        return title;
+    }
+
+    @Override
+    public @Nullable String getTaskMessage() {
+        return message;
+    }
+
+    @Override
+    public @Nonnull Float getFinishedPercentage() {
+        final Float finishedPerc = method.getFinishedPercentage();
+        return finishedPerc == null ? 0f : finishedPerc;
+    }
+
     @Override
     protected Object call() throws Exception {
-        Object result = null;
         try {
-            result = method.execute();
+            final Object result = runHeadless();
+            metrics.setState(
+                    isCancelled() ? State.CANCELLED : State.SUCCEEDED);
+            return result;
         } catch (Throwable e) {
             final String msg = "Error executing task " + title + ": "
                     + e.getMessage();
             logger.error(msg, e);
             MZmineGUI.displayMessage(msg);
+            metrics.setState(State.FAILED);
+            metrics.setErrorMessage(e.getMessage());
+            // Let the worker end in the FAILED state
+            throw e;
         }
+    }
+
+    @Override
+    public Object runHeadless() throws Exception {
+        final Object result = method.execute();
+        metrics.setItemCount(TaskMetrics.countItems(result));
         return result;
     }
 
+    @Override
+    public @Nonnull TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getEstimatedMemory() {
+        return estimatedMemory;
+    }
+
+    public void setEstimatedMemory(long estimatedMemory) {
+        this.estimatedMemory = estimatedMemory;
+    }
+
 }
\ No newline at end of file
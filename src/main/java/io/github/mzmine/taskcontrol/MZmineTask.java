@@ -19,12 +19,58 @@
 
 package io.github.mzmine.taskcontrol;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
 public interface MZmineTask {
 
     /**
      * Update the task status, and finished percentage, according to the current
-     * progress.
+     * progress. Must be called on the FX application thread.
      */
     void refreshStatus();
 
+    /**
+     * Returns the title of the task. Unlike Task.getTitle(), also available
+     * in batch mode.
+     */
+    @Nonnull
+    String getTaskTitle();
+
+    /**
+     * Returns the message of the task, e.g. the name of the processed file.
+     */
+    @Nullable
+    String getTaskMessage();
+
+    /**
+     * Returns the current progress of the task (0.0 - 1.0). May be called
+     * from any thread; used by TaskProgressMonitor to detect changes without
+     * touching the FX properties.
+     */
+    @Nonnull
+    Float getFinishedPercentage();
+
+    /**
+     * Returns the resource usage of this task, recorded in the audit log.
+     */
+    @Nonnull
+    TaskMetrics getMetrics();
+
+    /**
+     * Returns the estimated heap memory needed by this task in bytes, or 0 if
+     * unknown. See MemoryEstimator.
+     */
+    long getEstimatedMemory();
+
+    /**
+     * Runs the task body on the calling thread, without the JavaFX worker
+     * machinery. Used in batch mode, where no FX toolkit is available. Unlike
+     * the regular task execution, errors are propagated to the caller.
+     * Failures are always reported as exceptions; a null result means the
+     * task has no result or was cancelled, never that it failed.
+     */
+    @Nullable
+    Object runHeadless() throws Exception;
+
 }
\ No newline at end of file
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The executor for all MZmine tasks and background work. NORMAL tasks run on
+ * a work-stealing ForkJoinPool of numOfThreads threads, so tasks can fork
+ * their own subtasks into the same pool.
+ * 
+ * At most numOfThreads NORMAL tasks run at the same time; the remaining ones
+ * wait in a queue. HIGH priority tasks run on a separate small pool, so
+ * interactive work such as plot loading starts immediately even when all
+ * batch threads and their subtasks are busy, and queued HIGH tasks are always
+ * started before queued NORMAL tasks.
+ * 
+ * NORMAL tasks with a memory estimate (see MemoryEstimator) are also held
+ * back while the used heap plus the estimates of the running tasks plus their
+ * own estimate would exceed the memory budget, a fraction of the maximum heap
+ * size. Held tasks are released when memory becomes available, or when no
+ * other NORMAL task is running.
+ */
+public class MZmineTaskExecutor {
+
+    /**
+     * Number of threads reserved for HIGH priority tasks.
+     */
+    private static final int INTERACTIVE_THREADS = 2;
+
+    /**
+     * Interval for checking whether held tasks can be started.
+     */
+    private static final long MEMORY_CHECK_PERIOD = 500; // ms
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final PriorityQueue<QueuedTask> queue = new PriorityQueue<>(
+            Comparator.comparing((QueuedTask t) -> t.priority)
+                    .thenComparingLong(t -> t.sequence));
+
+    private ForkJoinPool pool;
+    private final ForkJoinPool interactivePool = createPool(
+            INTERACTIVE_THREADS, "MZmine interactive task thread ");
+    private int numOfThreads;
+    private int runningNormalTasks = 0;
+    private long sequence = 0;
+
+    private double memoryBudget = 0.8;
+    private long reservedMemory = 0;
+    private boolean memoryCheckScheduled = false;
+    private final ScheduledExecutorService memoryMonitor = Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Task memory monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public MZmineTaskExecutor(int numOfThreads) {
+        this.numOfThreads = Math.max(1, numOfThreads);
+        this.pool = createPool(this.numOfThreads, "MZmine task thread ");
+    }
+
+    /**
+     * Queues the given runnable for execution with the given priority.
+     */
+    public synchronized void execute(@Nonnull Runnable runnable,
+            @Nonnull TaskPriority priority) {
+        final long estimatedMemory = (runnable instanceof MZmineTask)
+                ? ((MZmineTask) runnable).getEstimatedMemory() : 0;
+        execute(runnable, priority, estimatedMemory);
+    }
+
+    /**
+     * Queues the given runnable for execution with the given priority and
+     * memory estimate in bytes.
+     */
+    public synchronized void execute(@Nonnull Runnable runnable,
+            @Nonnull TaskPriority priority, long estimatedMemory) {
+        queue.add(new QueuedTask(runnable, priority, sequence++,
+                estimatedMemory));
+        dispatch();
+    }
+
+    /**
+     * Queues the given callable for execution with the given priority and
+     * returns its future.
+     */
+    public <T> Future<T> submit(@Nonnull Callable<T> callable,
+            @Nonnull TaskPriority priority) {
+        return submit(callable, priority, 0);
+    }
+
+    /**
+     * Queues the given callable for execution with the given priority and
+     * memory estimate in bytes, and returns its future.
+     */
+    public <T> Future<T> submit(@Nonnull Callable<T> callable,
+            @Nonnull TaskPriority priority, long estimatedMemory) {
+        final FutureTask<T> future = new FutureTask<>(callable);
+        execute(future, priority, estimatedMemory);
+        return future;
+    }
+
+    /**
+     * Returns the work-stealing pool of the NORMAL tasks, for tasks that want
+     * to run parallel subtasks. Its parallelism is the number of threads.
+     */
+    public synchronized @Nonnull ForkJoinPool getForkJoinPool() {
+        return pool;
+    }
+
+    public synchronized int getNumberOfThreads() {
+        return numOfThreads;
+    }
+
+    /**
+     * Sets the fraction of the maximum heap size that the running tasks may
+     * use.
+     */
+    public synchronized void setMemoryBudget(double newMemoryBudget) {
+        memoryBudget = newMemoryBudget;
+        dispatch();
+    }
+
+    public synchronized double getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Changes the number of threads for NORMAL tasks. Running tasks finish in
+     * the previous pool.
+     */
+    public synchronized void setNumberOfThreads(int newNumOfThreads) {
+        newNumOfThreads = Math.max(1, newNumOfThreads);
+        if (newNumOfThreads == numOfThreads)
+            return;
+        logger.debug("Setting the thread pool size to " + newNumOfThreads);
+        final ForkJoinPool oldPool = pool;
+        numOfThreads = newNumOfThreads;
+        pool = createPool(numOfThreads, "MZmine task thread ");
+        oldPool.shutdown();
+        dispatch();
+    }
+
+    public synchronized void shutdown() {
+        queue.clear();
+        pool.shutdownNow();
+        interactivePool.shutdownNow();
+        memoryMonitor.shutdownNow();
+    }
+
+    private void dispatch() {
+        while (!queue.isEmpty()) {
+            final QueuedTask next = queue.peek();
+            if (next.priority == TaskPriority.NORMAL) {
+                if (runningNormalTasks >= numOfThreads)
+                    return;
+                if (!hasMemoryFor(next)) {
+                    scheduleMemoryCheck();
+                    return;
+                }
+                runningNormalTasks++;
+                reservedMemory += next.estimatedMemory;
+            }
+            queue.poll();
+            final ForkJoinPool targetPool = next.priority == TaskPriority.HIGH
+                    ? interactivePool : pool;
+            targetPool.execute(() -> {
+                final TaskMetrics metrics = (next.runnable instanceof MZmineTask)
+                        ? ((MZmineTask) next.runnable).getMetrics() : null;
+                if (metrics != null)
+                    metrics.start();
+                try {
+                    next.runnable.run();
+                } catch (Throwable e) {
+                    logger.error("Uncaught error in task", e);
+                } finally {
+                    if (metrics != null)
+                        metrics.stop();
+                    taskFinished(next);
+                }
+            });
+        }
+    }
+
+    private synchronized void taskFinished(@Nonnull QueuedTask task) {
+        if (task.priority == TaskPriority.NORMAL) {
+            runningNormalTasks--;
+            reservedMemory -= task.estimatedMemory;
+        }
+        dispatch();
+    }
+
+    private boolean hasMemoryFor(@Nonnull QueuedTask task) {
+        if ((task.estimatedMemory <= 0) || (runningNormalTasks == 0))
+            return true;
+        final Runtime runtime = Runtime.getRuntime();
+        final long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+        final long budget = (long) (runtime.maxMemory() * memoryBudget);
+        return usedMemory + reservedMemory + task.estimatedMemory <= budget;
+    }
+
+    private void scheduleMemoryCheck() {
+        if (memoryCheckScheduled)
+            return;
+        memoryCheckScheduled = true;
+        logger.debug("Holding tasks until memory is available");
+        memoryMonitor.schedule(() -> {
+            synchronized (this) {
+                memoryCheckScheduled = false;
+                dispatch();
+            }
+        }, MEMORY_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    private static ForkJoinPool createPool(int numOfThreads,
+            @Nonnull String threadName) {
+        return new ForkJoinPool(numOfThreads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                    .newThread(pool);
+            thread.setName(threadName + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+    }
+
+    private static class QueuedTask {
+
+        private final Runnable runnable;
+        private final TaskPriority priority;
+        private final long sequence;
+        private final long estimatedMemory;
+
+        private QueuedTask(Runnable runnable, TaskPriority priority,
+                long sequence, long estimatedMemory) {
+            this.runnable = runnable;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.estimatedMemory = Math.max(0, estimatedMemory);
+        }
+    }
+
+}
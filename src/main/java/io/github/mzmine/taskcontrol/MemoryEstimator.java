@@ -0,0 +1,75 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.io.File;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+
+/**
+ * Rough estimates of the heap memory a task needs, used by the task executor
+ * to hold tasks back while the heap is full.
+ */
+public class MemoryEstimator {
+
+    /**
+     * Heap bytes per byte of a raw data file being imported. Covers the
+     * parser buffers and the decoded data of the scans.
+     */
+    private static final double IMPORT_BYTES_PER_FILE_BYTE = 1.5;
+
+    /**
+     * Heap bytes of the metadata of one scan.
+     */
+    private static final long BYTES_PER_SCAN = 1024;
+
+    /**
+     * Heap bytes of one data point (double m/z and float intensity).
+     */
+    private static final long BYTES_PER_DATA_POINT = 12;
+
+    /**
+     * Estimates the memory needed to import the given raw data file, from its
+     * size.
+     */
+    public static long estimateImport(@Nonnull File file) {
+        return (long) (file.length() * IMPORT_BYTES_PER_FILE_BYTE);
+    }
+
+    /**
+     * Estimates the memory needed to process the given raw data file, from
+     * its scan count and data points, assuming its data is held in memory
+     * once.
+     */
+    public static long estimateProcessing(@Nonnull RawDataFile rawDataFile) {
+        long estimate = 0;
+        for (MsScan scan : rawDataFile.getScans()) {
+            final Integer numOfDataPoints = scan.getNumberOfDataPoints();
+            estimate += BYTES_PER_SCAN;
+            if (numOfDataPoints != null)
+                estimate += numOfDataPoints * BYTES_PER_DATA_POINT;
+        }
+        return estimate;
+    }
+
+}
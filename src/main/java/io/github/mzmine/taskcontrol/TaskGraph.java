@@ -0,0 +1,408 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ *
+ * This file is part of MZmine 3.
+ *
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ *
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureTablesSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.project.MZmineProject;
+import io.github.mzmine.project.auditlog.AuditLogEntry;
+import io.github.mzmine.project.resultcache.CachedResultTask;
+import io.github.mzmine.project.resultcache.ModuleResultCache;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
+
+/**
+ * Dependency-aware scheduler for chained module runs. Each node of the graph
+ * is a module invocation that declares its input: the raw data files or
+ * feature tables produced by an upstream node. A node is started as soon as
+ * its input exists, so with InputMode.EACH every file flows through the chain
+ * on its own, without waiting for the other files to finish the previous
+ * step.
+ *
+ * The outputs of a task are the raw data files and feature tables that its
+ * OnSucceeded handler adds to the project. The handlers must be invoked one
+ * at a time, as they are on the FX application thread and in
+ * HeadlessTaskExecutor.
+ */
+public class TaskGraph {
+
+    /**
+     * How the outputs of the upstream node are passed to a node.
+     */
+    public enum InputMode {
+
+        /**
+         * The node is run once for each output of the upstream node, as soon
+         * as that output exists.
+         */
+        EACH,
+
+        /**
+         * The node is run once with all outputs of the upstream node, after
+         * the upstream node has finished.
+         */
+        ALL,
+
+        /**
+         * The node is run once after the upstream node has finished, with its
+         * parameters unchanged.
+         */
+        AFTER
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MZmineProject project;
+    private final Consumer<Collection<Task<?>>> taskSubmitter;
+    private final List<Node> nodes = new ArrayList<>();
+
+    private int runningNodes = 0;
+    private boolean started = false, failed = false;
+
+    /**
+     * @param project
+     *            project where the modules add their results
+     * @param taskSubmitter
+     *            submits the tasks for execution, e.g. MZmineCore::submitTasks
+     */
+    public TaskGraph(@Nonnull MZmineProject project,
+            @Nonnull Consumer<Collection<Task<?>>> taskSubmitter) {
+        this.project = project;
+        this.taskSubmitter = taskSubmitter;
+    }
+
+    /**
+     * Adds a node without an upstream node. It is run once when the graph is
+     * started.
+     */
+    public synchronized @Nonnull Node addNode(
+            @Nonnull MZmineProcessingModule module,
+            @Nonnull Supplier<ParameterSet> parameters) {
+        return addNode(module, parameters, null, InputMode.AFTER);
+    }
+
+    /**
+     * Adds a node that takes its input from the given upstream node. The
+     * parameters are obtained from the supplier for every run of the node,
+     * after the input files have been created.
+     */
+    public synchronized @Nonnull Node addNode(
+            @Nonnull MZmineProcessingModule module,
+            @Nonnull Supplier<ParameterSet> parameters,
+            @Nullable Node upstream, @Nonnull InputMode inputMode) {
+        if (started)
+            throw new IllegalStateException("Task graph was already started");
+        final Node node = new Node(module, parameters, upstream, inputMode);
+        if (upstream != null)
+            upstream.downstream.add(node);
+        nodes.add(node);
+        runningNodes++;
+        return node;
+    }
+
+    /**
+     * Starts all nodes that have no upstream node.
+     */
+    public synchronized void start() {
+        if (started)
+            return;
+        started = true;
+        for (Node node : new ArrayList<>(nodes)) {
+            if (node.upstream == null)
+                node.run(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Waits until all nodes of the graph have finished. Returns true if all
+     * nodes finished without errors.
+     */
+    public synchronized boolean waitForCompletion()
+            throws InterruptedException {
+        while (runningNodes > 0)
+            wait();
+        return !failed;
+    }
+
+    public synchronized boolean isFinished() {
+        return started && runningNodes == 0;
+    }
+
+    private synchronized void nodeFinished(@Nonnull Node node) {
+        runningNodes--;
+        logger.debug("Node " + node + " finished");
+        for (Node child : node.downstream) {
+            switch (child.inputMode) {
+            case EACH:
+                child.upstreamFinished();
+                break;
+            case ALL:
+                if (node.failed)
+                    child.skip();
+                else
+                    child.run(node.outputs);
+                break;
+            case AFTER:
+                if (node.failed)
+                    child.skip();
+                else
+                    child.run(Collections.emptyList());
+                break;
+            }
+        }
+        notifyAll();
+    }
+
+    private synchronized void itemCreated(@Nonnull Node node,
+            @Nonnull Object item) {
+        node.outputs.add(item);
+        for (Node child : node.downstream) {
+            if (child.inputMode == InputMode.EACH)
+                child.run(Collections.singletonList(item));
+        }
+    }
+
+    /**
+     * A module invocation in the graph.
+     */
+    public final class Node {
+
+        private final MZmineProcessingModule module;
+        private final Supplier<ParameterSet> parameters;
+        private final Node upstream;
+        private final InputMode inputMode;
+        private final List<Node> downstream = new ArrayList<>();
+        private final List<Object> outputs = new ArrayList<>();
+
+        private int pendingTasks = 0;
+        private boolean upstreamFinished = false, finished = false,
+                failed = false;
+
+        private Node(MZmineProcessingModule module,
+                Supplier<ParameterSet> parameters, Node upstream,
+                InputMode inputMode) {
+            this.module = module;
+            this.parameters = parameters;
+            this.upstream = upstream;
+            this.inputMode = inputMode;
+        }
+
+        public @Nonnull List<Object> getOutputs() {
+            synchronized (TaskGraph.this) {
+                return new ArrayList<>(outputs);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return module.getName();
+        }
+
+        private void run(@Nonnull List<Object> input) {
+
+            // EACH nodes are finished by upstreamFinished()
+            if (inputMode != InputMode.EACH)
+                upstreamFinished = true;
+
+            final ParameterSet parameterSet = parameters.get();
+            if ((parameterSet == null) || !bindInput(parameterSet, input)) {
+                setFailed();
+                checkFinished();
+                return;
+            }
+
+            final List<Task<?>> newTasks = new ArrayList<>();
+            try {
+                ModuleResultCache.runModule(module, parameterSet, project,
+                        newTasks);
+            } catch (Exception e) {
+                logger.error("Error running module " + module.getName(), e);
+                setFailed();
+            }
+
+            AuditLogEntry auditLogEntry = new AuditLogEntry(module,
+                    parameterSet, newTasks);
+            project.logProcessingStep(auditLogEntry);
+
+            for (Task<?> task : newTasks)
+                watchTask(task);
+            pendingTasks += newTasks.size();
+            if (!newTasks.isEmpty())
+                taskSubmitter.accept(newTasks);
+
+            checkFinished();
+        }
+
+        /**
+         * Finishes the node without running it, because its input could not
+         * be created.
+         */
+        private void skip() {
+            logger.warn("Skipping " + module.getName()
+                    + " because the upstream step failed");
+            failed = true;
+            upstreamFinished = true;
+            checkFinished();
+        }
+
+        private void setFailed() {
+            failed = true;
+            TaskGraph.this.failed = true;
+        }
+
+        private void upstreamFinished() {
+            upstreamFinished = true;
+            checkFinished();
+        }
+
+        private void checkFinished() {
+            if (finished || !upstreamFinished || pendingTasks > 0)
+                return;
+            finished = true;
+            nodeFinished(this);
+        }
+
+        private boolean bindInput(@Nonnull ParameterSet parameterSet,
+                @Nonnull List<Object> input) {
+
+            if (inputMode == InputMode.AFTER)
+                return true;
+
+            final List<RawDataFile> rawDataFiles = new ArrayList<>();
+            final List<FeatureTable> featureTables = new ArrayList<>();
+            for (Object item : input) {
+                if (item instanceof RawDataFile)
+                    rawDataFiles.add((RawDataFile) item);
+                if (item instanceof FeatureTable)
+                    featureTables.add((FeatureTable) item);
+            }
+
+            for (Parameter<?> parameter : parameterSet) {
+                if (parameter instanceof RawDataFilesParameter
+                        && !rawDataFiles.isEmpty()) {
+                    ((RawDataFilesParameter) parameter)
+                            .setValue(new RawDataFilesSelection(rawDataFiles));
+                    return true;
+                }
+                if (parameter instanceof FeatureTablesParameter
+                        && !featureTables.isEmpty()) {
+                    ((FeatureTablesParameter) parameter)
+                            .setValue(new FeatureTablesSelection(
+                                    FeatureTablesSelectionType.SPECIFIC_FEATURE_TABLES,
+                                    featureTables, null));
+                    return true;
+                }
+            }
+
+            logger.error("Module " + module.getName()
+                    + " has no parameter to accept the input " + input);
+            return false;
+        }
+
+        private void watchTask(@Nonnull Task<?> task) {
+
+            final EventHandler<WorkerStateEvent> onSucceeded = task
+                    .getOnSucceeded();
+            task.setOnSucceeded(event -> {
+                final Set<Object> before = projectItems();
+                try {
+                    if (onSucceeded != null)
+                        onSucceeded.handle(event);
+                } finally {
+                    for (Object item : projectItems()) {
+                        if (!before.contains(item))
+                            itemCreated(this, item);
+                    }
+                    // Cached results that were already in the project
+                    if (task instanceof CachedResultTask) {
+                        for (Object item : ((CachedResultTask) task)
+                                .getReusedOutputs())
+                            itemCreated(this, item);
+                    }
+                    taskFinished(false);
+                }
+            });
+
+            final EventHandler<WorkerStateEvent> onFailed = task.getOnFailed();
+            task.setOnFailed(event -> {
+                try {
+                    if (onFailed != null)
+                        onFailed.handle(event);
+                } finally {
+                    taskFinished(true);
+                }
+            });
+
+            final EventHandler<WorkerStateEvent> onCancelled = task
+                    .getOnCancelled();
+            task.setOnCancelled(event -> {
+                try {
+                    if (onCancelled != null)
+                        onCancelled.handle(event);
+                } finally {
+                    taskFinished(true);
+                }
+            });
+        }
+
+        private void taskFinished(boolean error) {
+            synchronized (TaskGraph.this) {
+                if (error)
+                    setFailed();
+                pendingTasks--;
+                checkFinished();
+            }
+        }
+
+        private @Nonnull Set<Object> projectItems() {
+            final Set<Object> items = Collections
+                    .newSetFromMap(new IdentityHashMap<>());
+            items.addAll(project.getRawDataFiles());
+            items.addAll(project.getFeatureTables());
+            return items;
+        }
+
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+import javafx.concurrent.Worker.State;
+
+/**
+ * Resource usage of a task: wall time, CPU time and allocated bytes of the
+ * thread that runs the task, the number of produced items and the number of
+ * bytes written to data point stores. The CPU time and allocated bytes are
+ * measured with ThreadMXBean, so work done by helper threads of the task is
+ * not included.
+ * 
+ * Also records the outcome of the task body, which is known in batch mode as
+ * well, where the properties of the JavaFX Task are not updated.
+ */
+public class TaskMetrics {
+
+    private static final ThreadMXBean threadMXBean = ManagementFactory
+            .getThreadMXBean();
+
+    private static final ThreadLocal<TaskMetrics> currentMetrics = new ThreadLocal<>();
+
+    private volatile long wallTime = 0, cpuTime = 0, allocatedBytes = 0;
+    private volatile Long itemCount = null;
+    private volatile String title = null, message = null;
+    private volatile State state = State.READY;
+    private volatile String errorMessage = null;
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    private long startWallTime, startCpuTime, startAllocatedBytes;
+
+    /**
+     * Starts measuring on the current thread.
+     */
+    public void start() {
+        currentMetrics.set(this);
+        startWallTime = System.nanoTime();
+        startCpuTime = getThreadCpuTime();
+        startAllocatedBytes = getThreadAllocatedBytes();
+    }
+
+    /**
+     * Stops measuring on the current thread and adds the measured values.
+     */
+    public void stop() {
+        wallTime += System.nanoTime() - startWallTime;
+        cpuTime += getThreadCpuTime() - startCpuTime;
+        allocatedBytes += getThreadAllocatedBytes() - startAllocatedBytes;
+        currentMetrics.remove();
+    }
+
+    /**
+     * Adds the given number of bytes to the metrics of the task running on
+     * the current thread, if any.
+     */
+    public static void addStoredBytes(long bytes) {
+        final TaskMetrics metrics = currentMetrics.get();
+        if (metrics != null)
+            metrics.storedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Returns the number of items in a task result: scans of a raw data file,
+     * rows of a feature table or elements of a collection.
+     */
+    public static @Nullable Long countItems(@Nullable Object result) {
+        if (result instanceof RawDataFile)
+            return (long) ((RawDataFile) result).getScans().size();
+        if (result instanceof FeatureTable)
+            return (long) ((FeatureTable) result).getRows().size();
+        if (result instanceof Collection)
+            return (long) ((Collection<?>) result).size();
+        return null;
+    }
+
+    /**
+     * Wall time in nanoseconds.
+     */
+    public long getWallTime() {
+        return wallTime;
+    }
+
+    /**
+     * CPU time in nanoseconds, or 0 if not supported by the JVM.
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * Bytes allocated on the heap, or 0 if not supported by the JVM.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    public @Nullable Long getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(@Nullable Long itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    /**
+     * Returns the title of the task, recorded when it is run in batch mode.
+     */
+    public @Nullable String getTitle() {
+        return title;
+    }
+
+    public void setTitle(@Nullable String title) {
+        this.title = title;
+    }
+
+    public @Nullable String getMessage() {
+        return message;
+    }
+
+    public void setMessage(@Nullable String message) {
+        this.message = message;
+    }
+
+    /**
+     * Returns the state of the task body. It is SUCCEEDED only if the body
+     * returned a result, e.g. an MSDK method that failed or was cancelled
+     * leaves the task FAILED or CANCELLED even though the JavaFX Task
+     * succeeded.
+     */
+    public @Nonnull State getState() {
+        return state;
+    }
+
+    public void setState(@Nonnull State state) {
+        this.state = state;
+    }
+
+    /**
+     * Returns the error message of a failed task, or null.
+     */
+    public @Nullable String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(@Nullable String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    private static long getThreadCpuTime() {
+        if (!threadMXBean.isCurrentThreadCpuTimeSupported())
+            return 0;
+        return threadMXBean.getCurrentThreadCpuTime();
+    }
+
+    private static long getThreadAllocatedBytes() {
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean))
+            return 0;
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!sunBean.isThreadAllocatedMemorySupported())
+            return 0;
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+/**
+ * Publishes the progress of MZmine tasks to their FX properties. A background
+ * thread samples the progress of the registered tasks and only the tasks
+ * whose progress has changed are refreshed, in a single coalesced update on
+ * the FX application thread. A new update is not scheduled before the
+ * previous one was applied, so a busy FX thread is never flooded with
+ * events. Tasks that have finished leave the sampled set.
+ */
+public class TaskProgressMonitor {
+
+    private static final long UPDATE_PERIOD = 100; // ms
+
+    /**
+     * Smallest change of progress that is published (0.5 %).
+     */
+    private static final float MIN_PROGRESS_CHANGE = 0.005f;
+
+    private final Map<MZmineTask, Float> publishedProgress = new ConcurrentHashMap<>();
+    private final AtomicBoolean updatePending = new AtomicBoolean(false);
+    private final ScheduledExecutorService sampler = Executors
+            .newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Task progress monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public void start() {
+        sampler.scheduleWithFixedDelay(this::sampleProgress, UPDATE_PERIOD,
+                UPDATE_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        sampler.shutdownNow();
+    }
+
+    public void register(@Nonnull Task<?> task) {
+        if (task instanceof MZmineTask)
+            publishedProgress.putIfAbsent((MZmineTask) task,
+                    ((MZmineTask) task).getFinishedPercentage());
+    }
+
+    public void unregister(@Nonnull Task<?> task) {
+        if (task instanceof MZmineTask)
+            publishedProgress.remove(task);
+    }
+
+    private void sampleProgress() {
+
+        // The previous update has not been applied yet
+        if (updatePending.get())
+            return;
+
+        final List<MZmineTask> changedTasks = new ArrayList<>();
+        for (Map.Entry<MZmineTask, Float> entry : publishedProgress
+                .entrySet()) {
+            final MZmineTask task = entry.getKey();
+            if (((Task<?>) task).isDone()) {
+                publishedProgress.remove(task);
+                continue;
+            }
+            final float progress = task.getFinishedPercentage();
+            if (Math.abs(progress - entry.getValue()) < MIN_PROGRESS_CHANGE)
+                continue;
+            entry.setValue(progress);
+            changedTasks.add(task);
+        }
+
+        if (changedTasks.isEmpty())
+            return;
+
+        updatePending.set(true);
+        Platform.runLater(() -> {
+            try {
+                for (MZmineTask task : changedTasks)
+                    task.refreshStatus();
+            } finally {
+                updatePending.set(false);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.util.tolerances.MzTolerance;
+import io.github.msdk.util.tolerances.RTTolerance;
+import io.github.mzmine.util.featuretable.ColumnarFeatureTable;
+
+/**
+ * Index of the rows of a feature table by m/z and retention time. The rows
+ * are split into RT buckets of equal width, and each bucket keeps the m/z
+ * values of its rows in ascending order, so an m/z and RT tolerance window is
+ * found by a binary search in the few buckets that overlap the RT range.
+ *
+ * The index of a table is built on first use and kept until the table is
+ * garbage collected. It is built again when rows were added or removed.
+ * Modules that change the m/z or RT values of existing rows in place must
+ * call invalidate(), or update the index with updateRow() and addRow() while
+ * no other thread uses it.
+ */
+public class FeatureTableIndex {
+
+    /**
+     * Average number of rows in an RT bucket.
+     */
+    private static final int BUCKET_SIZE = 256;
+
+    private static final Map<FeatureTable, FeatureTableIndex> indexes = new WeakHashMap<>();
+
+    private final @Nonnull List<FeatureTableRow> rows;
+    private final FeatureTableColumn<Double> mzColumn;
+    private final FeatureTableColumn<ChromatographyInfo> rtColumn;
+    private @Nonnull double mzValues[];
+    private @Nonnull float rtValues[];
+    private final float minRt, bucketWidth;
+    private final @Nonnull Bucket buckets[];
+
+    private FeatureTableIndex(@Nonnull FeatureTable featureTable) {
+
+        rows = new ArrayList<>(featureTable.getRows());
+        mzValues = new double[rows.size()];
+        rtValues = new float[rows.size()];
+
+        mzColumn = featureTable.getColumn(ColumnName.MZ, null);
+        rtColumn = featureTable.getColumn(ColumnName.CHROMATOGRAPHYINFO, null);
+
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        int indexedRows = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            readValues(i);
+            if (Double.isNaN(mzValues[i]))
+                continue;
+            min = Math.min(min, rtValues[i]);
+            max = Math.max(max, rtValues[i]);
+            indexedRows++;
+        }
+
+        // Rows without m/z or RT are not in any bucket
+        final int numOfBuckets = Math.max(1, indexedRows / BUCKET_SIZE);
+        minRt = indexedRows == 0 ? 0f : min;
+        bucketWidth = indexedRows == 0 || max <= min ? 1f
+                : (max - min) / numOfBuckets;
+        final int bucketSizes[] = new int[numOfBuckets];
+        for (int i = 0; i < rows.size(); i++) {
+            if (!Double.isNaN(mzValues[i]))
+                bucketSizes[getBucket(rtValues[i])]++;
+        }
+        buckets = new Bucket[numOfBuckets];
+        for (int b = 0; b < numOfBuckets; b++)
+            buckets[b] = new Bucket(bucketSizes[b]);
+        for (int i = 0; i < rows.size(); i++) {
+            if (!Double.isNaN(mzValues[i]))
+                buckets[getBucket(rtValues[i])].add(i, mzValues[i]);
+        }
+        for (Bucket bucket : buckets)
+            bucket.sort();
+    }
+
+    /**
+     * Returns the index of the given table, building it if the table has no
+     * index yet or its rows have changed since the index was built.
+     */
+    public static @Nonnull FeatureTableIndex getIndex(
+            @Nonnull FeatureTable featureTable) {
+        synchronized (indexes) {
+            FeatureTableIndex index = indexes.get(featureTable);
+            if ((index == null) || !index.isValid(featureTable)) {
+                index = new FeatureTableIndex(featureTable);
+                indexes.put(featureTable, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Discards the index of the given table, e.g. after the m/z or RT values
+     * of its rows were changed.
+     */
+    public static void invalidate(@Nonnull FeatureTable featureTable) {
+        synchronized (indexes) {
+            indexes.remove(featureTable);
+        }
+    }
+
+    /**
+     * Reads the m/z and RT of the given row again after they were changed in
+     * place, and moves the row to its new position in the index.
+     */
+    public void updateRow(int rowNumber) {
+        if (!Double.isNaN(mzValues[rowNumber]))
+            buckets[getBucket(rtValues[rowNumber])].remove(rowNumber,
+                    mzValues[rowNumber]);
+        readValues(rowNumber);
+        if (!Double.isNaN(mzValues[rowNumber]))
+            buckets[getBucket(rtValues[rowNumber])].insert(rowNumber,
+                    mzValues[rowNumber]);
+    }
+
+    /**
+     * Adds a row that was appended to the table, so the index stays valid.
+     * Rows outside the RT range of the index are kept in the first or last
+     * bucket.
+     */
+    public void addRow(@Nonnull FeatureTableRow row) {
+        final int rowNumber = rows.size();
+        rows.add(row);
+        if (rowNumber == mzValues.length) {
+            final int capacity = Math.max(8, rowNumber + rowNumber / 2);
+            mzValues = Arrays.copyOf(mzValues, capacity);
+            rtValues = Arrays.copyOf(rtValues, capacity);
+        }
+        readValues(rowNumber);
+        if (!Double.isNaN(mzValues[rowNumber]))
+            buckets[getBucket(rtValues[rowNumber])].insert(rowNumber,
+                    mzValues[rowNumber]);
+    }
+
+    /**
+     * Reads the m/z and RT of a row, both are NaN if either is missing.
+     * Values of a ColumnarFeatureTable are read without boxing.
+     */
+    private void readValues(int rowNumber) {
+        final FeatureTableRow row = rows.get(rowNumber);
+        final double mz = ColumnarFeatureTable.getDouble(row, mzColumn);
+        final float rt = ColumnarFeatureTable.getFloat(row, rtColumn);
+        final boolean missing = Double.isNaN(mz) || Float.isNaN(rt);
+        mzValues[rowNumber] = missing ? Double.NaN : mz;
+        rtValues[rowNumber] = missing ? Float.NaN : rt;
+    }
+
+    private boolean isValid(@Nonnull FeatureTable featureTable) {
+        final List<FeatureTableRow> currentRows = featureTable.getRows();
+        if (currentRows.size() != rows.size())
+            return false;
+        for (int i = 0; i < rows.size(); i++) {
+            if (currentRows.get(i) != rows.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of rows. The rows are numbered in the order of the
+     * table at the time the index was built.
+     */
+    public int getNumberOfRows() {
+        return rows.size();
+    }
+
+    public @Nonnull FeatureTableRow getRow(int rowNumber) {
+        return rows.get(rowNumber);
+    }
+
+    /**
+     * Returns the m/z value of the given row, or NaN if it has none.
+     */
+    public double getMz(int rowNumber) {
+        return mzValues[rowNumber];
+    }
+
+    /**
+     * Returns the retention time of the given row, or NaN if it has none.
+     */
+    public float getRT(int rowNumber) {
+        return rtValues[rowNumber];
+    }
+
+    /**
+     * Returns the numbers of the rows with m/z and RT in the given ranges, in
+     * ascending order.
+     */
+    public @Nonnull int[] findRows(@Nonnull Range<Double> mzRange,
+            @Nonnull Range<Float> rtRange) {
+        int result[] = new int[8];
+        int size = 0;
+        final int firstBucket = getBucket(rtRange.lowerEndpoint());
+        final int lastBucket = getBucket(rtRange.upperEndpoint());
+        for (int b = firstBucket; b <= lastBucket; b++) {
+            final Bucket bucket = buckets[b];
+            for (int i = bucket.findFirst(mzRange.lowerEndpoint()); i < bucket
+                    .size(); i++) {
+                if (bucket.mzValues[i] > mzRange.upperEndpoint())
+                    break;
+                final int rowNumber = bucket.rowNumbers[i];
+                if (!mzRange.contains(mzValues[rowNumber])
+                        || !rtRange.contains(rtValues[rowNumber]))
+                    continue;
+                if (size == result.length)
+                    result = Arrays.copyOf(result, 2 * size);
+                result[size++] = rowNumber;
+            }
+        }
+        result = Arrays.copyOf(result, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the numbers of the rows within the given tolerances of the given
+     * m/z and RT, in ascending order.
+     */
+    public @Nonnull int[] findRows(double mz, float rt,
+            @Nonnull MzTolerance mzTolerance,
+            @Nonnull RTTolerance rtTolerance) {
+        return findRows(mzTolerance.getToleranceRange(mz),
+                rtTolerance.getToleranceRange(rt));
+    }
+
+    private int getBucket(float rt) {
+        final int bucket = (int) Math.floor((rt - minRt) / bucketWidth);
+        return Math.max(0, Math.min(buckets.length - 1, bucket));
+    }
+
+    /**
+     * Rows of one RT bucket, sorted by m/z.
+     */
+    private static class Bucket {
+
+        private int rowNumbers[];
+        private double mzValues[];
+        private int size = 0;
+
+        private Bucket(int capacity) {
+            rowNumbers = new int[capacity];
+            mzValues = new double[capacity];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void add(int rowNumber, double mz) {
+            rowNumbers[size] = rowNumber;
+            mzValues[size] = mz;
+            size++;
+        }
+
+        /**
+         * Inserts a row at its m/z position.
+         */
+        private void insert(int rowNumber, double mz) {
+            if (size == rowNumbers.length) {
+                final int capacity = Math.max(8, size + size / 2);
+                rowNumbers = Arrays.copyOf(rowNumbers, capacity);
+                mzValues = Arrays.copyOf(mzValues, capacity);
+            }
+            final int position = findFirst(mz);
+            System.arraycopy(rowNumbers, position, rowNumbers, position + 1,
+                    size - position);
+            System.arraycopy(mzValues, position, mzValues, position + 1,
+                    size - position);
+            rowNumbers[position] = rowNumber;
+            mzValues[position] = mz;
+            size++;
+        }
+
+        /**
+         * Removes a row that was inserted with the given m/z.
+         */
+        private void remove(int rowNumber, double mz) {
+            for (int i = findFirst(mz); i < size && mzValues[i] == mz; i++) {
+                if (rowNumbers[i] != rowNumber)
+                    continue;
+                System.arraycopy(rowNumbers, i + 1, rowNumbers, i,
+                        size - i - 1);
+                System.arraycopy(mzValues, i + 1, mzValues, i, size - i - 1);
+                size--;
+                return;
+            }
+        }
+
+        private void sort() {
+            final Integer order[] = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            Arrays.sort(order,
+                    (i1, i2) -> Double.compare(mzValues[i1], mzValues[i2]));
+            final int sortedRows[] = new int[size];
+            final double sortedMz[] = new double[size];
+            for (int i = 0; i < size; i++) {
+                sortedRows[i] = rowNumbers[order[i]];
+                sortedMz[i] = mzValues[order[i]];
+            }
+            rowNumbers = sortedRows;
+            mzValues = sortedMz;
+        }
+
+        /**
+         * Returns the position of the first row with m/z not less than the
+         * given value.
+         */
+        private int findFirst(double mz) {
+            int low = 0, high = size;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (mzValues[middle] < mz)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+    }
+
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Range;
+
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.MsScan;
+import io.github.msdk.datamodel.rawdata.PolarityType;
+import io.github.msdk.datamodel.rawdata.RawDataFile;
+
+/**
+ * Index of the scans of a raw data file. The scans are partitioned by MS
+ * level, polarity and scan definition, and each partition keeps the
+ * retention times in ascending order, so retention time ranges are found by
+ * binary search instead of walking all scans.
+ *
+ * The index of a file is built on first use and kept until the file is
+ * garbage collected. It can be saved to a sidecar file next to the original
+ * data file, so it does not need to be rebuilt when the file is imported
+ * again.
+ */
+public class ScanIndex {
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(ScanIndex.class);
+
+    private static final String SIDECAR_SUFFIX = ".mzindex";
+    private static final int SIDECAR_MAGIC = 0x4d5a4958; // "MZIX"
+    private static final int SIDECAR_VERSION = 2;
+
+    private static final Map<RawDataFile, ScanIndex> indexes = new WeakHashMap<>();
+
+    private final List<Partition> partitions;
+    private final int numOfScans;
+
+    private ScanIndex(@Nonnull List<Partition> partitions, int numOfScans) {
+        this.partitions = partitions;
+        this.numOfScans = numOfScans;
+    }
+
+    /**
+     * Returns the index of the given file, building it if the file has no
+     * index yet or its scans have changed since the index was built.
+     */
+    public static @Nonnull ScanIndex getIndex(@Nonnull RawDataFile dataFile) {
+        synchronized (indexes) {
+            ScanIndex index = indexes.get(dataFile);
+            if ((index == null)
+                    || (index.numOfScans != dataFile.getScans().size())) {
+                index = build(dataFile.getScans());
+                indexes.put(dataFile, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Creates the index of a newly imported file. The index is loaded from the
+     * sidecar file of the original data file if it is up to date, otherwise it
+     * is built and the sidecar file is written. The sidecar file is up to date
+     * if the size and modification time of the original file, the import mode
+     * and the number of scans are the same as when it was written.
+     * 
+     * @param importMode
+     *            describes how the scans were imported, as different import
+     *            modes may produce different scans from the same file
+     */
+    public static @Nonnull ScanIndex createIndex(@Nonnull RawDataFile dataFile,
+            @Nonnull File originalFile, @Nonnull String importMode) {
+        final List<MsScan> scans = dataFile.getScans();
+        final File sidecarFile = new File(originalFile.getPath()
+                + SIDECAR_SUFFIX);
+        ScanIndex index = loadSidecar(sidecarFile, originalFile, importMode,
+                scans.size());
+        if (index == null) {
+            index = build(scans);
+            saveSidecar(index, sidecarFile, originalFile, importMode);
+        }
+        synchronized (indexes) {
+            indexes.put(dataFile, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the positions, in the scan list of the file, of the scans that
+     * match the given criteria. Null criteria match all scans. The positions
+     * are returned in ascending order.
+     */
+    public @Nonnull int[] findScans(@Nullable Integer msLevel,
+            @Nullable PolarityType polarity,
+            @Nullable Pattern scanDefinitionPattern,
+            @Nullable Range<Double> rtRange) {
+
+        int[] result = new int[16];
+        int size = 0;
+
+        for (Partition partition : partitions) {
+
+            if ((msLevel != null) && (!msLevel.equals(partition.msLevel)))
+                continue;
+
+            if ((polarity != null) && (!polarity.equals(partition.polarity)))
+                continue;
+
+            if (scanDefinitionPattern != null) {
+                if (Strings.isNullOrEmpty(partition.scanDefinition))
+                    continue;
+                if (!scanDefinitionPattern.matcher(partition.scanDefinition)
+                        .matches())
+                    continue;
+            }
+
+            int from = 0, to = partition.numOfScans;
+            if (rtRange != null) {
+                from = partition.findFirst(rtRange);
+                to = partition.findEnd(rtRange);
+            }
+            if (from >= to)
+                continue;
+
+            if (size + (to - from) > result.length)
+                result = Arrays.copyOf(result,
+                        Math.max(result.length * 2, size + (to - from)));
+            System.arraycopy(partition.positions, from, result, size,
+                    to - from);
+            size += to - from;
+        }
+
+        result = Arrays.copyOf(result, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static @Nonnull ScanIndex build(@Nonnull List<MsScan> scans) {
+
+        final Map<PartitionKey, Partition> partitionMap = new LinkedHashMap<>();
+
+        for (int i = 0; i < scans.size(); i++) {
+            final MsScan scan = scans.get(i);
+            final PartitionKey key = new PartitionKey(
+                    scan.getMsFunction().getMsLevel(), scan.getPolarity(),
+                    scan.getScanDefinition());
+            Partition partition = partitionMap.get(key);
+            if (partition == null) {
+                partition = new Partition(key.msLevel, key.polarity,
+                        key.scanDefinition, 16);
+                partitionMap.put(key, partition);
+            }
+            final ChromatographyInfo chromInfo = scan.getChromatographyInfo();
+            final float rt = ((chromInfo == null)
+                    || (chromInfo.getRetentionTime() == null)) ? Float.NaN
+                            : chromInfo.getRetentionTime();
+            partition.add(rt, i);
+        }
+
+        final List<Partition> partitions = new ArrayList<>(
+                partitionMap.values());
+        for (Partition partition : partitions)
+            partition.sort();
+        return new ScanIndex(Collections.unmodifiableList(partitions),
+                scans.size());
+    }
+
+    private static @Nullable ScanIndex loadSidecar(@Nonnull File sidecarFile,
+            @Nonnull File originalFile, @Nonnull String importMode,
+            int numOfScans) {
+
+        if (!sidecarFile.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(sidecarFile)))) {
+            if ((in.readInt() != SIDECAR_MAGIC)
+                    || (in.readInt() != SIDECAR_VERSION)
+                    || (in.readLong() != originalFile.length())
+                    || (in.readLong() != originalFile.lastModified())
+                    || (!in.readUTF().equals(importMode))
+                    || (in.readInt() != numOfScans))
+                return null;
+
+            final int numOfPartitions = in.readInt();
+            final List<Partition> partitions = new ArrayList<>(
+                    numOfPartitions);
+            for (int p = 0; p < numOfPartitions; p++) {
+                final int msLevel = in.readInt();
+                final String polarityName = in.readUTF();
+                final String scanDefinition = in.readBoolean() ? in.readUTF()
+                        : null;
+                final int size = in.readInt();
+                final Partition partition = new Partition(
+                        msLevel < 0 ? null : msLevel,
+                        polarityName.isEmpty() ? null
+                                : PolarityType.valueOf(polarityName),
+                        scanDefinition, size);
+                for (int i = 0; i < size; i++) {
+                    final float rt = in.readFloat();
+                    final int position = in.readInt();
+                    if ((position < 0) || (position >= numOfScans))
+                        return null;
+                    partition.add(rt, position);
+                }
+                partitions.add(partition);
+            }
+            logger.debug("Loaded scan index from " + sidecarFile);
+            return new ScanIndex(Collections.unmodifiableList(partitions),
+                    numOfScans);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Could not read scan index " + sidecarFile, e);
+            return null;
+        }
+    }
+
+    private static void saveSidecar(@Nonnull ScanIndex index,
+            @Nonnull File sidecarFile, @Nonnull File originalFile,
+            @Nonnull String importMode) {
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(sidecarFile)))) {
+            out.writeInt(SIDECAR_MAGIC);
+            out.writeInt(SIDECAR_VERSION);
+            out.writeLong(originalFile.length());
+            out.writeLong(originalFile.lastModified());
+            out.writeUTF(importMode);
+            out.writeInt(index.numOfScans);
+            out.writeInt(index.partitions.size());
+            for (Partition partition : index.partitions) {
+                out.writeInt(partition.msLevel == null ? -1
+                        : partition.msLevel);
+                out.writeUTF(partition.polarity == null ? ""
+                        : partition.polarity.name());
+                out.writeBoolean(partition.scanDefinition != null);
+                if (partition.scanDefinition != null)
+                    out.writeUTF(partition.scanDefinition);
+                out.writeInt(partition.numOfScans);
+                for (int i = 0; i < partition.numOfScans; i++) {
+                    out.writeFloat(partition.rts[i]);
+                    out.writeInt(partition.positions[i]);
+                }
+            }
+        } catch (IOException e) {
+            // The sidecar file is only an optimization, e.g. the directory of
+            // the data file may be read-only
+            logger.debug("Could not write scan index " + sidecarFile, e);
+            sidecarFile.delete();
+        }
+    }
+
+    private static final class PartitionKey {
+
+        private final Integer msLevel;
+        private final PolarityType polarity;
+        private final String scanDefinition;
+
+        private PartitionKey(Integer msLevel, PolarityType polarity,
+                String scanDefinition) {
+            this.msLevel = msLevel;
+            this.polarity = polarity;
+            this.scanDefinition = scanDefinition;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PartitionKey))
+                return false;
+            final PartitionKey other = (PartitionKey) o;
+            return Objects.equals(msLevel, other.msLevel)
+                    && (polarity == other.polarity)
+                    && Objects.equals(scanDefinition, other.scanDefinition);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(msLevel, polarity, scanDefinition);
+        }
+    }
+
+    /**
+     * Scans with the same MS level, polarity and scan definition, sorted by
+     * retention time. Scans without retention time are sorted last.
+     */
+    private static final class Partition {
+
+        private final Integer msLevel;
+        private final PolarityType polarity;
+        private final String scanDefinition;
+        private float rts[];
+        private int positions[];
+        private int numOfScans = 0;
+
+        private Partition(Integer msLevel, PolarityType polarity,
+                String scanDefinition, int capacity) {
+            this.msLevel = msLevel;
+            this.polarity = polarity;
+            this.scanDefinition = scanDefinition;
+            this.rts = new float[Math.max(capacity, 1)];
+            this.positions = new int[Math.max(capacity, 1)];
+        }
+
+        private void add(float rt, int position) {
+            if (numOfScans == rts.length) {
+                rts = Arrays.copyOf(rts, numOfScans * 2);
+                positions = Arrays.copyOf(positions, numOfScans * 2);
+            }
+            rts[numOfScans] = rt;
+            positions[numOfScans] = position;
+            numOfScans++;
+        }
+
+        private void sort() {
+            rts = Arrays.copyOf(rts, numOfScans);
+            positions = Arrays.copyOf(positions, numOfScans);
+
+            // Scans are usually stored in retention time order already
+            boolean sorted = true;
+            for (int i = 1; i < numOfScans && sorted; i++)
+                sorted = Float.compare(rts[i - 1], rts[i]) <= 0;
+            if (sorted)
+                return;
+
+            final Integer order[] = new Integer[numOfScans];
+            for (int i = 0; i < numOfScans; i++)
+                order[i] = i;
+            final float oldRts[] = rts;
+            final int oldPositions[] = positions;
+            Arrays.sort(order, (a, b) -> Float.compare(oldRts[a], oldRts[b]));
+            rts = new float[numOfScans];
+            positions = new int[numOfScans];
+            for (int i = 0; i < numOfScans; i++) {
+                rts[i] = oldRts[order[i]];
+                positions[i] = oldPositions[order[i]];
+            }
+        }
+
+        /**
+         * Returns the index of the first scan that is not below the range.
+         */
+        private int findFirst(@Nonnull Range<Double> rtRange) {
+            int low = 0, high = numOfScans;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (belowRange(rts[mid], rtRange))
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        /**
+         * Returns the index after the last scan that is within the range.
+         */
+        private int findEnd(@Nonnull Range<Double> rtRange) {
+            int low = 0, high = numOfScans;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (!Float.isNaN(rts[mid])
+                        && (belowRange(rts[mid], rtRange)
+                                || rtRange.contains((double) rts[mid])))
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        private static boolean belowRange(float rt,
+                @Nonnull Range<Double> rtRange) {
+            if (Float.isNaN(rt) || !rtRange.hasLowerBound())
+                return false;
+            final double lower = rtRange.lowerEndpoint();
+            switch (rtRange.lowerBoundType()) {
+            case OPEN:
+                return rt <= lower;
+            default:
+                return rt < lower;
+            }
+        }
+    }
+
+}
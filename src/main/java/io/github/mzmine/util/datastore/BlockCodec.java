@@ -0,0 +1,266 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Fast lossless compression of double[] and float[] arrays for the
+ * BlockCompressedDataPointStore.
+ * 
+ * The bit patterns of the values are first replaced by the difference to the
+ * previous value and the bytes are shuffled, so that the most significant
+ * bytes of all values come first. For m/z values of profile spectra and for
+ * intensities with many zeros, this turns the data into long runs of equal
+ * bytes. The shuffled bytes are then compressed in the LZ4 block format, with
+ * a greedy single-pass matcher.
+ */
+final class BlockCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+
+    private BlockCodec() {
+    }
+
+    /**
+     * Returns the number of bytes of one element of the given array type, or
+     * 0 if the type is not supported.
+     */
+    static int getElementSize(@Nonnull Object data) {
+        if (data instanceof double[])
+            return 8;
+        if (data instanceof float[])
+            return 4;
+        return 0;
+    }
+
+    /**
+     * Converts the first size values of the array to delta-encoded,
+     * byte-shuffled form.
+     */
+    static @Nonnull byte[] shuffle(@Nonnull Object data, int size) {
+        if (data instanceof double[]) {
+            final double values[] = (double[]) data;
+            final byte result[] = new byte[size * 8];
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                final long bits = Double.doubleToRawLongBits(values[i]);
+                final long delta = bits - previous;
+                previous = bits;
+                for (int b = 0; b < 8; b++)
+                    result[b * size + i] = (byte) (delta >>> (56 - 8 * b));
+            }
+            return result;
+        }
+        final float values[] = (float[]) data;
+        final byte result[] = new byte[size * 4];
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            final int bits = Float.floatToRawIntBits(values[i]);
+            final int delta = bits - previous;
+            previous = bits;
+            for (int b = 0; b < 4; b++)
+                result[b * size + i] = (byte) (delta >>> (24 - 8 * b));
+        }
+        return result;
+    }
+
+    /**
+     * Reverses shuffle() into the first size elements of the given array.
+     */
+    static void unshuffle(@Nonnull byte[] bytes, @Nonnull Object data,
+            int size) {
+        if (data instanceof double[]) {
+            final double values[] = (double[]) data;
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                long delta = 0;
+                for (int b = 0; b < 8; b++)
+                    delta = (delta << 8) | (bytes[b * size + i] & 0xff);
+                previous += delta;
+                values[i] = Double.longBitsToDouble(previous);
+            }
+            return;
+        }
+        final float values[] = (float[]) data;
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int delta = 0;
+            for (int b = 0; b < 4; b++)
+                delta = (delta << 8) | (bytes[b * size + i] & 0xff);
+            previous += delta;
+            values[i] = Float.intBitsToFloat(previous);
+        }
+    }
+
+    /**
+     * Returns the maximum size of the compressed form of length bytes.
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses the first length bytes of src into dst, which must have at
+     * least maxCompressedLength(length) bytes. Returns the compressed length.
+     */
+    static int compress(@Nonnull byte[] src, int length, @Nonnull byte[] dst) {
+
+        // Smaller blocks use a smaller hash table, which is cheaper to clear
+        final int hashLog = Math.max(8, Math.min(HASH_LOG,
+                32 - Integer.numberOfLeadingZeros(length)));
+        final int hashTable[] = new int[1 << hashLog];
+        final int matchLimit = length - MF_LIMIT;
+        final int matchEnd = length - LAST_LITERALS;
+
+        int anchor = 0, ip = 0, op = 0, misses = 0;
+        while (ip < matchLimit) {
+
+            final int sequence = readInt(src, ip);
+            final int hash = (sequence * -1640531535) >>> (32 - hashLog);
+            int ref = hashTable[hash] - 1;
+            hashTable[hash] = ip + 1;
+
+            if (ref < 0 || ip - ref > MAX_OFFSET
+                    || readInt(src, ref) != sequence) {
+                // Skip faster through data that does not compress
+                ip += 1 + (misses++ >>> 6);
+                continue;
+            }
+            misses = 0;
+
+            // Extend the match backwards and forwards
+            while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchEnd
+                    && src[ip + matchLength] == src[ref + matchLength])
+                matchLength++;
+
+            op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref,
+                    matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+
+        // The last sequence has only literals
+        return writeSequence(src, anchor, length - anchor, dst, op, 0, 0);
+    }
+
+    /**
+     * Decompresses srcLength bytes of src into exactly dstLength bytes of dst.
+     */
+    static void decompress(@Nonnull byte[] src, int srcLength,
+            @Nonnull byte[] dst, int dstLength) {
+        int ip = 0, op = 0;
+        while (ip < srcLength) {
+            final int token = src[ip++] & 0xff;
+
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip >= srcLength)
+                break;
+
+            final int offset = (src[ip++] & 0xff) | ((src[ip++] & 0xff) << 8);
+            int matchLength = token & 0x0f;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+
+            final int ref = op - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(dst, ref, dst, op, matchLength);
+            } else {
+                // Overlapping match, e.g. a run of equal bytes
+                for (int i = 0; i < matchLength; i++)
+                    dst[op + i] = dst[ref + i];
+            }
+            op += matchLength;
+        }
+        if (op != dstLength)
+            throw new IllegalStateException("Corrupted block: decompressed "
+                    + op + " bytes instead of " + dstLength);
+    }
+
+    private static int writeSequence(byte[] src, int literalStart,
+            int literalLength, byte[] dst, int op, int offset,
+            int matchLength) {
+        final int tokenPosition = op++;
+        int token;
+        if (literalLength >= 15) {
+            token = 15 << 4;
+            op = writeLength(dst, op, literalLength - 15);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+
+        if (matchLength > 0) {
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            final int length = matchLength - MIN_MATCH;
+            if (length >= 15) {
+                token |= 15;
+                op = writeLength(dst, op, length - 15);
+            } else {
+                token |= length;
+            }
+        }
+        dst[tokenPosition] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(byte[] src, int position) {
+        return (src[position] & 0xff) | ((src[position + 1] & 0xff) << 8)
+                | ((src[position + 2] & 0xff) << 16)
+                | ((src[position + 3] & 0xff) << 24);
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store backed by a temporary file, in which every stored array
+ * (usually the m/z or intensity values of one scan) is compressed into a
+ * separate block with BlockCodec. Blocks that do not get smaller are stored
+ * uncompressed.
+ * 
+ * The most recently read arrays are kept in a small cache of CACHE_SIZE bytes,
+ * so that repeated reads of the same scans, e.g. while browsing spectra, do
+ * not read and decompress the block again.
+ * 
+ * The space of removed arrays is not reused. The temporary file is locked
+ * while the store is in use, so TmpFileCleanup does not remove it.
+ */
+public class BlockCompressedDataPointStore
+        implements TmpFileDataPointStore {
+
+    /**
+     * Maximum size of the decompressed arrays in the cache (8 MB).
+     */
+    private static final long CACHE_SIZE = 8 * 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private File tmpFile;
+    private RandomAccessFile tmpDataFile;
+    private FileChannel tmpChannel;
+    private FileLock tmpFileLock;
+
+    private final List<StoredBlock> storedBlocks = new ArrayList<>();
+    private long fileSize = 0, uncompressedSize = 0;
+
+    private final LinkedHashMap<Integer, Object> cache = new LinkedHashMap<>(
+            16, 0.75f, true);
+    private long cacheBytes = 0;
+
+    public BlockCompressedDataPointStore(@Nonnull File tmpDirectory) {
+        try {
+            tmpFile = File.createTempFile("mzmine", ".scans", tmpDirectory);
+            tmpFile.deleteOnExit();
+            tmpDataFile = new RandomAccessFile(tmpFile, "rw");
+            tmpChannel = tmpDataFile.getChannel();
+            tmpFileLock = tmpChannel.lock();
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        logger.debug("Created compressed data store in " + tmpFile);
+    }
+
+    @Override
+    public @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+
+        final int elementSize = BlockCodec.getElementSize(data);
+        if (elementSize == 0)
+            throw new IllegalArgumentException(
+                    "Only double[] and float[] arrays can be stored");
+
+        // Compress outside of the lock, so several threads can store at once
+        final byte shuffled[] = BlockCodec.shuffle(data, size);
+        final byte compressed[] = new byte[BlockCodec
+                .maxCompressedLength(shuffled.length)];
+        final int compressedLength = BlockCodec.compress(shuffled,
+                shuffled.length, compressed);
+        final boolean isCompressed = compressedLength < shuffled.length;
+        final ByteBuffer buffer = isCompressed
+                ? ByteBuffer.wrap(compressed, 0, compressedLength)
+                : ByteBuffer.wrap(shuffled);
+
+        synchronized (this) {
+            if (tmpFile == null)
+                throw new IllegalStateException("The data store was disposed");
+            final long position = fileSize;
+            try {
+                while (buffer.hasRemaining())
+                    tmpChannel.write(buffer, position + buffer.position());
+            } catch (IOException e) {
+                throw new MSDKRuntimeException(e);
+            }
+            final int length = isCompressed ? compressedLength
+                    : shuffled.length;
+            fileSize += length;
+            uncompressedSize += shuffled.length;
+            storedBlocks.add(new StoredBlock(position, length, size,
+                    isCompressed));
+            return storedBlocks.size() - 1;
+        }
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object data) {
+
+        final int index = getIndex(id);
+        final StoredBlock storedBlock;
+        final FileChannel channel;
+        synchronized (this) {
+            final Object cached = cache.get(index);
+            if (cached != null) {
+                copyArray(cached, data);
+                return;
+            }
+            storedBlock = getStoredBlock(index);
+            channel = tmpChannel;
+        }
+
+        final int elementSize = BlockCodec.getElementSize(data);
+        if (elementSize == 0)
+            throw new IllegalArgumentException(
+                    "Only double[] and float[] arrays can be loaded");
+
+        // Read and decompress outside of the lock
+        final ByteBuffer buffer = ByteBuffer.allocate(storedBlock.length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer,
+                        storedBlock.position + buffer.position()) < 0)
+                    throw new IOException("Unexpected end of file " + tmpFile);
+            }
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        final byte shuffled[];
+        if (storedBlock.compressed) {
+            shuffled = new byte[storedBlock.size * elementSize];
+            BlockCodec.decompress(buffer.array(), storedBlock.length,
+                    shuffled, shuffled.length);
+        } else {
+            shuffled = buffer.array();
+        }
+
+        final Object values = data instanceof double[]
+                ? new double[storedBlock.size] : new float[storedBlock.size];
+        BlockCodec.unshuffle(shuffled, values, storedBlock.size);
+        copyArray(values, data);
+
+        synchronized (this) {
+            if (tmpFile != null && storedBlocks.get(index) != null)
+                addToCache(index, values, shuffled.length);
+        }
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        final int index = getIndex(id);
+        storedBlocks.set(index, null);
+        final Object cached = cache.remove(index);
+        if (cached != null)
+            cacheBytes -= getByteSize(cached);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (tmpFile == null)
+            return;
+        logger.debug("Compressed " + uncompressedSize + " bytes to "
+                + fileSize + " bytes in " + tmpFile);
+        try {
+            storedBlocks.clear();
+            cache.clear();
+            cacheBytes = 0;
+            tmpFileLock.release();
+            tmpDataFile.close();
+        } catch (IOException e) {
+            logger.warn("Could not close temporary file " + tmpFile, e);
+        }
+        if (!tmpFile.delete())
+            logger.warn("Could not remove temporary file " + tmpFile);
+        tmpFile = null;
+    }
+
+    @Override
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public synchronized long getStoredBytes(@Nonnull Object id) {
+        return getStoredBlock(getIndex(id)).length;
+    }
+
+    /**
+     * Returns the size of the stored data before compression in bytes.
+     */
+    public synchronized long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    private void addToCache(int index, Object values, long bytes) {
+        if (bytes > CACHE_SIZE)
+            return;
+        if (cache.put(index, values) == null)
+            cacheBytes += bytes;
+        final Iterator<Map.Entry<Integer, Object>> iterator = cache.entrySet()
+                .iterator();
+        while (cacheBytes > CACHE_SIZE && iterator.hasNext()) {
+            cacheBytes -= getByteSize(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long getByteSize(Object values) {
+        if (values instanceof double[])
+            return 8L * ((double[]) values).length;
+        return 4L * ((float[]) values).length;
+    }
+
+    private static void copyArray(Object source, Object target) {
+        if (source instanceof double[]) {
+            final double values[] = (double[]) source;
+            System.arraycopy(values, 0, (double[]) target, 0, values.length);
+        } else {
+            final float values[] = (float[]) source;
+            System.arraycopy(values, 0, (float[]) target, 0, values.length);
+        }
+    }
+
+    private StoredBlock getStoredBlock(int index) {
+        final StoredBlock storedBlock = storedBlocks.get(index);
+        if (storedBlock == null)
+            throw new IllegalArgumentException(
+                    "Data with index " + index + " was removed");
+        return storedBlock;
+    }
+
+    private int getIndex(Object id) {
+        if (!(id instanceof Integer))
+            throw new IllegalArgumentException("Invalid data id " + id);
+        return (Integer) id;
+    }
+
+    private static class StoredBlock {
+
+        private final long position;
+        private final int length, size;
+        private final boolean compressed;
+
+        private StoredBlock(long position, int length, int size,
+                boolean compressed) {
+            this.position = position;
+            this.length = length;
+            this.size = size;
+            this.compressed = compressed;
+        }
+    }
+
+}
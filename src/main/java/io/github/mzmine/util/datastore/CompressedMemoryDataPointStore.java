@@ -0,0 +1,276 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store that keeps the data on the heap in a compressed form,
+ * using encodings similar to MS-Numpress.
+ * 
+ * double[] arrays (m/z values) are converted to fixed point numbers and
+ * encoded as the variable-length difference from a linear prediction based on
+ * the two previous values. The absolute error of each value is at most
+ * maxMzError.
+ * 
+ * float[] arrays (intensities) are encoded as 16-bit fixed point logarithms
+ * of (value + 1). The relative error of (value + 1) is at most
+ * maxIntensityError. Arrays that cannot be encoded within this bound, e.g.
+ * because they contain negative values, are stored uncompressed.
+ * 
+ * Arrays of other types are stored as uncompressed copies. Loading decodes
+ * the data directly into the array supplied by the caller.
+ */
+public class CompressedMemoryDataPointStore implements DataPointStore {
+
+    /**
+     * Largest magnitude of a fixed point value, so that the linear prediction
+     * cannot overflow a long.
+     */
+    private static final double MAX_FIXED_POINT_VALUE = 1L << 52;
+
+    private final double mzFixedPoint, maxIntensityError;
+
+    private final List<Object> storedArrays = new ArrayList<>();
+    private long storedBytes = 0;
+
+    /**
+     * @param maxMzError
+     *            maximum absolute error of double values
+     * @param maxIntensityError
+     *            maximum relative error of float values, e.g. 0.001 for 0.1%
+     */
+    public CompressedMemoryDataPointStore(double maxMzError,
+            double maxIntensityError) {
+        if (!(maxMzError > 0) || !(maxIntensityError > 0))
+            throw new IllegalArgumentException(
+                    "The maximum errors must be positive");
+        this.mzFixedPoint = 0.5 / maxMzError;
+        this.maxIntensityError = maxIntensityError;
+    }
+
+    @Override
+    public @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+
+        Object encoded = null;
+        if (data instanceof double[])
+            encoded = LinearEncodedArray.encode((double[]) data, size,
+                    mzFixedPoint);
+        else if (data instanceof float[])
+            encoded = LogEncodedArray.encode((float[]) data, size,
+                    maxIntensityError);
+
+        // Store a plain copy of data that cannot be encoded
+        if (encoded == null) {
+            encoded = Array.newInstance(data.getClass().getComponentType(),
+                    size);
+            System.arraycopy(data, 0, encoded, 0, size);
+        }
+
+        synchronized (this) {
+            storedArrays.add(encoded);
+            storedBytes += getByteSize(encoded);
+            return storedArrays.size() - 1;
+        }
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object data) {
+
+        final Object encoded;
+        synchronized (this) {
+            encoded = getStoredArray(id);
+        }
+
+        if (encoded instanceof LinearEncodedArray)
+            ((LinearEncodedArray) encoded).decode((double[]) data);
+        else if (encoded instanceof LogEncodedArray)
+            ((LogEncodedArray) encoded).decode((float[]) data);
+        else
+            System.arraycopy(encoded, 0, data, 0, Array.getLength(encoded));
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        final Object encoded = getStoredArray(id);
+        storedBytes -= getByteSize(encoded);
+        storedArrays.set((Integer) id, null);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        storedArrays.clear();
+        storedBytes = 0;
+    }
+
+    /**
+     * Returns the number of bytes used by the stored arrays.
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    private Object getStoredArray(Object id) {
+        if (!(id instanceof Integer))
+            throw new IllegalArgumentException("Invalid data id " + id);
+        final Object encoded = storedArrays.get((Integer) id);
+        if (encoded == null)
+            throw new IllegalArgumentException(
+                    "Data with id " + id + " was removed");
+        return encoded;
+    }
+
+    private static long getByteSize(Object encoded) {
+        if (encoded instanceof LinearEncodedArray)
+            return ((LinearEncodedArray) encoded).bytes.length;
+        if (encoded instanceof LogEncodedArray)
+            return 2L * ((LogEncodedArray) encoded).values.length;
+        return DataPointStoreUtil.getByteSize(encoded,
+                Array.getLength(encoded));
+    }
+
+    /**
+     * Fixed point values encoded as zig-zag variable-length residuals of a
+     * linear prediction.
+     */
+    private static final class LinearEncodedArray {
+
+        private final byte bytes[];
+        private final int size;
+        private final double fixedPoint;
+
+        private LinearEncodedArray(byte bytes[], int size, double fixedPoint) {
+            this.bytes = bytes;
+            this.size = size;
+            this.fixedPoint = fixedPoint;
+        }
+
+        private static @Nullable LinearEncodedArray encode(
+                @Nonnull double values[], int size, double fixedPoint) {
+
+            // Most residuals fit in one or two bytes
+            byte bytes[] = new byte[size * 2 + 10];
+            int position = 0;
+            long previous1 = 0, previous2 = 0;
+
+            for (int i = 0; i < size; i++) {
+                final double scaled = values[i] * fixedPoint;
+                if (!(Math.abs(scaled) < MAX_FIXED_POINT_VALUE))
+                    return null;
+                final long value = Math.round(scaled);
+                final long predicted = (i == 0) ? 0
+                        : (i == 1) ? previous1 : 2 * previous1 - previous2;
+                final long residual = value - predicted;
+                long zigZag = (residual << 1) ^ (residual >> 63);
+
+                if (position + 10 > bytes.length)
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                while ((zigZag & ~0x7FL) != 0) {
+                    bytes[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+                    zigZag >>>= 7;
+                }
+                bytes[position++] = (byte) zigZag;
+
+                previous2 = previous1;
+                previous1 = value;
+            }
+
+            return new LinearEncodedArray(Arrays.copyOf(bytes, position),
+                    size, fixedPoint);
+        }
+
+        private void decode(@Nonnull double target[]) {
+            int position = 0;
+            long previous1 = 0, previous2 = 0;
+            for (int i = 0; i < size; i++) {
+                long zigZag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[position++];
+                    zigZag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                final long residual = (zigZag >>> 1) ^ -(zigZag & 1);
+                final long predicted = (i == 0) ? 0
+                        : (i == 1) ? previous1 : 2 * previous1 - previous2;
+                final long value = predicted + residual;
+                target[i] = value / fixedPoint;
+                previous2 = previous1;
+                previous1 = value;
+            }
+        }
+    }
+
+    /**
+     * Non-negative values encoded as 16-bit fixed point logarithms of (value +
+     * 1).
+     */
+    private static final class LogEncodedArray {
+
+        private final short values[];
+        private final double fixedPoint;
+
+        private LogEncodedArray(short values[], double fixedPoint) {
+            this.values = values;
+            this.fixedPoint = fixedPoint;
+        }
+
+        private static @Nullable LogEncodedArray encode(
+                @Nonnull float values[], int size, double maxError) {
+
+            double max = 0;
+            for (int i = 0; i < size; i++) {
+                if (!(values[i] >= 0) || Float.isInfinite(values[i]))
+                    return null;
+                max = Math.max(max, values[i]);
+            }
+
+            // Use the whole range of an unsigned short
+            final double fixedPoint = (max > 0) ? 0xFFFF / Math.log1p(max)
+                    : 1.0;
+            if (Math.expm1(0.5 / fixedPoint) > maxError)
+                return null;
+
+            final short encoded[] = new short[size];
+            for (int i = 0; i < size; i++) {
+                final long value = Math
+                        .round(Math.log1p(values[i]) * fixedPoint);
+                encoded[i] = (short) Math.min(value, 0xFFFF);
+            }
+            return new LogEncodedArray(encoded, fixedPoint);
+        }
+
+        private void decode(@Nonnull float target[]) {
+            for (int i = 0; i < values.length; i++)
+                target[i] = (float) Math.expm1((values[i] & 0xFFFF) / fixedPoint);
+        }
+    }
+
+}
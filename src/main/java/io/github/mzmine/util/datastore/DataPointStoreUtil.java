@@ -0,0 +1,144 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.datastore.DataPointStoreFactory;
+import io.github.mzmine.gui.preferences.DataCompressionSettings;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OptionalModuleParameter;
+
+/**
+ * Creates the data point stores used by MZmine modules. All stores created
+ * here are metered, so the bytes written by a task appear in its audit log
+ * metrics.
+ */
+public class DataPointStoreUtil {
+
+    /**
+     * Creates a store for data that is kept for the rest of the session, such
+     * as the scans of raw data files. The type of the store and the spill
+     * directories are selected in the preferences.
+     */
+    public static @Nonnull DataPointStore createTmpFileDataStore() {
+        final MZminePreferences preferences = MZmineCore.getConfiguration()
+                .getPreferences();
+        final TmpDataStoreType storeType = preferences
+                .getParameter(MZminePreferences.tmpDataStore).getValue();
+        return TmpStorageManager.createStore(getTmpDirectories(preferences),
+                getTmpQuota(preferences),
+                storeType == null ? TmpDataStoreType.TMP_FILE : storeType);
+    }
+
+    /**
+     * Creates an empty temporary file in one of the spill directories
+     * selected in the preferences. The file counts towards the temporary
+     * storage quota once written, see TmpStorageManager.allocateFile(), and
+     * must be removed with TmpStorageManager.deleteFile().
+     */
+    public static @Nonnull File createTmpFile(@Nonnull String suffix)
+            throws IOException {
+        final MZminePreferences preferences = MZmineCore.getConfiguration()
+                .getPreferences();
+        return TmpStorageManager.createFile(getTmpDirectories(preferences),
+                getTmpQuota(preferences), suffix);
+    }
+
+    private static @Nonnull List<File> getTmpDirectories(
+            @Nonnull MZminePreferences preferences) {
+        final List<File> directories = TmpStorageManager.parseDirectories(
+                preferences.getParameter(MZminePreferences.tmpDirectories)
+                        .getValue());
+        if (!directories.isEmpty())
+            return directories;
+        return TmpStorageManager
+                .parseDirectories(TmpStorageManager.getDefaultDirectories());
+    }
+
+    private static long getTmpQuota(@Nonnull MZminePreferences preferences) {
+        final Integer quota = preferences
+                .getParameter(MZminePreferences.tmpStorageQuota).getValue();
+        return quota == null ? 0 : quota * 1024L * 1024L * 1024L;
+    }
+
+    /**
+     * Creates a store that keeps the data on the heap, without loss of
+     * precision.
+     */
+    public static @Nonnull DataPointStore createMemoryDataStore() {
+        return new MeteredDataPointStore(
+                DataPointStoreFactory.getMemoryDataStore());
+    }
+
+    /**
+     * Creates a heap store for the chromatograms of a result feature table.
+     * If enabled in the preferences, the data are compressed with a bounded
+     * loss of precision, so it must not be used for raw data or for data
+     * that features are detected from.
+     */
+    public static @Nonnull DataPointStore createResultDataStore() {
+        final OptionalModuleParameter compressMemoryData = MZmineCore
+                .getConfiguration().getPreferences()
+                .getParameter(MZminePreferences.compressMemoryData);
+        final DataPointStore store;
+        if (Boolean.TRUE.equals(compressMemoryData.getValue())) {
+            final ParameterSet settings = compressMemoryData
+                    .getEmbeddedParameters();
+            store = new CompressedMemoryDataPointStore(
+                    settings.getParameter(DataCompressionSettings.maxMzError)
+                            .getValue(),
+                    settings.getParameter(
+                            DataCompressionSettings.maxIntensityError)
+                            .getValue());
+        } else {
+            store = DataPointStoreFactory.getMemoryDataStore();
+        }
+        return new MeteredDataPointStore(store);
+    }
+
+    /**
+     * Returns the size in bytes of the first size elements of the given
+     * array.
+     */
+    public static long getByteSize(@Nonnull Object data, int size) {
+        if (data instanceof double[])
+            return 8L * size;
+        if (data instanceof float[])
+            return 4L * size;
+        if (data instanceof int[])
+            return 4L * size;
+        if (data instanceof long[])
+            return 8L * size;
+        if (data instanceof short[] || data instanceof char[])
+            return 2L * size;
+        if (data instanceof byte[])
+            return size;
+        return 0;
+    }
+
+}
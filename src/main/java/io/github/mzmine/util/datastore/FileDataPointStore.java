@@ -0,0 +1,203 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store backed by a temporary file in a given directory. The
+ * arrays are appended to the file and read back with positional reads, so
+ * several threads can read at once.
+ * 
+ * The space of removed arrays is not reused. The temporary file is locked
+ * while the store is in use, so TmpFileCleanup does not remove it.
+ */
+public class FileDataPointStore implements TmpFileDataPointStore {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private File tmpFile;
+    private RandomAccessFile tmpDataFile;
+    private FileChannel tmpChannel;
+    private FileLock tmpFileLock;
+
+    private final List<StoredArray> storedArrays = new ArrayList<>();
+    private long fileSize = 0;
+
+    public FileDataPointStore(@Nonnull File tmpDirectory) {
+        try {
+            tmpFile = File.createTempFile("mzmine", ".scans", tmpDirectory);
+            tmpFile.deleteOnExit();
+            tmpDataFile = new RandomAccessFile(tmpFile, "rw");
+            tmpChannel = tmpDataFile.getChannel();
+            tmpFileLock = tmpChannel.lock();
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        logger.debug("Created temporary data store in " + tmpFile);
+    }
+
+    @Override
+    public synchronized @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+
+        if (tmpFile == null)
+            throw new IllegalStateException("The data store was disposed");
+
+        final ByteBuffer buffer;
+        if (data instanceof double[]) {
+            buffer = ByteBuffer.allocate(size * 8)
+                    .order(ByteOrder.nativeOrder());
+            buffer.asDoubleBuffer().put((double[]) data, 0, size);
+        } else if (data instanceof float[]) {
+            buffer = ByteBuffer.allocate(size * 4)
+                    .order(ByteOrder.nativeOrder());
+            buffer.asFloatBuffer().put((float[]) data, 0, size);
+        } else {
+            throw new IllegalArgumentException(
+                    "Only double[] and float[] arrays can be stored");
+        }
+
+        final long position = fileSize;
+        try {
+            while (buffer.hasRemaining())
+                tmpChannel.write(buffer, position + buffer.position());
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        fileSize += buffer.capacity();
+
+        storedArrays.add(new StoredArray(position, size, buffer.capacity()));
+        return storedArrays.size() - 1;
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object data) {
+
+        final StoredArray storedArray;
+        final FileChannel channel;
+        synchronized (this) {
+            storedArray = getStoredArray(id);
+            channel = tmpChannel;
+        }
+
+        final int elementSize;
+        if (data instanceof double[])
+            elementSize = 8;
+        else if (data instanceof float[])
+            elementSize = 4;
+        else
+            throw new IllegalArgumentException(
+                    "Only double[] and float[] arrays can be loaded");
+
+        final ByteBuffer buffer = ByteBuffer
+                .allocate(storedArray.size * elementSize)
+                .order(ByteOrder.nativeOrder());
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer,
+                        storedArray.position + buffer.position()) < 0)
+                    throw new IOException("Unexpected end of file " + tmpFile);
+            }
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        buffer.flip();
+
+        if (data instanceof double[])
+            buffer.asDoubleBuffer().get((double[]) data, 0, storedArray.size);
+        else
+            buffer.asFloatBuffer().get((float[]) data, 0, storedArray.size);
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        storedArrays.set(getIndex(id), null);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (tmpFile == null)
+            return;
+        try {
+            storedArrays.clear();
+            tmpFileLock.release();
+            tmpDataFile.close();
+        } catch (IOException e) {
+            logger.warn("Could not close temporary file " + tmpFile, e);
+        }
+        if (!tmpFile.delete())
+            logger.warn("Could not remove temporary file " + tmpFile);
+        tmpFile = null;
+    }
+
+    @Override
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public synchronized long getStoredBytes(@Nonnull Object id) {
+        return getStoredArray(id).length;
+    }
+
+    private StoredArray getStoredArray(Object id) {
+        final StoredArray storedArray = storedArrays.get(getIndex(id));
+        if (storedArray == null)
+            throw new IllegalArgumentException(
+                    "Data with id " + id + " was removed");
+        return storedArray;
+    }
+
+    private int getIndex(Object id) {
+        if (!(id instanceof Integer))
+            throw new IllegalArgumentException("Invalid data id " + id);
+        return (Integer) id;
+    }
+
+    private static class StoredArray {
+
+        private final long position;
+        private final int size, length;
+
+        private StoredArray(long position, int size, int length) {
+            this.position = position;
+            this.size = size;
+            this.length = length;
+        }
+    }
+
+}
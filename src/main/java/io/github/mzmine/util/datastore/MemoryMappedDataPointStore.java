@@ -0,0 +1,221 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store backed by a memory-mapped temporary file. The file is
+ * mapped in segments of SEGMENT_SIZE bytes and the arrays are appended to the
+ * last segment. Reading copies the data directly from the mapped pages into
+ * the array supplied by the caller, so frequently read scans are served from
+ * the OS page cache without any file system calls or temporary buffers.
+ * 
+ * The space of removed arrays is not reused. The temporary file is locked
+ * while the store is in use, so TmpFileCleanup does not remove it.
+ */
+public class MemoryMappedDataPointStore implements TmpFileDataPointStore {
+
+    /**
+     * Size of one mapped segment of the file (64 MB).
+     */
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private File tmpFile;
+    private RandomAccessFile tmpDataFile;
+    private FileChannel tmpChannel;
+    private FileLock tmpFileLock;
+
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<StoredArray> storedArrays = new ArrayList<>();
+    private long fileSize = 0;
+    private int segmentPosition = 0;
+
+    public MemoryMappedDataPointStore(@Nonnull File tmpDirectory) {
+        try {
+            tmpFile = File.createTempFile("mzmine", ".scans", tmpDirectory);
+            tmpFile.deleteOnExit();
+            tmpDataFile = new RandomAccessFile(tmpFile, "rw");
+            tmpChannel = tmpDataFile.getChannel();
+            tmpFileLock = tmpChannel.lock();
+        } catch (IOException e) {
+            throw new MSDKRuntimeException(e);
+        }
+        logger.debug("Created memory-mapped data store in " + tmpFile);
+    }
+
+    @Override
+    public synchronized @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+
+        final int elementSize;
+        if (data instanceof double[])
+            elementSize = 8;
+        else if (data instanceof float[])
+            elementSize = 4;
+        else
+            throw new IllegalArgumentException(
+                    "Only double[] and float[] arrays can be stored");
+
+        final int numOfBytes = size * elementSize;
+        final ByteBuffer segment = allocate(numOfBytes);
+        final int position = segmentPosition;
+        final ByteBuffer target = segment.duplicate()
+                .order(ByteOrder.nativeOrder());
+        target.position(position);
+        if (data instanceof double[])
+            target.asDoubleBuffer().put((double[]) data, 0, size);
+        else
+            target.asFloatBuffer().put((float[]) data, 0, size);
+        segmentPosition += numOfBytes;
+
+        storedArrays.add(new StoredArray(segments.size() - 1, position, size,
+                numOfBytes));
+        return storedArrays.size() - 1;
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object data) {
+
+        final StoredArray storedArray;
+        final ByteBuffer segment;
+        synchronized (this) {
+            storedArray = getStoredArray(id);
+            segment = segments.get(storedArray.segment);
+        }
+
+        // Work on a duplicate, so that several threads can read at once
+        final ByteBuffer source = segment.duplicate()
+                .order(ByteOrder.nativeOrder());
+        source.position(storedArray.position);
+        if (data instanceof double[])
+            source.asDoubleBuffer().get((double[]) data, 0, storedArray.size);
+        else if (data instanceof float[])
+            source.asFloatBuffer().get((float[]) data, 0, storedArray.size);
+        else
+            throw new IllegalArgumentException(
+                    "Only double[] and float[] arrays can be loaded");
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        storedArrays.set(getIndex(id), null);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (tmpFile == null)
+            return;
+        try {
+            segments.clear();
+            storedArrays.clear();
+            tmpFileLock.release();
+            tmpDataFile.close();
+        } catch (IOException e) {
+            logger.warn("Could not close temporary file " + tmpFile, e);
+        }
+        // On some platforms the file can only be deleted after the mapped
+        // buffers were garbage collected; it is then removed on exit
+        if (!tmpFile.delete())
+            logger.debug("Temporary file " + tmpFile
+                    + " will be removed on exit");
+        tmpFile = null;
+    }
+
+    @Override
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public synchronized long getStoredBytes(@Nonnull Object id) {
+        return getStoredArray(id).length;
+    }
+
+    /**
+     * Makes sure the current segment has space for the given number of bytes,
+     * mapping a new segment if needed.
+     */
+    private ByteBuffer allocate(int numOfBytes) {
+        if (tmpFile == null)
+            throw new IllegalStateException("The data store was disposed");
+        if (segments.isEmpty()
+                || segmentPosition + numOfBytes > segments
+                        .get(segments.size() - 1).capacity()) {
+            final int newSegmentSize = Math.max(SEGMENT_SIZE, numOfBytes);
+            try {
+                segments.add(tmpChannel.map(FileChannel.MapMode.READ_WRITE,
+                        fileSize, newSegmentSize));
+            } catch (IOException e) {
+                throw new MSDKRuntimeException(e);
+            }
+            fileSize += newSegmentSize;
+            segmentPosition = 0;
+        }
+        return segments.get(segments.size() - 1);
+    }
+
+    private StoredArray getStoredArray(Object id) {
+        final StoredArray storedArray = storedArrays.get(getIndex(id));
+        if (storedArray == null)
+            throw new IllegalArgumentException(
+                    "Data with id " + id + " was removed");
+        return storedArray;
+    }
+
+    private int getIndex(Object id) {
+        if (!(id instanceof Integer))
+            throw new IllegalArgumentException("Invalid data id " + id);
+        return (Integer) id;
+    }
+
+    private static class StoredArray {
+
+        private final int segment, position, size, length;
+
+        private StoredArray(int segment, int position, int size,
+                int length) {
+            this.segment = segment;
+            this.position = position;
+            this.size = size;
+            this.length = length;
+        }
+    }
+
+}
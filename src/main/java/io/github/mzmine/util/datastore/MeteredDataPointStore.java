@@ -0,0 +1,61 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.mzmine.taskcontrol.TaskMetrics;
+
+/**
+ * Data point store wrapper that counts the bytes written to the underlying
+ * store. The bytes are added to the metrics of the task that writes them.
+ */
+public class MeteredDataPointStore implements DataPointStore {
+
+    private final @Nonnull DataPointStore store;
+
+    public MeteredDataPointStore(@Nonnull DataPointStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+        TaskMetrics.addStoredBytes(DataPointStoreUtil.getByteSize(data, size));
+        return store.storeData(data, size);
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object data) {
+        store.loadData(id, data);
+    }
+
+    @Override
+    public void removeData(@Nonnull Object id) {
+        store.removeData(id);
+    }
+
+    @Override
+    public void dispose() {
+        store.dispose();
+    }
+
+}
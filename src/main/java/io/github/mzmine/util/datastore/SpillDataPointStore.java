@@ -0,0 +1,134 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store in one of the spill directories managed by
+ * TmpStorageManager. The bytes written to the store are accounted to its
+ * owners and checked against the temporary storage quota. The bytes are
+ * those actually written to the temporary file, after compression, and are
+ * released again when the data are removed.
+ */
+class SpillDataPointStore implements DataPointStore {
+
+    private final @Nonnull TmpFileDataPointStore fileStore;
+    private final @Nonnull DataPointStore store;
+    private final @Nonnull File directory;
+    private final Map<Object, Long> byteSizes = new HashMap<>();
+
+    private final List<Object> owners = new ArrayList<>();
+    private long storedBytes = 0;
+    private boolean disposed = false;
+
+    SpillDataPointStore(@Nonnull TmpFileDataPointStore fileStore,
+            @Nonnull File directory) {
+        this.fileStore = fileStore;
+        this.store = new MeteredDataPointStore(fileStore);
+        this.directory = directory;
+    }
+
+    @Override
+    public @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+        final Object id = store.storeData(data, size);
+        final long bytes = fileStore.getStoredBytes(id);
+        try {
+            TmpStorageManager.allocate(this, bytes);
+        } catch (MSDKRuntimeException e) {
+            store.removeData(id);
+            throw e;
+        }
+        synchronized (byteSizes) {
+            byteSizes.put(id, bytes);
+        }
+        return id;
+    }
+
+    @Override
+    public void loadData(@Nonnull Object id, @Nonnull Object data) {
+        store.loadData(id, data);
+    }
+
+    @Override
+    public void removeData(@Nonnull Object id) {
+        store.removeData(id);
+        final Long bytes;
+        synchronized (byteSizes) {
+            bytes = byteSizes.remove(id);
+        }
+        if (bytes != null)
+            TmpStorageManager.deallocate(this, bytes);
+    }
+
+    @Override
+    public void dispose() {
+        if (!TmpStorageManager.unregister(this))
+            return;
+        store.dispose();
+    }
+
+    @Nonnull
+    File getDirectory() {
+        return directory;
+    }
+
+    // The following fields are guarded by the TmpStorageManager lock
+
+    @Nonnull
+    List<Object> getOwners() {
+        return owners;
+    }
+
+    boolean isOwnedBy(@Nonnull Object owner) {
+        for (Object o : owners) {
+            if (o == owner)
+                return true;
+        }
+        return false;
+    }
+
+    long getStoredBytes() {
+        return storedBytes;
+    }
+
+    void addStoredBytes(long bytes) {
+        storedBytes += bytes;
+    }
+
+    boolean isDisposed() {
+        return disposed;
+    }
+
+    void setDisposed() {
+        disposed = true;
+    }
+
+}
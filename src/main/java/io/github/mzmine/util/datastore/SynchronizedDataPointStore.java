@@ -0,0 +1,61 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store wrapper that serializes all calls to the underlying
+ * store, so several threads can write to a store that is not thread safe,
+ * such as the memory store of MSDK.
+ */
+public class SynchronizedDataPointStore implements DataPointStore {
+
+    private final @Nonnull DataPointStore store;
+
+    public SynchronizedDataPointStore(@Nonnull DataPointStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public synchronized @Nonnull Object storeData(@Nonnull Object data,
+            @Nonnull Integer size) {
+        return store.storeData(data, size);
+    }
+
+    @Override
+    public synchronized void loadData(@Nonnull Object id,
+            @Nonnull Object data) {
+        store.loadData(id, data);
+    }
+
+    @Override
+    public synchronized void removeData(@Nonnull Object id) {
+        store.removeData(id);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        store.dispose();
+    }
+
+}
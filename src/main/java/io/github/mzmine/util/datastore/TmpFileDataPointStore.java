@@ -0,0 +1,43 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import javax.annotation.Nonnull;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Data point store that keeps its data in a temporary file. Used by
+ * SpillDataPointStore to account the bytes that are actually written.
+ */
+interface TmpFileDataPointStore extends DataPointStore {
+
+    /**
+     * Returns the size of the temporary file in bytes.
+     */
+    long getFileSize();
+
+    /**
+     * Returns the number of bytes that the data with the given id take in
+     * the temporary file, after compression if the store compresses data.
+     */
+    long getStoredBytes(@Nonnull Object id);
+
+}
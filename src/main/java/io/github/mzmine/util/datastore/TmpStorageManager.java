@@ -0,0 +1,386 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+import io.github.msdk.MSDKRuntimeException;
+import io.github.msdk.datamodel.datastore.DataPointStore;
+
+/**
+ * Keeps track of the temporary files where raw data are spilled to disk. New
+ * stores are distributed round-robin across the configured spill directories,
+ * skipping directories that are nearly full. The bytes written to each store
+ * are accounted to its owner, usually the raw data file or feature table that
+ * keeps its data there, and the total is checked against the quota.
+ * 
+ * When all owners of a store are removed from the project, the store is
+ * released and its temporary file deleted right away instead of on exit.
+ * Temporary files that are not data point stores are accounted the same way,
+ * see createFile().
+ */
+public class TmpStorageManager {
+
+    /**
+     * System property with the default spill directories, separated by
+     * File.pathSeparator. It is set by the launcher scripts.
+     */
+    public static final String TMP_DIRECTORIES_PROPERTY = "mzmine.tmpdirs";
+
+    /**
+     * Directories with less usable space are only used when all directories
+     * are full (1 GB).
+     */
+    private static final long MIN_FREE_SPACE = 1024L * 1024L * 1024L;
+
+    /**
+     * Names of the temporary files, used to remove files left over from
+     * previous sessions.
+     */
+    private static final String TMP_FILE_PATTERN = "mzmine.*\\."
+            + "(scans|featuretable)";
+
+    private static final Logger logger = LoggerFactory
+            .getLogger(TmpStorageManager.class);
+
+    private static final List<SpillDataPointStore> stores = new ArrayList<>();
+    private static final Map<File, Long> tmpFiles = new HashMap<>();
+    private static final Set<File> cleanedDirectories = new HashSet<>();
+    private static int nextDirectory = 0;
+    private static long usedBytes = 0, quota = 0;
+
+    /**
+     * Returns the spill directories given on the command line, or the default
+     * temporary directory.
+     */
+    public static @Nonnull String getDefaultDirectories() {
+        final String directories = System
+                .getProperty(TMP_DIRECTORIES_PROPERTY);
+        if (!Strings.isNullOrEmpty(directories))
+            return directories;
+        return System.getProperty("java.io.tmpdir");
+    }
+
+    /**
+     * Splits a list of directories separated by File.pathSeparator.
+     */
+    public static @Nonnull List<File> parseDirectories(
+            @Nullable String directories) {
+        final List<File> result = new ArrayList<>();
+        if (directories == null)
+            return result;
+        for (String directory : directories.split(File.pathSeparator)) {
+            if (!directory.trim().isEmpty())
+                result.add(new File(directory.trim()));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a store of the given type in the next spill directory.
+     * 
+     * @param quotaBytes
+     *            maximum number of bytes in all stores, or 0 for no limit
+     */
+    static synchronized @Nonnull DataPointStore createStore(
+            @Nonnull List<File> directories, long quotaBytes,
+            @Nonnull TmpDataStoreType storeType) {
+        quota = quotaBytes;
+        final File directory = selectDirectory(directories);
+        if (cleanedDirectories.add(directory.getAbsoluteFile()))
+            removeUnusedFiles(directory);
+
+        final TmpFileDataPointStore store;
+        switch (storeType) {
+        case MEMORY_MAPPED:
+            store = new MemoryMappedDataPointStore(directory);
+            break;
+        case COMPRESSED:
+            store = new BlockCompressedDataPointStore(directory);
+            break;
+        default:
+            store = new FileDataPointStore(directory);
+            break;
+        }
+        final SpillDataPointStore spillStore = new SpillDataPointStore(store,
+                directory);
+        stores.add(spillStore);
+        return spillStore;
+    }
+
+    /**
+     * Creates an empty temporary file in the next spill directory, for data
+     * that are not kept in a data point store, such as intermediate feature
+     * tables. Once written, its size must be accounted with allocateFile().
+     * The file is removed with deleteFile().
+     * 
+     * @param quotaBytes
+     *            maximum number of bytes in all stores and files, or 0 for no
+     *            limit
+     */
+    static synchronized @Nonnull File createFile(
+            @Nonnull List<File> directories, long quotaBytes,
+            @Nonnull String suffix) throws IOException {
+        quota = quotaBytes;
+        final File directory = selectDirectory(directories);
+        if (cleanedDirectories.add(directory.getAbsoluteFile()))
+            removeUnusedFiles(directory);
+        final File file = File.createTempFile("mzmine", suffix, directory)
+                .getAbsoluteFile();
+        tmpFiles.put(file, 0L);
+        return file;
+    }
+
+    /**
+     * Accounts the bytes written to the given temporary file since it was
+     * created or last accounted, and checks them against the quota.
+     */
+    public static synchronized void allocateFile(@Nonnull File file) {
+        final Long allocatedBytes = tmpFiles.get(file.getAbsoluteFile());
+        if (allocatedBytes == null)
+            return;
+        final long bytes = file.length() - allocatedBytes;
+        checkQuota(bytes);
+        tmpFiles.put(file.getAbsoluteFile(), allocatedBytes + bytes);
+        usedBytes += bytes;
+    }
+
+    /**
+     * Deletes the given temporary file and releases its bytes.
+     */
+    public static synchronized void deleteFile(@Nonnull File file) {
+        final Long allocatedBytes = tmpFiles.remove(file.getAbsoluteFile());
+        if (allocatedBytes != null)
+            usedBytes -= allocatedBytes;
+        file.delete();
+    }
+
+    /**
+     * Accounts the bytes of the given store to the given owner, e.g. the
+     * raw data file that keeps its scans in the store. Stores that are not
+     * managed are ignored.
+     */
+    public static synchronized void setOwner(@Nonnull DataPointStore store,
+            @Nonnull Object owner) {
+        if (!(store instanceof SpillDataPointStore))
+            return;
+        final SpillDataPointStore spillStore = (SpillDataPointStore) store;
+        if (!spillStore.isOwnedBy(owner))
+            spillStore.getOwners().add(owner);
+    }
+
+    /**
+     * Adds the new owner to all stores of the existing owner. Used when a new
+     * feature table refers to the data of the table it was created from, so
+     * the data are kept until both tables are removed.
+     */
+    public static synchronized void addOwner(@Nonnull Object existingOwner,
+            @Nonnull Object newOwner) {
+        for (SpillDataPointStore store : stores) {
+            if (store.isOwnedBy(existingOwner) && !store.isOwnedBy(newOwner))
+                store.getOwners().add(newOwner);
+        }
+    }
+
+    /**
+     * Removes the given owner from its stores. Stores without any remaining
+     * owner are disposed and their temporary files deleted.
+     */
+    public static void release(@Nonnull Object owner) {
+        final List<SpillDataPointStore> unusedStores = new ArrayList<>();
+        synchronized (TmpStorageManager.class) {
+            for (SpillDataPointStore store : stores) {
+                if (!store.isOwnedBy(owner))
+                    continue;
+                store.getOwners().removeIf(o -> o == owner);
+                if (store.getOwners().isEmpty())
+                    unusedStores.add(store);
+            }
+        }
+        for (SpillDataPointStore store : unusedStores) {
+            logger.debug("Releasing " + store.getStoredBytes()
+                    + " bytes of temporary storage of " + owner);
+            store.dispose();
+        }
+    }
+
+    /**
+     * Returns the number of bytes in all stores.
+     */
+    public static synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the number of bytes in the stores of the given owner.
+     */
+    public static synchronized long getUsedBytes(@Nonnull Object owner) {
+        long bytes = 0;
+        for (SpillDataPointStore store : stores) {
+            if (store.isOwnedBy(owner))
+                bytes += store.getStoredBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of bytes in the stores of each owner. Stores shared
+     * by several owners are counted for each of them, stores without an owner
+     * are not included.
+     */
+    public static synchronized @Nonnull Map<Object, Long> getUsage() {
+        final Map<Object, Long> usage = new IdentityHashMap<>();
+        for (SpillDataPointStore store : stores) {
+            for (Object owner : store.getOwners())
+                usage.merge(owner, store.getStoredBytes(), Long::sum);
+        }
+        return usage;
+    }
+
+    /**
+     * Removes the temporary files in the given directory that are left over
+     * from previous sessions, i.e. those that are not locked.
+     */
+    public static synchronized void removeUnusedFiles(
+            @Nonnull File directory) {
+
+        final File remainingTmpFiles[] = directory
+                .listFiles((dir, name) -> name.matches(TMP_FILE_PATTERN));
+        if (remainingTmpFiles == null)
+            return;
+
+        for (File remainingTmpFile : remainingTmpFiles) {
+
+            // Skip files created by someone else
+            if (!remainingTmpFile.canWrite())
+                continue;
+
+            // Temporary files of this session are not locked
+            if (tmpFiles.containsKey(remainingTmpFile.getAbsoluteFile()))
+                continue;
+
+            // Try to obtain a lock on the file
+            try (RandomAccessFile rac = new RandomAccessFile(remainingTmpFile,
+                    "rw")) {
+                final FileLock lock = rac.getChannel().tryLock();
+                if (lock == null)
+                    continue;
+            } catch (OverlappingFileLockException e) {
+                // Locked by a store of this session
+                continue;
+            } catch (IOException e) {
+                logger.warn("Could not check temporary file "
+                        + remainingTmpFile, e);
+                continue;
+            }
+
+            // We locked the file, which means nobody is using it anymore and
+            // it can be removed
+            logger.debug("Removing unused temporary file " + remainingTmpFile);
+            remainingTmpFile.delete();
+        }
+    }
+
+    static synchronized void allocate(@Nonnull SpillDataPointStore store,
+            long bytes) {
+        checkQuota(bytes);
+        if (store.isDisposed())
+            return;
+        store.addStoredBytes(bytes);
+        usedBytes += bytes;
+    }
+
+    static synchronized void deallocate(@Nonnull SpillDataPointStore store,
+            long bytes) {
+        if (store.isDisposed())
+            return;
+        store.addStoredBytes(-bytes);
+        usedBytes -= bytes;
+    }
+
+    /**
+     * Removes the store from the accounting. Returns false if the store was
+     * already disposed.
+     */
+    static synchronized boolean unregister(
+            @Nonnull SpillDataPointStore store) {
+        if (store.isDisposed())
+            return false;
+        store.setDisposed();
+        usedBytes -= store.getStoredBytes();
+        stores.remove(store);
+        return true;
+    }
+
+    private static void checkQuota(long bytes) {
+        if (quota > 0 && usedBytes + bytes > quota) {
+            throw new MSDKRuntimeException("Temporary storage quota of "
+                    + (quota / (1024 * 1024)) + " MB exceeded");
+        }
+    }
+
+    private static @Nonnull File selectDirectory(
+            @Nonnull List<File> directories) {
+        File fullDirectory = null;
+        for (int i = 0; i < directories.size(); i++) {
+            final int index = (nextDirectory + i) % directories.size();
+            final File directory = directories.get(index);
+            if (!directory.isDirectory() && !directory.mkdirs())
+                continue;
+            if (!directory.canWrite())
+                continue;
+            if (directory.getUsableSpace() < MIN_FREE_SPACE) {
+                if (fullDirectory == null)
+                    fullDirectory = directory;
+                continue;
+            }
+            nextDirectory = index + 1;
+            return directory;
+        }
+        if (fullDirectory != null) {
+            logger.warn("All temporary directories are nearly full, using "
+                    + fullDirectory);
+            return fullDirectory;
+        }
+        throw new MSDKRuntimeException(
+                "None of the temporary directories " + directories
+                        + " is writable");
+    }
+
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.featuretable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+import io.github.msdk.datamodel.rawdata.SeparationType;
+
+/**
+ * Values of one column of a ColumnarFeatureTable, indexed by the slot of the
+ * row. Numeric values are kept in primitive arrays, retention times as floats
+ * and strings and annotations as codes into a dictionary of distinct values.
+ * A bit set marks the slots that have a value.
+ */
+abstract class ColumnStorage {
+
+    private final BitSet present = new BitSet();
+
+    /**
+     * Creates the storage for values of the given data type.
+     */
+    static @Nonnull ColumnStorage create(@Nonnull Class<?> dataTypeClass,
+            int capacity) {
+        final ColumnStorage storage;
+        if (dataTypeClass == Double.class)
+            storage = new DoubleStorage();
+        else if (dataTypeClass == Float.class)
+            storage = new FloatStorage();
+        else if (dataTypeClass == Integer.class)
+            storage = new IntStorage();
+        else if (ChromatographyInfo.class.isAssignableFrom(dataTypeClass))
+            storage = new ChromatographyInfoStorage();
+        else if (dataTypeClass == String.class)
+            storage = new DictionaryStorage();
+        else if (List.class.isAssignableFrom(dataTypeClass))
+            storage = new ListStorage();
+        else
+            storage = new ObjectStorage();
+        storage.grow(capacity);
+        return storage;
+    }
+
+    final boolean hasValue(int slot) {
+        return present.get(slot);
+    }
+
+    final @Nullable Object get(int slot) {
+        return present.get(slot) ? getValue(slot) : null;
+    }
+
+    final void set(int slot, @Nonnull Object value) {
+        setValue(slot, value);
+        present.set(slot);
+    }
+
+    void clear(int slot) {
+        present.clear(slot);
+    }
+
+    /**
+     * Moves the value of a slot to a lower slot, when the table is compacted.
+     */
+    final void move(int from, int to) {
+        if (present.get(from))
+            set(to, getValue(from));
+        else
+            clear(to);
+        clear(from);
+    }
+
+    /**
+     * Returns the value as a double, or NaN if there is no numeric value.
+     */
+    double getDouble(int slot) {
+        final Object value = get(slot);
+        return value instanceof Number ? ((Number) value).doubleValue()
+                : Double.NaN;
+    }
+
+    /**
+     * Returns the value as a float, or NaN if there is no numeric value.
+     */
+    float getFloat(int slot) {
+        final Object value = get(slot);
+        return value instanceof Number ? ((Number) value).floatValue()
+                : Float.NaN;
+    }
+
+    abstract void grow(int capacity);
+
+    abstract @Nonnull Object getValue(int slot);
+
+    abstract void setValue(int slot, @Nonnull Object value);
+
+    static class DoubleStorage extends ColumnStorage {
+
+        private double values[] = new double[0];
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        @Nonnull
+        Object getValue(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void setValue(int slot, @Nonnull Object value) {
+            values[slot] = ((Number) value).doubleValue();
+        }
+
+        @Override
+        double getDouble(int slot) {
+            return hasValue(slot) ? values[slot] : Double.NaN;
+        }
+
+        @Override
+        float getFloat(int slot) {
+            return hasValue(slot) ? (float) values[slot] : Float.NaN;
+        }
+    }
+
+    static class FloatStorage extends ColumnStorage {
+
+        private float values[] = new float[0];
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        @Nonnull
+        Object getValue(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void setValue(int slot, @Nonnull Object value) {
+            values[slot] = ((Number) value).floatValue();
+        }
+
+        @Override
+        double getDouble(int slot) {
+            return hasValue(slot) ? values[slot] : Double.NaN;
+        }
+
+        @Override
+        float getFloat(int slot) {
+            return hasValue(slot) ? values[slot] : Float.NaN;
+        }
+    }
+
+    static class IntStorage extends ColumnStorage {
+
+        private int values[] = new int[0];
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        @Nonnull
+        Object getValue(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void setValue(int slot, @Nonnull Object value) {
+            values[slot] = ((Number) value).intValue();
+        }
+
+        @Override
+        double getDouble(int slot) {
+            return hasValue(slot) ? values[slot] : Double.NaN;
+        }
+
+        @Override
+        float getFloat(int slot) {
+            return hasValue(slot) ? values[slot] : Float.NaN;
+        }
+    }
+
+    /**
+     * Keeps the retention time and separation type of one-dimensional
+     * chromatography info. Other values are kept as objects. The objects
+     * returned by getValue() are cached, so repeated reads do not allocate.
+     */
+    static class ChromatographyInfoStorage extends ColumnStorage {
+
+        private static final SeparationType separationTypes[] = SeparationType
+                .values();
+
+        private float retentionTimes[] = new float[0];
+        private byte separationTypeOrdinals[] = new byte[0];
+        private ChromatographyInfo cachedValues[] = new ChromatographyInfo[0];
+        private final Map<Integer, ChromatographyInfo> otherValues = new HashMap<>();
+
+        @Override
+        void grow(int capacity) {
+            retentionTimes = Arrays.copyOf(retentionTimes, capacity);
+            separationTypeOrdinals = Arrays.copyOf(separationTypeOrdinals,
+                    capacity);
+            cachedValues = Arrays.copyOf(cachedValues, capacity);
+        }
+
+        @Override
+        @Nonnull
+        Object getValue(int slot) {
+            final ChromatographyInfo otherValue = otherValues.get(slot);
+            if (otherValue != null)
+                return otherValue;
+            ChromatographyInfo value = cachedValues[slot];
+            if (value == null) {
+                value = MSDKObjectBuilder.getChromatographyInfo1D(
+                        separationTypes[separationTypeOrdinals[slot]],
+                        retentionTimes[slot]);
+                cachedValues[slot] = value;
+            }
+            return value;
+        }
+
+        @Override
+        void setValue(int slot, @Nonnull Object value) {
+            final ChromatographyInfo chromInfo = (ChromatographyInfo) value;
+            otherValues.remove(slot);
+            cachedValues[slot] = null;
+            if (chromInfo.getRetentionTime() == null
+                    || chromInfo.getSecondaryRetentionTime() != null
+                    || chromInfo.getIonDriftTime() != null
+                    || chromInfo.getSeparationType() == null) {
+                otherValues.put(slot, chromInfo);
+                return;
+            }
+            retentionTimes[slot] = chromInfo.getRetentionTime();
+            separationTypeOrdinals[slot] = (byte) chromInfo
+                    .getSeparationType().ordinal();
+        }
+
+        @Override
+        void clear(int slot) {
+            super.clear(slot);
+            otherValues.remove(slot);
+            cachedValues[slot] = null;
+        }
+
+        /**
+         * Returns the retention time, or NaN if there is none.
+         */
+        @Override
+        float getFloat(int slot) {
+            if (!hasValue(slot))
+                return Float.NaN;
+            final ChromatographyInfo otherValue = otherValues.get(slot);
+            if (otherValue == null)
+                return retentionTimes[slot];
+            final Float rt = otherValue.getRetentionTime();
+            return rt == null ? Float.NaN : rt;
+        }
+
+        @Override
+        double getDouble(int slot) {
+            return getFloat(slot);
+        }
+    }
+
+    /**
+     * Keeps each distinct value once. The dictionary is not shrunk when
+     * values are removed.
+     */
+    static class DictionaryStorage extends ColumnStorage {
+
+        private final Dictionary dictionary = new Dictionary();
+        private int codes[] = new int[0];
+
+        @Override
+        void grow(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+        }
+
+        @Override
+        @Nonnull
+        Object getValue(int slot) {
+            return dictionary.getValue(codes[slot]);
+        }
+
+        @Override
+        void setValue(int slot, @Nonnull Object value) {
+            codes[slot] = dictionary.getCode(value);
+        }
+    }
+
+    /**
+     * Keeps lists, e.g. ion annotations, as arrays of codes into a dictionary
+     * of their distinct elements. The lists returned by getValue() are cached
+     * and cannot be modified, so changes must be stored with setData().
+     */
+    static class ListStorage extends ColumnStorage {
+
+        private static final int emptyCodes[] = new int[0];
+
+        private final Dictionary dictionary = new Dictionary();
+        private int codes[][] = new int[0][];
+        private List<?> cachedLists[] = new List<?>[0];
+
+        @Override
+        void grow(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+            cachedLists = Arrays.copyOf(cachedLists, capacity);
+        }
+
+        @Override
+        @Nonnull
+        Object getValue(int slot) {
+            final List<?> cachedList = cachedLists[slot];
+            if (cachedList != null)
+                return cachedList;
+            final int elementCodes[] = codes[slot];
+            final List<Object> list = new ArrayList<>(elementCodes.length);
+            for (int code : elementCodes)
+                list.add(dictionary.getValue(code));
+            cachedLists[slot] = Collections.unmodifiableList(list);
+            return cachedLists[slot];
+        }
+
+        @Override
+        void setValue(int slot, @Nonnull Object value) {
+            final List<?> list = (List<?>) value;
+            cachedLists[slot] = null;
+            if (list.isEmpty()) {
+                codes[slot] = emptyCodes;
+                return;
+            }
+            final int elementCodes[] = new int[list.size()];
+            for (int i = 0; i < elementCodes.length; i++)
+                elementCodes[i] = dictionary.getCode(list.get(i));
+            codes[slot] = elementCodes;
+        }
+
+        @Override
+        void clear(int slot) {
+            super.clear(slot);
+            codes[slot] = null;
+            cachedLists[slot] = null;
+        }
+    }
+
+    static class ObjectStorage extends ColumnStorage {
+
+        private Object values[] = new Object[0];
+
+        @Override
+        void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+
+        @Override
+        @Nonnull
+        Object getValue(int slot) {
+            return values[slot];
+        }
+
+        @Override
+        void setValue(int slot, @Nonnull Object value) {
+            values[slot] = value;
+        }
+
+        @Override
+        void clear(int slot) {
+            super.clear(slot);
+            values[slot] = null;
+        }
+    }
+
+    private static class Dictionary {
+
+        private final List<Object> values = new ArrayList<>();
+        private final Map<Object, Integer> codes = new HashMap<>();
+
+        @Nonnull
+        Object getValue(int code) {
+            return values.get(code);
+        }
+
+        int getCode(@Nonnull Object value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+    }
+
+}
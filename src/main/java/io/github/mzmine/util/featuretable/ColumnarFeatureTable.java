@@ -0,0 +1,445 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.featuretable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+
+import io.github.msdk.datamodel.datastore.DataPointStore;
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.featuretables.Sample;
+import io.github.msdk.datamodel.impl.MSDKObjectBuilder;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+
+/**
+ * Feature table that keeps its values by column instead of by row. Doubles,
+ * floats, integers and retention times are kept in primitive arrays, and
+ * strings and annotations are dictionary encoded, so a table does not hold a
+ * boxed object for every cell. Primitive values can be read without boxing
+ * through ColumnarFeatureTableRow.
+ * 
+ * Rows are created with createRow(). Rows of other feature table
+ * implementations can be added as well, their values are copied when they are
+ * added. The table is not thread safe.
+ * 
+ * The rows are kept in the order of their slots. Removing a row only marks
+ * its slot, and a removed row that is added again returns to its position.
+ * Columns are looked up by name, sample and data type in a map.
+ */
+public class ColumnarFeatureTable implements FeatureTable {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private @Nonnull String name;
+    private final @Nonnull DataPointStore dataStore;
+    private final List<FeatureTableColumn<?>> columns = new ArrayList<>();
+    private final Map<FeatureTableColumn<?>, ColumnStorage> storages = new HashMap<>();
+    private final Map<ColumnKey, FeatureTableColumn<?>> columnsByKey = new HashMap<>();
+    private final Map<Sample, Integer> sampleColumnCounts = new HashMap<>();
+    private final List<Sample> samples = new ArrayList<>();
+
+    /**
+     * Rows by slot, including the removed rows whose values are still kept.
+     * The slots of these rows are set in removedSlots.
+     */
+    private final List<ColumnarFeatureTableRow> slotRows = new ArrayList<>();
+    private final BitSet removedSlots = new BitSet();
+
+    // Cached results of getRows() and getSamples(), null if outdated
+    private List<FeatureTableRow> rowList;
+    private List<Sample> sampleList;
+
+    private int capacity = 0, usedSlots = 0, freeSlots = 0;
+
+    public ColumnarFeatureTable(@Nonnull String name,
+            @Nonnull DataPointStore dataStore) {
+        this.name = name;
+        this.dataStore = dataStore;
+    }
+
+    /**
+     * Creates a columnar copy of a feature table. The columns and samples are
+     * shared with the given table.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static @Nonnull ColumnarFeatureTable copyOf(
+            @Nonnull FeatureTable featureTable,
+            @Nonnull DataPointStore dataStore) {
+        final ColumnarFeatureTable newFeatureTable = new ColumnarFeatureTable(
+                featureTable.getName(), dataStore);
+        final List<FeatureTableColumn<?>> columns = featureTable.getColumns();
+        for (FeatureTableColumn<?> column : columns)
+            newFeatureTable.addColumn(column);
+        newFeatureTable.ensureCapacity(featureTable.getRows().size());
+        for (FeatureTableRow row : featureTable.getRows()) {
+            final FeatureTableRow newRow = newFeatureTable
+                    .createRow(row.getId());
+            for (FeatureTableColumn column : columns) {
+                final Object value = row.getData(column);
+                if (value != null)
+                    newRow.setData(column, value);
+            }
+        }
+        return newFeatureTable;
+    }
+
+    /**
+     * Creates a row for the given table, like
+     * MSDKObjectBuilder.getFeatureTableRow(). Rows of a ColumnarFeatureTable
+     * are created by the table, so values set after addRow() are kept.
+     */
+    public static @Nonnull FeatureTableRow getFeatureTableRow(
+            @Nonnull FeatureTable featureTable, int id) {
+        if (featureTable instanceof ColumnarFeatureTable)
+            return ((ColumnarFeatureTable) featureTable).createRow(id);
+        return MSDKObjectBuilder.getFeatureTableRow(featureTable, id);
+    }
+
+    /**
+     * Returns a numeric value of a row of any feature table, or NaN if there
+     * is none. Values of a ColumnarFeatureTable are read without boxing.
+     */
+    public static double getDouble(@Nonnull FeatureTableRow row,
+            @Nullable FeatureTableColumn<?> column) {
+        if (column == null)
+            return Double.NaN;
+        if (row instanceof ColumnarFeatureTableRow)
+            return ((ColumnarFeatureTableRow) row).getDouble(column);
+        final Object value = row.getData(column);
+        return value instanceof Number ? ((Number) value).doubleValue()
+                : Double.NaN;
+    }
+
+    /**
+     * Returns a numeric value or the retention time of a row of any feature
+     * table, or NaN if there is none. Values of a ColumnarFeatureTable are
+     * read without boxing.
+     */
+    public static float getFloat(@Nonnull FeatureTableRow row,
+            @Nullable FeatureTableColumn<?> column) {
+        if (column == null)
+            return Float.NaN;
+        if (row instanceof ColumnarFeatureTableRow)
+            return ((ColumnarFeatureTableRow) row).getFloat(column);
+        final Object value = row.getData(column);
+        if (value instanceof Number)
+            return ((Number) value).floatValue();
+        if (value instanceof ChromatographyInfo) {
+            final Float rt = ((ChromatographyInfo) value).getRetentionTime();
+            return rt == null ? Float.NaN : rt;
+        }
+        return Float.NaN;
+    }
+
+    @Override
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(@Nonnull String name) {
+        this.name = name;
+    }
+
+    @Override
+    @Nonnull
+    public List<FeatureTableRow> getRows() {
+        if (removedSlots.isEmpty())
+            return Collections.unmodifiableList(slotRows);
+        if (rowList == null) {
+            final List<FeatureTableRow> list = new ArrayList<>(
+                    slotRows.size() - freeSlots);
+            for (ColumnarFeatureTableRow row : slotRows) {
+                if (!removedSlots.get(row.getSlot()))
+                    list.add(row);
+            }
+            rowList = Collections.unmodifiableList(list);
+        }
+        return rowList;
+    }
+
+    /**
+     * Creates a new row and adds it to the table. Adding the row again with
+     * addRow() has no effect.
+     */
+    public @Nonnull ColumnarFeatureTableRow createRow(int id) {
+        final ColumnarFeatureTableRow row = new ColumnarFeatureTableRow(this,
+                id, allocateSlot());
+        slotRows.add(row);
+        rowList = null;
+        return row;
+    }
+
+    /**
+     * Adds a row. The values of rows that were not created by this table,
+     * e.g. by MSDKObjectBuilder, are copied to a new row, so later changes to
+     * the given row are not seen by this table.
+     */
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void addRow(@Nonnull FeatureTableRow row) {
+        if (row instanceof ColumnarFeatureTableRow
+                && row.getFeatureTable() == this) {
+            final ColumnarFeatureTableRow ownRow = (ColumnarFeatureTableRow) row;
+            final int slot = ownRow.getSlot();
+            if (slot >= 0 && removedSlots.get(slot)) {
+                // Add a removed row back with its values
+                removedSlots.clear(slot);
+                freeSlots--;
+                rowList = null;
+            } else if (slot < 0) {
+                // The values of the removed row were already dropped
+                ownRow.setSlot(allocateSlot());
+                slotRows.add(ownRow);
+                rowList = null;
+            }
+            return;
+        }
+
+        final ColumnarFeatureTableRow newRow = createRow(row.getId());
+        for (FeatureTableColumn column : columns) {
+            final Object value = row.getData(column);
+            if (value != null)
+                newRow.setData(column, value);
+        }
+    }
+
+    @Override
+    public void removeRow(@Nonnull FeatureTableRow row) {
+        if (row.getFeatureTable() != this)
+            return;
+        final int slot = ((ColumnarFeatureTableRow) row).getSlot();
+        if (slot < 0 || removedSlots.get(slot))
+            return;
+        removedSlots.set(slot);
+        freeSlots++;
+        rowList = null;
+
+        // The values of removed rows are dropped when more than half of the
+        // slots are free
+        if (freeSlots > MIN_CAPACITY && freeSlots > usedSlots / 2)
+            compact();
+    }
+
+    @Override
+    @Nonnull
+    public List<FeatureTableColumn<?>> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <DATATYPE> FeatureTableColumn<DATATYPE> getColumn(
+            @Nonnull ColumnName columnName, @Nullable Sample sample) {
+        return (FeatureTableColumn<DATATYPE>) getColumn(columnName.getName(),
+                sample, columnName.getDataTypeClass());
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <DATATYPE> FeatureTableColumn<DATATYPE> getColumn(
+            @Nonnull String columnName, @Nullable Sample sample,
+            @Nonnull Class<? extends DATATYPE> dataTypeClass) {
+        return (FeatureTableColumn<DATATYPE>) columnsByKey
+                .get(new ColumnKey(columnName, sample, dataTypeClass));
+    }
+
+    @Override
+    public void addColumn(@Nonnull FeatureTableColumn<?> column) {
+        if (storages.containsKey(column))
+            return;
+        columns.add(column);
+        storages.put(column,
+                ColumnStorage.create(column.getDataTypeClass(), capacity));
+        columnsByKey.putIfAbsent(new ColumnKey(column), column);
+
+        final Sample sample = column.getSample();
+        if (sample != null
+                && sampleColumnCounts.merge(sample, 1, Integer::sum) == 1) {
+            samples.add(sample);
+            sampleList = null;
+        }
+    }
+
+    public void removeColumn(@Nonnull FeatureTableColumn<?> column) {
+        if (storages.remove(column) == null)
+            return;
+        columns.remove(column);
+
+        final ColumnKey key = new ColumnKey(column);
+        if (columnsByKey.remove(key, column)) {
+            // Another column with the same key takes its place
+            for (FeatureTableColumn<?> other : columns) {
+                if (key.equals(new ColumnKey(other))) {
+                    columnsByKey.put(key, other);
+                    break;
+                }
+            }
+        }
+
+        final Sample sample = column.getSample();
+        if (sample != null && sampleColumnCounts.computeIfPresent(sample,
+                (s, count) -> count > 1 ? count - 1 : null) == null) {
+            samples.remove(sample);
+            sampleList = null;
+        }
+    }
+
+    @Override
+    @Nonnull
+    public List<Sample> getSamples() {
+        if (sampleList == null)
+            sampleList = ImmutableList.copyOf(samples);
+        return sampleList;
+    }
+
+    @Override
+    public void dispose() {
+        slotRows.clear();
+        removedSlots.clear();
+        rowList = null;
+        storages.clear();
+        columns.clear();
+        columnsByKey.clear();
+        sampleColumnCounts.clear();
+        samples.clear();
+        sampleList = null;
+        capacity = usedSlots = freeSlots = 0;
+        dataStore.dispose();
+    }
+
+    /**
+     * Returns the storage of a column, or throws an exception if the column
+     * is not in this table.
+     */
+    @Nonnull
+    ColumnStorage getStorage(@Nonnull FeatureTableColumn<?> column) {
+        final ColumnStorage storage = storages.get(column);
+        if (storage == null)
+            throw new IllegalArgumentException("Column " + column.getName()
+                    + " is not in feature table " + name);
+        return storage;
+    }
+
+    /**
+     * Returns the storage of a column, or null if the column is not in this
+     * table.
+     */
+    @Nullable
+    ColumnStorage findStorage(@Nonnull FeatureTableColumn<?> column) {
+        return storages.get(column);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= capacity)
+            return;
+        capacity = Math.max(minCapacity,
+                Math.max(MIN_CAPACITY, capacity + capacity / 2));
+        for (ColumnStorage storage : storages.values())
+            storage.grow(capacity);
+    }
+
+    private int allocateSlot() {
+        ensureCapacity(usedSlots + 1);
+        return usedSlots++;
+    }
+
+    /**
+     * Moves the values of the rows to the lowest slots, in row order, and
+     * drops the values of removed rows.
+     */
+    private void compact() {
+        int nextSlot = 0;
+        for (int slot = 0; slot < usedSlots; slot++) {
+            final ColumnarFeatureTableRow row = slotRows.get(slot);
+            if (removedSlots.get(slot)) {
+                row.setSlot(-1);
+                for (ColumnStorage storage : storages.values())
+                    storage.clear(slot);
+                continue;
+            }
+            if (slot != nextSlot) {
+                for (ColumnStorage storage : storages.values())
+                    storage.move(slot, nextSlot);
+                row.setSlot(nextSlot);
+                slotRows.set(nextSlot, row);
+            }
+            nextSlot++;
+        }
+        slotRows.subList(nextSlot, usedSlots).clear();
+        removedSlots.clear();
+        rowList = null;
+        usedSlots = nextSlot;
+        freeSlots = 0;
+    }
+
+    /**
+     * Name, sample and data type of a column.
+     */
+    private static final class ColumnKey {
+
+        private final @Nonnull String name;
+        private final @Nullable Sample sample;
+        private final @Nonnull Class<?> dataTypeClass;
+
+        private ColumnKey(@Nonnull String name, @Nullable Sample sample,
+                @Nonnull Class<?> dataTypeClass) {
+            this.name = name;
+            this.sample = sample;
+            this.dataTypeClass = dataTypeClass;
+        }
+
+        private ColumnKey(@Nonnull FeatureTableColumn<?> column) {
+            this(column.getName(), column.getSample(),
+                    column.getDataTypeClass());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ColumnKey))
+                return false;
+            final ColumnKey other = (ColumnKey) obj;
+            return name.equals(other.name)
+                    && Objects.equals(sample, other.sample)
+                    && dataTypeClass.equals(other.dataTypeClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, sample, dataTypeClass);
+        }
+    }
+
+}
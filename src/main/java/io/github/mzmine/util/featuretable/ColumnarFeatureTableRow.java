@@ -0,0 +1,150 @@
+/*
+ * Copyright 2006-2016 The MZmine 3 Development Team
+ * 
+ * This file is part of MZmine 3.
+ * 
+ * MZmine 3 is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * MZmine 3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * MZmine 3; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package io.github.mzmine.util.featuretable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.msdk.datamodel.featuretables.ColumnName;
+import io.github.msdk.datamodel.featuretables.FeatureTable;
+import io.github.msdk.datamodel.featuretables.FeatureTableColumn;
+import io.github.msdk.datamodel.featuretables.FeatureTableRow;
+import io.github.msdk.datamodel.rawdata.ChromatographyInfo;
+
+/**
+ * Row of a ColumnarFeatureTable. The row only knows its slot in the column
+ * storages of the table, its values are read from and written to the table.
+ * The primitive getters read numeric values and retention times without
+ * boxing.
+ */
+public class ColumnarFeatureTableRow implements FeatureTableRow {
+
+    private final @Nonnull ColumnarFeatureTable featureTable;
+    private final int id;
+    private int slot;
+
+    ColumnarFeatureTableRow(@Nonnull ColumnarFeatureTable featureTable,
+            int id, int slot) {
+        this.featureTable = featureTable;
+        this.id = id;
+        this.slot = slot;
+    }
+
+    @Override
+    @Nonnull
+    public FeatureTable getFeatureTable() {
+        return featureTable;
+    }
+
+    @Override
+    @Nonnull
+    public Integer getId() {
+        return id;
+    }
+
+    @Override
+    @Nullable
+    public Double getMz() {
+        final FeatureTableColumn<Double> column = featureTable
+                .getColumn(ColumnName.MZ, null);
+        return column == null ? null : getData(column);
+    }
+
+    @Override
+    @Nullable
+    public ChromatographyInfo getChromatographyInfo() {
+        final FeatureTableColumn<ChromatographyInfo> column = featureTable
+                .getColumn(ColumnName.CHROMATOGRAPHYINFO, null);
+        return column == null ? null : getData(column);
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <DATATYPE> DATATYPE getData(
+            @Nonnull FeatureTableColumn<? extends DATATYPE> column) {
+        final ColumnStorage storage = featureTable.findStorage(column);
+        if (storage == null || slot < 0)
+            return null;
+        return (DATATYPE) storage.get(slot);
+    }
+
+    @Override
+    public <DATATYPE> void setData(
+            @Nonnull FeatureTableColumn<? extends DATATYPE> column,
+            @Nonnull DATATYPE data) {
+        if (slot < 0)
+            throw new IllegalStateException(
+                    "Row " + id + " was removed from the feature table");
+        featureTable.getStorage(column).set(slot, data);
+    }
+
+    public <DATATYPE> void copyData(
+            @Nonnull FeatureTableColumn<? extends DATATYPE> sourceColumn,
+            @Nonnull FeatureTableRow targetRow,
+            @Nonnull FeatureTableColumn<? extends DATATYPE> targetColumn) {
+        final DATATYPE data = getData(sourceColumn);
+        if (data != null)
+            targetRow.setData(targetColumn, data);
+    }
+
+    /**
+     * Returns true if the row has a value in the given column.
+     */
+    public boolean hasData(@Nonnull FeatureTableColumn<?> column) {
+        final ColumnStorage storage = featureTable.findStorage(column);
+        return storage != null && slot >= 0 && storage.hasValue(slot);
+    }
+
+    /**
+     * Returns a numeric value without boxing, or NaN if there is none.
+     */
+    public double getDouble(@Nonnull FeatureTableColumn<?> column) {
+        final ColumnStorage storage = featureTable.findStorage(column);
+        if (storage == null || slot < 0)
+            return Double.NaN;
+        return storage.getDouble(slot);
+    }
+
+    /**
+     * Returns a numeric value without boxing, or NaN if there is none. For
+     * chromatography info columns, returns the retention time.
+     */
+    public float getFloat(@Nonnull FeatureTableColumn<?> column) {
+        final ColumnStorage storage = featureTable.findStorage(column);
+        if (storage == null || slot < 0)
+            return Float.NaN;
+        return storage.getFloat(slot);
+    }
+
+    @Override
+    public String toString() {
+        return "Row " + id;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+}
@@ -10,8 +10,14 @@
 HEAP_SIZE=AUTO
 
 # Location where temporary files will be stored.
-# Default: /tmp
-TMP_FILE_DIRECTORY=/tmp
+# Default: $TMPDIR, or /tmp if not set
+TMP_FILE_DIRECTORY=${TMPDIR:-/tmp}
+
+# Directories where raw data are stored during processing, separated by colons.
+# New temporary files are distributed across all directories. This is only the
+# default; it can be changed in the preferences.
+# Default: same as TMP_FILE_DIRECTORY
+SPILL_DIRECTORIES=$TMP_FILE_DIRECTORY
 
 # It is usually not necessary to modify the JAVA_COMMAND parameter, but if you like to run
 # a specific Java Virtual Machine, you may set the path to the java command of that JVM
@@ -48,7 +54,7 @@ echo Java maximum heap size set to $HEAP_SIZE MB
 # Java specific commands
 # **********************
 
-JAVA_PARAMETERS="-showversion -classpath lib/\* -XX:+UseG1GC -Djava.io.tmpdir=$TMP_FILE_DIRECTORY -Xms256m -Xmx${HEAP_SIZE}m
+JAVA_PARAMETERS="-showversion -classpath lib/\* -XX:+UseG1GC -Djava.io.tmpdir=$TMP_FILE_DIRECTORY -Dmzmine.tmpdirs=$SPILL_DIRECTORIES -Xms256m -Xmx${HEAP_SIZE}m
 MAIN_CLASS=io.github.mzmine.main.MZmineMain
 
 # Make sure we are in the correct directory
@@ -13,6 +13,12 @@ set HEAP_SIZE=AUTO
 :: Default: %TEMP%
 set TMP_FILE_DIRECTORY=%TEMP%
 
+:: Directories where raw data are stored during processing, separated by semicolons.
+:: New temporary files are distributed across all directories. This is only the
+:: default; it can be changed in the preferences.
+:: Default: same as TMP_FILE_DIRECTORY
+set SPILL_DIRECTORIES=%TMP_FILE_DIRECTORY%
+
 :: It is usually not necessary to modify the JAVA_COMMAND parameter, but if you like to run
 :: a specific Java Virtual Machine, you may set the path to the java.exe command of that JVM
 set JAVA_COMMAND=java.exe
@@ -90,7 +96,7 @@ echo Java maximum heap size set to %HEAP_SIZE% MB
 :: Java specific commands
 :: **********************
 
-set JAVA_PARAMETERS=-showversion -classpath lib\* -XX:+UseG1GC -Djava.io.tmpdir=%TMP_FILE_DIRECTORY% -Xms256m -Xmx%HEAP_SIZE%m
+set JAVA_PARAMETERS=-showversion -classpath lib\* -XX:+UseG1GC -Djava.io.tmpdir=%TMP_FILE_DIRECTORY% "-Dmzmine.tmpdirs=%SPILL_DIRECTORIES%" -Xms256m -Xmx%HEAP_SIZE%m
 set MAIN_CLASS=io.github.mzmine.main.MZmineMain
 
 :: Make sure we are in the correct directory